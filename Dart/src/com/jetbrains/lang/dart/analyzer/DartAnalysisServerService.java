@@ -1,11 +1,14 @@
 package com.jetbrains.lang.dart.analyzer;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.dart.server.*;
 import com.google.dart.server.generated.AnalysisServer;
 import com.google.dart.server.internal.remote.DebugPrintStream;
+import com.google.dart.server.internal.remote.MessageStatistics;
 import com.google.dart.server.internal.remote.RemoteAnalysisServerImpl;
+import com.google.dart.server.internal.remote.RequestLatencyHistogram;
 import com.google.dart.server.internal.remote.StdioServerSocket;
 import com.google.dart.server.utilities.logging.Logging;
 import com.intellij.codeInsight.intention.IntentionManager;
@@ -38,6 +41,7 @@ import com.intellij.openapi.roots.libraries.Library;
 import com.intellij.openapi.util.Comparing;
 import com.intellij.openapi.util.Condition;
 import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.registry.Registry;
@@ -73,9 +77,13 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class DartAnalysisServerService {
 
@@ -96,6 +104,8 @@ public class DartAnalysisServerService {
   private static final long EXECUTION_CREATE_CONTEXT_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
   private static final long EXECUTION_MAP_URI_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
   private static final long ANALYSIS_IN_TESTS_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+  // a server replaced by the warm standby keeps running this long to answer the requests already sent to it, see RequestResultsListener
+  private static final long REPLACED_SERVER_DRAIN_DELAY = Math.max(GET_FIXES_TIMEOUT, GET_TYPE_HIERARCHY_TIMEOUT);
 
   private static final List<String> SERVER_SUBSCRIPTIONS = Collections.singletonList(ServerService.STATUS);
   private static final Logger LOG = Logger.getInstance("#com.jetbrains.lang.dart.analyzer.DartAnalysisServerService");
@@ -110,17 +120,33 @@ public class DartAnalysisServerService {
   @Nullable private String mySdkHome = null;
   private final DartServerRootsHandler myRootsHandler = new DartServerRootsHandler();
   private final Map<String, Long> myFilePathWithOverlaidContentToTimestamp = new THashMap<String, Long>();
+  private final DartContentOverlayTracker myContentOverlayTracker = new DartContentOverlayTracker();
   private final List<String> myVisibleFiles = new ArrayList<String>();
   private final Set<Document> myChangedDocuments = new THashSet<Document>();
 
-  @NotNull private final Queue<CompletionInfo> myCompletionInfos = new LinkedList<CompletionInfo>();
+  // notifications of the latest completion request, notifications with other completion ids are dropped
+  @NotNull private final AtomicReference<CompletionResults> myCompletionResults = new AtomicReference<CompletionResults>();
+  @NotNull private final RequestLatencyHistogram myCompletionFirstItemLatency = new RequestLatencyHistogram();
+  @NotNull private final RequestLatencyHistogram myCompletionLastItemLatency = new RequestLatencyHistogram();
+  @NotNull private final DartCompletionCache myCompletionCache = new DartCompletionCache();
+  @NotNull private final DartSearchResultsCache mySearchResultsCache = new DartSearchResultsCache();
   @NotNull private final Queue<SearchResultsSet> mySearchResultSets = new LinkedList<SearchResultsSet>();
 
   @NotNull private final DartServerData myServerData = new DartServerData(myRootsHandler);
+  @NotNull private final DartServerDataCoalescer myServerDataCoalescer =
+    new DartServerDataCoalescer(myServerData, filePath -> myVisibleFiles.contains(FileUtil.toSystemDependentName(filePath)));
 
   @NotNull private final AtomicBoolean myServerBusy = new AtomicBoolean(false);
   @NotNull private final Alarm myShowServerProgressAlarm = new Alarm();
 
+  // start time of the running server, reset to 0 when it sends the first analysis.errors notification
+  @NotNull private final AtomicLong myServerStartTime = new AtomicLong();
+  @NotNull private final RequestLatencyHistogram myStartupToFirstErrorsLatency = new RequestLatencyHistogram();
+  @NotNull private final RequestLatencyHistogram myStandbyStartupToFirstErrorsLatency = new RequestLatencyHistogram();
+  @Nullable private WarmStandby myWarmStandby;
+  @NotNull private ServerFactory myServerFactory = DartAnalysisServerService::createRemoteServer;
+  @NotNull private final Alarm myReplacedServersAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, ApplicationManager.getApplication());
+
   @NotNull private final Set<String> myFilePathsWithErrors = new THashSet<String>();
   // how many files with errors are in this folder (recursively)
   @NotNull private final TObjectIntHashMap<String> myFolderPathsWithErrors = new TObjectIntHashMap<String>();
@@ -134,36 +160,43 @@ public class DartAnalysisServerService {
 
     @Override
     public void computedErrors(@NotNull final String filePathSD, @NotNull final List<AnalysisError> errors) {
+      final long startTime = myServerStartTime.getAndSet(0);
+      if (startTime > 0) {
+        recordStartupToFirstErrors(myStartupToFirstErrorsLatency, startTime, "");
+      }
+
       final boolean visible = myVisibleFiles.contains(filePathSD);
       final String filePathSI = FileUtil.toSystemIndependentName(filePathSD);
-      myServerData.computedErrors(filePathSI, errors, visible);
+      myServerDataCoalescer.computedErrors(filePathSI, errors, visible);
       onErrorsUpdated(filePathSI, errors);
     }
 
     @Override
     public void computedHighlights(@NotNull final String filePath, @NotNull final List<HighlightRegion> regions) {
-      myServerData.computedHighlights(FileUtil.toSystemIndependentName(filePath), regions);
+      myServerDataCoalescer.computedHighlights(FileUtil.toSystemIndependentName(filePath), regions);
     }
 
     @Override
     public void computedImplemented(String _filePath,
                                     List<ImplementedClass> implementedClasses,
                                     List<ImplementedMember> implementedMembers) {
-      myServerData.computedImplemented(FileUtil.toSystemIndependentName(_filePath), implementedClasses, implementedMembers);
+      myServerDataCoalescer.computedImplemented(FileUtil.toSystemIndependentName(_filePath), implementedClasses, implementedMembers);
     }
 
     @Override
     public void computedNavigation(@NotNull final String _filePath, @NotNull final List<NavigationRegion> regions) {
-      myServerData.computedNavigation(FileUtil.toSystemIndependentName(_filePath), regions);
+      myServerDataCoalescer.computedNavigation(FileUtil.toSystemIndependentName(_filePath), regions);
     }
 
     @Override
     public void computedOverrides(@NotNull final String _filePath, @NotNull final List<OverrideMember> overrides) {
-      myServerData.computedOverrides(FileUtil.toSystemIndependentName(_filePath), overrides);
+      myServerDataCoalescer.computedOverrides(FileUtil.toSystemIndependentName(_filePath), overrides);
     }
 
     @Override
     public void flushedResults(List<String> filePaths) {
+      mySearchResultsCache.flushedResults(filePaths);
+      myServerDataCoalescer.onFlushedResults(filePaths);
       myServerData.onFlushedResults(filePaths);
 
       for (String filePath : filePaths) {
@@ -171,26 +204,6 @@ public class DartAnalysisServerService {
       }
     }
 
-    @Override
-    public void computedCompletion(@NotNull final String completionId,
-                                   final int replacementOffset,
-                                   final int replacementLength,
-                                   @NotNull final List<CompletionSuggestion> completions,
-                                   final boolean isLast) {
-      synchronized (myCompletionInfos) {
-        myCompletionInfos.add(new CompletionInfo(completionId, replacementOffset, replacementLength, completions, isLast));
-        myCompletionInfos.notifyAll();
-      }
-    }
-
-    @Override
-    public void computedSearchResults(String searchId, List<SearchResult> results, boolean last) {
-      synchronized (mySearchResultSets) {
-        mySearchResultSets.add(new SearchResultsSet(searchId, results, last));
-        mySearchResultSets.notifyAll();
-      }
-    }
-
     @Override
     public void serverConnected(@Nullable String version) {
       myServerVersion = version != null ? version : "";
@@ -259,6 +272,8 @@ public class DartAnalysisServerService {
 
       final VirtualFile file = FileDocumentManager.getInstance().getFile(e.getDocument());
       if (isLocalAnalyzableFile(file)) {
+        mySearchResultsCache.documentChanged(file.getPath(), e, true);
+
         for (Project project : myRootsHandler.getTrackedProjects()) {
           for (VirtualFile fileInEditor : FileEditorManager.getInstance(project).getSelectedFiles()) {
             if (fileInEditor.equals(file)) {
@@ -271,6 +286,20 @@ public class DartAnalysisServerService {
         }
       }
     }
+
+    @Override
+    public void documentChanged(DocumentEvent e) {
+      final VirtualFile file = FileDocumentManager.getInstance().getFile(e.getDocument());
+      myCompletionCache.documentChanged(file == null ? null : file.getPath(), e);
+
+      if (isLocalAnalyzableFile(file)) {
+        mySearchResultsCache.documentChanged(file.getPath(), e, false);
+
+        synchronized (myLock) {
+          myContentOverlayTracker.documentChanged(file.getPath(), myFilePathWithOverlaidContentToTimestamp.get(file.getPath()), e);
+        }
+      }
+    }
   };
 
   void addDocumentListener() {
@@ -287,30 +316,103 @@ public class DartAnalysisServerService {
     return StringUtil.compareVersionNumbers(sdk.getVersion(), MIN_SDK_VERSION) >= 0;
   }
 
+  /**
+   * Passes suggestions to the consumer as soon as they arrive in completion.results notifications, without waiting for the last one.
+   * Each notification contains all suggestions found so far, so suggestions that have already been passed to the consumer are skipped.
+   * Returns after the last notification or when completion is cancelled.
+   */
   public void addCompletions(@NotNull final String completionId, @NotNull final Consumer<CompletionSuggestion> consumer) {
-    while (true) {
-      ProgressManager.checkCanceled();
+    final CompletionResults results = myCompletionResults.get();
+    if (results == null || !results.myCompletionId.equals(completionId)) return;
 
-      synchronized (myCompletionInfos) {
-        CompletionInfo completionInfo;
-        while ((completionInfo = myCompletionInfos.poll()) != null) {
-          if (!completionInfo.myCompletionId.equals(completionId)) continue;
-          if (!completionInfo.isLast) continue;
+    final Set<String> consumedSuggestions = new THashSet<String>();
+    final List<CompletionSuggestion> allSuggestions = new ArrayList<CompletionSuggestion>();
+    try {
+      while (true) {
+        ProgressManager.checkCanceled();
 
-          for (final CompletionSuggestion completion : completionInfo.myCompletions) {
-            consumer.consume(completion);
-          }
+        final CompletionInfo completionInfo;
+        try {
+          completionInfo = results.myInfos.poll(CHECK_CANCELLED_PERIOD, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
           return;
         }
+        if (completionInfo == null) continue;
 
-        try {
-          myCompletionInfos.wait(CHECK_CANCELLED_PERIOD);
+        for (final CompletionSuggestion completion : completionInfo.myCompletions) {
+          if (consumedSuggestions.add(getSuggestionKey(completion))) {
+            if (consumedSuggestions.size() == 1) {
+              myCompletionFirstItemLatency.record(System.currentTimeMillis() - results.myStartTime);
+            }
+            allSuggestions.add(completion);
+            consumer.consume(completion);
+          }
         }
-        catch (InterruptedException e) {
+
+        if (completionInfo.isLast) {
+          myCompletionLastItemLatency.record(System.currentTimeMillis() - results.myStartTime);
+          if (results.myIdentifierStart >= 0) {
+            myCompletionCache.put(results.myFilePath, results.myIdentifierStart, results.myOffset, results.myDocumentStamp, allSuggestions);
+          }
           return;
         }
       }
     }
+    finally {
+      myCompletionResults.compareAndSet(results, null);
+    }
+  }
+
+  /**
+   * Returns suggestions of the previous completion request sorted by relevance if it was invoked at the same identifier start and the
+   * document has only been changed by typing this identifier since then. The caller is expected to filter them by the current prefix.
+   *
+   * @return {@code null} if completion.getSuggestions request is needed
+   */
+  @Nullable
+  public List<CompletionSuggestion> getCachedCompletions(@NotNull final String filePath, final int identifierStart, final long documentStamp) {
+    return myCompletionCache.get(filePath, identifierStart, documentStamp);
+  }
+
+  @NotNull
+  private static String getSuggestionKey(@NotNull final CompletionSuggestion suggestion) {
+    final Element element = suggestion.getElement();
+    final Location location = element == null ? null : element.getLocation();
+    return suggestion.getKind() + ":" + suggestion.getCompletion() + ":" + suggestion.getDeclaringType() + ":" +
+           (element == null ? "" : element.getKind()) + ":" + (location == null ? "" : location.getFile() + ":" + location.getOffset());
+  }
+
+  /**
+   * Returns times from sending a completion.getSuggestions request to passing the first and the last suggestion to the completion list,
+   * keyed by "completion.firstItem" and "completion.lastItem".
+   */
+  @NotNull
+  public Map<String, RequestLatencyHistogram> getCompletionLatencies() {
+    final Map<String, RequestLatencyHistogram> result = new TreeMap<String, RequestLatencyHistogram>();
+    result.put("completion.firstItem", myCompletionFirstItemLatency.copy());
+    result.put("completion.lastItem", myCompletionLastItemLatency.copy());
+    return result;
+  }
+
+  /**
+   * Returns times from starting the analysis server process to receiving the first analysis.errors notification from it, keyed by
+   * "server.startupToFirstErrors" for servers started on demand and "server.standbyStartupToFirstErrors" for warm standby servers.
+   */
+  @NotNull
+  public Map<String, RequestLatencyHistogram> getServerStartupLatencies() {
+    final Map<String, RequestLatencyHistogram> result = new TreeMap<String, RequestLatencyHistogram>();
+    result.put("server.startupToFirstErrors", myStartupToFirstErrorsLatency.copy());
+    result.put("server.standbyStartupToFirstErrors", myStandbyStartupToFirstErrorsLatency.copy());
+    return result;
+  }
+
+  private static void recordStartupToFirstErrors(@NotNull final RequestLatencyHistogram histogram,
+                                                 final long startTime,
+                                                 @NotNull final String serverKind) {
+    final long millis = System.currentTimeMillis() - startTime;
+    histogram.record(millis);
+    LOG.info("First analysis.errors notification received from " + serverKind + "Dart analysis server " + millis + " ms after start");
   }
 
   public static class FormatResult {
@@ -464,6 +566,60 @@ public class DartAnalysisServerService {
     return myServerData.getErrors(file);
   }
 
+  /**
+   * Returns round-trip times of the requests sent to the running analysis server, keyed by request method like "analysis.getHover".
+   */
+  @NotNull
+  public Map<String, RequestLatencyHistogram> getRequestLatencies() {
+    final AnalysisServer server = myServer;
+    return server instanceof RemoteAnalysisServerImpl ? ((RemoteAnalysisServerImpl)server).getRequestLatencies()
+                                                      : Collections.<String, RequestLatencyHistogram>emptyMap();
+  }
+
+  /**
+   * Returns sizes and IDE-side processing times of the responses read from the running analysis server, keyed by request method.
+   * Together with {@link #getRequestLatencies()} it shows whether a slow request is slow in the server or in the IDE.
+   */
+  @NotNull
+  public Map<String, MessageStatistics> getResponseStatistics() {
+    final AnalysisServer server = myServer;
+    return server instanceof RemoteAnalysisServerImpl ? ((RemoteAnalysisServerImpl)server).getResponseStatistics()
+                                                      : Collections.<String, MessageStatistics>emptyMap();
+  }
+
+  /**
+   * Returns sizes and IDE-side processing times of the notifications read from the running analysis server, keyed by event like
+   * "analysis.highlights".
+   */
+  @NotNull
+  public Map<String, MessageStatistics> getNotificationStatistics() {
+    final AnalysisServer server = myServer;
+    return server instanceof RemoteAnalysisServerImpl ? ((RemoteAnalysisServerImpl)server).getNotificationStatistics()
+                                                      : Collections.<String, MessageStatistics>emptyMap();
+  }
+
+  /**
+   * Returns the number of requests waiting for responses from the running analysis server, and the largest such number since it started.
+   */
+  @NotNull
+  public Pair<Integer, Integer> getInFlightRequestCounts() {
+    final AnalysisServer server = myServer;
+    return server instanceof RemoteAnalysisServerImpl
+           ? Pair.create(((RemoteAnalysisServerImpl)server).getInFlightRequestCount(),
+                         ((RemoteAnalysisServerImpl)server).getMaxInFlightRequestCount())
+           : Pair.create(0, 0);
+  }
+
+  @NotNull
+  String getServerVersion() {
+    return myServerVersion;
+  }
+
+  @NotNull
+  String getSdkVersion() {
+    return mySdkVersion;
+  }
+
   @NotNull
   public List<DartServerData.DartHighlightRegion> getHighlight(@NotNull final VirtualFile file) {
     return myServerData.getHighlight(file);
@@ -474,6 +630,30 @@ public class DartAnalysisServerService {
     return myServerData.getNavigation(file);
   }
 
+  public boolean hasHighlight(@NotNull final VirtualFile file) {
+    return myServerData.hasHighlight(file);
+  }
+
+  public boolean hasNavigation(@NotNull final VirtualFile file) {
+    return myServerData.hasNavigation(file);
+  }
+
+  /**
+   * Returns the navigation region with exactly the given offset and length, or {@code null}.
+   */
+  @Nullable
+  public DartServerData.DartNavigationRegion findNavigationRegion(@NotNull final VirtualFile file, final int offset, final int length) {
+    return myServerData.findNavigationRegion(file, offset, length);
+  }
+
+  /**
+   * Returns the first navigation region that contains the given offset (boundaries included), or {@code null}.
+   */
+  @Nullable
+  public DartServerData.DartNavigationRegion findNavigationRegionContaining(@NotNull final VirtualFile file, final int offset) {
+    return myServerData.findNavigationRegionContaining(file, offset);
+  }
+
   @NotNull
   public List<DartServerData.DartOverrideMember> getOverrideMembers(@NotNull final VirtualFile file) {
     return myServerData.getOverrideMembers(file);
@@ -541,8 +721,6 @@ public class DartAnalysisServerService {
   }
 
   private void doUpdateFilesContent() {
-    // may be use DocumentListener to collect deltas instead of sending the whole Document.getText() each time?
-
     AnalysisServer server = myServer;
     if (server == null) {
       return;
@@ -568,7 +746,8 @@ public class DartAnalysisServerService {
 
           final Long oldTimestamp = myFilePathWithOverlaidContentToTimestamp.get(file.getPath());
           if (oldTimestamp == null || document.getModificationStamp() != oldTimestamp) {
-            filesToUpdate.put(FileUtil.toSystemDependentName(file.getPath()), new AddContentOverlay(document.getText()));
+            filesToUpdate.put(FileUtil.toSystemDependentName(file.getPath()),
+                              myContentOverlayTracker.createOverlay(file.getPath(), oldTimestamp, document));
             myFilePathWithOverlaidContentToTimestamp.put(file.getPath(), document.getModificationStamp());
           }
         }
@@ -578,6 +757,7 @@ public class DartAnalysisServerService {
       for (String oldPath : oldTrackedFiles) {
         final Long removed = myFilePathWithOverlaidContentToTimestamp.remove(oldPath);
         LOG.assertTrue(removed != null, oldPath);
+        myContentOverlayTracker.remove(oldPath);
         filesToUpdate.put(FileUtil.toSystemDependentName(oldPath), new RemoveContentOverlay());
       }
 
@@ -602,6 +782,16 @@ public class DartAnalysisServerService {
         public void onResponse() {
           myServerData.onFilesContentUpdated();
         }
+
+        @Override
+        public void onError(RequestError error) {
+          myServerData.onFilesContentUpdated();
+
+          if (!RequestErrorCode.INVALID_OVERLAY_CHANGE.equals(error.getCode())) {
+            LOG.info(getShortErrorMessage("analysis_updateContent()", null, error));
+          }
+          resyncOverlaidContent(filesToUpdate.keySet());
+        }
       });
     }
   }
@@ -694,6 +884,26 @@ public class DartAnalysisServerService {
     }
   }
 
+  /**
+   * Server content of all the files of a failed update is unknown, whatever overlays were sent for them, so the next
+   * {@link #updateFilesContent()}, which happens when highlighting is restarted, sends the whole text for the files that still have
+   * overlaid content and {@link RemoveContentOverlay} for the rest.
+   */
+  private void resyncOverlaidContent(@NotNull final Collection<String> filePaths) {
+    synchronized (myLock) {
+      final List<String> independentPaths = new ArrayList<String>(filePaths.size());
+      for (String filePath : filePaths) {
+        independentPaths.add(FileUtil.toSystemIndependentName(filePath));
+      }
+      myContentOverlayTracker.resyncRequested(myFilePathWithOverlaidContentToTimestamp, independentPaths);
+      for (String filePath : independentPaths) {
+        myServerData.forceFileAnnotation(filePath, false);
+      }
+    }
+
+    myServerData.restartHighlighting();
+  }
+
   @NotNull
   public List<HoverInformation> analysis_getHover(@NotNull final String _filePath, final int offset) {
     final String filePath = FileUtil.toSystemDependentName(_filePath);
@@ -705,7 +915,7 @@ public class DartAnalysisServerService {
     }
 
     final CountDownLatch latch = new CountDownLatch(1);
-    server.analysis_getHover(filePath, offset, new GetHoverConsumer() {
+    final GetHoverConsumer consumer = new GetHoverConsumer() {
       @Override
       public void computedHovers(HoverInformation[] hovers) {
         Collections.addAll(result, hovers);
@@ -717,9 +927,10 @@ public class DartAnalysisServerService {
         logError("analysis_getHover()", filePath, error);
         latch.countDown();
       }
-    });
+    };
 
-    awaitForLatchCheckingCanceled(server, latch, GET_HOVER_TIMEOUT);
+    server.analysis_getHover(filePath, offset, consumer);
+    awaitForLatchCheckingCanceled(server, latch, GET_HOVER_TIMEOUT, consumer);
     return result;
   }
 
@@ -738,7 +949,7 @@ public class DartAnalysisServerService {
     final CountDownLatch latch = new CountDownLatch(1);
     LOG.debug("analysis_getNavigation(" + filePath + ")");
 
-    server.analysis_getNavigation(filePath, offset, length, new GetNavigationConsumer() {
+    final GetNavigationConsumer consumer = new GetNavigationConsumer() {
       @Override
       public void computedNavigation(final List<NavigationRegion> regions) {
         final List<DartServerData.DartNavigationRegion> dartRegions = new ArrayList<DartServerData.DartNavigationRegion>(regions.size());
@@ -763,9 +974,10 @@ public class DartAnalysisServerService {
 
         latch.countDown();
       }
-    });
+    };
 
-    awaitForLatchCheckingCanceled(server, latch, GET_NAVIGATION_TIMEOUT);
+    server.analysis_getNavigation(filePath, offset, length, consumer);
+    awaitForLatchCheckingCanceled(server, latch, GET_NAVIGATION_TIMEOUT, consumer);
 
     if (latch.getCount() > 0) {
       LOG.info("analysis_getNavigation() took more than " + GET_NAVIGATION_TIMEOUT + "ms for file " + filePath);
@@ -785,7 +997,7 @@ public class DartAnalysisServerService {
     }
 
     final CountDownLatch latch = new CountDownLatch(1);
-    server.edit_getAssists(filePath, offset, length, new GetAssistsConsumer() {
+    final GetAssistsConsumer consumer = new GetAssistsConsumer() {
       @Override
       public void computedSourceChanges(List<SourceChange> sourceChanges) {
         results.addAll(sourceChanges);
@@ -797,9 +1009,10 @@ public class DartAnalysisServerService {
         logError("edit_getAssists()", filePath, error);
         latch.countDown();
       }
-    });
+    };
 
-    awaitForLatchCheckingCanceled(server, latch, GET_ASSISTS_TIMEOUT);
+    server.edit_getAssists(filePath, offset, length, consumer);
+    awaitForLatchCheckingCanceled(server, latch, GET_ASSISTS_TIMEOUT, consumer);
     return results;
   }
 
@@ -812,7 +1025,7 @@ public class DartAnalysisServerService {
     if (server == null) return null;
 
     final CountDownLatch latch = new CountDownLatch(1);
-    server.edit_getFixes(filePath, offset, new GetFixesConsumer() {
+    final GetFixesConsumer consumer = new GetFixesConsumer() {
       @Override
       public void computedFixes(final List<AnalysisErrorFixes> fixes) {
         resultRef.set(fixes);
@@ -824,9 +1037,10 @@ public class DartAnalysisServerService {
         logError("edit_getFixes()", filePath, error);
         latch.countDown();
       }
-    });
+    };
 
-    awaitForLatchCheckingCanceled(server, latch, GET_FIXES_TIMEOUT);
+    server.edit_getFixes(filePath, offset, consumer);
+    awaitForLatchCheckingCanceled(server, latch, GET_FIXES_TIMEOUT, consumer);
     return resultRef.get();
   }
 
@@ -834,16 +1048,28 @@ public class DartAnalysisServerService {
                                            final int offset,
                                            @NotNull final Consumer<SearchResult> consumer) {
     final String filePath = FileUtil.toSystemDependentName(_filePath);
+    final String filePathSI = FileUtil.toSystemIndependentName(_filePath);
     final Ref<String> searchIdRef = new Ref<String>();
+    final Ref<String> elementNameRef = new Ref<String>();
+
+    final List<SearchResult> cachedResults = mySearchResultsCache.getElementReferences(filePathSI, offset);
+    if (cachedResults != null) {
+      for (SearchResult searchResult : cachedResults) {
+        consumer.consume(searchResult);
+      }
+      return;
+    }
 
     final AnalysisServer server = myServer;
     if (server == null) return;
 
+    final long cacheModificationCount = mySearchResultsCache.getModificationCount();
     final CountDownLatch latch = new CountDownLatch(1);
-    server.search_findElementReferences(filePath, offset, true, new FindElementReferencesConsumer() {
+    final FindElementReferencesConsumer referencesConsumer = new FindElementReferencesConsumer() {
       @Override
       public void computedElementReferences(String searchId, Element element) {
         searchIdRef.set(searchId);
+        elementNameRef.set(element == null ? null : element.getName());
         latch.countDown();
       }
 
@@ -852,9 +1078,10 @@ public class DartAnalysisServerService {
         LOG.info(getShortErrorMessage("search_findElementReferences()", filePath, error));
         latch.countDown();
       }
-    });
+    };
+    server.search_findElementReferences(filePath, offset, true, referencesConsumer);
 
-    awaitForLatchCheckingCanceled(server, latch, FIND_ELEMENT_REFERENCES_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, FIND_ELEMENT_REFERENCES_TIMEOUT, referencesConsumer, false);
 
     if (latch.getCount() > 0) {
       LOG.info("search_findElementReferences() took too long for " + filePath + "@" + offset);
@@ -866,17 +1093,25 @@ public class DartAnalysisServerService {
       return;
     }
 
+    final List<SearchResult> allResults = new ArrayList<SearchResult>();
     while (true) {
       ProgressManager.checkCanceled();
       synchronized (mySearchResultSets) {
         SearchResultsSet resultSet;
         // process already received results
         while ((resultSet = mySearchResultSets.poll()) != null) {
-          if (!resultSet.id.equals(searchId)) continue;
+          if (resultSet.server != server || !resultSet.id.equals(searchId)) continue;
           for (final SearchResult searchResult : resultSet.results) {
             consumer.consume(searchResult);
           }
-          if (resultSet.isLast) return;
+          allResults.addAll(resultSet.results);
+          if (resultSet.isLast) {
+            final String elementName = elementNameRef.get();
+            if (elementName != null) {
+              mySearchResultsCache.putElementReferences(filePathSI, offset, elementName, allResults, cacheModificationCount);
+            }
+            return;
+          }
         }
         // wait for more results
         try {
@@ -894,16 +1129,24 @@ public class DartAnalysisServerService {
     final String filePath = FileUtil.toSystemDependentName(file.getPath());
     final List<TypeHierarchyItem> results = Lists.newArrayList();
 
+    final List<TypeHierarchyItem> cachedItems = mySearchResultsCache.getTypeHierarchy(file.getPath(), offset, superOnly);
+    if (cachedItems != null) {
+      results.addAll(cachedItems);
+      return results;
+    }
+
     final AnalysisServer server = myServer;
     if (server == null) {
       return results;
     }
 
+    final long cacheModificationCount = mySearchResultsCache.getModificationCount();
     final CountDownLatch latch = new CountDownLatch(1);
-    server.search_getTypeHierarchy(filePath, offset, superOnly, new GetTypeHierarchyConsumer() {
+    final GetTypeHierarchyConsumer consumer = new GetTypeHierarchyConsumer() {
       @Override
       public void computedHierarchy(List<TypeHierarchyItem> hierarchyItems) {
         results.addAll(hierarchyItems);
+        mySearchResultsCache.putTypeHierarchy(file.getPath(), offset, superOnly, hierarchyItems, cacheModificationCount);
         latch.countDown();
       }
 
@@ -912,14 +1155,28 @@ public class DartAnalysisServerService {
         logError("search_getTypeHierarchy()", filePath, error);
         latch.countDown();
       }
-    });
+    };
+    server.search_getTypeHierarchy(filePath, offset, superOnly, consumer);
 
-    awaitForLatchCheckingCanceled(server, latch, GET_TYPE_HIERARCHY_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, GET_TYPE_HIERARCHY_TIMEOUT, consumer, false);
     return results;
   }
 
   @Nullable
   public String completion_getSuggestions(@NotNull final String _filePath, final int offset) {
+    return completion_getSuggestions(_filePath, offset, -1, -1);
+  }
+
+  /**
+   * @param identifierStart start offset of the completed identifier, suggestions are cached for it unless it is -1
+   * @param documentStamp   modification stamp of the document at the moment completion was invoked
+   * @see #getCachedCompletions(String, int, long)
+   */
+  @Nullable
+  public String completion_getSuggestions(@NotNull final String _filePath,
+                                          final int offset,
+                                          final int identifierStart,
+                                          final long documentStamp) {
     final String filePath = FileUtil.toSystemDependentName(_filePath);
     final Ref<String> resultRef = new Ref<String>();
 
@@ -928,10 +1185,13 @@ public class DartAnalysisServerService {
       return null;
     }
 
+    final long startTime = System.currentTimeMillis();
     final CountDownLatch latch = new CountDownLatch(1);
-    server.completion_getSuggestions(filePath, offset, new GetSuggestionsConsumer() {
+    final GetSuggestionsConsumer consumer = new GetSuggestionsConsumer() {
       @Override
       public void computedCompletionId(@NotNull final String completionId) {
+        // the response is handled before the completion.results notifications that follow it, so none of them is missed
+        myCompletionResults.set(new CompletionResults(server, completionId, startTime, _filePath, offset, identifierStart, documentStamp));
         resultRef.set(completionId);
         latch.countDown();
       }
@@ -941,9 +1201,10 @@ public class DartAnalysisServerService {
         // Not a problem. Happens if a file is outside of the project, or server is just not ready yet.
         latch.countDown();
       }
-    });
+    };
 
-    awaitForLatchCheckingCanceled(server, latch, GET_SUGGESTIONS_TIMEOUT);
+    server.completion_getSuggestions(filePath, offset, consumer);
+    awaitForLatchCheckingCanceled(server, latch, GET_SUGGESTIONS_TIMEOUT, consumer);
     return resultRef.get();
   }
 
@@ -959,7 +1220,7 @@ public class DartAnalysisServerService {
     if (server == null) return null;
 
     final CountDownLatch latch = new CountDownLatch(1);
-    server.edit_format(filePath, selectionOffset, selectionLength, lineLength, new FormatConsumer() {
+    final FormatConsumer consumer = new FormatConsumer() {
       @Override
       public void computedFormat(final List<SourceEdit> edits, final int selectionOffset, final int selectionLength) {
         resultRef.set(new FormatResult(edits, selectionOffset, selectionLength));
@@ -977,9 +1238,10 @@ public class DartAnalysisServerService {
 
         latch.countDown();
       }
-    });
+    };
 
-    awaitForLatchCheckingCanceled(server, latch, EDIT_FORMAT_TIMEOUT);
+    server.edit_format(filePath, selectionOffset, selectionLength, lineLength, consumer);
+    awaitForLatchCheckingCanceled(server, latch, EDIT_FORMAT_TIMEOUT, consumer);
 
     if (latch.getCount() > 0) {
       LOG.info("edit_format() took too long for file " + filePath);
@@ -1014,7 +1276,7 @@ public class DartAnalysisServerService {
 
     final CountDownLatch latch = new CountDownLatch(1);
 
-    server.edit_organizeDirectives(filePath, new OrganizeDirectivesConsumer() {
+    final OrganizeDirectivesConsumer consumer = new OrganizeDirectivesConsumer() {
       @Override
       public void computedEdit(final SourceFileEdit edit) {
         resultRef.set(edit);
@@ -1033,9 +1295,10 @@ public class DartAnalysisServerService {
 
         latch.countDown();
       }
-    });
+    };
+    server.edit_organizeDirectives(filePath, consumer);
 
-    awaitForLatchCheckingCanceled(server, latch, EDIT_ORGANIZE_DIRECTIVES_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, EDIT_ORGANIZE_DIRECTIVES_TIMEOUT, consumer, false);
 
     if (latch.getCount() > 0) {
       LOG.info("edit_organizeDirectives() took too long for file " + filePath);
@@ -1053,7 +1316,7 @@ public class DartAnalysisServerService {
     if (server == null) return null;
 
     final CountDownLatch latch = new CountDownLatch(1);
-    server.edit_sortMembers(filePath, new SortMembersConsumer() {
+    final SortMembersConsumer consumer = new SortMembersConsumer() {
       @Override
       public void computedEdit(final SourceFileEdit edit) {
         resultRef.set(edit);
@@ -1072,9 +1335,10 @@ public class DartAnalysisServerService {
 
         latch.countDown();
       }
-    });
+    };
+    server.edit_sortMembers(filePath, consumer);
 
-    awaitForLatchCheckingCanceled(server, latch, EDIT_SORT_MEMBERS_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, EDIT_SORT_MEMBERS_TIMEOUT, consumer, false);
 
     if (latch.getCount() > 0) {
       LOG.info("edit_sortMembers() took too long for file " + filePath);
@@ -1136,7 +1400,7 @@ public class DartAnalysisServerService {
     if (server == null) return null;
 
     final CountDownLatch latch = new CountDownLatch(1);
-    server.execution_createContext(filePath, new CreateContextConsumer() {
+    final CreateContextConsumer consumer = new CreateContextConsumer() {
       @Override
       public void computedExecutionContext(final String contextId) {
         resultRef.set(contextId);
@@ -1148,9 +1412,10 @@ public class DartAnalysisServerService {
         logError("execution_createContext()", filePath, error);
         latch.countDown();
       }
-    });
+    };
+    server.execution_createContext(filePath, consumer);
 
-    awaitForLatchCheckingCanceled(server, latch, EXECUTION_CREATE_CONTEXT_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, EXECUTION_CREATE_CONTEXT_TIMEOUT, consumer, false);
 
     if (latch.getCount() > 0) {
       LOG.info("execution_createContext() took too long for file " + filePath);
@@ -1183,7 +1448,7 @@ public class DartAnalysisServerService {
     if (server == null) return null;
 
     final CountDownLatch latch = new CountDownLatch(1);
-    server.execution_mapUri(_id, filePath, _uri, new MapUriConsumer() {
+    final MapUriConsumer consumer = new MapUriConsumer() {
       @Override
       public void computedFileOrUri(final String file, final String uri) {
         if (uri != null) {
@@ -1201,9 +1466,10 @@ public class DartAnalysisServerService {
           "execution_mapUri(" + _id + ", " + filePath + ", " + _uri + ") returned error " + error.getCode() + ": " + error.getMessage());
         latch.countDown();
       }
-    });
+    };
+    server.execution_mapUri(_id, filePath, _uri, consumer);
 
-    awaitForLatchCheckingCanceled(server, latch, EXECUTION_MAP_URI_TIMEOUT);
+    awaitForLatchCheckingCanceled(server, latch, EXECUTION_MAP_URI_TIMEOUT, consumer, false);
 
     if (latch.getCount() > 0) {
       LOG.info("execution_mapUri() took too long for contextID " + _id + " and file or uri " + (filePath != null ? filePath : _uri));
@@ -1217,47 +1483,80 @@ public class DartAnalysisServerService {
     return resultRef.get();
   }
 
-  private void startServer(@NotNull final DartSdk sdk) {
-    synchronized (myLock) {
-      mySdkHome = sdk.getHomePath();
+  @NotNull
+  private static StdioServerSocket createServerSocket(@NotNull final String sdkHome) {
+    final String runtimePath = FileUtil.toSystemDependentName(sdkHome + "/bin/dart");
 
-      final String runtimePath = FileUtil.toSystemDependentName(mySdkHome + "/bin/dart");
+    String analysisServerPath = FileUtil.toSystemDependentName(sdkHome + "/bin/snapshots/analysis_server.dart.snapshot");
+    analysisServerPath = System.getProperty("dart.server.path", analysisServerPath);
 
-      String analysisServerPath = FileUtil.toSystemDependentName(mySdkHome + "/bin/snapshots/analysis_server.dart.snapshot");
-      analysisServerPath = System.getProperty("dart.server.path", analysisServerPath);
+    final DebugPrintStream debugStream = new DebugPrintStream() {
+      @Override
+      public void println(String str) {
+        //System.out.println("debugStream: " + str);
+      }
+    };
 
-      final DebugPrintStream debugStream = new DebugPrintStream() {
-        @Override
-        public void println(String str) {
-          //System.out.println("debugStream: " + str);
-        }
-      };
+    String vmArgsRaw;
+    try {
+      vmArgsRaw = Registry.stringValue("dart.server.vm.options");
+    }
+    catch (MissingResourceException e) {
+      vmArgsRaw = "";
+    }
 
-      String vmArgsRaw;
-      try {
-        vmArgsRaw = Registry.stringValue("dart.server.vm.options");
-      }
-      catch (MissingResourceException e) {
-        vmArgsRaw = "";
-      }
+    String serverArgsRaw = "";
+    serverArgsRaw += " --useAnalysisHighlight2";
+    serverArgsRaw += " --file-read-mode=normalize-eol-always";
+    try {
+      serverArgsRaw += " " + Registry.stringValue("dart.server.additional.arguments");
+    }
+    catch (MissingResourceException e) {
+      // NOP
+    }
 
-      String serverArgsRaw = "";
-      serverArgsRaw += " --useAnalysisHighlight2";
-      serverArgsRaw += " --file-read-mode=normalize-eol-always";
-      try {
-        serverArgsRaw += " " + Registry.stringValue("dart.server.additional.arguments");
-      }
-      catch (MissingResourceException e) {
-        // NOP
-      }
+    final StdioServerSocket serverSocket =
+      new StdioServerSocket(runtimePath, StringUtil.split(vmArgsRaw, " "), analysisServerPath, StringUtil.split(serverArgsRaw, " "),
+                            debugStream);
+    serverSocket.setClientId(ApplicationNamesInfo.getInstance().getFullProductName().replace(' ', '_'));
+    serverSocket.setClientVersion(ApplicationInfo.getInstance().getApiVersion());
+    return serverSocket;
+  }
+
+  /**
+   * Creates a server that is not started yet, and its socket if it has one.
+   */
+  @VisibleForTesting
+  interface ServerFactory {
+    @NotNull
+    Pair<AnalysisServer, StdioServerSocket> createServer(@NotNull String sdkHome);
+  }
+
+  @NotNull
+  private static Pair<AnalysisServer, StdioServerSocket> createRemoteServer(@NotNull final String sdkHome) {
+    final StdioServerSocket serverSocket = createServerSocket(sdkHome);
+    final RemoteAnalysisServerImpl server = new RemoteAnalysisServerImpl(serverSocket);
+    server.setStreamingNotifications(Registry.is("dart.server.streaming.notifications", true));
+    return Pair.create(server, serverSocket);
+  }
+
+  /**
+   * @param serverFactory <code>null</code> to create real servers again
+   */
+  @VisibleForTesting
+  void setServerFactory(@Nullable final ServerFactory serverFactory) {
+    myServerFactory = serverFactory != null ? serverFactory : DartAnalysisServerService::createRemoteServer;
+  }
 
-      myServerSocket =
-        new StdioServerSocket(runtimePath, StringUtil.split(vmArgsRaw, " "), analysisServerPath, StringUtil.split(serverArgsRaw, " "),
-                              debugStream);
-      myServerSocket.setClientId(ApplicationNamesInfo.getInstance().getFullProductName().replace(' ', '_'));
-      myServerSocket.setClientVersion(ApplicationInfo.getInstance().getApiVersion());
+  @VisibleForTesting
+  void startServer(@NotNull final String sdkHome, @NotNull final String sdkVersion) {
+    synchronized (myLock) {
+      mySdkHome = sdkHome;
+      final Pair<AnalysisServer, StdioServerSocket> serverAndSocket = myServerFactory.createServer(sdkHome);
+      myServerSocket = serverAndSocket.second;
+      myServerStartTime.set(System.currentTimeMillis());
 
-      final AnalysisServer startedServer = new RemoteAnalysisServerImpl(myServerSocket);
+      final AnalysisServer startedServer = serverAndSocket.first;
 
       try {
         startedServer.start();
@@ -1266,6 +1565,7 @@ public class DartAnalysisServerService {
           startedServer.analysis_setGeneralSubscriptions(Collections.singletonList(GeneralAnalysisService.ANALYZED_FILES));
         }
         startedServer.addAnalysisServerListener(myAnalysisServerListener);
+        startedServer.addAnalysisServerListener(new RequestResultsListener(startedServer));
 
         startedServer.addStatusListener(new AnalysisServerStatusListener() {
           @Override
@@ -1280,7 +1580,7 @@ public class DartAnalysisServerService {
           }
         });
 
-        mySdkVersion = sdk.getVersion();
+        mySdkVersion = sdkVersion;
 
         startedServer.analysis_updateOptions(new AnalysisOptions(true, true, true, true, true, false, true, false));
 
@@ -1302,9 +1602,17 @@ public class DartAnalysisServerService {
 
     ApplicationManager.getApplication().assertReadAccessAllowed();
     synchronized (myLock) {
+      if (myServer != null && myServer.isSocketOpen() && (!sdk.getHomePath().equals(mySdkHome) || !sdk.getVersion().equals(mySdkVersion))) {
+        // the server for the old SDK keeps working until the one for the new SDK has analyzed the roots
+        if (isWarmStandbyEnabled() && startWarmStandby(sdk.getHomePath(), sdk.getVersion())) {
+          myRootsHandler.ensureProjectServed(project);
+          return true;
+        }
+      }
+
       if (myServer == null || !sdk.getHomePath().equals(mySdkHome) || !sdk.getVersion().equals(mySdkVersion) || !myServer.isSocketOpen()) {
         stopServer();
-        startServer(sdk);
+        startServer(sdk.getHomePath(), sdk.getVersion());
       }
 
       if (myServer != null) {
@@ -1319,6 +1627,20 @@ public class DartAnalysisServerService {
   public void restartServer() {
     final Set<Project> projects = new THashSet<Project>(myRootsHandler.getTrackedProjects());
 
+    if (!projects.isEmpty()) {
+      final DartSdk sdk = DartSdk.getDartSdk(projects.iterator().next());
+      synchronized (myLock) {
+        if (sdk != null && myServer != null && myServer.isSocketOpen() && isWarmStandbyEnabled() &&
+            startWarmStandby(sdk.getHomePath(), sdk.getVersion())) {
+          return;
+        }
+      }
+    }
+
+    restartServerFromScratch(projects);
+  }
+
+  private void restartServerFromScratch(@NotNull final Set<Project> projects) {
     stopServer();
 
     for (Project project : projects) {
@@ -1330,18 +1652,37 @@ public class DartAnalysisServerService {
     synchronized (myLock) {
       if (myServer != null) {
         LOG.debug("stopping server");
+        if (LOG.isDebugEnabled()) {
+          for (Map.Entry<String, RequestLatencyHistogram> entry : getRequestLatencies().entrySet()) {
+            LOG.debug(entry.getKey() + ": " + entry.getValue());
+          }
+          for (Map.Entry<String, RequestLatencyHistogram> entry : getCompletionLatencies().entrySet()) {
+            LOG.debug(entry.getKey() + ": " + entry.getValue());
+          }
+          for (Map.Entry<String, RequestLatencyHistogram> entry : getServerStartupLatencies().entrySet()) {
+            LOG.debug(entry.getKey() + ": " + entry.getValue());
+          }
+          for (Map.Entry<String, MessageStatistics> entry : getResponseStatistics().entrySet()) {
+            LOG.debug(entry.getKey() + " response: " + entry.getValue());
+          }
+          for (Map.Entry<String, MessageStatistics> entry : getNotificationStatistics().entrySet()) {
+            LOG.debug(entry.getKey() + ": " + entry.getValue());
+          }
+          LOG.debug("completion cache: hits=" + myCompletionCache.getHitCount() + ", misses=" + myCompletionCache.getMissCount());
+          LOG.debug("search results cache: hits=" + mySearchResultsCache.getHitCount() +
+                    ", misses=" + mySearchResultsCache.getMissCount());
+        }
+        myCompletionCache.clear();
+        mySearchResultsCache.clear();
         myServer.removeAnalysisServerListener(myAnalysisServerListener);
 
-        myServer.server_shutdown();
+        shutdownServer(myServer, myServerSocket);
+      }
 
-        long startTime = System.currentTimeMillis();
-        while (myServerSocket != null && myServerSocket.isOpen()) {
-          if (System.currentTimeMillis() - startTime > SEND_REQUEST_TIMEOUT) {
-            myServerSocket.stop();
-            break;
-          }
-          Uninterruptibles.sleepUninterruptibly(CHECK_CANCELLED_PERIOD, TimeUnit.MILLISECONDS);
-        }
+      if (myWarmStandby != null) {
+        final WarmStandby standby = myWarmStandby;
+        myWarmStandby = null;
+        ApplicationManager.getApplication().executeOnPooledThread(standby::shutdown);
       }
 
       stopShowingServerProgress();
@@ -1349,9 +1690,12 @@ public class DartAnalysisServerService {
       myServerSocket = null;
       myServer = null;
       mySdkHome = null;
+      myServerStartTime.set(0);
       myFilePathWithOverlaidContentToTimestamp.clear();
+      myContentOverlayTracker.clear();
       myVisibleFiles.clear();
       myChangedDocuments.clear();
+      myServerDataCoalescer.clear();
       myServerData.clearData();
 
       final List<Project> projects = new ArrayList<Project>(myRootsHandler.getTrackedProjects());
@@ -1361,6 +1705,160 @@ public class DartAnalysisServerService {
     }
   }
 
+  private static void shutdownServer(@NotNull final AnalysisServer server, @Nullable final StdioServerSocket serverSocket) {
+    server.server_shutdown();
+
+    long startTime = System.currentTimeMillis();
+    while (serverSocket != null && serverSocket.isOpen()) {
+      if (System.currentTimeMillis() - startTime > SEND_REQUEST_TIMEOUT) {
+        serverSocket.stop();
+        break;
+      }
+      Uninterruptibles.sleepUninterruptibly(CHECK_CANCELLED_PERIOD, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private static boolean isWarmStandbyEnabled() {
+    return Registry.is("dart.server.warm.standby", false) && !ApplicationManager.getApplication().isUnitTestMode();
+  }
+
+  /**
+   * Starts a warm standby server for the given SDK unless there is nothing to analyze.
+   *
+   * @return <code>true</code> if a standby server for this SDK is starting, so the running server should be kept as is for now
+   */
+  private boolean startWarmStandby(@NotNull final String sdkHome, @NotNull final String sdkVersion) {
+    return startWarmStandby(sdkHome, sdkVersion, myRootsHandler.getIncludedRoots(), myRootsHandler.getExcludedRoots(),
+                            myRootsHandler.getPackageRoots());
+  }
+
+  @VisibleForTesting
+  boolean startWarmStandby(@NotNull final String sdkHome,
+                           @NotNull final String sdkVersion,
+                           @NotNull final List<String> includedRoots,
+                           @NotNull final List<String> excludedRoots,
+                           @NotNull final Map<String, String> packageRoots) {
+    synchronized (myLock) {
+      if (myWarmStandby != null) {
+        if (myWarmStandby.mySdkHome.equals(sdkHome) && myWarmStandby.mySdkVersion.equals(sdkVersion)) return true;
+
+        final WarmStandby obsoleteStandby = myWarmStandby;
+        myWarmStandby = null;
+        ApplicationManager.getApplication().executeOnPooledThread(obsoleteStandby::shutdown);
+      }
+
+      if (includedRoots.isEmpty()) return false;
+
+      final WarmStandby standby = new WarmStandby(sdkHome, sdkVersion, includedRoots, excludedRoots, packageRoots);
+      myWarmStandby = standby;
+
+      ApplicationManager.getApplication().executeOnPooledThread(standby::start);
+      return true;
+    }
+  }
+
+  /**
+   * Makes the standby server the running one. Overlaid content and subscriptions are sent to it again, analysis.errors notifications it
+   * has sent so far are replayed, and the replaced server is shut down after a delay.
+   */
+  private void swapInWarmStandby(@NotNull final WarmStandby standby) {
+    final AnalysisServer replacedServer;
+    final StdioServerSocket replacedServerSocket;
+    final Map<String, List<AnalysisError>> errors;
+    final List<String> analyzedFiles;
+
+    synchronized (myLock) {
+      if (myWarmStandby != standby || standby.myServer == null) return;
+      myWarmStandby = null;
+
+      replacedServer = myServer;
+      replacedServerSocket = myServerSocket;
+      if (replacedServer != null) {
+        // its RequestResultsListener stays, so completion and search requests already sent to it are answered
+        replacedServer.removeAnalysisServerListener(myAnalysisServerListener);
+      }
+
+      standby.myServer.removeAnalysisServerListener(standby);
+      myServer = standby.myServer;
+      myServerSocket = standby.myServerSocket;
+      mySdkHome = standby.mySdkHome;
+      mySdkVersion = standby.mySdkVersion;
+      myServerStartTime.set(0);
+
+      // overlays and caches belong to the replaced server
+      myFilePathWithOverlaidContentToTimestamp.clear();
+      myContentOverlayTracker.clear();
+      myCompletionCache.clear();
+      mySearchResultsCache.clear();
+
+      analysis_setPriorityFiles();
+      analysis_setSubscriptions();
+      sendRootsChangedSinceStandbyStart(myServer, standby.myIncludedRoots, standby.myExcludedRoots, standby.myPackageRoots,
+                                        myRootsHandler.getIncludedRoots(), myRootsHandler.getExcludedRoots(),
+                                        myRootsHandler.getPackageRoots());
+
+      synchronized (standby) {
+        errors = new LinkedHashMap<String, List<AnalysisError>>(standby.myErrors);
+        analyzedFiles = standby.myAnalyzedFiles;
+        standby.myErrors.clear();
+      }
+      myServer.addAnalysisServerListener(myAnalysisServerListener);
+    }
+
+    LOG.info("Dart analysis server warm standby swapped in " + (System.currentTimeMillis() - standby.myStartTime) + " ms after start");
+
+    if (analyzedFiles != null) {
+      myAnalysisServerListener.computedAnalyzedFiles(analyzedFiles);
+    }
+    for (Map.Entry<String, List<AnalysisError>> entry : errors.entrySet()) {
+      myAnalysisServerListener.computedErrors(entry.getKey(), entry.getValue());
+    }
+
+    updateFilesContent();
+
+    if (replacedServer != null) {
+      myReplacedServersAlarm.addRequest(() -> shutdownServer(replacedServer, replacedServerSocket), REPLACED_SERVER_DRAIN_DELAY);
+    }
+  }
+
+  /**
+   * A standby server gets the analysis roots once, when it starts. Roots updates that happen before the swap, such as the rootsChanged
+   * caused by the SDK switch that started the standby, reach only the replaced server, and {@link DartServerRootsHandler} doesn't send
+   * the roots it already holds again. So the current roots are sent to the swapped in server if they differ from its initial ones.
+   *
+   * @return <code>true</code> if the roots were sent
+   */
+  @VisibleForTesting
+  static boolean sendRootsChangedSinceStandbyStart(@NotNull final AnalysisServer server,
+                                                   @NotNull final List<String> standbyIncludedRoots,
+                                                   @NotNull final List<String> standbyExcludedRoots,
+                                                   @NotNull final Map<String, String> standbyPackageRoots,
+                                                   @NotNull final List<String> includedRoots,
+                                                   @NotNull final List<String> excludedRoots,
+                                                   @NotNull final Map<String, String> packageRoots) {
+    if (standbyIncludedRoots.equals(includedRoots) && standbyExcludedRoots.equals(excludedRoots) && standbyPackageRoots.equals(packageRoots)) {
+      return false;
+    }
+
+    server.analysis_setAnalysisRoots(includedRoots, excludedRoots, packageRoots);
+    return true;
+  }
+
+  /**
+   * The standby server failed to start or died before it was swapped in, so the server is restarted the usual way.
+   */
+  private void abandonWarmStandby(@NotNull final WarmStandby standby) {
+    synchronized (myLock) {
+      if (myWarmStandby != standby) return;
+      myWarmStandby = null;
+    }
+
+    standby.shutdown();
+
+    final Set<Project> projects = new THashSet<Project>(myRootsHandler.getTrackedProjects());
+    ApplicationManager.getApplication().invokeLater(() -> restartServerFromScratch(projects), ModalityState.NON_MODAL);
+  }
+
   public void waitForAnalysisToComplete_TESTS_ONLY(@NotNull final VirtualFile file) {
     assert ApplicationManager.getApplication().isUnitTestMode();
 
@@ -1429,6 +1927,48 @@ public class DartAnalysisServerService {
            ", error code = " + error.getCode() + ": " + error.getMessage();
   }
 
+  /**
+   * Same as {@link #awaitForLatchCheckingCanceled(AnalysisServer, CountDownLatch, long)}, but if the request doesn't complete in time or
+   * the caller is canceled (for example because the caret has moved) the request is canceled as well, so that the server doesn't spend
+   * time on the request if it hasn't been sent yet, and its late response is ignored otherwise.
+   */
+  private static boolean awaitForLatchCheckingCanceled(@NotNull final AnalysisServer server,
+                                                       @NotNull final CountDownLatch latch,
+                                                       final long timeoutInMillis,
+                                                       @NotNull final com.google.dart.server.Consumer consumer) {
+    return awaitForLatchCheckingCanceled(server, latch, timeoutInMillis, consumer, true);
+  }
+
+  /**
+   * Same as {@link #awaitForLatchCheckingCanceled(AnalysisServer, CountDownLatch, long)}, but a timeout is recorded in the statistics of
+   * the request method, see {@link #getRequestLatencies()}.
+   *
+   * @param cancelIfNotCompleted whether to cancel the request if it doesn't complete in time or the caller is canceled
+   */
+  private static boolean awaitForLatchCheckingCanceled(@NotNull final AnalysisServer server,
+                                                       @NotNull final CountDownLatch latch,
+                                                       final long timeoutInMillis,
+                                                       @NotNull final com.google.dart.server.Consumer consumer,
+                                                       final boolean cancelIfNotCompleted) {
+    boolean completed = false;
+    boolean timedOut = false;
+    try {
+      completed = awaitForLatchCheckingCanceled(server, latch, timeoutInMillis);
+      timedOut = !completed && server.isSocketOpen();
+      return completed;
+    }
+    finally {
+      if (!completed && server instanceof RemoteAnalysisServerImpl) {
+        if (timedOut) {
+          ((RemoteAnalysisServerImpl)server).requestTimedOut(consumer);
+        }
+        if (cancelIfNotCompleted) {
+          ((RemoteAnalysisServerImpl)server).cancelRequest(consumer);
+        }
+      }
+    }
+  }
+
   private static boolean awaitForLatchCheckingCanceled(AnalysisServer server, CountDownLatch latch, long timeoutInMillis) {
     long startTime = System.currentTimeMillis();
     while (true) {
@@ -1457,6 +1997,33 @@ public class DartAnalysisServerService {
     }
   }
 
+  private static class CompletionResults {
+    @NotNull final AnalysisServer myServer; // the server that is asked, completion ids of different servers may be the same
+    @NotNull final String myCompletionId;
+    final long myStartTime;
+    @NotNull final String myFilePath;
+    final int myOffset;
+    final int myIdentifierStart;
+    final long myDocumentStamp;
+    @NotNull final BlockingQueue<CompletionInfo> myInfos = new LinkedBlockingQueue<CompletionInfo>();
+
+    public CompletionResults(@NotNull final AnalysisServer server,
+                             @NotNull final String completionId,
+                             final long startTime,
+                             @NotNull final String filePath,
+                             final int offset,
+                             final int identifierStart,
+                             final long documentStamp) {
+      myServer = server;
+      myCompletionId = completionId;
+      myStartTime = startTime;
+      myFilePath = filePath;
+      myOffset = offset;
+      myIdentifierStart = identifierStart;
+      myDocumentStamp = documentStamp;
+    }
+  }
+
   private static class CompletionInfo {
     @NotNull final String myCompletionId;
     final int myReplacementOffset;
@@ -1477,15 +2044,183 @@ public class DartAnalysisServerService {
     }
   }
 
+  /**
+   * A server started in the background with the same analysis roots as the running one (Registry key "dart.server.warm.standby").
+   * The running server keeps serving requests until the standby has analyzed the roots, then the standby is swapped in, so restarting
+   * the server or changing the SDK doesn't leave the editor without highlighting while everything is analyzed from scratch.
+   */
+  private class WarmStandby extends AnalysisServerListenerAdapter {
+    @NotNull private final String mySdkHome;
+    @NotNull private final String mySdkVersion;
+    private final long myStartTime = System.currentTimeMillis();
+
+    @Nullable private StdioServerSocket myServerSocket;
+    @Nullable private AnalysisServer myServer;
+
+    // latest notifications per file, replayed when the standby is swapped in; guarded by this
+    private final Map<String, List<AnalysisError>> myErrors = new LinkedHashMap<String, List<AnalysisError>>();
+    @Nullable private List<String> myAnalyzedFiles;
+    private boolean myFirstErrorsReceived;
+    private boolean myAnalysisStarted;
+
+    // roots the standby is started with
+    @NotNull private final List<String> myIncludedRoots;
+    @NotNull private final List<String> myExcludedRoots;
+    @NotNull private final Map<String, String> myPackageRoots;
+
+    private WarmStandby(@NotNull final String sdkHome,
+                        @NotNull final String sdkVersion,
+                        @NotNull final List<String> includedRoots,
+                        @NotNull final List<String> excludedRoots,
+                        @NotNull final Map<String, String> packageRoots) {
+      mySdkHome = sdkHome;
+      mySdkVersion = sdkVersion;
+      myIncludedRoots = includedRoots;
+      myExcludedRoots = excludedRoots;
+      myPackageRoots = packageRoots;
+    }
+
+    private void start() {
+      final Pair<AnalysisServer, StdioServerSocket> serverAndSocket = myServerFactory.createServer(mySdkHome);
+      final AnalysisServer server = serverAndSocket.first;
+      final StdioServerSocket serverSocket = serverAndSocket.second;
+
+      synchronized (myLock) {
+        if (myWarmStandby != this) return;
+        myServerSocket = serverSocket;
+        myServer = server;
+      }
+
+      try {
+        server.start();
+        server.server_setSubscriptions(SERVER_SUBSCRIPTIONS);
+        if (Registry.is("dart.projects.without.pubspec", false)) {
+          server.analysis_setGeneralSubscriptions(Collections.singletonList(GeneralAnalysisService.ANALYZED_FILES));
+        }
+        server.addAnalysisServerListener(this);
+        server.addAnalysisServerListener(new RequestResultsListener(server));
+        server.addStatusListener(new AnalysisServerStatusListener() {
+          @Override
+          public void isAliveServer(boolean isAlive) {
+            if (!isAlive) {
+              synchronized (myLock) {
+                if (server == DartAnalysisServerService.this.myServer) {
+                  stopServer();
+                  return;
+                }
+              }
+              abandonWarmStandby(WarmStandby.this);
+            }
+          }
+        });
+
+        server.analysis_updateOptions(new AnalysisOptions(true, true, true, true, true, false, true, false));
+        server.analysis_setAnalysisRoots(myIncludedRoots, myExcludedRoots, myPackageRoots);
+      }
+      catch (Exception e) {
+        LOG.warn("Failed to start Dart analysis server warm standby", e);
+        abandonWarmStandby(this);
+      }
+    }
+
+    private void shutdown() {
+      final AnalysisServer server;
+      final StdioServerSocket serverSocket;
+      synchronized (myLock) {
+        server = myServer;
+        serverSocket = myServerSocket;
+      }
+
+      if (server != null) {
+        server.removeAnalysisServerListener(this);
+        shutdownServer(server, serverSocket);
+      }
+    }
+
+    @Override
+    public void computedAnalyzedFiles(List<String> filePaths) {
+      synchronized (this) {
+        myAnalyzedFiles = filePaths;
+      }
+    }
+
+    @Override
+    public void computedErrors(@NotNull final String filePathSD, @NotNull final List<AnalysisError> errors) {
+      synchronized (this) {
+        myErrors.put(filePathSD, errors);
+        if (myFirstErrorsReceived) return;
+        myFirstErrorsReceived = true;
+      }
+
+      recordStartupToFirstErrors(myStandbyStartupToFirstErrorsLatency, myStartTime, "standby ");
+    }
+
+    @Override
+    public void flushedResults(List<String> filePaths) {
+      synchronized (this) {
+        for (String filePath : filePaths) {
+          myErrors.remove(filePath);
+        }
+      }
+    }
+
+    @Override
+    public void serverStatus(@Nullable final AnalysisStatus analysisStatus, @Nullable final PubStatus pubStatus) {
+      if (analysisStatus == null) return;
+
+      if (analysisStatus.isAnalyzing()) {
+        myAnalysisStarted = true;
+      }
+      else if (myAnalysisStarted) {
+        swapInWarmStandby(this);
+      }
+    }
+  }
+
+  /**
+   * Passes completion.results and search.results notifications of one server to the requests waiting for them. Unlike
+   * {@link #myAnalysisServerListener} it is not removed from a server replaced by the warm standby, so the requests already sent to that
+   * server are answered until it is shut down after {@link #REPLACED_SERVER_DRAIN_DELAY}.
+   */
+  private class RequestResultsListener extends AnalysisServerListenerAdapter {
+    @NotNull private final AnalysisServer myRequestServer;
+
+    private RequestResultsListener(@NotNull final AnalysisServer server) {
+      myRequestServer = server;
+    }
+
+    @Override
+    public void computedCompletion(@NotNull final String completionId,
+                                   final int replacementOffset,
+                                   final int replacementLength,
+                                   @NotNull final List<CompletionSuggestion> completions,
+                                   final boolean isLast) {
+      final CompletionResults results = myCompletionResults.get();
+      if (results != null && results.myServer == myRequestServer && results.myCompletionId.equals(completionId)) {
+        results.myInfos.add(new CompletionInfo(completionId, replacementOffset, replacementLength, completions, isLast));
+      }
+    }
+
+    @Override
+    public void computedSearchResults(String searchId, List<SearchResult> results, boolean last) {
+      synchronized (mySearchResultSets) {
+        mySearchResultSets.add(new SearchResultsSet(myRequestServer, searchId, results, last));
+        mySearchResultSets.notifyAll();
+      }
+    }
+  }
+
   /**
    * A set of {@link SearchResult}s.
    */
   private static class SearchResultsSet {
+    @NotNull final AnalysisServer server; // search ids of different servers may be the same
     @NotNull final String id;
     @NotNull final List<SearchResult> results;
     final boolean isLast;
 
-    public SearchResultsSet(@NotNull String id, @NotNull List<SearchResult> results, boolean isLast) {
+    public SearchResultsSet(@NotNull AnalysisServer server, @NotNull String id, @NotNull List<SearchResult> results, boolean isLast) {
+      this.server = server;
       this.id = id;
       this.results = results;
       this.isLast = isLast;
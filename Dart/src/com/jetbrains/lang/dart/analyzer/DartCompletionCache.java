@@ -0,0 +1,123 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.util.text.StringUtil;
+import org.dartlang.analysis.server.protocol.CompletionSuggestion;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the suggestions of the last completion request, so that completion restarted while the user is typing the same identifier doesn't
+ * need another completion.getSuggestions round trip. Analysis server returns all suggestions possible at the identifier start, including
+ * those that don't match the characters already typed, so the list can be filtered by the new prefix on the client side.
+ * <p/>
+ * The cache entry is keyed by file path, identifier start offset and document modification stamp. Typing identifier characters inside the
+ * identifier keeps the entry valid and moves the stamp forward, any other document change drops it.
+ */
+class DartCompletionCache {
+
+  private static final Comparator<CompletionSuggestion> BY_RELEVANCE = new Comparator<CompletionSuggestion>() {
+    @Override
+    public int compare(@NotNull final CompletionSuggestion s1, @NotNull final CompletionSuggestion s2) {
+      return s2.getRelevance() - s1.getRelevance();
+    }
+  };
+
+  private static class Entry {
+    @NotNull private final String myFilePath;
+    private final int myIdentifierStart;
+    private int myIdentifierEnd;
+    private long myDocumentStamp;
+    @NotNull private final List<CompletionSuggestion> mySuggestions;
+
+    private Entry(@NotNull final String filePath,
+                  final int identifierStart,
+                  final int identifierEnd,
+                  final long documentStamp,
+                  @NotNull final List<CompletionSuggestion> suggestions) {
+      myFilePath = filePath;
+      myIdentifierStart = identifierStart;
+      myIdentifierEnd = identifierEnd;
+      myDocumentStamp = documentStamp;
+      mySuggestions = suggestions;
+    }
+  }
+
+  @Nullable private Entry myEntry;
+  private int myHitCount;
+  private int myMissCount;
+
+  /**
+   * @param identifierStart start offset of the identifier being completed
+   * @param caretOffset     offset where completion was invoked, the end of the already typed part of the identifier
+   * @param documentStamp   modification stamp of the document at the moment completion was invoked
+   */
+  synchronized void put(@NotNull final String filePath,
+                        final int identifierStart,
+                        final int caretOffset,
+                        final long documentStamp,
+                        @NotNull final List<CompletionSuggestion> suggestions) {
+    final List<CompletionSuggestion> sorted = new ArrayList<CompletionSuggestion>(suggestions);
+    Collections.sort(sorted, BY_RELEVANCE);
+    myEntry = new Entry(filePath, identifierStart, caretOffset, documentStamp, Collections.unmodifiableList(sorted));
+  }
+
+  /**
+   * @return all suggestions at the identifier start sorted by relevance, or {@code null} if the server needs to be asked
+   */
+  @Nullable
+  synchronized List<CompletionSuggestion> get(@NotNull final String filePath, final int identifierStart, final long documentStamp) {
+    final Entry entry = myEntry;
+    if (entry != null &&
+        entry.myIdentifierStart == identifierStart &&
+        entry.myDocumentStamp == documentStamp &&
+        entry.myFilePath.equals(filePath)) {
+      myHitCount++;
+      return entry.mySuggestions;
+    }
+
+    myMissCount++;
+    return null;
+  }
+
+  synchronized void documentChanged(@Nullable final String filePath, @NotNull final DocumentEvent e) {
+    final Entry entry = myEntry;
+    if (entry == null) return;
+
+    if (entry.myFilePath.equals(filePath) &&
+        e.getOffset() >= entry.myIdentifierStart &&
+        e.getOffset() + e.getOldLength() <= entry.myIdentifierEnd &&
+        isIdentifierPart(e.getNewFragment()) &&
+        entry.myDocumentStamp == e.getOldTimeStamp()) {
+      entry.myIdentifierEnd += e.getNewLength() - e.getOldLength();
+      entry.myDocumentStamp = e.getDocument().getModificationStamp();
+      return;
+    }
+
+    myEntry = null;
+  }
+
+  synchronized void clear() {
+    myEntry = null;
+  }
+
+  synchronized int getHitCount() {
+    return myHitCount;
+  }
+
+  synchronized int getMissCount() {
+    return myMissCount;
+  }
+
+  private static boolean isIdentifierPart(@NotNull final CharSequence text) {
+    for (int i = 0; i < text.length(); i++) {
+      if (!StringUtil.isJavaIdentifierPart(text.charAt(i))) return false;
+    }
+    return true;
+  }
+}
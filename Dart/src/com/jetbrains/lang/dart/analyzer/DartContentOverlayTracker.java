@@ -0,0 +1,164 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.util.registry.Registry;
+import gnu.trove.THashMap;
+import org.dartlang.analysis.server.protocol.AddContentOverlay;
+import org.dartlang.analysis.server.protocol.ChangeContentOverlay;
+import org.dartlang.analysis.server.protocol.RemoveContentOverlay;
+import org.dartlang.analysis.server.protocol.SourceEdit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects document changes of the files with overlaid content, so that the next analysis.updateContent request carries
+ * {@link ChangeContentOverlay} edits relative to the content that the server already has, instead of the whole document text.
+ * If the chain of edits is broken (a change that is not based on the overlaid content, an external reload) or the edits are not smaller
+ * than the text itself, {@link AddContentOverlay} with the whole text is sent.
+ * <p/>
+ * All methods are expected to be called under the {@link DartAnalysisServerService} lock that guards overlaid content timestamps.
+ */
+class DartContentOverlayTracker {
+
+  private static final Logger LOG = Logger.getInstance(DartContentOverlayTracker.class.getName());
+
+  // approximate size of the JSON wrapping of a single edit: "offset", "length", "replacement" keys and values
+  private static final int EDIT_OVERHEAD = 64;
+
+  private static class PendingEdits {
+    private final long myBaseStamp;
+    private long myLastStamp;
+    private final List<SourceEdit> myEdits = new ArrayList<SourceEdit>();
+    private long myReplacementLength;
+
+    private PendingEdits(final long baseStamp) {
+      myBaseStamp = baseStamp;
+      myLastStamp = baseStamp;
+    }
+  }
+
+  private final Map<String, PendingEdits> myPendingEdits = new THashMap<String, PendingEdits>();
+
+  private final AtomicLong myChangeOverlayCount = new AtomicLong();
+  private final AtomicLong myAddOverlayCount = new AtomicLong();
+  private final AtomicLong myResyncCount = new AtomicLong();
+  private final AtomicLong mySentEditCount = new AtomicLong();
+  private final AtomicLong mySentBytes = new AtomicLong();
+
+  /**
+   * @param overlaidStamp modification stamp of the document content that was last sent to the server, {@code null} if not overlaid
+   */
+  void documentChanged(@NotNull final String filePath, @Nullable final Long overlaidStamp, @NotNull final DocumentEvent e) {
+    if (overlaidStamp == null || !Registry.is("dart.server.incremental.overlays", true)) {
+      myPendingEdits.remove(filePath);
+      return;
+    }
+
+    PendingEdits pending = myPendingEdits.get(filePath);
+    if (pending == null || pending.myBaseStamp != overlaidStamp) {
+      pending = new PendingEdits(overlaidStamp);
+      myPendingEdits.put(filePath, pending);
+    }
+
+    if (pending.myLastStamp != e.getOldTimeStamp()) {
+      // the chain is broken, full content will be sent
+      myPendingEdits.remove(filePath);
+      return;
+    }
+
+    pending.myEdits.add(new SourceEdit(e.getOffset(), e.getOldLength(), e.getNewFragment().toString(), null));
+    pending.myReplacementLength += e.getNewLength();
+    pending.myLastStamp = e.getDocument().getModificationStamp();
+  }
+
+  /**
+   * Returns the cheapest overlay that brings the server content from {@code overlaidStamp} to the current document content.
+   */
+  @NotNull
+  Object createOverlay(@NotNull final String filePath, @Nullable final Long overlaidStamp, @NotNull final Document document) {
+    final PendingEdits pending = myPendingEdits.remove(filePath);
+    final Object overlay;
+    if (pending != null &&
+        overlaidStamp != null &&
+        pending.myBaseStamp == overlaidStamp &&
+        pending.myLastStamp == document.getModificationStamp() &&
+        pending.myReplacementLength + pending.myEdits.size() * EDIT_OVERHEAD < document.getTextLength()) {
+      overlay = new ChangeContentOverlay(pending.myEdits);
+      myChangeOverlayCount.incrementAndGet();
+      mySentEditCount.addAndGet(pending.myEdits.size());
+    }
+    else {
+      overlay = new AddContentOverlay(document.getText());
+      myAddOverlayCount.incrementAndGet();
+    }
+
+    if (LOG.isDebugEnabled()) {
+      final int bytes = getPayloadBytes(overlay);
+      mySentBytes.addAndGet(bytes);
+      final int edits = pending == null ? 0 : pending.myEdits.size();
+      LOG.debug("Overlay for " + filePath + ": " + (overlay instanceof ChangeContentOverlay ? edits + " edit(s), " : "full content, ") +
+                bytes + " bytes, " + (edits == 0 ? "" : bytes / edits + " bytes per edit, ") +
+                "total sent: " + mySentBytes.get() + " bytes, " + mySentEditCount.get() + " edit(s) in " + myChangeOverlayCount.get() +
+                " incremental and " + myAddOverlayCount.get() + " full update(s), resyncs: " + myResyncCount.get());
+    }
+
+    return overlay;
+  }
+
+  /**
+   * Called when the server could not apply {@link ChangeContentOverlay} to its content.
+   */
+  void resyncRequested(@NotNull final String filePath) {
+    myPendingEdits.remove(filePath);
+    myResyncCount.incrementAndGet();
+  }
+
+  /**
+   * Called when the server failed to apply an analysis.updateContent request. Any of its overlays, including {@link AddContentOverlay} and
+   * {@link RemoveContentOverlay}, may not have reached the server, so all the files of the request get the unknown <code>-1</code> stamp:
+   * files with overlaid content then get the whole text on the next update, the other files get {@link RemoveContentOverlay} again.
+   *
+   * @param overlaidStamps modification stamps of the content sent to the server by system-independent file path, updated in place
+   */
+  void resyncRequested(@NotNull final Map<String, Long> overlaidStamps, @NotNull final Collection<String> filePaths) {
+    for (String filePath : filePaths) {
+      overlaidStamps.put(filePath, -1L);
+      resyncRequested(filePath);
+    }
+  }
+
+  void remove(@NotNull final String filePath) {
+    myPendingEdits.remove(filePath);
+  }
+
+  void clear() {
+    myPendingEdits.clear();
+  }
+
+  long getChangeOverlayCount() {
+    return myChangeOverlayCount.get();
+  }
+
+  long getAddOverlayCount() {
+    return myAddOverlayCount.get();
+  }
+
+  long getResyncCount() {
+    return myResyncCount.get();
+  }
+
+  private static int getPayloadBytes(@NotNull final Object overlay) {
+    final String json = overlay instanceof ChangeContentOverlay ? ((ChangeContentOverlay)overlay).toJson().toString()
+                                                                : ((AddContentOverlay)overlay).toJson().toString();
+    return json.getBytes(StandardCharsets.UTF_8).length;
+  }
+}
@@ -0,0 +1,122 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.editor.event.DocumentEvent;
+import org.dartlang.analysis.server.protocol.HighlightRegion;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable columnar storage of the highlight regions of a single file: offsets, lengths and interned type ids are kept in primitive
+ * arrays sorted by offset, {@link DartServerData.DartHighlightRegion} objects are created only on request.
+ * Document changes produce a new table.
+ */
+final class DartHighlightRegionTable {
+  static final DartHighlightRegionTable EMPTY = new DartHighlightRegionTable(new int[0], new int[0], new short[0]);
+
+  private static final DartInternedStrings ourTypes = new DartInternedStrings();
+
+  private final int[] myOffsets;
+  private final int[] myLengths;
+  private final short[] myTypeIds;
+
+  private DartHighlightRegionTable(@NotNull final int[] offsets, @NotNull final int[] lengths, @NotNull final short[] typeIds) {
+    myOffsets = offsets;
+    myLengths = lengths;
+    myTypeIds = typeIds;
+  }
+
+  @NotNull
+  static DartHighlightRegionTable create(@NotNull final List<HighlightRegion> regions) {
+    final List<HighlightRegion> sorted = new ArrayList<HighlightRegion>(regions.size());
+    for (HighlightRegion region : regions) {
+      if (region.getLength() > 0) {
+        sorted.add(region);
+      }
+    }
+    Collections.sort(sorted, (r1, r2) -> Integer.compare(r1.getOffset(), r2.getOffset())); // stable, nested regions keep server order
+
+    final int size = sorted.size();
+    final int[] offsets = new int[size];
+    final int[] lengths = new int[size];
+    final short[] typeIds = new short[size];
+    for (int i = 0; i < size; i++) {
+      final HighlightRegion region = sorted.get(i);
+      offsets[i] = region.getOffset();
+      lengths[i] = region.getLength();
+      typeIds[i] = ourTypes.getId(region.getType());
+    }
+    return new DartHighlightRegionTable(offsets, lengths, typeIds);
+  }
+
+  boolean isEmpty() {
+    return myOffsets.length == 0;
+  }
+
+  @NotNull
+  List<DartServerData.DartHighlightRegion> toList() {
+    final List<DartServerData.DartHighlightRegion> result = new ArrayList<DartServerData.DartHighlightRegion>(myOffsets.length);
+    for (int i = 0; i < myOffsets.length; i++) {
+      result.add(new DartServerData.DartHighlightRegion(myOffsets[i], myLengths[i], ourTypes.getString(myTypeIds[i])));
+    }
+    return result;
+  }
+
+  /**
+   * Shifts regions that are not touched by the change, updates lengths of the touched regions if possible and deletes the rest.
+   */
+  @NotNull
+  DartHighlightRegionTable updatedByDocumentChange(@NotNull final DocumentEvent e) {
+    final int eventOffset = e.getOffset();
+    final int deltaLength = e.getNewLength() - e.getOldLength();
+    if (deltaLength == 0 || myOffsets.length == 0) return this;
+
+    final int[] offsets = new int[myOffsets.length];
+    final int[] lengths = new int[myOffsets.length];
+    final short[] typeIds = new short[myOffsets.length];
+    int size = 0;
+
+    for (int i = 0; i < myOffsets.length; i++) {
+      int offset = myOffsets[i];
+      int length = myLengths[i];
+
+      if (deltaLength > 0) {
+        // Something was typed. Shift untouched regions, update touched.
+        if (eventOffset <= offset) {
+          offset += deltaLength;
+        }
+        else if (offset < eventOffset && eventOffset < offset + length) {
+          length += deltaLength;
+        }
+      }
+      else {
+        // Some text was deleted. Shift untouched regions, delete or update touched.
+        final int eventRightOffset = eventOffset - deltaLength;
+        final int regionRightOffset = offset + length;
+
+        if (eventRightOffset <= offset) {
+          offset += deltaLength;
+        }
+        else if (offset <= eventOffset && eventRightOffset <= regionRightOffset && length != -deltaLength) {
+          length += deltaLength;
+        }
+        else if (eventOffset < regionRightOffset) {
+          continue;
+        }
+      }
+
+      offsets[size] = offset;
+      lengths[size] = length;
+      typeIds[size] = myTypeIds[i];
+      size++;
+    }
+
+    if (size == myOffsets.length) {
+      return new DartHighlightRegionTable(offsets, lengths, typeIds);
+    }
+    return new DartHighlightRegionTable(Arrays.copyOf(offsets, size), Arrays.copyOf(lengths, size), Arrays.copyOf(typeIds, size));
+  }
+}
@@ -0,0 +1,34 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.util.ArrayUtil;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Maps strings from a small vocabulary (highlight types, element kinds) to compact ids, so that region tables keep an id per region
+ * instead of a reference. Ids are never reused, the vocabularies are tiny and defined by the analysis server protocol.
+ */
+final class DartInternedStrings {
+  private final TObjectIntHashMap<String> myStringToId = new TObjectIntHashMap<String>(); // guarded by this
+  private volatile String[] myStrings = ArrayUtil.EMPTY_STRING_ARRAY; // copy-on-write, so that getString() doesn't need a lock
+
+  synchronized short getId(@NotNull final String string) {
+    if (myStringToId.containsKey(string)) {
+      return (short)myStringToId.get(string);
+    }
+
+    final int id = myStrings.length;
+    if (id > Short.MAX_VALUE) {
+      throw new IllegalStateException("Too many different strings: " + id);
+    }
+
+    myStrings = ArrayUtil.append(myStrings, string.intern());
+    myStringToId.put(string, id);
+    return (short)id;
+  }
+
+  @NotNull
+  String getString(final short id) {
+    return myStrings[id];
+  }
+}
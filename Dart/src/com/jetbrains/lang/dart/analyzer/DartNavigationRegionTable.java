@@ -0,0 +1,245 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.ArrayUtil;
+import gnu.trove.TObjectHashingStrategy;
+import gnu.trove.TObjectIntHashMap;
+import org.dartlang.analysis.server.protocol.NavigationRegion;
+import org.dartlang.analysis.server.protocol.NavigationTarget;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable columnar storage of the navigation regions of a single file. Regions are kept sorted by offset in primitive arrays,
+ * each region refers to a slice of target indexes; targets are stored once per file with interned kind ids and indexes into the
+ * table of target files. {@link DartServerData.DartNavigationRegion} objects are created only on request.
+ * Document changes produce a new table.
+ */
+final class DartNavigationRegionTable {
+  static final DartNavigationRegionTable EMPTY =
+    new DartNavigationRegionTable(new int[0], new int[0], new int[]{0}, new int[0],
+                                  ArrayUtil.EMPTY_STRING_ARRAY, new int[0], new int[0], new short[0]);
+
+  private static final DartInternedStrings ourKinds = new DartInternedStrings();
+
+  // regions
+  private final int[] myOffsets;
+  private final int[] myLengths;
+  private final int[] myTargetStarts; // targets of region i are myTargetIndexes[myTargetStarts[i]..myTargetStarts[i + 1])
+  private final int[] myTargetIndexes;
+
+  // targets
+  private final String[] myTargetFiles;
+  private final int[] myTargetFileIndexes;
+  private final int[] myTargetOffsets;
+  private final short[] myTargetKindIds;
+
+  private DartNavigationRegionTable(@NotNull final int[] offsets,
+                                    @NotNull final int[] lengths,
+                                    @NotNull final int[] targetStarts,
+                                    @NotNull final int[] targetIndexes,
+                                    @NotNull final String[] targetFiles,
+                                    @NotNull final int[] targetFileIndexes,
+                                    @NotNull final int[] targetOffsets,
+                                    @NotNull final short[] targetKindIds) {
+    myOffsets = offsets;
+    myLengths = lengths;
+    myTargetStarts = targetStarts;
+    myTargetIndexes = targetIndexes;
+    myTargetFiles = targetFiles;
+    myTargetFileIndexes = targetFileIndexes;
+    myTargetOffsets = targetOffsets;
+    myTargetKindIds = targetKindIds;
+  }
+
+  @NotNull
+  static DartNavigationRegionTable create(@NotNull final List<NavigationRegion> regions) {
+    final List<NavigationRegion> sorted = new ArrayList<NavigationRegion>(regions.size());
+    int targetIndexCount = 0;
+    for (NavigationRegion region : regions) {
+      if (region.getLength() > 0) {
+        sorted.add(region);
+        targetIndexCount += region.getTargetObjects().size();
+      }
+    }
+    Collections.sort(sorted, (r1, r2) -> Integer.compare(r1.getOffset(), r2.getOffset()));
+
+    // the same NavigationTarget instance is shared by all regions that refer to it
+    //noinspection unchecked
+    final TObjectIntHashMap<NavigationTarget> targetToIndex =
+      new TObjectIntHashMap<NavigationTarget>(TObjectHashingStrategy.IDENTITY);
+    final TObjectIntHashMap<String> fileToIndex = new TObjectIntHashMap<String>();
+    final List<String> files = new ArrayList<String>();
+    final List<NavigationTarget> targets = new ArrayList<NavigationTarget>();
+
+    final int size = sorted.size();
+    final int[] offsets = new int[size];
+    final int[] lengths = new int[size];
+    final int[] targetStarts = new int[size + 1];
+    final int[] targetIndexes = new int[targetIndexCount];
+    int targetIndexCursor = 0;
+
+    for (int i = 0; i < size; i++) {
+      final NavigationRegion region = sorted.get(i);
+      offsets[i] = region.getOffset();
+      lengths[i] = region.getLength();
+      targetStarts[i] = targetIndexCursor;
+
+      for (NavigationTarget target : region.getTargetObjects()) {
+        if (!targetToIndex.containsKey(target)) {
+          targetToIndex.put(target, targets.size());
+          targets.add(target);
+        }
+        targetIndexes[targetIndexCursor++] = targetToIndex.get(target);
+      }
+    }
+    targetStarts[size] = targetIndexCursor;
+
+    final int targetCount = targets.size();
+    final int[] targetFileIndexes = new int[targetCount];
+    final int[] targetOffsets = new int[targetCount];
+    final short[] targetKindIds = new short[targetCount];
+    for (int i = 0; i < targetCount; i++) {
+      final NavigationTarget target = targets.get(i);
+      final String file = FileUtil.toSystemIndependentName(target.getFile());
+      if (!fileToIndex.containsKey(file)) {
+        fileToIndex.put(file, files.size());
+        files.add(file.intern());
+      }
+      targetFileIndexes[i] = fileToIndex.get(file);
+      targetOffsets[i] = target.getOffset();
+      targetKindIds[i] = ourKinds.getId(target.getKind());
+    }
+
+    return new DartNavigationRegionTable(offsets, lengths, targetStarts, targetIndexes, ArrayUtil.toStringArray(files),
+                                         targetFileIndexes, targetOffsets, targetKindIds);
+  }
+
+  boolean isEmpty() {
+    return myOffsets.length == 0;
+  }
+
+  @NotNull
+  List<DartServerData.DartNavigationRegion> toList() {
+    final List<DartServerData.DartNavigationRegion> result = new ArrayList<DartServerData.DartNavigationRegion>(myOffsets.length);
+    for (int i = 0; i < myOffsets.length; i++) {
+      result.add(getRegion(i));
+    }
+    return result;
+  }
+
+  /**
+   * Returns the region with exactly the given offset and length, or {@code null}.
+   */
+  @Nullable
+  DartServerData.DartNavigationRegion findRegion(final int offset, final int length) {
+    final int index = Arrays.binarySearch(myOffsets, offset);
+    return index >= 0 && myLengths[index] == length ? getRegion(index) : null;
+  }
+
+  /**
+   * Returns the first region that contains the given offset (boundaries included), or {@code null}.
+   */
+  @Nullable
+  DartServerData.DartNavigationRegion findRegionContaining(final int offset) {
+    int low = 0;
+    int high = myOffsets.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (myOffsets[mid] + myLengths[mid] < offset) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    // low is the first region that ends at or after the offset, regions do not overlap
+    return low < myOffsets.length && myOffsets[low] <= offset ? getRegion(low) : null;
+  }
+
+  @NotNull
+  private DartServerData.DartNavigationRegion getRegion(final int index) {
+    final List<DartServerData.DartNavigationTarget> targets =
+      new ArrayList<DartServerData.DartNavigationTarget>(myTargetStarts[index + 1] - myTargetStarts[index]);
+    for (int i = myTargetStarts[index]; i < myTargetStarts[index + 1]; i++) {
+      final int target = myTargetIndexes[i];
+      targets.add(new DartServerData.DartNavigationTarget(myTargetFiles[myTargetFileIndexes[target]], myTargetOffsets[target],
+                                                          ourKinds.getString(myTargetKindIds[target])));
+    }
+    return new DartServerData.DartNavigationRegion(myOffsets[index], myLengths[index], targets);
+  }
+
+  /**
+   * Shifts regions and targets in this file that are not touched by the change, deletes touched regions.
+   */
+  @NotNull
+  DartNavigationRegionTable updatedByDocumentChange(@NotNull final String filePath, @NotNull final DocumentEvent e) {
+    final int eventOffset = e.getOffset();
+    final int deltaLength = e.getNewLength() - e.getOldLength();
+    if (deltaLength == 0 || myOffsets.length == 0) return this;
+
+    // may be we'd better delete target touched by editing?
+    final int fileIndex = ArrayUtil.indexOf(myTargetFiles, filePath);
+    int[] targetOffsets = myTargetOffsets;
+    if (fileIndex >= 0) {
+      targetOffsets = myTargetOffsets.clone();
+      for (int i = 0; i < targetOffsets.length; i++) {
+        if (myTargetFileIndexes[i] == fileIndex && targetOffsets[i] >= eventOffset) {
+          targetOffsets[i] += deltaLength;
+        }
+      }
+    }
+
+    final int[] offsets = new int[myOffsets.length];
+    final int[] lengths = new int[myOffsets.length];
+    final int[] targetStarts = new int[myOffsets.length + 1];
+    final int[] targetIndexes = new int[myTargetIndexes.length];
+    int size = 0;
+    int targetIndexCursor = 0;
+
+    for (int i = 0; i < myOffsets.length; i++) {
+      int offset = myOffsets[i];
+      final int length = myLengths[i];
+
+      if (deltaLength > 0) {
+        // Something was typed. Shift untouched regions, delete touched.
+        if (eventOffset <= offset) {
+          offset += deltaLength;
+        }
+        else if (offset < eventOffset && eventOffset < offset + length) {
+          continue;
+        }
+      }
+      else {
+        // Some text was deleted. Shift untouched regions, delete touched.
+        final int eventRightOffset = eventOffset - deltaLength;
+
+        if (eventRightOffset <= offset) {
+          offset += deltaLength;
+        }
+        else if (eventOffset < offset + length) {
+          continue;
+        }
+      }
+
+      offsets[size] = offset;
+      lengths[size] = length;
+      targetStarts[size] = targetIndexCursor;
+      for (int j = myTargetStarts[i]; j < myTargetStarts[i + 1]; j++) {
+        targetIndexes[targetIndexCursor++] = myTargetIndexes[j];
+      }
+      size++;
+    }
+    targetStarts[size] = targetIndexCursor;
+
+    return new DartNavigationRegionTable(Arrays.copyOf(offsets, size), Arrays.copyOf(lengths, size), Arrays.copyOf(targetStarts, size + 1),
+                                         Arrays.copyOf(targetIndexes, targetIndexCursor), myTargetFiles, myTargetFileIndexes, targetOffsets,
+                                         myTargetKindIds);
+  }
+}
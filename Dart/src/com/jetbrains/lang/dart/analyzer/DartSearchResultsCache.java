@@ -0,0 +1,192 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.util.io.FileUtil;
+import gnu.trove.THashSet;
+import org.dartlang.analysis.server.protocol.Element;
+import org.dartlang.analysis.server.protocol.Location;
+import org.dartlang.analysis.server.protocol.SearchResult;
+import org.dartlang.analysis.server.protocol.TypeHierarchyItem;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Keeps the results of recent search.findElementReferences and search.getTypeHierarchy requests, so that opening the hierarchy or the
+ * usages of the same element again doesn't need another analysis server round trip. Entries are keyed by the element location (file path
+ * and offset) and are dropped when
+ * <ul>
+ * <li>any file of the result set, including the file where the search was invoked, is edited or its results are flushed by the server;</li>
+ * <li>a line containing the name of the searched element or of a class in the hierarchy is edited in any file, because such an edit may
+ * add or remove a reference or a subclass outside the result set.</li>
+ * </ul>
+ * All file paths are system-independent.
+ */
+class DartSearchResultsCache {
+
+  private static final int MAX_ENTRIES = 50;
+
+  private static class Entry {
+    @NotNull private final List<?> myResults;
+    @NotNull private final Set<String> myFilePaths;
+    @NotNull private final Set<String> myNames;
+
+    private Entry(@NotNull final List<?> results, @NotNull final Set<String> filePaths, @NotNull final Set<String> names) {
+      myResults = results;
+      myFilePaths = filePaths;
+      myNames = names;
+    }
+  }
+
+  private final LinkedHashMap<String, Entry> myEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+      return size() > MAX_ENTRIES;
+    }
+  };
+
+  // incremented by each change that may invalidate entries, results of requests sent before the change are not cached
+  private long myModificationCount;
+  private int myHitCount;
+  private int myMissCount;
+
+  synchronized long getModificationCount() {
+    return myModificationCount;
+  }
+
+  @Nullable
+  synchronized List<SearchResult> getElementReferences(@NotNull final String filePath, final int offset) {
+    //noinspection unchecked
+    return (List<SearchResult>)get("references:" + filePath + "@" + offset);
+  }
+
+  /**
+   * @param modificationCount value of {@link #getModificationCount()} at the moment the request was sent
+   */
+  synchronized void putElementReferences(@NotNull final String filePath,
+                                         final int offset,
+                                         @NotNull final String elementName,
+                                         @NotNull final List<SearchResult> results,
+                                         final long modificationCount) {
+    if (modificationCount != myModificationCount || elementName.isEmpty()) return;
+
+    final Set<String> filePaths = new THashSet<String>();
+    filePaths.add(filePath);
+    for (SearchResult result : results) {
+      addFilePath(filePaths, result.getLocation());
+    }
+
+    final List<SearchResult> resultsCopy = Collections.unmodifiableList(new ArrayList<SearchResult>(results));
+    myEntries.put("references:" + filePath + "@" + offset, new Entry(resultsCopy, filePaths, Collections.singleton(elementName)));
+  }
+
+  @Nullable
+  synchronized List<TypeHierarchyItem> getTypeHierarchy(@NotNull final String filePath, final int offset, final boolean superOnly) {
+    //noinspection unchecked
+    return (List<TypeHierarchyItem>)get("hierarchy:" + superOnly + ":" + filePath + "@" + offset);
+  }
+
+  synchronized void putTypeHierarchy(@NotNull final String filePath,
+                                     final int offset,
+                                     final boolean superOnly,
+                                     @NotNull final List<TypeHierarchyItem> items,
+                                     final long modificationCount) {
+    if (modificationCount != myModificationCount || items.isEmpty()) return;
+
+    final Set<String> filePaths = new THashSet<String>();
+    final Set<String> names = new THashSet<String>();
+    filePaths.add(filePath);
+    for (TypeHierarchyItem item : items) {
+      for (Element element : new Element[]{item.getClassElement(), item.getMemberElement()}) {
+        if (element == null) continue;
+        addFilePath(filePaths, element.getLocation());
+        if (element.getName() != null && !element.getName().isEmpty()) {
+          names.add(element.getName());
+        }
+      }
+    }
+
+    final List<TypeHierarchyItem> itemsCopy = Collections.unmodifiableList(new ArrayList<TypeHierarchyItem>(items));
+    myEntries.put("hierarchy:" + superOnly + ":" + filePath + "@" + offset, new Entry(itemsCopy, filePaths, names));
+  }
+
+  /**
+   * Must be called both before and after the document change: removing a character from a name is visible only in the old text.
+   */
+  synchronized void documentChanged(@NotNull final String filePath, @NotNull final DocumentEvent e, final boolean beforeChange) {
+    myModificationCount++;
+    if (myEntries.isEmpty()) return;
+
+    final int changeEnd = e.getOffset() + (beforeChange ? e.getOldLength() : e.getNewLength());
+    final CharSequence changedLines = getChangedLines(e.getDocument(), e.getOffset(), changeEnd);
+    final Iterator<Entry> iterator = myEntries.values().iterator();
+    while (iterator.hasNext()) {
+      final Entry entry = iterator.next();
+      if (entry.myFilePaths.contains(filePath) || containsAny(changedLines, entry.myNames)) {
+        iterator.remove();
+      }
+    }
+  }
+
+  synchronized void flushedResults(@NotNull final List<String> filePaths) {
+    myModificationCount++;
+    for (String filePath : filePaths) {
+      final String path = FileUtil.toSystemIndependentName(filePath);
+      final Iterator<Entry> iterator = myEntries.values().iterator();
+      while (iterator.hasNext()) {
+        if (iterator.next().myFilePaths.contains(path)) {
+          iterator.remove();
+        }
+      }
+    }
+  }
+
+  synchronized void clear() {
+    myModificationCount++;
+    myEntries.clear();
+  }
+
+  synchronized int getHitCount() {
+    return myHitCount;
+  }
+
+  synchronized int getMissCount() {
+    return myMissCount;
+  }
+
+  @Nullable
+  private List<?> get(@NotNull final String key) {
+    final Entry entry = myEntries.get(key);
+    if (entry == null) {
+      myMissCount++;
+      return null;
+    }
+
+    myHitCount++;
+    return entry.myResults;
+  }
+
+  private static void addFilePath(@NotNull final Set<String> filePaths, @Nullable final Location location) {
+    if (location != null && location.getFile() != null) {
+      filePaths.add(FileUtil.toSystemIndependentName(location.getFile()));
+    }
+  }
+
+  @NotNull
+  private static CharSequence getChangedLines(@NotNull final Document document, final int startOffset, final int endOffset) {
+    final int textLength = document.getTextLength();
+    final int lineStart = document.getLineStartOffset(document.getLineNumber(Math.min(startOffset, textLength)));
+    final int lineEnd = document.getLineEndOffset(document.getLineNumber(Math.min(endOffset, textLength)));
+    return document.getImmutableCharSequence().subSequence(lineStart, lineEnd);
+  }
+
+  private static boolean containsAny(@NotNull final CharSequence text, @NotNull final Set<String> names) {
+    final String string = text.toString();
+    for (String name : names) {
+      if (string.contains(name)) return true;
+    }
+    return false;
+  }
+}
@@ -11,6 +11,7 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.impl.source.resolve.ResolveCache;
 import com.intellij.util.SmartList;
 import gnu.trove.THashMap;
+import gnu.trove.THashSet;
 import org.dartlang.analysis.server.protocol.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -23,10 +24,10 @@ public class DartServerData {
 
   private final Map<String, List<DartError>> myErrorData =
     Collections.synchronizedMap(new THashMap<String, List<DartError>>());
-  private final Map<String, List<DartHighlightRegion>> myHighlightData =
-    Collections.synchronizedMap(new THashMap<String, List<DartHighlightRegion>>());
-  private final Map<String, List<DartNavigationRegion>> myNavigationData =
-    Collections.synchronizedMap(new THashMap<String, List<DartNavigationRegion>>());
+  private final Map<String, DartHighlightRegionTable> myHighlightData =
+    Collections.synchronizedMap(new THashMap<String, DartHighlightRegionTable>());
+  private final Map<String, DartNavigationRegionTable> myNavigationData =
+    Collections.synchronizedMap(new THashMap<String, DartNavigationRegionTable>());
   private final Map<String, List<DartOverrideMember>> myOverrideData =
     Collections.synchronizedMap(new THashMap<String, List<DartOverrideMember>>());
   private final Map<String, List<DartRegion>> myImplementedClassData =
@@ -36,6 +37,10 @@ public class DartServerData {
 
   private final Set<String> myFilePathsWithUnsentChanges = Sets.newConcurrentHashSet();
 
+  private final Object myLock = new Object(); // use this lock to access myFilePathsToReannotate and myClearResolveCache
+  private final Set<String> myFilePathsToReannotate = new THashSet<String>();
+  private boolean myClearResolveCache;
+
   DartServerData(@NotNull final DartServerRootsHandler rootsHandler) {
     myRootsHandler = rootsHandler;
   }
@@ -58,28 +63,14 @@ public class DartServerData {
   void computedHighlights(@NotNull final String filePath, @NotNull final List<HighlightRegion> regions) {
     if (myFilePathsWithUnsentChanges.contains(filePath)) return;
 
-    final List<DartHighlightRegion> newRegions = new ArrayList<DartHighlightRegion>(regions.size());
-    for (HighlightRegion region : regions) {
-      if (region.getLength() > 0) {
-        newRegions.add(new DartHighlightRegion(region));
-      }
-    }
-
-    myHighlightData.put(filePath, newRegions);
+    myHighlightData.put(filePath, DartHighlightRegionTable.create(regions));
     forceFileAnnotation(filePath, false);
   }
 
   void computedNavigation(@NotNull final String filePath, @NotNull final List<NavigationRegion> regions) {
     if (myFilePathsWithUnsentChanges.contains(filePath)) return;
 
-    final List<DartNavigationRegion> newRegions = new ArrayList<DartNavigationRegion>(regions.size());
-    for (NavigationRegion region : regions) {
-      if (region.getLength() > 0) {
-        newRegions.add(new DartNavigationRegion(region));
-      }
-    }
-
-    myNavigationData.put(filePath, newRegions);
+    myNavigationData.put(filePath, DartNavigationRegionTable.create(regions));
     forceFileAnnotation(filePath, true);
   }
 
@@ -138,14 +129,36 @@ public class DartServerData {
 
   @NotNull
   List<DartHighlightRegion> getHighlight(@NotNull final VirtualFile file) {
-    final List<DartHighlightRegion> regions = myHighlightData.get(file.getPath());
-    return regions != null ? regions : Collections.<DartHighlightRegion>emptyList();
+    final DartHighlightRegionTable regions = myHighlightData.get(file.getPath());
+    return regions != null ? regions.toList() : Collections.<DartHighlightRegion>emptyList();
   }
 
   @NotNull
   List<DartNavigationRegion> getNavigation(@NotNull final VirtualFile file) {
-    final List<DartNavigationRegion> regions = myNavigationData.get(file.getPath());
-    return regions != null ? regions : Collections.<DartNavigationRegion>emptyList();
+    final DartNavigationRegionTable regions = myNavigationData.get(file.getPath());
+    return regions != null ? regions.toList() : Collections.<DartNavigationRegion>emptyList();
+  }
+
+  boolean hasHighlight(@NotNull final VirtualFile file) {
+    final DartHighlightRegionTable regions = myHighlightData.get(file.getPath());
+    return regions != null && !regions.isEmpty();
+  }
+
+  boolean hasNavigation(@NotNull final VirtualFile file) {
+    final DartNavigationRegionTable regions = myNavigationData.get(file.getPath());
+    return regions != null && !regions.isEmpty();
+  }
+
+  @Nullable
+  DartNavigationRegion findNavigationRegion(@NotNull final VirtualFile file, final int offset, final int length) {
+    final DartNavigationRegionTable regions = myNavigationData.get(file.getPath());
+    return regions != null ? regions.findRegion(offset, length) : null;
+  }
+
+  @Nullable
+  DartNavigationRegion findNavigationRegionContaining(@NotNull final VirtualFile file, final int offset) {
+    final DartNavigationRegionTable regions = myNavigationData.get(file.getPath());
+    return regions != null ? regions.findRegionContaining(offset) : null;
   }
 
   @NotNull
@@ -166,9 +179,37 @@ public class DartServerData {
     return classes != null ? classes : Collections.<DartRegion>emptyList();
   }
 
-  private void forceFileAnnotation(@NotNull final String filePath, final boolean clearCache) {
-    final VirtualFile virtualFile = LocalFileSystem.getInstance().findFileByPath(filePath);
-    if (virtualFile != null) {
+  void forceFileAnnotation(@NotNull final String filePath, final boolean clearCache) {
+    synchronized (myLock) {
+      myFilePathsToReannotate.add(filePath);
+      myClearResolveCache |= clearCache;
+    }
+  }
+
+  /**
+   * Restarts highlighting once for all files which data has changed since the previous call.
+   */
+  void restartHighlighting() {
+    final Set<String> filePaths;
+    final boolean clearCache;
+    synchronized (myLock) {
+      if (myFilePathsToReannotate.isEmpty()) return;
+
+      filePaths = new THashSet<String>(myFilePathsToReannotate);
+      clearCache = myClearResolveCache;
+      myFilePathsToReannotate.clear();
+      myClearResolveCache = false;
+    }
+
+    boolean fileExists = false;
+    for (String filePath : filePaths) {
+      if (LocalFileSystem.getInstance().findFileByPath(filePath) != null) {
+        fileExists = true;
+        break;
+      }
+    }
+
+    if (fileExists) {
       Set<Project> projects = myRootsHandler.getTrackedProjects();
       for (final Project project : projects) {
         if (project.isDisposed()) continue;
@@ -243,63 +284,31 @@ public class DartServerData {
     final String filePath = file.getPath();
     myFilePathsWithUnsentChanges.add(filePath);
 
-    updateRegionsDeletingTouched(filePath, myErrorData.get(filePath), e);
-    updateRegionsUpdatingTouched(myHighlightData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myNavigationData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myOverrideData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myImplementedClassData.get(filePath), e);
-    updateRegionsDeletingTouched(filePath, myImplementedMemberData.get(filePath), e);
-  }
-
-  private static void updateRegionsDeletingTouched(@NotNull final String filePath,
-                                                   @Nullable final List<? extends DartRegion> regions,
-                                                   @NotNull final DocumentEvent e) {
-    if (regions == null) return;
-
-    // delete touched regions, shift untouched
-    final int eventOffset = e.getOffset();
-    final int deltaLength = e.getNewLength() - e.getOldLength();
-
-    final Iterator<? extends DartRegion> iterator = regions.iterator();
-    while (iterator.hasNext()) {
-      final DartRegion region = iterator.next();
-
-      if (region instanceof DartNavigationRegion) {
-        // may be we'd better delete target touched by editing?
-        for (DartNavigationTarget target : ((DartNavigationRegion)region).getTargets()) {
-          if (target.myFile.equals(filePath) && target.myOffset >= eventOffset) {
-            target.myOffset += deltaLength;
-          }
-        }
-      }
+    updateRegionsDeletingTouched(myErrorData.get(filePath), e);
+    updateRegionsDeletingTouched(myOverrideData.get(filePath), e);
+    updateRegionsDeletingTouched(myImplementedClassData.get(filePath), e);
+    updateRegionsDeletingTouched(myImplementedMemberData.get(filePath), e);
 
-      if (deltaLength > 0) {
-        // Something was typed. Shift untouched regions, delete touched.
-        if (eventOffset <= region.myOffset) {
-          region.myOffset += deltaLength;
-        }
-        else if (region.myOffset < eventOffset && eventOffset < region.myOffset + region.myLength) {
-          iterator.remove();
-        }
+    synchronized (myHighlightData) {
+      final DartHighlightRegionTable regions = myHighlightData.get(filePath);
+      if (regions != null) {
+        myHighlightData.put(filePath, regions.updatedByDocumentChange(e));
       }
-      else if (deltaLength < 0) {
-        // Some text was deleted. Shift untouched regions, delete touched.
-        final int eventRightOffset = eventOffset - deltaLength;
+    }
 
-        if (eventRightOffset <= region.myOffset) {
-          region.myOffset += deltaLength;
-        }
-        else if (eventOffset < region.myOffset + region.myLength) {
-          iterator.remove();
-        }
+    synchronized (myNavigationData) {
+      final DartNavigationRegionTable regions = myNavigationData.get(filePath);
+      if (regions != null) {
+        myNavigationData.put(filePath, regions.updatedByDocumentChange(filePath, e));
       }
     }
   }
 
-  private static void updateRegionsUpdatingTouched(@Nullable final List<? extends DartRegion> regions,
+  private static void updateRegionsDeletingTouched(@Nullable final List<? extends DartRegion> regions,
                                                    @NotNull final DocumentEvent e) {
     if (regions == null) return;
 
+    // delete touched regions, shift untouched
     final int eventOffset = e.getOffset();
     final int deltaLength = e.getNewLength() - e.getOldLength();
 
@@ -308,26 +317,22 @@ public class DartServerData {
       final DartRegion region = iterator.next();
 
       if (deltaLength > 0) {
-        // Something was typed. Shift untouched regions, update touched.
+        // Something was typed. Shift untouched regions, delete touched.
         if (eventOffset <= region.myOffset) {
           region.myOffset += deltaLength;
         }
         else if (region.myOffset < eventOffset && eventOffset < region.myOffset + region.myLength) {
-          region.myLength += deltaLength;
+          iterator.remove();
         }
       }
       else if (deltaLength < 0) {
-        // Some text was deleted. Shift untouched regions, delete or update touched.
+        // Some text was deleted. Shift untouched regions, delete touched.
         final int eventRightOffset = eventOffset - deltaLength;
-        final int regionRightOffset = region.myOffset + region.myLength;
 
         if (eventRightOffset <= region.myOffset) {
           region.myOffset += deltaLength;
         }
-        else if (region.myOffset <= eventOffset && eventRightOffset <= regionRightOffset && region.myLength != -deltaLength) {
-          region.myLength += deltaLength;
-        }
-        else if (eventOffset < regionRightOffset) {
+        else if (eventOffset < region.myOffset + region.myLength) {
           iterator.remove();
         }
       }
@@ -366,9 +371,9 @@ public class DartServerData {
   public static class DartHighlightRegion extends DartRegion {
     private final String type;
 
-    private DartHighlightRegion(@NotNull final HighlightRegion region) {
-      super(region.getOffset(), region.getLength());
-      type = region.getType().intern();
+    DartHighlightRegion(final int offset, final int length, @NotNull final String type) {
+      super(offset, length);
+      this.type = type;
     }
 
     public String getType() {
@@ -425,6 +430,11 @@ public class DartServerData {
       }
     }
 
+    DartNavigationRegion(final int offset, final int length, @NotNull final List<DartNavigationTarget> targets) {
+      super(offset, length);
+      myTargets.addAll(targets);
+    }
+
     @Override
     public String toString() {
       return "DartNavigationRegion(" + myOffset + ", " + myLength + ")";
@@ -437,13 +447,17 @@ public class DartServerData {
 
   public static class DartNavigationTarget {
     private final String myFile;
-    private int myOffset;
+    private final int myOffset;
     private final String myKind;
 
     private DartNavigationTarget(@NotNull final NavigationTarget target) {
-      myFile = FileUtil.toSystemIndependentName(target.getFile()).intern();
-      myOffset = target.getOffset();
-      myKind = target.getKind().intern();
+      this(FileUtil.toSystemIndependentName(target.getFile()).intern(), target.getOffset(), target.getKind().intern());
+    }
+
+    DartNavigationTarget(@NotNull final String file, final int offset, @NotNull final String kind) {
+      myFile = file;
+      myOffset = offset;
+      myKind = kind;
     }
 
     public String getFile() {
@@ -0,0 +1,192 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Condition;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.Alarm;
+import com.intellij.util.Consumer;
+import org.dartlang.analysis.server.protocol.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stage between the analysis server notifications and {@link DartServerData}. During a burst of notifications (pub get, branch switch)
+ * it keeps only the latest notification per (file, kind), drops results for files that are not visible in editors any more and applies
+ * the rest in batches, so that highlighting is restarted once per batch instead of once per notification.
+ */
+class DartServerDataCoalescer {
+
+  private static final Logger LOG = Logger.getInstance(DartServerDataCoalescer.class.getName());
+
+  private static final int APPLY_PERIOD = 100;
+
+  private enum Kind {HIGHLIGHTS, NAVIGATION, OVERRIDES, IMPLEMENTED}
+
+  @NotNull private final DartServerData myServerData;
+  @NotNull private final Condition<String> myVisibleFileCondition;
+
+  @NotNull private final Consumer<Runnable> myApplyScheduler;
+
+  private final Object myLock = new Object(); // use this lock to access myScheduledData and myApplyScheduled
+  private final Map<Pair<Kind, String>, Runnable> myScheduledData = new LinkedHashMap<Pair<Kind, String>, Runnable>();
+  private boolean myApplyScheduled;
+
+  private final AtomicLong myReceivedCount = new AtomicLong();
+  private final AtomicLong myCoalescedCount = new AtomicLong();
+  private final AtomicLong myDroppedCount = new AtomicLong();
+  private final AtomicLong myAppliedCount = new AtomicLong();
+
+  private final Runnable myApplyRunnable = this::apply;
+
+  /**
+   * @param visibleFileCondition accepts system-independent paths of the files that are currently visible in editors
+   */
+  DartServerDataCoalescer(@NotNull final DartServerData serverData, @NotNull final Condition<String> visibleFileCondition) {
+    this(serverData, visibleFileCondition, createApplyScheduler());
+  }
+
+  /**
+   * @param applyScheduler runs the given batch apply later; it is not called again until the previously scheduled apply has started
+   */
+  DartServerDataCoalescer(@NotNull final DartServerData serverData,
+                          @NotNull final Condition<String> visibleFileCondition,
+                          @NotNull final Consumer<Runnable> applyScheduler) {
+    myServerData = serverData;
+    myVisibleFileCondition = visibleFileCondition;
+    myApplyScheduler = applyScheduler;
+  }
+
+  @NotNull
+  private static Consumer<Runnable> createApplyScheduler() {
+    if (ApplicationManager.getApplication().isUnitTestMode()) {
+      return Runnable::run;
+    }
+
+    final Alarm alarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, ApplicationManager.getApplication());
+    return runnable -> {
+      if (!alarm.isDisposed()) {
+        alarm.addRequest(runnable, APPLY_PERIOD);
+      }
+    };
+  }
+
+  void computedErrors(@NotNull final String filePath, @NotNull final List<AnalysisError> errors, final boolean visible) {
+    // errors are kept for all files, not only for visible, so they are applied at once; only highlighting restart is batched
+    myServerData.computedErrors(filePath, errors, visible);
+    if (visible) {
+      scheduleApply();
+    }
+  }
+
+  void computedHighlights(@NotNull final String filePath, @NotNull final List<HighlightRegion> regions) {
+    schedule(Kind.HIGHLIGHTS, filePath, () -> myServerData.computedHighlights(filePath, regions));
+  }
+
+  void computedNavigation(@NotNull final String filePath, @NotNull final List<NavigationRegion> regions) {
+    schedule(Kind.NAVIGATION, filePath, () -> myServerData.computedNavigation(filePath, regions));
+  }
+
+  void computedOverrides(@NotNull final String filePath, @NotNull final List<OverrideMember> overrides) {
+    schedule(Kind.OVERRIDES, filePath, () -> myServerData.computedOverrides(filePath, overrides));
+  }
+
+  void computedImplemented(@NotNull final String filePath,
+                           @NotNull final List<ImplementedClass> implementedClasses,
+                           @NotNull final List<ImplementedMember> implementedMembers) {
+    schedule(Kind.IMPLEMENTED, filePath, () -> myServerData.computedImplemented(filePath, implementedClasses, implementedMembers));
+  }
+
+  void onFlushedResults(@NotNull final List<String> filePaths) {
+    synchronized (myLock) {
+      for (String path : filePaths) {
+        final String filePath = FileUtil.toSystemIndependentName(path);
+        for (Kind kind : Kind.values()) {
+          myScheduledData.remove(Pair.create(kind, filePath));
+        }
+      }
+    }
+  }
+
+  void clear() {
+    synchronized (myLock) {
+      myScheduledData.clear();
+    }
+  }
+
+  long getReceivedCount() {
+    return myReceivedCount.get();
+  }
+
+  long getCoalescedCount() {
+    return myCoalescedCount.get();
+  }
+
+  long getDroppedCount() {
+    return myDroppedCount.get();
+  }
+
+  long getAppliedCount() {
+    return myAppliedCount.get();
+  }
+
+  private void schedule(@NotNull final Kind kind, @NotNull final String filePath, @NotNull final Runnable applyRunnable) {
+    myReceivedCount.incrementAndGet();
+
+    if (!myVisibleFileCondition.value(filePath)) {
+      myDroppedCount.incrementAndGet();
+      return;
+    }
+
+    synchronized (myLock) {
+      if (myScheduledData.remove(Pair.create(kind, filePath)) != null) {
+        myCoalescedCount.incrementAndGet();
+      }
+      myScheduledData.put(Pair.create(kind, filePath), applyRunnable);
+    }
+
+    scheduleApply();
+  }
+
+  private void scheduleApply() {
+    synchronized (myLock) {
+      if (myApplyScheduled) return;
+      myApplyScheduled = true;
+    }
+
+    myApplyScheduler.consume(myApplyRunnable);
+  }
+
+  private void apply() {
+    final List<Map.Entry<Pair<Kind, String>, Runnable>> entries;
+    synchronized (myLock) {
+      myApplyScheduled = false;
+      entries = new ArrayList<Map.Entry<Pair<Kind, String>, Runnable>>(myScheduledData.entrySet());
+      myScheduledData.clear();
+    }
+
+    for (Map.Entry<Pair<Kind, String>, Runnable> entry : entries) {
+      // the file might have been closed while the notification was waiting
+      if (myVisibleFileCondition.value(entry.getKey().second)) {
+        entry.getValue().run();
+        myAppliedCount.incrementAndGet();
+      }
+      else {
+        myDroppedCount.incrementAndGet();
+      }
+    }
+
+    myServerData.restartHighlighting();
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Analysis server notifications received: " + myReceivedCount.get() + ", coalesced: " + myCoalescedCount.get() +
+                ", dropped: " + myDroppedCount.get() + ", applied: " + myAppliedCount.get());
+    }
+  }
+}
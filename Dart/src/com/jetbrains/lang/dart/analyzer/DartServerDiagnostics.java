@@ -0,0 +1,154 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.google.dart.server.internal.remote.MessageStatistics;
+import com.google.dart.server.internal.remote.RequestLatencyHistogram;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.intellij.openapi.util.Pair;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * A snapshot of the analysis server instrumentation for the diagnostics tool window and for attaching to incident reports. For each
+ * request method it puts the round-trip time (from queueing the request to reading its response) next to the time the IDE spent
+ * processing the response, so that a slow server can be told apart from slow processing of the results in the IDE.
+ */
+public class DartServerDiagnostics {
+
+  public enum Kind {Request, Notification, IDE}
+
+  public static class Row {
+    @NotNull public final Kind kind;
+    @NotNull public final String name;
+    @Nullable public final RequestLatencyHistogram latencies;
+    @Nullable public final MessageStatistics messages;
+
+    private Row(@NotNull final Kind kind,
+                @NotNull final String name,
+                @Nullable final RequestLatencyHistogram latencies,
+                @Nullable final MessageStatistics messages) {
+      this.kind = kind;
+      this.name = name;
+      this.latencies = latencies;
+      this.messages = messages;
+    }
+  }
+
+  private final long myTimestamp;
+  @NotNull private final String mySdkVersion;
+  @NotNull private final String myServerVersion;
+  private final int myInFlightRequestCount;
+  private final int myMaxInFlightRequestCount;
+  @NotNull private final List<Row> myRows = new ArrayList<Row>();
+
+  DartServerDiagnostics(final long timestamp,
+                        @NotNull final String sdkVersion,
+                        @NotNull final String serverVersion,
+                        final int inFlightRequestCount,
+                        final int maxInFlightRequestCount,
+                        @NotNull final Map<String, RequestLatencyHistogram> requestLatencies,
+                        @NotNull final Map<String, MessageStatistics> responseStatistics,
+                        @NotNull final Map<String, MessageStatistics> notificationStatistics,
+                        @NotNull final Map<String, RequestLatencyHistogram> ideLatencies) {
+    myTimestamp = timestamp;
+    mySdkVersion = sdkVersion;
+    myServerVersion = serverVersion;
+    myInFlightRequestCount = inFlightRequestCount;
+    myMaxInFlightRequestCount = maxInFlightRequestCount;
+
+    final Set<String> methods = new TreeSet<String>(requestLatencies.keySet());
+    methods.addAll(responseStatistics.keySet());
+    for (String method : methods) {
+      myRows.add(new Row(Kind.Request, method, requestLatencies.get(method), responseStatistics.get(method)));
+    }
+    for (Map.Entry<String, MessageStatistics> entry : new TreeMap<String, MessageStatistics>(notificationStatistics).entrySet()) {
+      myRows.add(new Row(Kind.Notification, entry.getKey(), null, entry.getValue()));
+    }
+    for (Map.Entry<String, RequestLatencyHistogram> entry : new TreeMap<String, RequestLatencyHistogram>(ideLatencies).entrySet()) {
+      myRows.add(new Row(Kind.IDE, entry.getKey(), entry.getValue(), null));
+    }
+  }
+
+  @NotNull
+  public static DartServerDiagnostics collect() {
+    final DartAnalysisServerService service = DartAnalysisServerService.getInstance();
+    final Map<String, RequestLatencyHistogram> ideLatencies = new TreeMap<String, RequestLatencyHistogram>();
+    ideLatencies.putAll(service.getCompletionLatencies());
+    ideLatencies.putAll(service.getServerStartupLatencies());
+    final Pair<Integer, Integer> inFlightRequestCounts = service.getInFlightRequestCounts();
+
+    return new DartServerDiagnostics(System.currentTimeMillis(),
+                                     service.getSdkVersion(),
+                                     service.getServerVersion(),
+                                     inFlightRequestCounts.first,
+                                     inFlightRequestCounts.second,
+                                     service.getRequestLatencies(),
+                                     service.getResponseStatistics(),
+                                     service.getNotificationStatistics(),
+                                     ideLatencies);
+  }
+
+  @NotNull
+  public List<Row> getRows() {
+    return Collections.unmodifiableList(myRows);
+  }
+
+  public int getInFlightRequestCount() {
+    return myInFlightRequestCount;
+  }
+
+  public int getMaxInFlightRequestCount() {
+    return myMaxInFlightRequestCount;
+  }
+
+  @NotNull
+  public JsonObject toJson() {
+    final JsonObject result = new JsonObject();
+    result.addProperty("timestamp", myTimestamp);
+    result.addProperty("sdkVersion", mySdkVersion);
+    result.addProperty("serverVersion", myServerVersion);
+    result.addProperty("inFlightRequests", myInFlightRequestCount);
+    result.addProperty("maxInFlightRequests", myMaxInFlightRequestCount);
+
+    final JsonObject requests = new JsonObject();
+    final JsonObject notifications = new JsonObject();
+    final JsonObject ide = new JsonObject();
+    for (Row row : myRows) {
+      final JsonObject json = new JsonObject();
+      if (row.latencies != null) {
+        addLatencies(json, row.latencies);
+      }
+      if (row.messages != null) {
+        json.addProperty("messages", row.messages.getCount());
+        json.addProperty("totalLength", row.messages.getTotalLength());
+        json.addProperty("maxLength", row.messages.getMaxLength());
+        final JsonObject processing = new JsonObject();
+        addLatencies(processing, row.messages.getProcessingTimes());
+        json.add("processing", processing);
+      }
+      (row.kind == Kind.Request ? requests : row.kind == Kind.Notification ? notifications : ide).add(row.name, json);
+    }
+    result.add("requests", requests);
+    result.add("notifications", notifications);
+    result.add("ide", ide);
+    return result;
+  }
+
+  @NotNull
+  public String toJsonText() {
+    return new GsonBuilder().setPrettyPrinting().create().toJson(toJson());
+  }
+
+  private static void addLatencies(@NotNull final JsonObject json, @NotNull final RequestLatencyHistogram histogram) {
+    json.addProperty("count", histogram.getCount());
+    json.addProperty("meanMs", histogram.getMeanMillis());
+    json.addProperty("p50Ms", histogram.getPercentileMillis(0.5));
+    json.addProperty("p95Ms", histogram.getPercentileMillis(0.95));
+    json.addProperty("p99Ms", histogram.getPercentileMillis(0.99));
+    json.addProperty("maxMs", histogram.getMaxMillis());
+    json.addProperty("cancelled", histogram.getCancelledCount());
+    json.addProperty("timedOut", histogram.getTimedOutCount());
+  }
+}
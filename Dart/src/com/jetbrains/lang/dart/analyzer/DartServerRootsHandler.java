@@ -3,6 +3,7 @@ package com.jetbrains.lang.dart.analyzer;
 import com.intellij.ProjectTopics;
 import com.intellij.codeInspection.SmartHashMap;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
@@ -16,6 +17,7 @@ import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.search.FilenameIndex;
+import com.intellij.util.Alarm;
 import com.intellij.util.PathUtil;
 import com.intellij.util.SmartList;
 import com.intellij.util.messages.MessageBusConnection;
@@ -23,11 +25,13 @@ import com.jetbrains.lang.dart.DartProjectComponent;
 import com.jetbrains.lang.dart.sdk.DartConfigurable;
 import com.jetbrains.lang.dart.sdk.DartSdk;
 import com.jetbrains.lang.dart.sdk.DartSdkGlobalLibUtil;
+import com.jetbrains.lang.dart.util.DotPackagesFileUtil;
 import gnu.trove.THashMap;
 import gnu.trove.THashSet;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -35,12 +39,60 @@ import java.util.Set;
 import static com.jetbrains.lang.dart.util.PubspecYamlUtil.PUBSPEC_YAML;
 
 public class DartServerRootsHandler {
+  private static final Logger LOG = Logger.getInstance(DartServerRootsHandler.class.getName());
+
+  private static final int ROOTS_UPDATE_DELAY = 300;
+
   private final Set<Project> myTrackedProjects = new THashSet<Project>();
   private final List<String> myIncludedRoots = new SmartList<String>();
   private final List<String> myExcludedRoots = new SmartList<String>();
   private final Map<String, String> myPackageRoots = new THashMap<String, String>();
 
+  // Roots of a module are calculated again only if its content entries, excluded folders, pubspec.yaml files or .packages files have
+  // changed. The latter two decide which excluded folders are package symlinks, so their paths and modification stamps are in the key.
+  private final Map<Module, ModuleRoots> myModuleRoots = new THashMap<Module, ModuleRoots>();
+  private int myCalculatedModulesCount;
+  private int myReusedModulesCount;
+
+  // bursts of rootsChanged events (VCS update, pub get in several packages) result in a single roots update
+  private final Alarm myUpdateRootsAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, ApplicationManager.getApplication());
+  private final int myUpdateRootsDelay;
+
+  @NotNull private final AnalysisRootsSender myRootsSender;
+
+  interface AnalysisRootsSender {
+    /**
+     * @return {@code false} if the roots have not been sent, for example because the server is not running
+     */
+    boolean setAnalysisRoots(@NotNull List<String> includedRoots,
+                             @NotNull List<String> excludedRoots,
+                             @NotNull Map<String, String> packageRoots);
+  }
+
+  private static class ModuleRoots {
+    @NotNull private final List<String> myKey;
+    @NotNull private final List<String> myIncludedRoots;
+    @NotNull private final List<String> myExcludedRoots;
+
+    private ModuleRoots(@NotNull final List<String> key,
+                        @NotNull final List<String> includedRoots,
+                        @NotNull final List<String> excludedRoots) {
+      myKey = key;
+      myIncludedRoots = includedRoots;
+      myExcludedRoots = excludedRoots;
+    }
+  }
+
   public DartServerRootsHandler() {
+    this(ApplicationManager.getApplication().isUnitTestMode() ? 0 : ROOTS_UPDATE_DELAY,
+         (includedRoots, excludedRoots, packageRoots) -> DartAnalysisServerService.getInstance()
+           .updateRoots(includedRoots, excludedRoots, packageRoots));
+  }
+
+  DartServerRootsHandler(final int updateRootsDelay, @NotNull final AnalysisRootsSender rootsSender) {
+    myUpdateRootsDelay = updateRootsDelay;
+    myRootsSender = rootsSender;
+
     // ProjectManagerListener.projectClosed() is not called in unittest mode, that's why ProjectLifecycleListener is used - it is called always
     final MessageBusConnection busConnection = ApplicationManager.getApplication().getMessageBus().connect();
     busConnection.subscribe(ProjectLifecycleListener.TOPIC, new ProjectLifecycleListener.Adapter() {
@@ -58,9 +110,26 @@ public class DartServerRootsHandler {
   }
 
   public void reset() {
+    myUpdateRootsAlarm.cancelAllRequests();
     myTrackedProjects.clear();
     myIncludedRoots.clear();
     myExcludedRoots.clear();
+    myModuleRoots.clear();
+  }
+
+  @NotNull
+  List<String> getIncludedRoots() {
+    return new ArrayList<String>(myIncludedRoots);
+  }
+
+  @NotNull
+  List<String> getExcludedRoots() {
+    return new ArrayList<String>(myExcludedRoots);
+  }
+
+  @NotNull
+  Map<String, String> getPackageRoots() {
+    return new THashMap<String, String>(myPackageRoots);
   }
 
   public void ensureProjectServed(@NotNull final Project project) {
@@ -79,7 +148,7 @@ public class DartServerRootsHandler {
     project.getMessageBus().connect().subscribe(ProjectTopics.PROJECT_ROOTS, new ModuleRootAdapter() {
       @Override
       public void rootsChanged(final ModuleRootEvent event) {
-        updateRoots();
+        scheduleUpdateRoots();
       }
     });
   }
@@ -88,7 +157,35 @@ public class DartServerRootsHandler {
     return myTrackedProjects;
   }
 
-  private void updateRoots() {
+  int getCalculatedModulesCount() {
+    return myCalculatedModulesCount;
+  }
+
+  int getReusedModulesCount() {
+    return myReusedModulesCount;
+  }
+
+  void scheduleUpdateRoots() {
+    if (myUpdateRootsDelay <= 0) {
+      updateRoots();
+      return;
+    }
+
+    myUpdateRootsAlarm.cancelAllRequests();
+    myUpdateRootsAlarm.addRequest(this::updateRoots, myUpdateRootsDelay);
+  }
+
+  boolean isUpdateRootsScheduled() {
+    return !myUpdateRootsAlarm.isEmpty();
+  }
+
+  void updateRoots() {
+    myUpdateRootsAlarm.cancelAllRequests(); // scheduled update is not needed any more
+
+    final long start = System.currentTimeMillis();
+    int calculatedModulesCount = 0;
+    int reusedModulesCount = 0;
+
     final DartSdk sdk = DartSdk.getGlobalDartSdk();
     if (sdk == null || !DartAnalysisServerService.isDartSdkVersionSufficient(sdk)) {
       DartAnalysisServerService.getInstance().stopServer();
@@ -97,9 +194,12 @@ public class DartServerRootsHandler {
     final List<String> newIncludedRoots = new SmartList<String>();
     final List<String> newExcludedRoots = new SmartList<String>();
     final Map<String, String> newPackageRoots = new SmartHashMap<String, String>();
+    final Map<Module, ModuleRoots> newModuleRoots = new THashMap<Module, ModuleRoots>();
 
     if (sdk != null) {
       for (Project project : myTrackedProjects) {
+        if (project.isDisposed()) continue;
+
         @SuppressWarnings("ConstantConditions")
         final String dotIdeaPath = PathUtil.getParentPath(project.getProjectFilePath());
         if (dotIdeaPath.endsWith("/.idea")) {
@@ -109,39 +209,108 @@ public class DartServerRootsHandler {
         for (Module module : DartSdkGlobalLibUtil.getModulesWithDartSdkEnabled(project)) {
           newPackageRoots.putAll(DartConfigurable.getContentRootPathToCustomPackageRootMap(module));
 
-          final Set<String> excludedPackageSymlinkUrls = getExcludedPackageSymlinkUrls(module);
-
-          for (ContentEntry contentEntry : ModuleRootManager.getInstance(module).getContentEntries()) {
-            newIncludedRoots.add(FileUtil.toSystemDependentName(VfsUtilCore.urlToPath(contentEntry.getUrl())));
+          final ContentEntry[] contentEntries = ModuleRootManager.getInstance(module).getContentEntries();
+          final List<VirtualFile> pubspecYamlFiles = getPubspecYamlFiles(module);
+          final List<String> key = getModuleRootsKey(sdk, contentEntries, pubspecYamlFiles);
 
-            for (String excludedUrl : contentEntry.getExcludeFolderUrls()) {
-              if (!excludedPackageSymlinkUrls.contains(excludedUrl)) {
-                newExcludedRoots.add(FileUtil.toSystemDependentName(VfsUtilCore.urlToPath(excludedUrl)));
-              }
-            }
+          ModuleRoots moduleRoots = myModuleRoots.get(module);
+          if (moduleRoots != null && moduleRoots.myKey.equals(key)) {
+            reusedModulesCount++;
+          }
+          else {
+            moduleRoots = calculateModuleRoots(module, contentEntries, pubspecYamlFiles, key);
+            calculatedModulesCount++;
           }
+
+          newModuleRoots.put(module, moduleRoots);
+          newIncludedRoots.addAll(moduleRoots.myIncludedRoots);
+          newExcludedRoots.addAll(moduleRoots.myExcludedRoots);
         }
       }
     }
 
+    // modules that were removed or lost Dart support are forgotten
+    myModuleRoots.clear();
+    myModuleRoots.putAll(newModuleRoots);
+    myCalculatedModulesCount += calculatedModulesCount;
+    myReusedModulesCount += reusedModulesCount;
+
+    boolean rootsSent = false;
+
     if (!myIncludedRoots.equals(newIncludedRoots) || !myExcludedRoots.equals(newExcludedRoots) || !myPackageRoots.equals(newPackageRoots)) {
       myIncludedRoots.clear();
       myExcludedRoots.clear();
       myPackageRoots.clear();
 
-      if (DartAnalysisServerService.getInstance().updateRoots(newIncludedRoots, newExcludedRoots, newPackageRoots)) {
+      if (myRootsSender.setAnalysisRoots(newIncludedRoots, newExcludedRoots, newPackageRoots)) {
         myIncludedRoots.addAll(newIncludedRoots);
         myExcludedRoots.addAll(newExcludedRoots);
         myPackageRoots.putAll(newPackageRoots);
+        rootsSent = true;
       }
     }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Analysis roots updated in " + (System.currentTimeMillis() - start) + " ms, modules calculated: " +
+                calculatedModulesCount + ", reused: " + reusedModulesCount + ", roots sent to server: " + rootsSent);
+    }
   }
 
-  private static Set<String> getExcludedPackageSymlinkUrls(@NotNull final Module module) {
-    final Set<String> result = new THashSet<String>();
+  @NotNull
+  private static List<VirtualFile> getPubspecYamlFiles(@NotNull final Module module) {
+    final List<VirtualFile> pubspecYamlFiles =
+      new ArrayList<VirtualFile>(FilenameIndex.getVirtualFilesByName(module.getProject(), PUBSPEC_YAML, module.getModuleContentScope()));
+    // the index doesn't guarantee any order, the key must not depend on it
+    Collections.sort(pubspecYamlFiles, (file1, file2) -> file1.getPath().compareTo(file2.getPath()));
+    return pubspecYamlFiles;
+  }
 
-    final Collection<VirtualFile> pubspecYamlFiles =
-      FilenameIndex.getVirtualFilesByName(module.getProject(), PUBSPEC_YAML, module.getModuleContentScope());
+  @NotNull
+  private static List<String> getModuleRootsKey(@NotNull final DartSdk sdk,
+                                                @NotNull final ContentEntry[] contentEntries,
+                                                @NotNull final List<VirtualFile> pubspecYamlFiles) {
+    final List<String> key = new ArrayList<String>();
+    key.add(sdk.getVersion());
+    for (ContentEntry contentEntry : contentEntries) {
+      key.add(contentEntry.getUrl());
+      Collections.addAll(key, contentEntry.getExcludeFolderUrls());
+      key.add(""); // separates content entries
+    }
+    for (VirtualFile pubspecYamlFile : pubspecYamlFiles) {
+      key.add(pubspecYamlFile.getPath());
+      key.add(String.valueOf(pubspecYamlFile.getModificationStamp()));
+      final VirtualFile parent = pubspecYamlFile.getParent();
+      final VirtualFile dotPackagesFile = parent == null ? null : parent.findChild(DotPackagesFileUtil.DOT_PACKAGES);
+      key.add(dotPackagesFile == null ? "" : String.valueOf(dotPackagesFile.getModificationStamp()));
+    }
+    return key;
+  }
+
+  @NotNull
+  private static ModuleRoots calculateModuleRoots(@NotNull final Module module,
+                                                  @NotNull final ContentEntry[] contentEntries,
+                                                  @NotNull final List<VirtualFile> pubspecYamlFiles,
+                                                  @NotNull final List<String> key) {
+    final List<String> includedRoots = new SmartList<String>();
+    final List<String> excludedRoots = new SmartList<String>();
+    final Set<String> excludedPackageSymlinkUrls = getExcludedPackageSymlinkUrls(module, pubspecYamlFiles);
+
+    for (ContentEntry contentEntry : contentEntries) {
+      includedRoots.add(FileUtil.toSystemDependentName(VfsUtilCore.urlToPath(contentEntry.getUrl())));
+
+      for (String excludedUrl : contentEntry.getExcludeFolderUrls()) {
+        if (!excludedPackageSymlinkUrls.contains(excludedUrl)) {
+          excludedRoots.add(FileUtil.toSystemDependentName(VfsUtilCore.urlToPath(excludedUrl)));
+        }
+      }
+    }
+
+    return new ModuleRoots(key, includedRoots, excludedRoots);
+  }
+
+  private static Set<String> getExcludedPackageSymlinkUrls(@NotNull final Module module,
+                                                          @NotNull final List<VirtualFile> pubspecYamlFiles) {
+    final Set<String> result = new THashSet<String>();
 
     final DartSdk sdk = DartSdk.getDartSdk(module.getProject());
     boolean withRootPackagesFolder = sdk != null && StringUtil.compareVersionNumbers(sdk.getVersion(), "1.12") >= 0;
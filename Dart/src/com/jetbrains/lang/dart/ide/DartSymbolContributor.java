@@ -5,10 +5,10 @@ import com.intellij.navigation.NavigationItem;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.jetbrains.lang.dart.ide.index.DartSymbolIndex;
-import com.jetbrains.lang.dart.psi.DartComponentName;
+import gnu.trove.THashSet;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Collection;
+import java.util.Set;
 
 public class DartSymbolContributor implements ChooseByNameContributor {
   @NotNull
@@ -25,7 +25,11 @@ public class DartSymbolContributor implements ChooseByNameContributor {
                                          @NotNull final Project project,
                                          final boolean includeNonProjectItems) {
     final GlobalSearchScope scope = includeNonProjectItems ? GlobalSearchScope.allScope(project) : GlobalSearchScope.projectScope(project);
-    final Collection<DartComponentName> result = DartSymbolIndex.getItemsByName(name, project, scope);
-    return result.toArray(new NavigationItem[result.size()]);
+    final Set<NavigationItem> result = new THashSet<NavigationItem>();
+    DartSymbolIndex.processSymbols(name, scope, (file, info) -> {
+      result.add(new DartSymbolNavigationItem(project, name, file, info));
+      return true;
+    });
+    return result.isEmpty() ? NavigationItem.EMPTY_NAVIGATION_ITEM_ARRAY : result.toArray(new NavigationItem[result.size()]);
   }
 }
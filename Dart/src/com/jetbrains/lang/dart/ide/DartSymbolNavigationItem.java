@@ -0,0 +1,101 @@
+package com.jetbrains.lang.dart.ide;
+
+import com.intellij.navigation.ItemPresentation;
+import com.intellij.navigation.PsiElementNavigationItem;
+import com.intellij.openapi.fileEditor.OpenFileDescriptor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.jetbrains.lang.dart.DartComponentType;
+import com.jetbrains.lang.dart.ide.index.DartSymbolIndex;
+import com.jetbrains.lang.dart.ide.index.DartSymbolInfo;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+
+/**
+ * Go to Symbol item built from {@link DartSymbolIndex} data. PSI is loaded only if the target element is requested explicitly.
+ */
+public class DartSymbolNavigationItem implements PsiElementNavigationItem, ItemPresentation {
+  @NotNull private final Project myProject;
+  @NotNull private final String myName;
+  @NotNull private final VirtualFile myFile;
+  @NotNull private final DartSymbolInfo myInfo;
+
+  public DartSymbolNavigationItem(@NotNull final Project project,
+                                  @NotNull final String name,
+                                  @NotNull final VirtualFile file,
+                                  @NotNull final DartSymbolInfo info) {
+    myProject = project;
+    myName = name;
+    myFile = file;
+    myInfo = info;
+  }
+
+  @NotNull
+  @Override
+  public String getName() {
+    return myName;
+  }
+
+  @NotNull
+  @Override
+  public ItemPresentation getPresentation() {
+    return this;
+  }
+
+  @Nullable
+  @Override
+  public PsiElement getTargetElement() {
+    return myFile.isValid() ? DartSymbolIndex.findComponentName(myProject, myFile, myInfo) : null;
+  }
+
+  @Override
+  public void navigate(final boolean requestFocus) {
+    new OpenFileDescriptor(myProject, myFile, myInfo.getOffset()).navigate(requestFocus);
+  }
+
+  @Override
+  public boolean canNavigate() {
+    return myFile.isValid();
+  }
+
+  @Override
+  public boolean canNavigateToSource() {
+    return canNavigate();
+  }
+
+  @NotNull
+  @Override
+  public String getPresentableText() {
+    return myName;
+  }
+
+  @Nullable
+  @Override
+  public String getLocationString() {
+    return myInfo.getContainerName() != null ? myInfo.getContainerName() : myInfo.getLibraryName();
+  }
+
+  @Nullable
+  @Override
+  public Icon getIcon(final boolean unused) {
+    final DartComponentType type = myInfo.getComponentType();
+    return type == null ? null : type.getIcon();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    final DartSymbolNavigationItem item = (DartSymbolNavigationItem)o;
+    return myName.equals(item.myName) && myFile.equals(item.myFile) && myInfo.getOffset() == item.myInfo.getOffset();
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * myName.hashCode() + myFile.hashCode()) + myInfo.getOffset();
+  }
+}
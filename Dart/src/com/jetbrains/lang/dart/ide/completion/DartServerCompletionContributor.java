@@ -55,15 +55,28 @@ public class DartServerCompletionContributor extends CompletionContributor {
                final DartSdk sdk = DartSdk.getDartSdk(project);
                if (sdk == null || !DartAnalysisServerService.isDartSdkVersionSufficient(sdk)) return;
 
+               final String uriPrefix = getPrefixIfCompletingUri(parameters);
+               final CompletionResultSet resultSet = uriPrefix != null ? originalResultSet.withPrefixMatcher(uriPrefix) : originalResultSet;
+
+               // Suggestions of the previous request at the same identifier start are reused while the user is typing this identifier,
+               // the result set filters them by the new prefix. Not applicable to URIs because they are not identifiers.
+               final long documentStamp = parameters.getEditor().getDocument().getModificationStamp();
+               final int identifierStart = uriPrefix != null ? -1 : parameters.getOffset() - resultSet.getPrefixMatcher().getPrefix().length();
+               final List<CompletionSuggestion> cachedSuggestions = identifierStart < 0 ? null :
+                 DartAnalysisServerService.getInstance().getCachedCompletions(file.getPath(), identifierStart, documentStamp);
+               if (cachedSuggestions != null) {
+                 for (CompletionSuggestion suggestion : cachedSuggestions) {
+                   resultSet.addElement(createLookupElement(project, suggestion));
+                 }
+                 return;
+               }
+
                DartAnalysisServerService.getInstance().updateFilesContent();
 
-               final String completionId =
-                 DartAnalysisServerService.getInstance().completion_getSuggestions(file.getPath(), parameters.getOffset());
+               final String completionId = DartAnalysisServerService.getInstance()
+                 .completion_getSuggestions(file.getPath(), parameters.getOffset(), identifierStart, documentStamp);
                if (completionId == null) return;
 
-               final String uriPrefix = getPrefixIfCompletingUri(parameters);
-               final CompletionResultSet resultSet = uriPrefix != null ? originalResultSet.withPrefixMatcher(uriPrefix) : originalResultSet;
-
                DartAnalysisServerService.getInstance().addCompletions(completionId, suggestion -> {
                  final LookupElement lookupElement = createLookupElement(project, suggestion);
                  resultSet.addElement(lookupElement);
@@ -57,7 +57,7 @@ public class DartProblem {
     return mySystemIndependentPath;
   }
 
-  private void ensureInitialized() {
+  void ensureInitialized() {
     if (myPresentableLocationWithoutLineNumber != null) return;
 
     // temporary final vars guarantee that vars are initialized before this method exits
@@ -22,6 +22,9 @@ import java.util.List;
 
 class DartProblemsTableModel extends ListTableModel<DartProblem> {
 
+  // updates for more files are applied with a single fireTableDataChanged() call, so that the row sorter sorts all rows once
+  private static final int BULK_UPDATE_FILES_COUNT = 100;
+
   private static final TableCellRenderer MESSAGE_RENDERER = new DefaultTableCellRenderer() {
     @Override
     public JLabel getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
@@ -54,7 +57,8 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
   @NotNull private final DartProblemsFilter myFilter;
 
   // Kind of hack to keep a reference to the live collection used in a super class, but it allows to improve performance greatly.
-  // Having it in hands we can do bulk rows removal with a single fireTableRowsDeleted() call afterwards
+  // Having it in hands we can replace all rows of a file with a single fireTableRowsDeleted() and fireTableRowsInserted() calls afterwards.
+  // Items are ordered by file path, problems of the same file are stored continuously.
   private final List<DartProblem> myItems;
 
   private boolean myGroupBySeverity = true;
@@ -146,21 +150,6 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
     return false;
   }
 
-  public void removeRows(final int firstRow, final int lastRow) {
-    assert lastRow >= firstRow;
-
-    for (int i = lastRow; i >= firstRow; i--) {
-      final DartProblem removed = myItems.remove(i);
-
-      if (AnalysisErrorSeverity.ERROR.equals(removed.getSeverity())) myErrorCount--;
-      if (AnalysisErrorSeverity.WARNING.equals(removed.getSeverity())) myWarningCount--;
-      if (AnalysisErrorSeverity.INFO.equals(removed.getSeverity())) myHintCount--;
-      updateProblemsCountAfterFilter(removed, false);
-    }
-
-    fireTableRowsDeleted(firstRow, lastRow);
-  }
-
   public void removeAll() {
     final int rowCount = getRowCount();
     if (rowCount > 0) {
@@ -177,121 +166,117 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
   }
 
   /**
-   * If <code>selectedProblem</code> was removed and similar one added again then this method returns the added one,
-   * so that the caller could update selected row in the table
+   * Creates problems for the errors that the analysis server reported for the file. Doesn't need EDT but should be called in a read action:
+   * it also resolves the problem locations (file, package root, presentable path), so that sorting and filtering of the table in EDT
+   * only compare already calculated values.
    */
-  @Nullable
-  public DartProblem setErrorsAndReturnReplacementForSelection(@NotNull final Map<String, List<AnalysisError>> filePathToErrors,
-                                                               @Nullable final DartProblem selectedProblem) {
-    final boolean selectedProblemRemoved = removeRowsForFilesInSet(filePathToErrors.keySet(), selectedProblem);
-    return addErrorsAndReturnReplacementForSelection(filePathToErrors, selectedProblemRemoved ? selectedProblem : null);
+  @NotNull
+  static List<DartProblem> createProblems(@NotNull final Project project,
+                                          @NotNull final String filePath,
+                                          @NotNull final List<AnalysisError> errors) {
+    final List<DartProblem> problems = new ArrayList<DartProblem>(errors.size());
+    for (AnalysisError analysisError : errors) {
+      if (DartAnnotator.shouldIgnoreMessageFromDartAnalyzer(filePath, analysisError.getType(), analysisError.getLocation().getFile())) {
+        continue;
+      }
+
+      final DartProblem problem = new DartProblem(project, analysisError);
+      problem.ensureInitialized();
+      problems.add(problem);
+    }
+    return problems;
   }
 
-  private boolean removeRowsForFilesInSet(@NotNull final Set<String> filePaths, @Nullable final DartProblem selectedProblem) {
-    // Looks for regions in table items that should be removed and removes them.
-    // For performance reasons we try to call removeRows() as rare as possible, that means with regions as big as possible.
-    // Logic is based on the fact that all errors for each particular file are stored continuously in the myItems model
+  /**
+   * Replaces problems for each file from <code>filePathToProblems</code>. Rows of each file are stored continuously in the myItems model
+   * and files are ordered by path, so rows of a file are found with a binary search and replaced with a single deletion and a single
+   * insertion event that the row sorter applies incrementally. Big updates (initial analysis, pub get) are applied with a single
+   * fireTableDataChanged() call instead, so that rows are sorted once.
+   * <p/>
+   * If <code>selectedProblem</code> was removed and similar one added again then this method returns the added one,
+   * so that the caller could update selected row in the table. After a big update table selection is lost, so in this case
+   * <code>selectedProblem</code> itself is returned if it is still in the table.
+   */
+  @Nullable
+  public DartProblem setProblemsAndReturnReplacementForSelection(@NotNull final Map<String, List<DartProblem>> filePathToProblems,
+                                                                 @Nullable final DartProblem selectedProblem) {
+    ApplicationManager.getApplication().assertIsDispatchThread();
 
-    boolean selectedProblemRemoved = false;
+    final boolean bulkUpdate = filePathToProblems.size() > BULK_UPDATE_FILES_COUNT;
+    final boolean selectedProblemRemoved =
+      selectedProblem != null && filePathToProblems.containsKey(selectedProblem.getSystemIndependentPath());
+    DartProblem newSelectedProblem = null;
 
-    int matchedFilesCount = 0;
+    for (Map.Entry<String, List<DartProblem>> entry : filePathToProblems.entrySet()) {
+      final String filePath = entry.getKey();
+      final List<DartProblem> problems = entry.getValue();
 
-    for (int i = getRowCount() - 1; i >= 0; i--) {
-      final DartProblem problem = getItem(i);
-      if (filePaths.contains(problem.getSystemIndependentPath())) {
-        matchedFilesCount++;
-        final int lastRowToDelete = i;
+      final int firstRow = findFirstRowForFile(filePath);
+      int endRow = firstRow;
+      while (endRow < myItems.size() && filePath.equals(myItems.get(endRow).getSystemIndependentPath())) {
+        updateProblemsCount(myItems.get(endRow), false);
+        endRow++;
+      }
 
-        if (problem == selectedProblem) {
-          selectedProblemRemoved = true;
+      if (endRow > firstRow) {
+        myItems.subList(firstRow, endRow).clear();
+        if (!bulkUpdate) {
+          fireTableRowsDeleted(firstRow, endRow - 1);
         }
+      }
 
-        DartProblem lastProblemForCurrentFile = problem;
-
-        int j = i - 1;
-        while (j >= 0) {
-          final DartProblem previousProblem = getItem(j);
-
-          if (previousProblem.getSystemIndependentPath().equals(lastProblemForCurrentFile.getSystemIndependentPath())) {
-            // previousProblem should be removed from the table as well
-            j--;
-
-            if (previousProblem == selectedProblem) {
-              selectedProblemRemoved = true;
-            }
-
-            continue;
-          }
-
-          if (filePaths.contains(previousProblem.getSystemIndependentPath())) {
-            matchedFilesCount++;
-            // continue iterating the table because we met a range of problems for another file that also should be removed
-            lastProblemForCurrentFile = previousProblem;
-            j--;
-
-            if (previousProblem == selectedProblem) {
-              selectedProblemRemoved = true;
-            }
-
-            continue;
-          }
-
-          break;
+      if (!problems.isEmpty()) {
+        myItems.addAll(firstRow, problems);
+        for (DartProblem problem : problems) {
+          updateProblemsCount(problem, true);
         }
-
-        final int firstRowToDelete = j + 1;
-        removeRows(firstRowToDelete, lastRowToDelete);
-
-        if (matchedFilesCount == filePaths.size()) {
-          break;
+        if (!bulkUpdate) {
+          fireTableRowsInserted(firstRow, firstRow + problems.size() - 1);
         }
+      }
 
-        //noinspection AssignmentToForLoopParameter
-        i = j + 1; // rewind according to the amount of removed rows
+      if (selectedProblemRemoved && filePath.equals(selectedProblem.getSystemIndependentPath())) {
+        newSelectedProblem = findReplacement(problems, selectedProblem);
       }
     }
 
-    return selectedProblemRemoved;
-  }
-
-  @Nullable
-  private DartProblem addErrorsAndReturnReplacementForSelection(@NotNull final Map<String, List<AnalysisError>> filePathToErrors,
-                                                                @Nullable final DartProblem oldSelectedProblem) {
-    DartProblem newSelectedProblem = null;
-
-    final List<DartProblem> problemsToAdd = new ArrayList<DartProblem>();
-    for (Map.Entry<String, List<AnalysisError>> entry : filePathToErrors.entrySet()) {
-      final String filePath = entry.getKey();
-      final List<AnalysisError> errors = entry.getValue();
-
-      for (AnalysisError analysisError : errors) {
-        if (DartAnnotator.shouldIgnoreMessageFromDartAnalyzer(filePath, analysisError.getType(), analysisError.getLocation().getFile())) {
-          continue;
-        }
-
-        final DartProblem problem = new DartProblem(myProject, analysisError);
-        problemsToAdd.add(problem);
+    if (bulkUpdate) {
+      fireTableDataChanged();
+      if (selectedProblem != null && !selectedProblemRemoved) {
+        return selectedProblem;
+      }
+    }
 
-        if (oldSelectedProblem != null &&
-            lookSimilar(problem, oldSelectedProblem) &&
-            (newSelectedProblem == null ||
-             // check if current problem is closer to oldSelectedProblem
-             (Math.abs(oldSelectedProblem.getLineNumber() - newSelectedProblem.getLineNumber()) >=
-              Math.abs(oldSelectedProblem.getLineNumber() - problem.getLineNumber())))) {
-          newSelectedProblem = problem;
-        }
+    return newSelectedProblem;
+  }
 
-        if (AnalysisErrorSeverity.ERROR.equals(problem.getSeverity())) myErrorCount++;
-        if (AnalysisErrorSeverity.WARNING.equals(problem.getSeverity())) myWarningCount++;
-        if (AnalysisErrorSeverity.INFO.equals(problem.getSeverity())) myHintCount++;
-        updateProblemsCountAfterFilter(problem, true);
+  private int findFirstRowForFile(@NotNull final String filePath) {
+    int low = 0;
+    int high = myItems.size();
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (myItems.get(mid).getSystemIndependentPath().compareTo(filePath) < 0) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
       }
     }
+    return low;
+  }
 
-    if (!problemsToAdd.isEmpty()) {
-      addRows(problemsToAdd);
+  @Nullable
+  private static DartProblem findReplacement(@NotNull final List<DartProblem> problems, @NotNull final DartProblem oldSelectedProblem) {
+    DartProblem newSelectedProblem = null;
+    for (DartProblem problem : problems) {
+      if (lookSimilar(problem, oldSelectedProblem) &&
+          (newSelectedProblem == null ||
+           // check if current problem is closer to oldSelectedProblem
+           (Math.abs(oldSelectedProblem.getLineNumber() - newSelectedProblem.getLineNumber()) >=
+            Math.abs(oldSelectedProblem.getLineNumber() - problem.getLineNumber())))) {
+        newSelectedProblem = problem;
+      }
     }
-
     return newSelectedProblem;
   }
 
@@ -301,6 +286,14 @@ class DartProblemsTableModel extends ListTableModel<DartProblem> {
            problem1.getSystemIndependentPath().equals(problem2.getSystemIndependentPath());
   }
 
+  private void updateProblemsCount(@NotNull final DartProblem problem, final boolean incrementNotDecrement) {
+    final int delta = incrementNotDecrement ? 1 : -1;
+    if (AnalysisErrorSeverity.ERROR.equals(problem.getSeverity())) myErrorCount += delta;
+    if (AnalysisErrorSeverity.WARNING.equals(problem.getSeverity())) myWarningCount += delta;
+    if (AnalysisErrorSeverity.INFO.equals(problem.getSeverity())) myHintCount += delta;
+    updateProblemsCountAfterFilter(problem, incrementNotDecrement);
+  }
+
   private void updateProblemsCountAfterFilter(@NotNull final DartProblem problem, final boolean incrementNotDecrement) {
     if (myFilter.include(problem)) {
       if (incrementNotDecrement) {
@@ -54,32 +54,55 @@ public class DartProblemsView {
   private final DartProblemsFilter myFilter;
   private DartProblemsViewPanel myPanel;
 
-  private final Object myLock = new Object(); // use this lock to access myScheduledFilePathToErrors and myAlarm
+  private final Object myLock = new Object(); // use this lock to access myScheduledFilePathToErrors, myAlarm and myClearCount
   private final Map<String, List<AnalysisError>> myScheduledFilePathToErrors = new THashMap<String, List<AnalysisError>>();
   private final Alarm myAlarm;
+  private int myClearCount = 0;
+
+  // Problems are created in a pooled thread, this lock guarantees that they reach EDT in the same order as errors were received
+  private final Object myUpdateLock = new Object();
 
   private final Runnable myUpdateRunnable = new Runnable() {
     @Override
     public void run() {
-      if (ProjectViewPane.ID.equals(ProjectView.getInstance(myProject).getCurrentViewId())) {
-        // refresh red squiggles managed by com.jetbrains.lang.dart.projectView.DartNodeDecorator
-        ProjectView.getInstance(myProject).refresh();
-      }
+      synchronized (myUpdateLock) {
+        final Map<String, List<AnalysisError>> filePathToErrors;
+        final int clearCount;
+        synchronized (myLock) {
+          filePathToErrors = new THashMap<String, List<AnalysisError>>(myScheduledFilePathToErrors);
+          myScheduledFilePathToErrors.clear();
+          clearCount = myClearCount;
+        }
 
-      final Map<String, List<AnalysisError>> filePathToErrors;
-      synchronized (myLock) {
-        filePathToErrors = new THashMap<String, List<AnalysisError>>(myScheduledFilePathToErrors);
-        myScheduledFilePathToErrors.clear();
-      }
+        final Map<String, List<DartProblem>> filePathToProblems = new THashMap<String, List<DartProblem>>(filePathToErrors.size());
+        ApplicationManager.getApplication().runReadAction(() -> {
+          if (myProject.isDisposed()) return;
 
-      myPanel.setErrors(filePathToErrors);
+          for (Map.Entry<String, List<AnalysisError>> entry : filePathToErrors.entrySet()) {
+            filePathToProblems.put(entry.getKey(), DartProblemsTableModel.createProblems(myProject, entry.getKey(), entry.getValue()));
+          }
+        });
+
+        ApplicationManager.getApplication().invokeLater(() -> {
+          synchronized (myLock) {
+            if (clearCount != myClearCount) return; // errors were received before clearAll()
+          }
+
+          if (ProjectViewPane.ID.equals(ProjectView.getInstance(myProject).getCurrentViewId())) {
+            // refresh red squiggles managed by com.jetbrains.lang.dart.projectView.DartNodeDecorator
+            ProjectView.getInstance(myProject).refresh();
+          }
+
+          myPanel.setProblems(filePathToProblems);
+        }, ModalityState.NON_MODAL, myProject.getDisposed());
+      }
     }
   };
 
   public DartProblemsView(@NotNull final Project project, @NotNull final ToolWindowManager toolWindowManager) {
     myProject = project;
     myFilter = new DartProblemsFilter(project);
-    myAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, project);
+    myAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, project);
     Disposer.register(project, myAlarm);
 
     UIUtil.invokeLaterIfNeeded(() -> {
@@ -127,7 +150,7 @@ public class DartProblemsView {
         final int cancelled = myAlarm.cancelAllRequests();
         LOG.assertTrue(cancelled == 0, cancelled + " requests cancelled");
 
-        myAlarm.addRequest(myUpdateRunnable, TABLE_REFRESH_PERIOD, ModalityState.NON_MODAL);
+        myAlarm.addRequest(myUpdateRunnable, TABLE_REFRESH_PERIOD);
       }
 
       myScheduledFilePathToErrors.put(filePath, errors);
@@ -142,6 +165,7 @@ public class DartProblemsView {
     synchronized (myLock) {
       myAlarm.cancelAllRequests();
       myScheduledFilePathToErrors.clear();
+      myClearCount++;
     }
 
     myPanel.clearAll();
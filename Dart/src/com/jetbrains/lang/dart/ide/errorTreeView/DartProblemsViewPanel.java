@@ -37,7 +37,6 @@ import com.intellij.util.EditSourceOnDoubleClickHandler;
 import com.intellij.util.Function;
 import com.intellij.util.containers.Convertor;
 import com.jetbrains.lang.dart.DartBundle;
-import org.dartlang.analysis.server.protocol.AnalysisError;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -326,13 +325,13 @@ public class DartProblemsViewPanel extends JPanel implements DataProvider, CopyP
     }
   }
 
-  public void setErrors(@NotNull final Map<String, List<AnalysisError>> filePathToErrors) {
+  public void setProblems(@NotNull final Map<String, List<DartProblem>> filePathToProblems) {
     final DartProblemsTableModel model = (DartProblemsTableModel)myTable.getModel();
     final DartProblem oldSelectedProblem = myTable.getSelectedObject();
 
-    final DartProblem updatedSelectedProblem = model.setErrorsAndReturnReplacementForSelection(filePathToErrors, oldSelectedProblem);
+    final DartProblem updatedSelectedProblem = model.setProblemsAndReturnReplacementForSelection(filePathToProblems, oldSelectedProblem);
 
-    if (updatedSelectedProblem != null) {
+    if (updatedSelectedProblem != null && updatedSelectedProblem != myTable.getSelectedObject()) {
       myTable.setSelection(Collections.singletonList(updatedSelectedProblem));
     }
 
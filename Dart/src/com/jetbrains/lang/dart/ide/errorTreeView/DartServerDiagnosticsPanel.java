@@ -0,0 +1,131 @@
+package com.jetbrains.lang.dart.ide.errorTreeView;
+
+import com.google.dart.server.internal.remote.MessageStatistics;
+import com.google.dart.server.internal.remote.RequestLatencyHistogram;
+import com.intellij.icons.AllIcons;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.actionSystem.*;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.project.DumbAwareAction;
+import com.intellij.openapi.ui.SimpleToolWindowPanel;
+import com.intellij.ui.ScrollPaneFactory;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.table.TableView;
+import com.intellij.util.Alarm;
+import com.intellij.util.Function;
+import com.intellij.util.ui.ColumnInfo;
+import com.intellij.util.ui.JBUI;
+import com.intellij.util.ui.ListTableModel;
+import com.jetbrains.lang.dart.DartBundle;
+import com.jetbrains.lang.dart.analyzer.DartServerDiagnostics;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Shows {@link DartServerDiagnostics}, refreshed every {@link #REFRESH_PERIOD} ms while the panel is showing.
+ */
+class DartServerDiagnosticsPanel extends SimpleToolWindowPanel implements Disposable {
+
+  private static final int REFRESH_PERIOD = 2000;
+
+  private final ListTableModel<DartServerDiagnostics.Row> myModel = new ListTableModel<DartServerDiagnostics.Row>(
+    new ColumnInfo[]{
+      column("Kind", row -> row.kind.toString()),
+      column("Name", row -> row.name),
+      latencyColumn("Count", RequestLatencyHistogram::getCount),
+      latencyColumn("p50, ms", histogram -> histogram.getPercentileMillis(0.5)),
+      latencyColumn("p95, ms", histogram -> histogram.getPercentileMillis(0.95)),
+      latencyColumn("p99, ms", histogram -> histogram.getPercentileMillis(0.99)),
+      latencyColumn("Max, ms", RequestLatencyHistogram::getMaxMillis),
+      latencyColumn("Timed out", RequestLatencyHistogram::getTimedOutCount),
+      latencyColumn("Cancelled", RequestLatencyHistogram::getCancelledCount),
+      messagesColumn("Messages", MessageStatistics::getCount),
+      messagesColumn("Total length", MessageStatistics::getTotalLength),
+      messagesColumn("Max length", MessageStatistics::getMaxLength),
+      messagesColumn("IDE p95, ms", statistics -> statistics.getProcessingTimes().getPercentileMillis(0.95)),
+      messagesColumn("IDE max, ms", statistics -> statistics.getProcessingTimes().getMaxMillis())
+    });
+
+  private final JBLabel mySummaryLabel = new JBLabel();
+  private final Alarm myAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, this);
+
+  DartServerDiagnosticsPanel() {
+    super(false, true);
+
+    final JPanel panel = new JPanel(new BorderLayout());
+    mySummaryLabel.setBorder(JBUI.Borders.empty(3));
+    panel.add(mySummaryLabel, BorderLayout.NORTH);
+    panel.add(ScrollPaneFactory.createScrollPane(new TableView<DartServerDiagnostics.Row>(myModel)), BorderLayout.CENTER);
+    setContent(panel);
+    setToolbar(createToolbar());
+
+    scheduleRefresh(0);
+  }
+
+  @Override
+  public void dispose() {
+  }
+
+  @NotNull
+  private JComponent createToolbar() {
+    final DefaultActionGroup group = new DefaultActionGroup();
+    group.add(new DumbAwareAction(DartBundle.message("dart.refresh.server.diagnostics.action.name"), null, AllIcons.Actions.Refresh) {
+      @Override
+      public void actionPerformed(AnActionEvent e) {
+        refresh(DartServerDiagnostics.collect());
+      }
+    });
+
+    final AnAction dumpAction = ActionManager.getInstance().getAction("Dart.DumpAnalysisServerDiagnostics");
+    if (dumpAction != null) {
+      group.add(dumpAction);
+    }
+
+    return ActionManager.getInstance().createActionToolbar(ActionPlaces.UNKNOWN, group, false).getComponent();
+  }
+
+  private void scheduleRefresh(final int delay) {
+    myAlarm.addRequest(() -> {
+      if (isShowing()) {
+        final DartServerDiagnostics diagnostics = DartServerDiagnostics.collect();
+        ApplicationManager.getApplication().invokeLater(() -> refresh(diagnostics), ModalityState.NON_MODAL);
+      }
+      scheduleRefresh(REFRESH_PERIOD);
+    }, delay);
+  }
+
+  private void refresh(@NotNull final DartServerDiagnostics diagnostics) {
+    mySummaryLabel.setText(DartBundle.message("dart.server.diagnostics.in.flight.requests",
+                                              diagnostics.getInFlightRequestCount(),
+                                              diagnostics.getMaxInFlightRequestCount()));
+    myModel.setItems(diagnostics.getRows());
+  }
+
+  @NotNull
+  private static ColumnInfo<DartServerDiagnostics.Row, String> column(@NotNull final String name,
+                                                                     @NotNull final Function<DartServerDiagnostics.Row, String> getter) {
+    return new ColumnInfo<DartServerDiagnostics.Row, String>(name) {
+      @Nullable
+      @Override
+      public String valueOf(DartServerDiagnostics.Row row) {
+        return getter.fun(row);
+      }
+    };
+  }
+
+  @NotNull
+  private static ColumnInfo<DartServerDiagnostics.Row, String> latencyColumn(@NotNull final String name,
+                                                                            @NotNull final Function<RequestLatencyHistogram, Long> getter) {
+    return column(name, row -> row.latencies == null ? "" : String.valueOf(getter.fun(row.latencies)));
+  }
+
+  @NotNull
+  private static ColumnInfo<DartServerDiagnostics.Row, String> messagesColumn(@NotNull final String name,
+                                                                             @NotNull final Function<MessageStatistics, Long> getter) {
+    return column(name, row -> row.messages == null ? "" : String.valueOf(getter.fun(row.messages)));
+  }
+}
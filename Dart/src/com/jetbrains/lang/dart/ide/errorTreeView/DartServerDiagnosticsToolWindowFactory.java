@@ -0,0 +1,34 @@
+package com.jetbrains.lang.dart.ide.errorTreeView;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Condition;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowFactory;
+import com.intellij.ui.content.Content;
+import com.intellij.ui.content.ContentFactory;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The tool window with the analysis server instrumentation, available in internal mode or if the "dart.server.diagnostics" registry key
+ * is set. The same data can be saved as JSON with {@link DumpDartServerDiagnosticsAction} without the tool window.
+ */
+public class DartServerDiagnosticsToolWindowFactory implements ToolWindowFactory, DumbAware {
+
+  @Override
+  public void createToolWindowContent(@NotNull final Project project, @NotNull final ToolWindow toolWindow) {
+    final DartServerDiagnosticsPanel panel = new DartServerDiagnosticsPanel();
+    final Content content = ContentFactory.SERVICE.getInstance().createContent(panel, "", false);
+    content.setDisposer(panel);
+    toolWindow.getContentManager().addContent(content);
+  }
+
+  public static class Available implements Condition<Project> {
+    @Override
+    public boolean value(final Project project) {
+      return ApplicationManager.getApplication().isInternal() || Registry.is("dart.server.diagnostics", false);
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package com.jetbrains.lang.dart.ide.errorTreeView;
+
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileChooser.FileChooserFactory;
+import com.intellij.openapi.fileChooser.FileSaverDescriptor;
+import com.intellij.openapi.project.DumbAwareAction;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFileWrapper;
+import com.jetbrains.lang.dart.DartBundle;
+import com.jetbrains.lang.dart.analyzer.DartServerDiagnostics;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+public class DumpDartServerDiagnosticsAction extends DumbAwareAction {
+  private static final Logger LOG = Logger.getInstance(DumpDartServerDiagnosticsAction.class.getName());
+
+  public DumpDartServerDiagnosticsAction() {
+    super(DartBundle.message("dart.dump.server.diagnostics.action.name"),
+          DartBundle.message("dart.dump.server.diagnostics.action.description"),
+          null);
+  }
+
+  @Override
+  public void actionPerformed(@NotNull final AnActionEvent e) {
+    // take the snapshot before the dialog is shown, it is the moment the user is interested in
+    final String text = DartServerDiagnostics.collect().toJsonText();
+
+    final FileSaverDescriptor descriptor = new FileSaverDescriptor(DartBundle.message("dart.dump.server.diagnostics.action.name"),
+                                                                   DartBundle.message("dart.dump.server.diagnostics.action.description"),
+                                                                   "json");
+    final VirtualFileWrapper wrapper =
+      FileChooserFactory.getInstance().createSaveFileDialog(descriptor, e.getProject()).save(null, "dart-analysis-server-diagnostics.json");
+    if (wrapper == null) return;
+
+    try {
+      FileUtil.writeToFile(wrapper.getFile(), text);
+    }
+    catch (IOException ex) {
+      LOG.warn(ex);
+      Messages.showErrorDialog(e.getProject(), ex.getMessage(), DartBundle.message("dart.dump.server.diagnostics.action.name"));
+    }
+  }
+}
@@ -11,6 +11,7 @@ import com.intellij.psi.impl.source.tree.CompositeElement;
 import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.tree.TokenSet;
 import com.intellij.util.containers.SortedList;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -37,10 +38,16 @@ public class DartSpacingProcessor {
 
   private final ASTNode myNode;
   private final CommonCodeStyleSettings mySettings;
+  @Nullable private final DartSpacingRules mySpacingRules;
 
   public DartSpacingProcessor(ASTNode node, CommonCodeStyleSettings settings) {
+    this(node, settings, null);
+  }
+
+  public DartSpacingProcessor(ASTNode node, CommonCodeStyleSettings settings, @Nullable DartSpacingRules spacingRules) {
     myNode = node;
     mySettings = settings;
+    mySpacingRules = spacingRules;
   }
 
   public Spacing getSpacing(final Block child1, final Block child2) {
@@ -48,6 +55,28 @@ public class DartSpacingProcessor {
       return null;
     }
 
+    final IElementType elementType = myNode.getElementType();
+    final IElementType parentType = myNode.getTreeParent() == null ? null : myNode.getTreeParent().getElementType();
+    final IElementType type1 = ((AbstractBlock)child1).getNode().getElementType();
+    final IElementType type2 = ((AbstractBlock)child2).getNode().getElementType();
+
+    if (mySpacingRules == null || !DartSpacingRules.isContextFree(elementType, parentType, type1, type2)) {
+      return computeSpacing(child1, child2);
+    }
+
+    Spacing spacing = mySpacingRules.get(elementType, type1, type2);
+    if (spacing == null) {
+      spacing = computeSpacing(child1, child2);
+      mySpacingRules.put(elementType, type1, type2, spacing);
+    }
+    return spacing;
+  }
+
+  /**
+   * Applies all spacing rules in order. Spacing that depends on the element types only is remembered by {@link DartSpacingRules},
+   * so keep {@link DartSpacingRules#isContextFree} in sync when adding a rule that looks at the nodes themselves or at their neighbours.
+   */
+  private Spacing computeSpacing(final Block child1, final Block child2) {
     final IElementType elementType = myNode.getElementType();
     final IElementType parentType = myNode.getTreeParent() == null ? null : myNode.getTreeParent().getElementType();
     final ASTNode node1 = ((AbstractBlock)child1).getNode();
@@ -0,0 +1,111 @@
+package com.jetbrains.lang.dart.ide.formatter;
+
+import com.intellij.formatting.Spacing;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
+import gnu.trove.TLongObjectHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static com.jetbrains.lang.dart.DartTokenTypes.*;
+import static com.jetbrains.lang.dart.DartTokenTypesSets.*;
+
+/**
+ * Spacing table indexed by (element type, left child type, right child type). Most spacing rules in {@link DartSpacingProcessor} look at
+ * the element types and code style settings only, so the spacing computed once for a triple of types is valid for all other blocks with
+ * the same types within one formatting model. Rules that look at the nodes (their text, neighbours, grandparent or text range) are not
+ * cached: {@link #isContextFree} returns <code>false</code> for all type combinations that may reach such rules.
+ * <p/>
+ * One instance is created per formatting model and shared by all its blocks, so the table always corresponds to one set of settings.
+ * The formatter works with a model in a single thread, so no synchronization is needed.
+ */
+public class DartSpacingRules {
+
+  // element types of the node whose children are spaced
+  private static final TokenSet CONTEXT_SENSITIVE_ELEMENTS = TokenSet.orSet(BLOCKS, TokenSet.create(
+    LIBRARY_STATEMENT,     // embedded comments
+    STATEMENTS,            // depends on parent type
+    IF_STATEMENT,          // 'else' after the then-part
+    CLASS_DEFINITION,      // dependent line feeds for 'implements' and 'with', brace style
+    ENUM_DEFINITION,       // dependent line feeds for constants
+    INTERFACES,
+    MIXINS,
+    TYPE_LIST,
+    VALUE_EXPRESSION,      // cascades
+    REFERENCE_EXPRESSION,  // call chains
+    LIST_LITERAL_EXPRESSION,
+    STRING_LITERAL_EXPRESSION
+  ));
+
+  private static final TokenSet CONTEXT_SENSITIVE_PARENTS = TokenSet.create(LIBRARY_STATEMENT, BLOCK);
+
+  private static final TokenSet CONTEXT_SENSITIVE_LEFT = TokenSet.orSet(COMMENTS, TokenSet.create(
+    IMPORT_STATEMENT,
+    EXPORT_STATEMENT,
+    PART_STATEMENT,
+    LIBRARY_STATEMENT,
+    METADATA,
+    PREFIX_OPERATOR,
+    EXPRESSION_BODY_DEF,
+    CLOSING_QUOTE
+  ));
+
+  private static final TokenSet CONTEXT_SENSITIVE_RIGHT = TokenSet.orSet(COMMENTS, FUNCTION_DEFINITION, TokenSet.create(
+    BLOCK,                 // brace placement may depend on the text range of the left block
+    LBRACE,
+    FUNCTION_BODY,
+    FUNCTION_EXPRESSION_BODY,
+    CLASS_BODY,
+    RBRACKET,
+    INITIALIZERS,
+    HASH,
+    CASCADE_REFERENCE_EXPRESSION
+  ));
+
+  private final TLongObjectHashMap<Spacing> myTable = new TLongObjectHashMap<Spacing>();
+  private int myHitCount;
+  private int myMissCount;
+
+  public static boolean isContextFree(@NotNull final IElementType elementType,
+                                      @Nullable final IElementType parentType,
+                                      @NotNull final IElementType type1,
+                                      @NotNull final IElementType type2) {
+    return !CONTEXT_SENSITIVE_ELEMENTS.contains(elementType) &&
+           !CONTEXT_SENSITIVE_PARENTS.contains(parentType) &&
+           !CONTEXT_SENSITIVE_LEFT.contains(type1) &&
+           !CONTEXT_SENSITIVE_RIGHT.contains(type2);
+  }
+
+  @Nullable
+  public Spacing get(@NotNull final IElementType elementType, @NotNull final IElementType type1, @NotNull final IElementType type2) {
+    final Spacing spacing = myTable.get(getKey(elementType, type1, type2));
+    if (spacing == null) {
+      myMissCount++;
+    }
+    else {
+      myHitCount++;
+    }
+    return spacing;
+  }
+
+  public void put(@NotNull final IElementType elementType,
+                  @NotNull final IElementType type1,
+                  @NotNull final IElementType type2,
+                  @Nullable final Spacing spacing) {
+    if (spacing != null) {
+      myTable.put(getKey(elementType, type1, type2), spacing);
+    }
+  }
+
+  public int getHitCount() {
+    return myHitCount;
+  }
+
+  public int getMissCount() {
+    return myMissCount;
+  }
+
+  private static long getKey(@NotNull final IElementType elementType, @NotNull final IElementType type1, @NotNull final IElementType type2) {
+    return ((long)(elementType.getIndex() & 0xFFFF) << 32) | ((long)(type1.getIndex() & 0xFFFF) << 16) | (type2.getIndex() & 0xFFFF);
+  }
+}
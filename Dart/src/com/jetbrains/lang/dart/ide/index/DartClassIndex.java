@@ -81,7 +81,7 @@ public class DartClassIndex extends ScalarIndexExtension<String> {
     @Override
     @NotNull
     public Map<String, Void> map(@NotNull final FileContent inputData) {
-      DartFileIndexData indexData = DartIndexUtil.indexFile(inputData);
+      DartFileIndexData indexData = DartIndexUtil.indexFileDeclarations(inputData);
       final Map<String, Void> result = new THashMap<String, Void>();
       for (String componentName : indexData.getClassNames()) {
         result.put(componentName, null);
@@ -15,7 +15,7 @@ public class DartFileIndexData {
   final Map<String, List<DartComponentInfo>> myInheritorsMap = new THashMap<String, List<DartComponentInfo>>();
   @NotNull private String myLibraryName;
   private List<String> myPartUris = new ArrayList<String>();
-  private List<String> mySymbols = new ArrayList<String>();
+  private Map<String, List<DartSymbolInfo>> mySymbols = new THashMap<String, List<DartSymbolInfo>>();
   private boolean myIsPart;
 
   public List<String> getClassNames() {
@@ -76,13 +76,18 @@ public class DartFileIndexData {
     myPartUris.add(partUri);
   }
 
-  public List<String> getSymbols() {
+  public Map<String, List<DartSymbolInfo>> getSymbols() {
     return mySymbols;
   }
 
-  public void addSymbol(@Nullable String name) {
+  public void addSymbol(@Nullable String name, @NotNull DartSymbolInfo info) {
     if (name != null) {
-      mySymbols.add(name);
+      List<DartSymbolInfo> list = mySymbols.get(name);
+      if (list == null) {
+        list = new ArrayList<DartSymbolInfo>(1);
+        mySymbols.put(name, list);
+      }
+      list.add(info);
     }
   }
 
@@ -115,7 +115,7 @@ public class DartImportAndExportIndex extends FileBasedIndexExtension<String, Li
     @Override
     @NotNull
     public Map<String, List<DartImportOrExportInfo>> map(@NotNull final FileContent inputData) {
-      return Collections.singletonMap(inputData.getFileName(), DartIndexUtil.indexFile(inputData).getImportAndExportInfos());
+      return Collections.singletonMap(inputData.getFileName(), DartIndexUtil.indexFileDeclarations(inputData).getImportAndExportInfos());
     }
   }
 }
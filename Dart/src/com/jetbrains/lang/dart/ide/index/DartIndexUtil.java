@@ -8,6 +8,7 @@ import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.psi.xml.XmlFile;
 import com.intellij.util.indexing.FileContent;
 import com.jetbrains.lang.dart.DartComponentType;
+import com.jetbrains.lang.dart.DartFileType;
 import com.jetbrains.lang.dart.psi.*;
 import com.jetbrains.lang.dart.util.DartControlFlowUtil;
 import com.jetbrains.lang.dart.util.DartResolveUtil;
@@ -23,9 +24,10 @@ import static com.jetbrains.lang.dart.ide.index.DartImportOrExportInfo.Kind;
 
 public class DartIndexUtil {
   // inc when change parser
-  public static final int INDEX_VERSION = 20;
+  public static final int INDEX_VERSION = 22;
 
   private static final Key<DartFileIndexData> ourDartCachesData = Key.create("dart.caches.index.data");
+  private static final Key<DartFileIndexData> ourDartDeclarationsData = Key.create("dart.caches.declarations.data");
 
   public static DartFileIndexData indexFile(FileContent content) {
     DartFileIndexData indexData = content.getUserData(ourDartCachesData);
@@ -34,12 +36,31 @@ public class DartIndexUtil {
       indexData = content.getUserData(ourDartCachesData);
       if (indexData != null) return indexData;
       indexData = indexFileRoots(content.getPsiFile());
+      content.putUserData(ourDartCachesData, indexData);
     }
 
     return indexData;
   }
 
-  private static DartFileIndexData indexFileRoots(PsiFile psiFile) {
+  /**
+   * Library name, class names, symbols, imports, exports and part URIs, the same as in {@link #indexFile(FileContent)}. For .dart files
+   * they are collected from tokens, without building PSI; component infos and inheritors are not filled in the returned data.
+   */
+  public static DartFileIndexData indexFileDeclarations(FileContent content) {
+    if (content.getFileType() != DartFileType.INSTANCE) {
+      return indexFile(content); // Dart code embedded in HTML
+    }
+
+    DartFileIndexData indexData = content.getUserData(ourDartDeclarationsData);
+    if (indexData == null) {
+      // no lock: tokenizing is cheap and gives the same result if done twice by concurrent indexers
+      indexData = DartLexerIndexer.indexFile(content.getContentAsText(), content.getFileName());
+      content.putUserData(ourDartDeclarationsData, indexData);
+    }
+    return indexData;
+  }
+
+  static DartFileIndexData indexFileRoots(PsiFile psiFile) {
     DartFileIndexData result = new DartFileIndexData();
 
     result.setLibraryName(DartResolveUtil.getLibraryName(psiFile));
@@ -54,10 +75,10 @@ public class DartIndexUtil {
           continue;
         }
 
-        result.addSymbol(name);
-
         PsiElement parent = componentName.getParent();
         final DartComponentType type = DartComponentType.typeOf(parent);
+        result.addSymbol(name, new DartSymbolInfo(componentName.getTextOffset(), type, result.getLibraryName(), null));
+
         if (type != null) {
           result.addComponentInfo(name, new DartComponentInfo(type, result.getLibraryName()));
         }
@@ -66,13 +87,20 @@ public class DartIndexUtil {
 
           if (((DartClass)parent).isEnum()) {
             for (DartEnumConstantDeclaration enumConstantDeclaration : ((DartClass)parent).getEnumConstantDeclarationList()) {
-              result.addSymbol(enumConstantDeclaration.getName());
+              result.addSymbol(enumConstantDeclaration.getName(),
+                               new DartSymbolInfo(enumConstantDeclaration.getTextOffset(), DartComponentType.typeOf(enumConstantDeclaration),
+                                                  result.getLibraryName(), name));
             }
           }
           else {
             processInheritors(result, (DartClass)parent, result.getLibraryName());
             for (DartComponent subComponent : DartResolveUtil.getNamedSubComponents((DartClass)parent)) {
-              result.addSymbol(subComponent.getName());
+              final String subComponentName = subComponent.getName();
+              if (subComponent.isConstructor() && name.equals(subComponentName)) {
+                continue; // the class itself is the symbol with this name
+              }
+              result.addSymbol(subComponentName, new DartSymbolInfo(subComponent.getTextOffset(), DartComponentType.typeOf(subComponent),
+                                                                    result.getLibraryName(), name));
             }
           }
         }
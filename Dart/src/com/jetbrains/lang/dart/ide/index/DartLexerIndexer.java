@@ -0,0 +1,579 @@
+package com.jetbrains.lang.dart.ide.index;
+
+import com.intellij.psi.tree.IElementType;
+import com.jetbrains.lang.dart.DartComponentType;
+import com.jetbrains.lang.dart.lexer.DartLexer;
+import com.jetbrains.lang.dart.util.DartPsiImplUtil;
+import gnu.trove.THashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static com.jetbrains.lang.dart.DartTokenTypes.*;
+import static com.jetbrains.lang.dart.DartTokenTypesSets.*;
+
+/**
+ * Collects library name, class names, symbols, imports, exports and part URIs of a .dart file from its tokens, without building PSI.
+ * The result is the same as the one of the PSI-based {@link DartIndexUtil#indexFile} for these parts; component infos and inheritors
+ * are not collected.
+ * <p/>
+ * Declarations are recognized by their heads only: metadata, bodies, initializers and parameter lists are skipped as balanced token ranges.
+ */
+class DartLexerIndexer {
+
+  private static class PendingSymbol {
+    private final String myName;
+    private final int myOffset;
+    private final DartComponentType myType;
+    private final String myContainerName;
+
+    private PendingSymbol(@NotNull final String name,
+                          final int offset,
+                          @NotNull final DartComponentType type,
+                          @Nullable final String containerName) {
+      myName = name;
+      myOffset = offset;
+      myType = type;
+      myContainerName = containerName;
+    }
+  }
+
+  private final CharSequence myText;
+  private IElementType[] myTypes;
+  private int[] myStarts;
+  private int[] myEnds;
+  private int myCount;
+
+  private final DartFileIndexData myResult = new DartFileIndexData();
+  // library name is known only when the whole file is scanned, so symbol infos are created at the end
+  private final List<PendingSymbol> mySymbols = new ArrayList<PendingSymbol>();
+  private String myLibraryName;
+  private String myPartOfLibraryName;
+
+  private DartLexerIndexer(@NotNull final CharSequence text) {
+    myText = text;
+  }
+
+  @NotNull
+  static DartFileIndexData indexFile(@NotNull final CharSequence text, @NotNull final String fileName) {
+    final DartLexerIndexer indexer = new DartLexerIndexer(text);
+    indexer.tokenize();
+    indexer.parseTopLevel();
+    return indexer.createResult(fileName);
+  }
+
+  private void tokenize() {
+    final int capacity = myText.length() / 4 + 16;
+    myTypes = new IElementType[capacity];
+    myStarts = new int[capacity];
+    myEnds = new int[capacity];
+
+    final DartLexer lexer = new DartLexer();
+    lexer.start(myText);
+    IElementType type;
+    while ((type = lexer.getTokenType()) != null) {
+      if (!WHITE_SPACES.contains(type) && !COMMENTS.contains(type)) {
+        if (myCount == myTypes.length) {
+          final int newCapacity = myCount * 2;
+          final IElementType[] types = new IElementType[newCapacity];
+          System.arraycopy(myTypes, 0, types, 0, myCount);
+          myTypes = types;
+          myStarts = copyOf(myStarts, newCapacity);
+          myEnds = copyOf(myEnds, newCapacity);
+        }
+        myTypes[myCount] = type;
+        myStarts[myCount] = lexer.getTokenStart();
+        myEnds[myCount] = lexer.getTokenEnd();
+        myCount++;
+      }
+      lexer.advance();
+    }
+  }
+
+  private static int[] copyOf(@NotNull final int[] array, final int newLength) {
+    final int[] result = new int[newLength];
+    System.arraycopy(array, 0, result, 0, array.length);
+    return result;
+  }
+
+  @NotNull
+  private DartFileIndexData createResult(@NotNull final String fileName) {
+    final String libraryName = myLibraryName != null ? myLibraryName : myPartOfLibraryName != null ? myPartOfLibraryName : fileName;
+    myResult.setLibraryName(libraryName);
+    myResult.setIsPart(myPartOfLibraryName != null);
+    for (PendingSymbol symbol : mySymbols) {
+      myResult.addSymbol(symbol.myName, new DartSymbolInfo(symbol.myOffset, symbol.myType, libraryName, symbol.myContainerName));
+    }
+    return myResult;
+  }
+
+  @Nullable
+  private IElementType type(final int index) {
+    return index < myCount ? myTypes[index] : null;
+  }
+
+  private boolean isName(final int index) {
+    final IElementType type = type(index);
+    return type == IDENTIFIER || BUILT_IN_IDENTIFIERS.contains(type);
+  }
+
+  private boolean isStringStart(final int index) {
+    final IElementType type = type(index);
+    return type == OPEN_QUOTE || type == RAW_SINGLE_QUOTED_STRING || type == RAW_TRIPLE_QUOTED_STRING;
+  }
+
+  private static boolean isOpenBracket(@Nullable final IElementType type) {
+    return type == LPAREN || type == LBRACE || type == LBRACKET || type == LONG_TEMPLATE_ENTRY_START;
+  }
+
+  private static boolean isCloseBracket(@Nullable final IElementType type) {
+    return type == RPAREN || type == RBRACE || type == RBRACKET || type == LONG_TEMPLATE_ENTRY_END;
+  }
+
+  @NotNull
+  private String text(final int index) {
+    return myText.subSequence(myStarts[index], myEnds[index]).toString();
+  }
+
+  private void addSymbol(final int nameIndex, @NotNull final DartComponentType type, @Nullable final String containerName) {
+    mySymbols.add(new PendingSymbol(text(nameIndex), myStarts[nameIndex], type, containerName));
+  }
+
+  private void parseTopLevel() {
+    int i = 0;
+    while (i < myCount) {
+      i = skipMetadata(i);
+      if (i >= myCount) break;
+
+      final IElementType type = myTypes[i];
+      final int next;
+      if (type == LIBRARY && isName(i + 1)) {
+        next = parseLibraryStatement(i + 1);
+      }
+      else if ((type == IMPORT || type == EXPORT) && isStringStart(i + 1)) {
+        next = parseImportOrExportStatement(i);
+      }
+      else if (type == PART && type(i + 1) == OF && isName(i + 2)) {
+        next = parsePartOfStatement(i + 2);
+      }
+      else if (type == PART && isStringStart(i + 1)) {
+        next = parsePartStatement(i + 1);
+      }
+      else if (type == CLASS) {
+        next = parseClass(i);
+      }
+      else if (type == ABSTRACT && type(i + 1) == CLASS) {
+        next = parseClass(i + 1);
+      }
+      else if (type == ENUM) {
+        next = parseEnum(i);
+      }
+      else if (type == TYPEDEF && (isName(i + 1) || type(i + 1) == VOID)) {
+        next = parseTypedef(i + 1);
+      }
+      else {
+        next = parseDeclaration(i, null);
+      }
+      i = next > i ? next : i + 1;
+    }
+  }
+
+  private int parseLibraryStatement(int i) {
+    final StringBuilder name = new StringBuilder();
+    while (isName(i) || type(i) == DOT) {
+      if (type(i) != DOT) {
+        if (name.length() > 0) {
+          name.append('.');
+        }
+        name.append(myText, myStarts[i], myEnds[i]);
+      }
+      i++;
+    }
+    if (myLibraryName == null) {
+      myLibraryName = name.toString();
+    }
+    return type(i) == SEMICOLON ? i + 1 : i;
+  }
+
+  private int parsePartOfStatement(int i) {
+    final int start = myStarts[i];
+    int end = myEnds[i];
+    while (isName(i) || type(i) == DOT) {
+      end = myEnds[i];
+      i++;
+    }
+    if (myPartOfLibraryName == null) {
+      myPartOfLibraryName = myText.subSequence(start, end).toString();
+    }
+    return type(i) == SEMICOLON ? i + 1 : i;
+  }
+
+  private int parsePartStatement(final int uriIndex) {
+    final int i = skipStrings(uriIndex);
+    myResult.addPartUri(getUnquotedString(uriIndex, i));
+    return type(i) == SEMICOLON ? i + 1 : i;
+  }
+
+  private int parseImportOrExportStatement(final int keywordIndex) {
+    final DartImportOrExportInfo.Kind kind = type(keywordIndex) == IMPORT ? DartImportOrExportInfo.Kind.Import
+                                                                          : DartImportOrExportInfo.Kind.Export;
+    int i = skipStrings(keywordIndex + 1);
+    final String uri = getUnquotedString(keywordIndex + 1, i);
+
+    String importPrefix = null;
+    final Set<String> showComponentNames = new THashSet<String>();
+    final Set<String> hideComponentNames = new THashSet<String>();
+    while (i < myCount) {
+      final IElementType type = myTypes[i];
+      if (type == DEFERRED) {
+        i++;
+      }
+      else if (type == AS && isName(i + 1)) {
+        importPrefix = text(i + 1);
+        i += 2;
+      }
+      else if (type == SHOW || type == HIDE) {
+        final Set<String> names = type == SHOW ? showComponentNames : hideComponentNames;
+        i++;
+        while (isName(i)) {
+          names.add(text(i));
+          i++;
+          if (type(i) != COMMA) break;
+          i++;
+        }
+      }
+      else {
+        if (type == SEMICOLON) i++;
+        break;
+      }
+    }
+
+    myResult.addImportInfo(new DartImportOrExportInfo(kind, uri, importPrefix, showComponentNames, hideComponentNames));
+    return i;
+  }
+
+  /**
+   * @return index of the first token after adjacent string literals starting at {@code i}
+   */
+  private int skipStrings(int i) {
+    while (isStringStart(i)) {
+      if (myTypes[i] != OPEN_QUOTE) {
+        i++;
+        continue;
+      }
+      i++;
+      while (i < myCount && myTypes[i] != CLOSING_QUOTE && myTypes[i] != SEMICOLON) {
+        i++;
+      }
+      if (type(i) == CLOSING_QUOTE) {
+        i++;
+      }
+    }
+    return i;
+  }
+
+  @NotNull
+  private String getUnquotedString(final int startIndex, final int endIndex) {
+    final String quoted = myText.subSequence(myStarts[startIndex], myEnds[endIndex - 1]).toString();
+    return DartPsiImplUtil.getUnquotedDartStringAndItsRange(quoted).first;
+  }
+
+  private int parseClass(final int classKeywordIndex) {
+    if (!isName(classKeywordIndex + 1)) return classKeywordIndex + 1;
+
+    final String className = text(classKeywordIndex + 1);
+    myResult.addClassName(className);
+    addSymbol(classKeywordIndex + 1, DartComponentType.CLASS, null);
+
+    int i = classKeywordIndex + 2;
+    if (type(i) == EQ) {
+      return skipToSemicolon(i); // mixin application
+    }
+
+    // type parameters, superclass, mixins, interfaces, native clause
+    while (i < myCount && myTypes[i] != LBRACE) {
+      final IElementType type = myTypes[i];
+      if (type == SEMICOLON) return i + 1;
+      if (type == RBRACE || type == CLASS || type == AT) return i;
+      i = type == LT ? skipTypeArguments(i) : i + 1;
+    }
+
+    i++;
+    while (i < myCount) {
+      i = skipMetadata(i);
+      final IElementType type = type(i);
+      if (type == null) break;
+      if (type == RBRACE) return i + 1;
+      if (type == SEMICOLON) {
+        i++;
+        continue;
+      }
+      final int next = parseDeclaration(i, className);
+      i = next > i ? next : i + 1;
+    }
+    return i;
+  }
+
+  private int parseEnum(final int enumKeywordIndex) {
+    if (!isName(enumKeywordIndex + 1)) return enumKeywordIndex + 1;
+
+    final String enumName = text(enumKeywordIndex + 1);
+    myResult.addClassName(enumName);
+    addSymbol(enumKeywordIndex + 1, DartComponentType.CLASS, null);
+
+    int i = enumKeywordIndex + 2;
+    if (type(i) != LBRACE) return i;
+    i++;
+    while (i < myCount) {
+      final IElementType type = myTypes[i];
+      if (type == RBRACE) return i + 1;
+      if (type == SEMICOLON || type == LBRACE) return i;
+      if (isName(i)) {
+        addSymbol(i, DartComponentType.FIELD, enumName);
+      }
+      i++;
+    }
+    return i;
+  }
+
+  private int parseTypedef(int i) {
+    int nameIndex = -1;
+    while (i < myCount && myTypes[i] != LPAREN) {
+      final IElementType type = myTypes[i];
+      if (type == SEMICOLON || type == LBRACE || type == RBRACE) return i;
+      if (type == LT) {
+        i = skipTypeArguments(i);
+        continue;
+      }
+      if (isName(i)) {
+        nameIndex = i;
+      }
+      i++;
+    }
+    if (nameIndex >= 0 && i < myCount) {
+      addSymbol(nameIndex, DartComponentType.TYPEDEF, null);
+    }
+    return skipToSemicolon(i);
+  }
+
+  /**
+   * Top-level function, getter, setter or variable list if {@code className} is {@code null}, otherwise class member.
+   */
+  private int parseDeclaration(int i, @Nullable final String className) {
+    final int start = i;
+
+    while (true) {
+      final IElementType type = type(i);
+      if (type == CONST || type == FINAL || type == VAR) {
+        i++;
+      }
+      else if ((type == EXTERNAL || type == STATIC) && isModifier(i)) {
+        i++;
+      }
+      else {
+        break;
+      }
+    }
+
+    if (className != null && type(i) == FACTORY && isName(i + 1)) {
+      return parseFactoryConstructor(i + 1, className);
+    }
+
+    int nameIndex = -1;
+    while (i < myCount) {
+      final IElementType type = myTypes[i];
+
+      if ((type == GET || type == SET) && isName(i + 1)) {
+        addSymbol(i + 1, className == null ? DartComponentType.FUNCTION : DartComponentType.METHOD, className);
+        i += 2;
+        return skipFunctionBody(type(i) == LPAREN ? skipBalanced(i) : i);
+      }
+
+      if (type == OPERATOR && className != null && type(i + 1) != LPAREN) {
+        return parseOperator(i + 1, className);
+      }
+
+      if (isName(i)) {
+        nameIndex = i;
+        i++;
+      }
+      else if (type == LT) {
+        i = skipTypeArguments(i);
+      }
+      else if (type == LPAREN) {
+        if (nameIndex >= 0) {
+          if (className == null) {
+            addSymbol(nameIndex, DartComponentType.FUNCTION, null);
+          }
+          else if (nameIndex > start && myTypes[nameIndex - 1] == DOT) {
+            addSymbol(nameIndex, DartComponentType.CONSTRUCTOR, className); // named constructor
+          }
+          else if (!className.equals(text(nameIndex))) {
+            addSymbol(nameIndex, DartComponentType.METHOD, className);
+          }
+          // else unnamed constructor, the class itself is the symbol with this name
+        }
+        return skipFunctionBody(skipBalanced(i));
+      }
+      else if (type == EQ || type == SEMICOLON || type == COMMA) {
+        if (nameIndex < 0 || nameIndex != i - 1) return skipToSemicolon(i);
+        final DartComponentType varType = className == null ? DartComponentType.VARIABLE : DartComponentType.FIELD;
+        addSymbol(nameIndex, varType, className);
+        return parseVarDeclarationListRest(i, varType, className);
+      }
+      else if (type == LBRACE) {
+        return skipBalanced(i);
+      }
+      else if (type == EXPRESSION_BODY_DEF) {
+        return skipToSemicolon(i + 1);
+      }
+      else if (type == RBRACE || type == AT || type == CLASS || type == ENUM) {
+        return i; // incomplete declaration
+      }
+      else {
+        i++;
+      }
+    }
+    return i;
+  }
+
+  /**
+   * 'external' and 'static' are built-in identifiers; they are modifiers if followed by something that starts a declaration.
+   */
+  private boolean isModifier(final int i) {
+    final IElementType next = type(i + 1);
+    return next != null && next != LPAREN && next != EQ && next != SEMICOLON && next != COMMA && next != LT;
+  }
+
+  private int parseFactoryConstructor(int i, @NotNull final String className) {
+    i++;
+    if (type(i) == DOT && isName(i + 1)) {
+      addSymbol(i + 1, DartComponentType.CONSTRUCTOR, className);
+      i += 2;
+    }
+    // else unnamed factory constructor, the class itself is the symbol with this name
+    return type(i) == LPAREN ? skipFunctionBody(skipBalanced(i)) : i;
+  }
+
+  private int parseOperator(final int operatorStart, @NotNull final String className) {
+    int i = operatorStart;
+    while (i < myCount && myTypes[i] != LPAREN) {
+      final IElementType type = myTypes[i];
+      if (type == SEMICOLON || type == LBRACE || type == RBRACE) return i;
+      i++;
+    }
+    if (i > operatorStart && i < myCount) {
+      final String name = myText.subSequence(myStarts[operatorStart], myEnds[i - 1]).toString();
+      mySymbols.add(new PendingSymbol(name, myStarts[operatorStart], DartComponentType.OPERATOR, className));
+    }
+    return skipFunctionBody(skipBalanced(i));
+  }
+
+  private int parseVarDeclarationListRest(int i, @NotNull final DartComponentType varType, @Nullable final String className) {
+    while (i < myCount) {
+      final IElementType type = myTypes[i];
+      if (type == SEMICOLON) return i + 1;
+      if (type == RBRACE) return i;
+      if (type == COMMA) {
+        final IElementType afterName = type(i + 2);
+        if (isName(i + 1) && (afterName == EQ || afterName == COMMA || afterName == SEMICOLON)) {
+          addSymbol(i + 1, varType, className);
+          i += 2;
+        }
+        else {
+          i++;
+        }
+      }
+      else if (type == LT) {
+        i = skipTypeArguments(i);
+      }
+      else if (isOpenBracket(type)) {
+        i = skipBalanced(i);
+      }
+      else {
+        i++;
+      }
+    }
+    return i;
+  }
+
+  /**
+   * Skips initializers, 'async'/'sync' modifiers and a block body, an arrow body or a ';' that follow a parameter list.
+   */
+  private int skipFunctionBody(int i) {
+    while (i < myCount) {
+      final IElementType type = myTypes[i];
+      if (type == SEMICOLON) return i + 1;
+      if (type == LBRACE) return skipBalanced(i);
+      if (type == EXPRESSION_BODY_DEF) return skipToSemicolon(i + 1);
+      if (type == RBRACE) return i;
+      i = isOpenBracket(type) ? skipBalanced(i) : i + 1;
+    }
+    return i;
+  }
+
+  private int skipToSemicolon(int i) {
+    while (i < myCount) {
+      final IElementType type = myTypes[i];
+      if (type == SEMICOLON) return i + 1;
+      if (isCloseBracket(type)) return i;
+      i = isOpenBracket(type) ? skipBalanced(i) : i + 1;
+    }
+    return i;
+  }
+
+  /**
+   * @return index of the first token after the bracket that closes the one at {@code i}
+   */
+  private int skipBalanced(int i) {
+    int depth = 0;
+    while (i < myCount) {
+      final IElementType type = myTypes[i++];
+      if (isOpenBracket(type)) {
+        depth++;
+      }
+      else if (isCloseBracket(type) && --depth <= 0) {
+        return i;
+      }
+    }
+    return i;
+  }
+
+  /**
+   * If tokens starting at {@code i} look like type arguments or type parameters, returns the index of the first token after them,
+   * otherwise (for example, if '<' is a relational operator) returns {@code i + 1}.
+   */
+  private int skipTypeArguments(final int i) {
+    int depth = 0;
+    for (int j = i; j < myCount; j++) {
+      final IElementType type = myTypes[j];
+      if (type == LT) {
+        depth++;
+      }
+      else if (type == GT) {
+        if (--depth == 0) return j + 1;
+      }
+      else if (type != DOT && type != COMMA && type != EXTENDS && type != VOID && !isName(j)) {
+        break;
+      }
+    }
+    return i + 1;
+  }
+
+  private int skipMetadata(int i) {
+    while (type(i) == AT) {
+      i++;
+      if (isName(i)) i++;
+      while (type(i) == DOT && isName(i + 1)) {
+        i += 2;
+      }
+      if (type(i) == LPAREN) {
+        i = skipBalanced(i);
+      }
+    }
+    return i;
+  }
+}
@@ -6,28 +6,36 @@ import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import com.intellij.psi.search.GlobalSearchScope;
-import com.intellij.psi.search.PsiElementProcessor;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.util.ArrayUtil;
 import com.intellij.util.CommonProcessors;
+import com.intellij.util.PairProcessor;
 import com.intellij.util.indexing.*;
+import com.intellij.util.io.DataExternalizer;
 import com.intellij.util.io.EnumeratorStringDescriptor;
 import com.intellij.util.io.KeyDescriptor;
-import com.jetbrains.lang.dart.psi.*;
-import com.jetbrains.lang.dart.util.DartResolveUtil;
-import gnu.trove.THashMap;
+import com.jetbrains.lang.dart.psi.DartComponentName;
 import gnu.trove.THashSet;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-public class DartSymbolIndex extends ScalarIndexExtension<String> {
-  public static final ID<String, Void> DART_SYMBOL_INDEX = ID.create("DartSymbolIndex");
-  private DataIndexer<String, Void, FileContent> myDataIndexer = new MyDataIndexer();
+/**
+ * Keys are names of top-level declarations, class members and enum constants, values keep offset, type and library of each symbol,
+ * so that symbols can be listed and navigated to without loading PSI. Values are persisted in the index storage between IDE sessions.
+ */
+public class DartSymbolIndex extends FileBasedIndexExtension<String, List<DartSymbolInfo>> {
+  public static final ID<String, List<DartSymbolInfo>> DART_SYMBOL_INDEX = ID.create("DartSymbolIndex");
+  private final DataIndexer<String, List<DartSymbolInfo>, FileContent> myDataIndexer = new MyDataIndexer();
+  private final DataExternalizer<List<DartSymbolInfo>> myExternalizer = new DartSymbolInfoListExternalizer();
 
   @NotNull
   @Override
-  public ID<String, Void> getName() {
+  public ID<String, List<DartSymbolInfo>> getName() {
     return DART_SYMBOL_INDEX;
   }
 
@@ -38,7 +46,7 @@ public class DartSymbolIndex extends ScalarIndexExtension<String> {
 
   @NotNull
   @Override
-  public DataIndexer<String, Void, FileContent> getIndexer() {
+  public DataIndexer<String, List<DartSymbolInfo>, FileContent> getIndexer() {
     return myDataIndexer;
   }
 
@@ -48,6 +56,12 @@ public class DartSymbolIndex extends ScalarIndexExtension<String> {
     return EnumeratorStringDescriptor.INSTANCE;
   }
 
+  @NotNull
+  @Override
+  public DataExternalizer<List<DartSymbolInfo>> getValueExternalizer() {
+    return myExternalizer;
+  }
+
   @NotNull
   @Override
   public FileBasedIndex.InputFilter getInputFilter() {
@@ -65,86 +79,48 @@ public class DartSymbolIndex extends ScalarIndexExtension<String> {
     return ArrayUtil.toStringArray(processor.getResults());
   }
 
+  /**
+   * Doesn't load PSI.
+   */
+  public static boolean processSymbols(@NotNull final String name,
+                                       @NotNull final GlobalSearchScope scope,
+                                       @NotNull final PairProcessor<VirtualFile, DartSymbolInfo> processor) {
+    return FileBasedIndex.getInstance().processValues(DART_SYMBOL_INDEX, name, null, (file, infos) -> {
+      for (DartSymbolInfo info : infos) {
+        if (!processor.process(file, info)) return false;
+      }
+      return true;
+    }, scope);
+  }
+
   public static List<DartComponentName> getItemsByName(@NotNull final String name,
                                                        @NotNull final Project project,
                                                        @NotNull final GlobalSearchScope searchScope) {
-    final Collection<VirtualFile> files =
-      FileBasedIndex.getInstance().getContainingFiles(DART_SYMBOL_INDEX, name, searchScope);
     final Set<DartComponentName> result = new THashSet<DartComponentName>();
-    for (VirtualFile vFile : files) {
-      final PsiFile psiFile = PsiManager.getInstance(project).findFile(vFile);
-      for (PsiElement root : DartResolveUtil.findDartRoots(psiFile)) {
-        processComponents(root, new PsiElementProcessor<DartComponent>() {
-          @Override
-          public boolean execute(@NotNull DartComponent component) {
-            if (name.equals(component.getName())) {
-              result.add(component.getComponentName());
-            }
-            return true;
-          }
-        });
+    processSymbols(name, searchScope, (file, info) -> {
+      final DartComponentName componentName = findComponentName(project, file, info);
+      if (componentName != null && name.equals(componentName.getName())) {
+        result.add(componentName);
       }
-    }
+      return true;
+    });
     return new ArrayList<DartComponentName>(result);
   }
 
-  private static class MyDataIndexer implements DataIndexer<String, Void, FileContent> {
-    @Override
-    @NotNull
-    public Map<String, Void> map(@NotNull final FileContent inputData) {
-      List<String> symbols = DartIndexUtil.indexFile(inputData).getSymbols();
-      final Map<String, Void> result = new THashMap<String, Void>();
-      for (String symbol : symbols) {
-        result.put(symbol, null);
-      }
-      return result;
-    }
+  @Nullable
+  public static DartComponentName findComponentName(@NotNull final Project project,
+                                                    @NotNull final VirtualFile file,
+                                                    @NotNull final DartSymbolInfo info) {
+    final PsiFile psiFile = PsiManager.getInstance(project).findFile(file);
+    final PsiElement element = psiFile == null ? null : psiFile.findElementAt(info.getOffset());
+    return PsiTreeUtil.getParentOfType(element, DartComponentName.class, false);
   }
 
-  private static void processComponents(PsiElement context, PsiElementProcessor<DartComponent> processor) {
-    // top-level components
-    final DartComponent[] components = PsiTreeUtil.getChildrenOfType(context, DartComponent.class);
-    if (components != null) {
-      for (DartComponent component : components) {
-        if (!processComponent(processor, component)) {
-          return;
-        }
-      }
-    }
-    // top-level variables
-    final DartVarDeclarationList[] varLists = PsiTreeUtil.getChildrenOfType(context, DartVarDeclarationList.class);
-    if (varLists != null) {
-      for (DartVarDeclarationList varList : varLists) {
-        if (!processComponent(processor, varList.getVarAccessDeclaration())) {
-          return;
-        }
-        for (DartVarDeclarationListPart part : varList.getVarDeclarationListPartList()) {
-          if (!processComponent(processor, part)) {
-            return;
-          }
-        }
-      }
-    }
-  }
-
-  private static boolean processComponent(PsiElementProcessor<DartComponent> processor, DartComponent component) {
-    final String componentName = component.getName();
-    if (componentName == null) {
-      return true;
-    }
-    if (!processor.execute(component)) {
-      return false;
-    }
-    if (component instanceof DartClass) {
-      for (DartComponent subComponent : DartResolveUtil.getNamedSubComponents((DartClass)component)) {
-        if (subComponent.isConstructor() && componentName.equals(subComponent.getName())) {
-          continue;
-        }
-        if (!processor.execute(subComponent)) {
-          return false;
-        }
-      }
+  private static class MyDataIndexer implements DataIndexer<String, List<DartSymbolInfo>, FileContent> {
+    @Override
+    @NotNull
+    public Map<String, List<DartSymbolInfo>> map(@NotNull final FileContent inputData) {
+      return DartIndexUtil.indexFileDeclarations(inputData).getSymbols();
     }
-    return true;
   }
 }
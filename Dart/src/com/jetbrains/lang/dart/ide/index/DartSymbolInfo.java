@@ -0,0 +1,73 @@
+package com.jetbrains.lang.dart.ide.index;
+
+import com.jetbrains.lang.dart.DartComponentType;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Symbol stored in {@link DartSymbolIndex}: enough information to show and navigate to the symbol without loading PSI.
+ */
+public class DartSymbolInfo {
+  private final int myOffset;
+  @Nullable private final DartComponentType myComponentType;
+  @Nullable private final String myLibraryName;
+  @Nullable private final String myContainerName;
+
+  public DartSymbolInfo(final int offset,
+                        @Nullable final DartComponentType componentType,
+                        @Nullable final String libraryName,
+                        @Nullable final String containerName) {
+    myOffset = offset;
+    myComponentType = componentType;
+    myLibraryName = libraryName;
+    myContainerName = containerName;
+  }
+
+  /**
+   * Offset of the symbol name in the file.
+   */
+  public int getOffset() {
+    return myOffset;
+  }
+
+  @Nullable
+  public DartComponentType getComponentType() {
+    return myComponentType;
+  }
+
+  @Nullable
+  public String getLibraryName() {
+    return myLibraryName;
+  }
+
+  /**
+   * Name of the class for class members and enum constants, {@code null} for top-level symbols.
+   */
+  @Nullable
+  public String getContainerName() {
+    return myContainerName;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    DartSymbolInfo info = (DartSymbolInfo)o;
+
+    if (myOffset != info.myOffset) return false;
+    if (myComponentType != info.myComponentType) return false;
+    if (myLibraryName != null ? !myLibraryName.equals(info.myLibraryName) : info.myLibraryName != null) return false;
+    if (myContainerName != null ? !myContainerName.equals(info.myContainerName) : info.myContainerName != null) return false;
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = myOffset;
+    result = 31 * result + (myComponentType != null ? myComponentType.hashCode() : 0);
+    result = 31 * result + (myLibraryName != null ? myLibraryName.hashCode() : 0);
+    result = 31 * result + (myContainerName != null ? myContainerName.hashCode() : 0);
+    return result;
+  }
+}
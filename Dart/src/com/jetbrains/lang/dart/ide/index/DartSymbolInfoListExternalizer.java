@@ -0,0 +1,60 @@
+package com.jetbrains.lang.dart.ide.index;
+
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.IOUtil;
+import com.jetbrains.lang.dart.DartComponentType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class DartSymbolInfoListExternalizer implements DataExternalizer<List<DartSymbolInfo>> {
+
+  @Override
+  public void save(@NotNull final DataOutput out, @NotNull final List<DartSymbolInfo> infos) throws IOException {
+    DataInputOutputUtil.writeINT(out, infos.size());
+    for (DartSymbolInfo symbolInfo : infos) {
+      DataInputOutputUtil.writeINT(out, symbolInfo.getOffset());
+      final DartComponentType dartComponentType = symbolInfo.getComponentType();
+      DataInputOutputUtil.writeINT(out, dartComponentType == null ? -1 : dartComponentType.getKey());
+      writeNullableString(out, symbolInfo.getLibraryName());
+      writeNullableString(out, symbolInfo.getContainerName());
+    }
+  }
+
+  @Override
+  public List<DartSymbolInfo> read(@NotNull DataInput in) throws IOException {
+    int size = DataInputOutputUtil.readINT(in);
+    if (size == 0) return Collections.emptyList();
+
+    List<DartSymbolInfo> result = new ArrayList<DartSymbolInfo>(size);
+
+    for (int i = 0; i < size; i++) {
+      final int offset = DataInputOutputUtil.readINT(in);
+      final int componentTypeKey = DataInputOutputUtil.readINT(in);
+      final String libraryName = readNullableString(in);
+      final String containerName = readNullableString(in);
+      result.add(new DartSymbolInfo(offset, DartComponentType.valueOf(componentTypeKey), libraryName, containerName));
+    }
+
+    return result;
+  }
+
+  private static void writeNullableString(@NotNull final DataOutput out, @Nullable final String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      IOUtil.writeUTF(out, value);
+    }
+  }
+
+  @Nullable
+  private static String readNullableString(@NotNull final DataInput in) throws IOException {
+    return in.readBoolean() ? IOUtil.readUTF(in) : null;
+  }
+}
@@ -138,16 +138,13 @@ public class DartInlineHandler extends InlineActionHandler {
     }
     final VirtualFile virtualFile = psiFile.getVirtualFile();
     final String filePath = virtualFile.getPath();
-    // prepare navigation regions
-    final int offset = editor.getCaretModel().getOffset();
-    final List<DartNavigationRegion> navigationRegions = DartAnalysisServerService.getInstance().getNavigation(virtualFile);
     // find the navigation region
-    for (DartNavigationRegion region : navigationRegions) {
-      if (region.getOffset() <= offset && offset <= region.getOffset() + region.getLength()) {
-        final List<DartNavigationTarget> targets = region.getTargets();
-        final String kind = targets.get(0).getKind();
-        return new InlineRefactoringContext(virtualFile, filePath, offset, kind);
-      }
+    final int offset = editor.getCaretModel().getOffset();
+    final DartNavigationRegion region = DartAnalysisServerService.getInstance().findNavigationRegionContaining(virtualFile, offset);
+    if (region != null) {
+      final List<DartNavigationTarget> targets = region.getTargets();
+      final String kind = targets.get(0).getKind();
+      return new InlineRefactoringContext(virtualFile, filePath, offset, kind);
     }
     // fail
     return null;
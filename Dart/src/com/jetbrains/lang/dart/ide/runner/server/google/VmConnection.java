@@ -15,6 +15,7 @@
 package com.jetbrains.lang.dart.ide.runner.server.google;
 
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.util.Ref;
 import com.jetbrains.lang.dart.ide.runner.server.google.VmListener.PausedReason;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -25,6 +26,8 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 
 import static com.jetbrains.lang.dart.ide.runner.server.DartCommandLineDebugProcess.LOG;
@@ -59,7 +62,8 @@ public class VmConnection {
   private String host;
   private int port;
 
-  private Map<Integer, Callback> callbackMap = new HashMap<Integer, Callback>();
+  // touched from the socket reader thread, the pooled threads handling responses and the threads sending commands
+  private final ConcurrentMap<Integer, Callback> callbackMap = new ConcurrentHashMap<Integer, Callback>();
 
   private int nextCommandId = 1;
 
@@ -68,9 +72,23 @@ public class VmConnection {
 
   private List<VmBreakpoint> breakpoints = Collections.synchronizedList(new ArrayList<VmBreakpoint>());
 
-  private Map<String, String> sourceCache = new HashMap<String, String>();
+  private static final long SOURCE_CACHE_MAX_BYTES = 8 * 1024 * 1024;
+  private static final long LINE_NUMBER_TABLE_CACHE_MAX_BYTES = 4 * 1024 * 1024;
 
-  private Map<String, VmLineNumberTable> lineNumberTableCache = new HashMap<String, VmLineNumberTable>();
+  private final VmLruCache<String> sourceCache = new VmLruCache<String>(SOURCE_CACHE_MAX_BYTES) {
+    @Override
+    protected int getWeight(String source) {
+      return source.length() * 2;
+    }
+  };
+
+  private final VmLruCache<VmLineNumberTable> lineNumberTableCache =
+    new VmLruCache<VmLineNumberTable>(LINE_NUMBER_TABLE_CACHE_MAX_BYTES) {
+      @Override
+      protected int getWeight(VmLineNumberTable lineNumberTable) {
+        return lineNumberTable.getSizeInBytes();
+      }
+    };
 
   private Map<Integer, VmIsolate> isolateMap = new HashMap<Integer, VmIsolate>();
 
@@ -454,7 +472,13 @@ public class VmConnection {
   public int getLineNumberFromLocation(VmIsolate isolate, VmLocation location) {
     String cacheKey = location.getLibraryId() + ":" + location.getUrl();
 
-    if (!lineNumberTableCache.containsKey(cacheKey)) {
+    Ref<VmLineNumberTable> cachedTable = lineNumberTableCache.get(cacheKey);
+    VmLineNumberTable lineNumberTable;
+
+    if (cachedTable != null) {
+      lineNumberTable = cachedTable.get();
+    }
+    else {
       final CountDownLatch latch = new CountDownLatch(1);
       final VmLineNumberTable[] result = new VmLineNumberTable[1];
 
@@ -483,11 +507,10 @@ public class VmConnection {
 
       }
 
-      lineNumberTableCache.put(cacheKey, result[0]);
+      lineNumberTable = result[0];
+      lineNumberTableCache.put(cacheKey, lineNumberTable);
     }
 
-    VmLineNumberTable lineNumberTable = lineNumberTableCache.get(cacheKey);
-
     if (lineNumberTable == null) {
       return 0;
     }
@@ -595,38 +618,40 @@ public class VmConnection {
   public String getScriptSource(VmIsolate isolate, final int libraryId, String url) {
     final String cacheKey = libraryId + ":" + url;
 
-    if (!sourceCache.containsKey(cacheKey)) {
-      final CountDownLatch latch = new CountDownLatch(1);
+    Ref<String> cachedSource = sourceCache.get(cacheKey);
+    if (cachedSource != null) {
+      return cachedSource.get();
+    }
 
-      try {
-        getScriptSourceAsync(isolate, libraryId, url, new VmCallback<String>() {
-          @Override
-          public void handleResult(VmResult<String> result) {
-            if (result.isError()) {
-              sourceCache.put(cacheKey, null);
-            }
-            else {
-              sourceCache.put(cacheKey, result.getResult());
-            }
+    final CountDownLatch latch = new CountDownLatch(1);
+    final String[] source = new String[1];
 
-            latch.countDown();
+    try {
+      getScriptSourceAsync(isolate, libraryId, url, new VmCallback<String>() {
+        @Override
+        public void handleResult(VmResult<String> result) {
+          if (!result.isError()) {
+            source[0] = result.getResult();
           }
-        });
-      }
-      catch (IOException e) {
-        sourceCache.put(cacheKey, null);
-        latch.countDown();
-      }
+          sourceCache.put(cacheKey, source[0]);
 
-      try {
-        latch.await();
-      }
-      catch (InterruptedException e) {
+          latch.countDown();
+        }
+      });
+    }
+    catch (IOException e) {
+      sourceCache.put(cacheKey, null);
+      latch.countDown();
+    }
+
+    try {
+      latch.await();
+    }
+    catch (InterruptedException e) {
 
-      }
     }
 
-    return sourceCache.get(cacheKey);
+    return source[0];
   }
 
   public void getScriptSourceAsync(VmIsolate isolate, int libraryId, String url,
@@ -956,11 +981,14 @@ public class VmConnection {
     sendSimpleCommand(stepCommand, isolate.getId(), resumeOnSuccess(isolate));
   }
 
-  public synchronized void handleTerminated() {
-    // Clean up the callbackMap on termination.
-    List<Callback> callbacks = new ArrayList<Callback>(callbackMap.values());
+  public void handleTerminated() {
+    // Clean up the callbackMap on termination. A callback removed here can't be called by processResponse() any more and vice versa.
+    for (Integer id : callbackMap.keySet()) {
+      Callback callback = callbackMap.remove(id);
+      if (callback == null) {
+        continue;
+      }
 
-    for (Callback callback : callbacks) {
       try {
         callback.handleResult(VmResult.createJsonErrorResult("connection termination"));
       }
@@ -969,7 +997,8 @@ public class VmConnection {
       }
     }
 
-    callbackMap.clear();
+    sourceCache.clear();
+    lineNumberTableCache.clear();
   }
 
   protected void processJson(final JSONObject result) {
@@ -1061,9 +1090,7 @@ public class VmConnection {
     }
     catch (IOException ex) {
       if (callback != null) {
-        synchronized (this) {
-          callbackMap.remove(id);
-        }
+        callbackMap.remove(id);
       }
 
       throw ex;
@@ -1394,11 +1421,7 @@ public class VmConnection {
     // Process a command response.
     int id = result.getInt("id");
 
-    Callback callback;
-
-    synchronized (this) {
-      callback = callbackMap.remove(id);
-    }
+    Callback callback = callbackMap.remove(id);
 
     if (callback != null) {
       callback.handleResult(result);
@@ -18,53 +18,90 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 import static com.jetbrains.lang.dart.ide.runner.server.DartCommandLineDebugProcess.LOG;
 
 /**
- * A VM LineNumberTable object.
+ * A VM LineNumberTable object. Mappings are kept in two parallel int arrays sorted by token offset, so a table takes 8 bytes per mapping
+ * and a lookup is a binary search.
  */
 public class VmLineNumberTable {
 
   static VmLineNumberTable createFrom(VmIsolate isolate, int libraryId, String url,
                                       JSONObject object) throws JSONException {
-    VmLineNumberTable lineNumberTable = new VmLineNumberTable(libraryId, url);
-
     // { "id": 2, "result": { "lines": [[1,0,0,1,5,2,9,3,10,4,12], [2, ...
 
     JSONArray lineInfos = object.getJSONArray("lines");
 
+    int mappingsCount = 0;
+    for (int i = 0; i < lineInfos.length(); i++) {
+      mappingsCount += lineInfos.getJSONArray(i).length() / 2;
+    }
+
+    int[] offsets = new int[mappingsCount];
+    int[] lineNumbers = new int[mappingsCount];
+    int count = 0;
+
     for (int i = 0; i < lineInfos.length(); i++) {
       JSONArray lineInfo = lineInfos.getJSONArray(i);
 
       // Retrieve the line number of the current line.
-      Integer lineNumber = lineInfo.getInt(0);
+      int lineNumber = lineInfo.getInt(0);
 
       // Index over the remaining (tokenOffset, charOffset) tuples.
       for (int index = 1; index < lineInfo.length(); index += 2) {
-        Integer tokenOffset = lineInfo.getInt(index);
+        int tokenOffset = lineInfo.getInt(index);
 
         // We don't use this info currently, so we don't decode it.
         //Integer columnNumber = lineInfo.getInt(index + 1);
 
-        lineNumberTable.lineMap.put(tokenOffset, lineNumber);
+        offsets[count] = tokenOffset;
+        lineNumbers[count] = lineNumber;
+        count++;
       }
     }
 
-    return lineNumberTable;
+    return new VmLineNumberTable(libraryId, url, offsets, lineNumbers, count);
   }
 
-  Map<Integer, Integer> lineMap = new HashMap<Integer, Integer>();
+  // parallel arrays sorted by token offset
+  private final int[] tokenOffsets;
+  private final int[] lines;
 
   private int libraryId;
 
   private String url;
 
   VmLineNumberTable(int libraryId, String url) {
+    this(libraryId, url, new int[0], new int[0], 0);
+  }
+
+  VmLineNumberTable(int libraryId, String url, int[] offsets, int[] lineNumbers, int count) {
     this.libraryId = libraryId;
     this.url = url;
+
+    // Sort by token offset, keeping the insertion order for equal offsets: the last line reported for an offset wins,
+    // as it did when mappings were kept in a HashMap.
+    long[] keys = new long[count];
+    for (int i = 0; i < count; i++) {
+      keys[i] = ((long)offsets[i] << 32) | i;
+    }
+    Arrays.sort(keys);
+
+    int size = 0;
+    for (int i = 0; i < count; i++) {
+      if (i == count - 1 || (int)(keys[i] >> 32) != (int)(keys[i + 1] >> 32)) {
+        keys[size++] = keys[i];
+      }
+    }
+
+    tokenOffsets = new int[size];
+    lines = new int[size];
+    for (int i = 0; i < size; i++) {
+      tokenOffsets[i] = (int)(keys[i] >> 32);
+      lines[i] = lineNumbers[(int)keys[i]];
+    }
   }
 
   public int getLibraryId() {
@@ -72,10 +109,10 @@ public class VmLineNumberTable {
   }
 
   public int getLineForLocation(VmLocation location) {
-    Integer ret = lineMap.get(location.getTokenOffset());
+    int index = Arrays.binarySearch(tokenOffsets, location.getTokenOffset());
 
-    if (ret != null) {
-      return ret.intValue();
+    if (index >= 0) {
+      return lines[index];
     }
 
     LOG.warn("no line mapping found for " + location);
@@ -87,8 +124,19 @@ public class VmLineNumberTable {
     return url;
   }
 
+  int getMappingsCount() {
+    return tokenOffsets.length;
+  }
+
+  /**
+   * Approximate retained size, used as the weight in the line number table cache.
+   */
+  int getSizeInBytes() {
+    return 64 + tokenOffsets.length * 8 + (url == null ? 0 : url.length() * 2);
+  }
+
   @Override
   public String toString() {
-    return "[lineNumberTable for " + url + "," + lineMap.size() + " mappings]";
+    return "[lineNumberTable for " + url + "," + tokenOffsets.length + " mappings]";
   }
 }
@@ -0,0 +1,71 @@
+package com.jetbrains.lang.dart.ide.runner.server.google;
+
+import com.intellij.openapi.util.Ref;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread safe LRU cache bounded by the total weight (approximate size in bytes) of its values. Null values are cached as well, they
+ * mean that the VM failed to return the value and it should not be requested again.
+ */
+abstract class VmLruCache<V> {
+
+  private final long maxWeight;
+
+  private final LinkedHashMap<String, V> map = new LinkedHashMap<String, V>(16, 0.75f, true);
+
+  private long totalWeight;
+
+  VmLruCache(long maxWeight) {
+    this.maxWeight = maxWeight;
+  }
+
+  /**
+   * @return the weight of a non-null value, in bytes
+   */
+  protected abstract int getWeight(V value);
+
+  /**
+   * @return a reference to the cached value (which may be null), or null if there is no entry for the key.
+   */
+  synchronized Ref<V> get(String key) {
+    V value = map.get(key);
+    if (value == null && !map.containsKey(key)) {
+      return null;
+    }
+    return Ref.create(value);
+  }
+
+  synchronized void put(String key, V value) {
+    boolean hadKey = map.containsKey(key);
+    V oldValue = map.put(key, value);
+    totalWeight += weight(key, value) - (hadKey ? weight(key, oldValue) : 0);
+
+    // the value that has just been put is not evicted even if it alone exceeds the limit
+    Iterator<Map.Entry<String, V>> iterator = map.entrySet().iterator();
+    while (totalWeight > maxWeight && map.size() > 1) {
+      Map.Entry<String, V> eldest = iterator.next();
+      totalWeight -= weight(eldest.getKey(), eldest.getValue());
+      iterator.remove();
+    }
+  }
+
+  synchronized void clear() {
+    map.clear();
+    totalWeight = 0;
+  }
+
+  synchronized int size() {
+    return map.size();
+  }
+
+  synchronized long getTotalWeight() {
+    return totalWeight;
+  }
+
+  private long weight(String key, V value) {
+    return key.length() * 2 + (value == null ? 0 : getWeight(value));
+  }
+}
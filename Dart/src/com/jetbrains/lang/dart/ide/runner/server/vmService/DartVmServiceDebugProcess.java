@@ -344,6 +344,7 @@ public class DartVmServiceDebugProcess extends XDebugProcess {
 
   public void isolateSuspended(@NotNull final IsolateRef isolateRef) {
     mySuspendedIsolateIds.add(isolateRef.getId());
+    myVmServiceWrapper.isolatePaused(isolateRef.getId());
   }
 
   public boolean isIsolateSuspended(@NotNull final String isolateId) {
@@ -361,11 +362,13 @@ public class DartVmServiceDebugProcess extends XDebugProcess {
 
   public void isolateResumed(@NotNull final IsolateRef isolateRef) {
     mySuspendedIsolateIds.remove(isolateRef.getId());
+    myVmServiceWrapper.isolateResumed(isolateRef.getId());
   }
 
   public void isolateExit(@NotNull final IsolateRef isolateRef) {
     myIsolatesInfo.deleteIsolate(isolateRef);
     mySuspendedIsolateIds.remove(isolateRef.getId());
+    myVmServiceWrapper.isolateExited(isolateRef.getId());
 
     if (isolateRef.getId().equals(myLatestCurrentIsolateId)) {
       resume(getSession().getSuspendContext()); // otherwise no way no resume them from UI
@@ -0,0 +1,432 @@
+package com.jetbrains.lang.dart.ide.runner.server.vmService;
+
+import com.google.gson.JsonObject;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.Consumer;
+import gnu.trove.THashMap;
+import gnu.trove.THashSet;
+import org.dartlang.vm.service.consumer.EvaluateConsumer;
+import org.dartlang.vm.service.consumer.EvaluateInFrameConsumer;
+import org.dartlang.vm.service.consumer.GetObjectConsumer;
+import org.dartlang.vm.service.element.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+
+/**
+ * Sends independent read-only requests (getObject, evaluate) to the VM service concurrently, but keeps no more than a fixed number of them
+ * in flight, so that filling the Variables view for a frame with big collections neither waits for each reply in turn nor floods
+ * the VM service with hundreds of requests at once.
+ * <p/>
+ * Objects returned by getObject are cached per isolate until the isolate is paused or resumed next time: objects can't change while the
+ * isolate is paused. Concurrent requests for the same object are sent only once.
+ * <p/>
+ * Requests that will never be answered, because their isolate has exited or the VM service has been disconnected, are failed with
+ * an {@link RPCError}, so that neither their consumers wait forever nor they keep their slots in flight.
+ */
+class VmServiceRequestScheduler {
+
+  private static final Logger LOG = Logger.getInstance(VmServiceRequestScheduler.class.getName());
+
+  static final int MAX_IN_FLIGHT_REQUESTS = 16;
+
+  // JSON-RPC implementation-defined server error
+  private static final int NOT_ANSWERED_ERROR_CODE = -32000;
+  private static final String DISCONNECTED_MESSAGE = "VM service disconnected";
+
+  interface Request {
+    /**
+     * Sends the request to the VM service, the reply must be handled only if {@link Ticket#done()} returns <code>true</code>
+     */
+    void send(@NotNull Ticket ticket);
+  }
+
+  interface ObjectRequest {
+    void send(@NotNull GetObjectConsumer consumer);
+  }
+
+  // objects received since the latest pause of the isolate; a new instance is created for each pause
+  private static class IsolateCache {
+    private final Map<String, Obj> myObjects = new THashMap<String, Obj>();
+    private final Map<String, List<GetObjectConsumer>> myPendingConsumers = new THashMap<String, List<GetObjectConsumer>>();
+  }
+
+  @NotNull private final Executor myExecutor;
+  private final int myMaxInFlight;
+
+  private final Object myLock = new Object(); // use this lock to access all fields below
+  private final ArrayDeque<Ticket> myQueue = new ArrayDeque<Ticket>();
+  private final Set<Ticket> myInFlight = new THashSet<Ticket>();
+  private final Map<String, IsolateCache> myIsolateCaches = new THashMap<String, IsolateCache>();
+  private boolean myDrainScheduled;
+  private boolean myDisposed;
+  private long myPauseTime;
+  private long myPauseToIdleMillis = -1;
+  private int mySentCount;
+  private int myCacheHitCount;
+
+  private final Runnable myDrainRunnable = this::drain;
+
+  VmServiceRequestScheduler(@NotNull final Executor executor, final int maxInFlight) {
+    myExecutor = executor;
+    myMaxInFlight = maxInFlight;
+  }
+
+  /**
+   * @param onFailure called instead of the reply if the request will never be answered
+   */
+  void submit(@NotNull final String isolateId, @NotNull final Request request, @NotNull final Consumer<RPCError> onFailure) {
+    final Ticket ticket = new Ticket(isolateId, request, onFailure);
+    synchronized (myLock) {
+      if (!myDisposed) {
+        myQueue.add(ticket);
+        scheduleDrain();
+        return;
+      }
+    }
+
+    fail(onFailure, DISCONNECTED_MESSAGE);
+  }
+
+  /**
+   * @param key object id, unique for the isolate; includes offset and count for collection ranges
+   */
+  void getObject(@NotNull final String isolateId,
+                 @NotNull final String key,
+                 @NotNull final GetObjectConsumer consumer,
+                 @NotNull final ObjectRequest request) {
+    final Obj cachedObject;
+    synchronized (myLock) {
+      if (myDisposed) {
+        fail(consumer::onError, DISCONNECTED_MESSAGE);
+        return;
+      }
+
+      IsolateCache cache = myIsolateCaches.get(isolateId);
+      if (cache == null) {
+        cache = new IsolateCache();
+        myIsolateCaches.put(isolateId, cache);
+      }
+
+      cachedObject = cache.myObjects.get(key);
+      if (cachedObject == null) {
+        final List<GetObjectConsumer> pendingConsumers = cache.myPendingConsumers.get(key);
+        if (pendingConsumers != null) {
+          pendingConsumers.add(consumer);
+          return;
+        }
+
+        final List<GetObjectConsumer> consumers = new ArrayList<GetObjectConsumer>(1);
+        consumers.add(consumer);
+        cache.myPendingConsumers.put(key, consumers);
+
+        final CachingConsumer cachingConsumer = new CachingConsumer(isolateId, key, cache, consumers);
+        submit(isolateId, ticket -> request.send(whenDone(cachingConsumer, ticket)), cachingConsumer::onError);
+        return;
+      }
+
+      myCacheHitCount++;
+    }
+
+    // keep the contract of the VM service: consumer is never called in the requesting thread
+    myExecutor.execute(() -> consumer.received(cachedObject));
+  }
+
+  void isolatePaused(@NotNull final String isolateId) {
+    synchronized (myLock) {
+      myIsolateCaches.remove(isolateId);
+      myPauseTime = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Called on resume and when an expression that may change objects is evaluated
+   */
+  void invalidate(@NotNull final String isolateId) {
+    synchronized (myLock) {
+      myIsolateCaches.remove(isolateId);
+    }
+  }
+
+  /**
+   * Fails the requests to the isolate that have not been answered yet
+   */
+  void isolateExited(@NotNull final String isolateId) {
+    final List<Ticket> tickets = new ArrayList<Ticket>();
+    synchronized (myLock) {
+      myIsolateCaches.remove(isolateId);
+      for (Ticket ticket : myQueue) {
+        if (ticket.myIsolateId.equals(isolateId)) tickets.add(ticket);
+      }
+      for (Ticket ticket : myInFlight) {
+        if (ticket.myIsolateId.equals(isolateId)) tickets.add(ticket);
+      }
+    }
+
+    for (Ticket ticket : tickets) {
+      ticket.fail("Isolate " + isolateId + " has exited");
+    }
+  }
+
+  /**
+   * Fails all requests that have not been answered yet, called when the VM service is disconnected
+   */
+  void dispose() {
+    final List<Ticket> tickets;
+    synchronized (myLock) {
+      myDisposed = true;
+      myIsolateCaches.clear();
+      tickets = new ArrayList<Ticket>(myQueue);
+      tickets.addAll(myInFlight);
+    }
+
+    for (Ticket ticket : tickets) {
+      ticket.fail(DISCONNECTED_MESSAGE);
+    }
+  }
+
+  /**
+   * @return time from the latest pause till all requests made after it have been answered, or -1
+   */
+  long getPauseToIdleMillis() {
+    synchronized (myLock) {
+      return myPauseToIdleMillis;
+    }
+  }
+
+  int getSentCount() {
+    synchronized (myLock) {
+      return mySentCount;
+    }
+  }
+
+  int getCacheHitCount() {
+    synchronized (myLock) {
+      return myCacheHitCount;
+    }
+  }
+
+  int getInFlightCount() {
+    synchronized (myLock) {
+      return myInFlight.size();
+    }
+  }
+
+  private void scheduleDrain() {
+    if (!myDisposed && !myDrainScheduled && myInFlight.size() < myMaxInFlight && !myQueue.isEmpty()) {
+      myDrainScheduled = true;
+      myExecutor.execute(myDrainRunnable);
+    }
+  }
+
+  private void drain() {
+    while (true) {
+      final Ticket ticket;
+      synchronized (myLock) {
+        if (myDisposed || myInFlight.size() >= myMaxInFlight || myQueue.isEmpty()) {
+          myDrainScheduled = false;
+          return;
+        }
+
+        ticket = myQueue.poll();
+        myInFlight.add(ticket);
+        mySentCount++;
+      }
+
+      try {
+        ticket.myRequest.send(ticket);
+      }
+      catch (RuntimeException e) {
+        LOG.error(e);
+        ticket.fail(String.valueOf(e.getMessage()));
+      }
+    }
+  }
+
+  private void requestDone() {
+    final long pauseToIdleMillis;
+    synchronized (myLock) {
+      scheduleDrain();
+
+      if (!myInFlight.isEmpty() || !myQueue.isEmpty() || myPauseTime == 0) return;
+
+      pauseToIdleMillis = System.currentTimeMillis() - myPauseTime;
+      myPauseToIdleMillis = pauseToIdleMillis;
+      myPauseTime = 0;
+    }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("VM service requests after pause answered in " + pauseToIdleMillis + " ms, sent: " + getSentCount() +
+                ", served from cache: " + getCacheHitCount());
+    }
+  }
+
+  /**
+   * A submitted request. It is done exactly once: either when the reply comes, or when it is failed because it will never be answered;
+   * a reply that comes after that is ignored.
+   */
+  final class Ticket {
+    @NotNull private final String myIsolateId;
+    @NotNull private final Request myRequest;
+    @NotNull private final Consumer<RPCError> myOnFailure;
+    private boolean myDone; // guarded by myLock
+
+    private Ticket(@NotNull final String isolateId, @NotNull final Request request, @NotNull final Consumer<RPCError> onFailure) {
+      myIsolateId = isolateId;
+      myRequest = request;
+      myOnFailure = onFailure;
+    }
+
+    /**
+     * Frees the slot of the request
+     *
+     * @return <code>false</code> if the request is already done, its reply must be ignored then
+     */
+    boolean done() {
+      synchronized (myLock) {
+        if (myDone) return false;
+
+        myDone = true;
+        if (!myInFlight.remove(this)) {
+          myQueue.remove(this);
+        }
+      }
+
+      requestDone();
+      return true;
+    }
+
+    private void fail(@NotNull final String message) {
+      if (done()) {
+        VmServiceRequestScheduler.this.fail(myOnFailure, message);
+      }
+    }
+  }
+
+  private void fail(@NotNull final Consumer<RPCError> onFailure, @NotNull final String message) {
+    final JsonObject json = new JsonObject();
+    json.addProperty("code", NOT_ANSWERED_ERROR_CODE);
+    json.addProperty("message", message);
+    final RPCError error = new RPCError(json);
+    // keep the contract of the VM service: consumer is never called in the requesting thread
+    myExecutor.execute(() -> onFailure.consume(error));
+  }
+
+  private class CachingConsumer implements GetObjectConsumer {
+    @NotNull private final String myIsolateId;
+    @NotNull private final String myKey;
+    @NotNull private final IsolateCache myCache;
+    @NotNull private final List<GetObjectConsumer> myConsumers;
+
+    private CachingConsumer(@NotNull final String isolateId,
+                            @NotNull final String key,
+                            @NotNull final IsolateCache cache,
+                            @NotNull final List<GetObjectConsumer> consumers) {
+      myIsolateId = isolateId;
+      myKey = key;
+      myCache = cache;
+      myConsumers = consumers;
+    }
+
+    @Override
+    public void received(final Obj response) {
+      for (GetObjectConsumer consumer : takeConsumers(response)) {
+        consumer.received(response);
+      }
+    }
+
+    @Override
+    public void received(final Sentinel response) {
+      for (GetObjectConsumer consumer : takeConsumers(null)) {
+        consumer.received(response);
+      }
+    }
+
+    @Override
+    public void onError(final RPCError error) {
+      for (GetObjectConsumer consumer : takeConsumers(null)) {
+        consumer.onError(error);
+      }
+    }
+
+    @NotNull
+    private List<GetObjectConsumer> takeConsumers(@Nullable final Obj objectToCache) {
+      synchronized (myLock) {
+        // cache is dropped if the isolate has been resumed or paused again since the request was sent
+        if (objectToCache != null && myIsolateCaches.get(myIsolateId) == myCache) {
+          myCache.myObjects.put(myKey, objectToCache);
+        }
+        // no more consumers are added to the list after it is removed from the map
+        myCache.myPendingConsumers.remove(myKey);
+        return myConsumers;
+      }
+    }
+  }
+
+  @NotNull
+  static GetObjectConsumer whenDone(@NotNull final GetObjectConsumer consumer, @NotNull final Ticket ticket) {
+    return new GetObjectConsumer() {
+      @Override
+      public void received(final Obj response) {
+        if (ticket.done()) consumer.received(response);
+      }
+
+      @Override
+      public void received(final Sentinel response) {
+        if (ticket.done()) consumer.received(response);
+      }
+
+      @Override
+      public void onError(final RPCError error) {
+        if (ticket.done()) consumer.onError(error);
+      }
+    };
+  }
+
+  @NotNull
+  static EvaluateConsumer whenDone(@NotNull final EvaluateConsumer consumer, @NotNull final Ticket ticket) {
+    return new EvaluateConsumer() {
+      @Override
+      public void received(final ErrorRef response) {
+        if (ticket.done()) consumer.received(response);
+      }
+
+      @Override
+      public void received(final InstanceRef response) {
+        if (ticket.done()) consumer.received(response);
+      }
+
+      @Override
+      public void received(final Sentinel response) {
+        if (ticket.done()) consumer.received(response);
+      }
+
+      @Override
+      public void onError(final RPCError error) {
+        if (ticket.done()) consumer.onError(error);
+      }
+    };
+  }
+
+  @NotNull
+  static EvaluateInFrameConsumer whenDone(@NotNull final EvaluateInFrameConsumer consumer, @NotNull final Ticket ticket) {
+    return new EvaluateInFrameConsumer() {
+      @Override
+      public void received(final ErrorRef response) {
+        if (ticket.done()) consumer.received(response);
+      }
+
+      @Override
+      public void received(final InstanceRef response) {
+        if (ticket.done()) consumer.received(response);
+      }
+
+      @Override
+      public void onError(final RPCError error) {
+        if (ticket.done()) consumer.onError(error);
+      }
+    };
+  }
+}
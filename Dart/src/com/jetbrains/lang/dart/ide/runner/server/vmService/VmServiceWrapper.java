@@ -22,6 +22,7 @@ import org.dartlang.vm.service.element.*;
 import org.dartlang.vm.service.logging.Logging;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -39,6 +40,7 @@ public class VmServiceWrapper implements Disposable {
   private final IsolatesInfo myIsolatesInfo;
   private final DartVmServiceBreakpointHandler myBreakpointHandler;
   private final Alarm myRequestsScheduler;
+  private final VmServiceRequestScheduler myObjectRequestsScheduler;
 
   private long myVmServiceReceiverThreadId;
 
@@ -53,10 +55,13 @@ public class VmServiceWrapper implements Disposable {
     myVmService = vmService;
     myIsolatesInfo = isolatesInfo;
     myRequestsScheduler = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, this);
+    myObjectRequestsScheduler =
+      new VmServiceRequestScheduler(PooledThreadExecutor.INSTANCE, VmServiceRequestScheduler.MAX_IN_FLIGHT_REQUESTS);
   }
 
   @Override
   public void dispose() {
+    myObjectRequestsScheduler.dispose();
   }
 
   private void addRequest(@NotNull final Runnable runnable) {
@@ -235,7 +240,20 @@ public class VmServiceWrapper implements Disposable {
     addRequest(() -> myVmService.removeBreakpoint(isolateId, vmBreakpointId, VmServiceConsumers.EMPTY_SUCCESS_CONSUMER));
   }
 
+  public void isolatePaused(@NotNull final String isolateId) {
+    myObjectRequestsScheduler.isolatePaused(isolateId);
+  }
+
+  public void isolateResumed(@NotNull final String isolateId) {
+    myObjectRequestsScheduler.invalidate(isolateId);
+  }
+
+  public void isolateExited(@NotNull final String isolateId) {
+    myObjectRequestsScheduler.isolateExited(isolateId);
+  }
+
   public void resumeIsolate(@NotNull final String isolateId, @Nullable final StepOption stepOption) {
+    myObjectRequestsScheduler.invalidate(isolateId);
     addRequest(() -> {
       myLatestStep = stepOption;
       myVmService.resume(isolateId, stepOption, VmServiceConsumers.EMPTY_SUCCESS_CONSUMER);
@@ -305,7 +323,7 @@ public class VmServiceWrapper implements Disposable {
   }
 
   public void getObject(@NotNull final String isolateId, @NotNull final String objectId, @NotNull final GetObjectConsumer consumer) {
-    addRequest(() -> myVmService.getObject(isolateId, objectId, consumer));
+    myObjectRequestsScheduler.getObject(isolateId, objectId, consumer, c -> myVmService.getObject(isolateId, objectId, c));
   }
 
   public void getCollectionObject(@NotNull final String isolateId,
@@ -313,7 +331,8 @@ public class VmServiceWrapper implements Disposable {
                                   final int offset,
                                   final int count,
                                   @NotNull final GetObjectConsumer consumer) {
-    addRequest(() -> myVmService.getObject(isolateId, objectId, offset, count, consumer));
+    myObjectRequestsScheduler.getObject(isolateId, objectId + "[" + offset + ":" + count + "]", consumer,
+                                        c -> myVmService.getObject(isolateId, objectId, offset, count, c));
   }
 
   public void evaluateInFrame(@NotNull final String isolateId,
@@ -321,7 +340,7 @@ public class VmServiceWrapper implements Disposable {
                               @NotNull final String expression,
                               @NotNull final XDebuggerEvaluator.XEvaluationCallback callback,
                               final boolean reportIfError) {
-    addRequest(() -> myVmService.evaluateInFrame(isolateId, vmFrame.getIndex(), expression, new EvaluateInFrameConsumer() {
+    final EvaluateInFrameConsumer consumer = new EvaluateInFrameConsumer() {
       @Override
       public void received(InstanceRef instanceRef) {
         callback.evaluated(new DartVmServiceValue(myDebugProcess, isolateId, "result", instanceRef, null, false));
@@ -340,13 +359,21 @@ public class VmServiceWrapper implements Disposable {
           callback.errorOccurred(error.getMessage());
         }
       }
-    }));
+    };
+
+    // the expression may change objects that are already cached
+    myObjectRequestsScheduler.invalidate(isolateId);
+    myObjectRequestsScheduler.submit(isolateId, ticket -> myVmService.evaluateInFrame(isolateId, vmFrame.getIndex(), expression,
+                                                                                      VmServiceRequestScheduler.whenDone(consumer, ticket)),
+                                     consumer::onError);
   }
 
   public void evaluateInTargetContext(@NotNull final String isolateId,
                                       @NotNull final String targetId,
                                       @NotNull final String expression,
                                       @NotNull final EvaluateConsumer consumer) {
-    addRequest(() -> myVmService.evaluate(isolateId, targetId, expression, consumer));
+    myObjectRequestsScheduler.submit(isolateId, ticket -> myVmService.evaluate(isolateId, targetId, expression,
+                                                                               VmServiceRequestScheduler.whenDone(consumer, ticket)),
+                                     consumer::onError);
   }
 }
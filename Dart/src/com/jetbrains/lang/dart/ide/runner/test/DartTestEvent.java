@@ -0,0 +1,306 @@
+package com.jetbrains.lang.dart.ide.runner.test;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * One event of the JSON protocol of package:test (pub run test --reporter json), decoded in a streaming manner, without building a
+ * JsonObject tree. Only the fields used by {@link DartTestEventsConverter} are kept, all other values are skipped.
+ * <p/>
+ * An instance is reused for all lines of the test output, so it is not thread safe. Accepted syntax is the same as for
+ * {@link com.google.gson.JsonParser} (lenient mode): single-quoted strings, unquoted names, etc.
+ */
+class DartTestEvent {
+  static final int NO_ID = -1;
+
+  static class ItemData {
+    boolean hasId;
+    int id;
+    @Nullable String name;
+    int suiteId;
+    int parentId;
+    int lastGroupId;
+    int line;
+    int column;
+    @Nullable String url;
+    int testCount;
+    @Nullable String path;
+    @Nullable String platform;
+    boolean skip;
+    @Nullable String skipReason;
+
+    void reset() {
+      hasId = false;
+      id = NO_ID;
+      name = null;
+      suiteId = NO_ID;
+      parentId = NO_ID;
+      lastGroupId = NO_ID;
+      line = -1;
+      column = -1;
+      url = null;
+      testCount = -1;
+      path = null;
+      platform = null;
+      skip = false;
+      skipReason = null;
+    }
+  }
+
+  @Nullable String type;
+  long time;
+  boolean hasTime;
+  int testId;
+  int count;
+  @Nullable String result;
+  @Nullable String message;
+  @Nullable String error;
+  @Nullable String stackTrace;
+  @Nullable Boolean isFailure;
+
+  final ItemData test = new ItemData();
+  final ItemData group = new ItemData();
+  final ItemData suite = new ItemData();
+  boolean hasTest;
+  boolean hasGroup;
+  boolean hasSuite;
+
+  private void reset() {
+    type = null;
+    time = 0;
+    hasTime = false;
+    testId = NO_ID;
+    count = -1;
+    result = null;
+    message = null;
+    error = null;
+    stackTrace = null;
+    isFailure = null;
+    test.reset();
+    group.reset();
+    suite.reset();
+    hasTest = false;
+    hasGroup = false;
+    hasSuite = false;
+  }
+
+  /**
+   * @throws JsonSyntaxException if the text is not a single JSON object, e.g. it is a line printed by pub or by the Dart VM
+   */
+  void parse(@NotNull final String text) throws JsonSyntaxException {
+    reset();
+
+    final JsonReader reader = new JsonReader(new StringReader(text));
+    reader.setLenient(true);
+    try {
+      if (reader.peek() != JsonToken.BEGIN_OBJECT) throw new JsonSyntaxException("Not a JSON object");
+
+      reader.beginObject();
+      while (reader.hasNext()) {
+        final String name = reader.nextName();
+        if ("type".equals(name)) {
+          type = readString(reader);
+        }
+        else if ("time".equals(name)) {
+          time = readLong(reader, Long.MIN_VALUE);
+          hasTime = time != Long.MIN_VALUE;
+        }
+        else if ("testID".equals(name)) {
+          testId = readInt(reader, NO_ID);
+        }
+        else if ("test".equals(name)) {
+          hasTest = readItem(reader, test);
+        }
+        else if ("group".equals(name)) {
+          hasGroup = readItem(reader, group);
+        }
+        else if ("suite".equals(name)) {
+          hasSuite = readItem(reader, suite);
+        }
+        else if ("count".equals(name)) {
+          count = readInt(reader, -1);
+        }
+        else if ("result".equals(name)) {
+          result = readString(reader);
+        }
+        else if ("message".equals(name)) {
+          message = readString(reader);
+        }
+        else if ("error".equals(name)) {
+          error = readString(reader);
+        }
+        else if ("stackTrace".equals(name)) {
+          stackTrace = readString(reader);
+        }
+        else if ("isFailure".equals(name)) {
+          isFailure = readBoolean(reader);
+        }
+        else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+
+      if (reader.peek() != JsonToken.END_DOCUMENT) throw new JsonSyntaxException("Did not consume the entire document.");
+    }
+    catch (IOException e) {
+      throw new JsonSyntaxException(e);
+    }
+    catch (IllegalStateException e) {
+      throw new JsonSyntaxException(e);
+    }
+  }
+
+  private static boolean readItem(@NotNull final JsonReader reader, @NotNull final ItemData item) throws IOException {
+    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+      reader.skipValue();
+      return false;
+    }
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      final String name = reader.nextName();
+      if ("id".equals(name)) {
+        item.hasId = true;
+        item.id = readInt(reader, NO_ID);
+      }
+      else if ("name".equals(name)) {
+        item.name = readString(reader);
+      }
+      else if ("suiteID".equals(name)) {
+        item.suiteId = readInt(reader, NO_ID);
+      }
+      else if ("parentID".equals(name)) {
+        item.parentId = readInt(reader, NO_ID);
+      }
+      else if ("groupIDs".equals(name)) {
+        item.lastGroupId = readLastInt(reader);
+      }
+      else if ("line".equals(name)) {
+        item.line = readInt(reader, -1);
+      }
+      else if ("column".equals(name)) {
+        item.column = readInt(reader, -1);
+      }
+      else if ("url".equals(name)) {
+        item.url = readString(reader);
+      }
+      else if ("testCount".equals(name)) {
+        item.testCount = readInt(reader, -1);
+      }
+      else if ("path".equals(name)) {
+        item.path = readString(reader);
+      }
+      else if ("platform".equals(name)) {
+        item.platform = readString(reader);
+      }
+      else if ("metadata".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+          final String metadataName = reader.nextName();
+          if ("skip".equals(metadataName)) {
+            item.skip = Boolean.TRUE.equals(readBoolean(reader));
+          }
+          else if ("skipReason".equals(metadataName)) {
+            item.skipReason = readString(reader);
+          }
+          else {
+            reader.skipValue();
+          }
+        }
+        reader.endObject();
+      }
+      else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return true;
+  }
+
+  @Nullable
+  private static String readString(@NotNull final JsonReader reader) throws IOException {
+    switch (reader.peek()) {
+      case STRING:
+      case NUMBER:
+        return reader.nextString();
+      case BOOLEAN:
+        return String.valueOf(reader.nextBoolean());
+      case NULL:
+        reader.nextNull();
+        return null;
+      default:
+        reader.skipValue();
+        return null;
+    }
+  }
+
+  private static int readInt(@NotNull final JsonReader reader, final int defaultValue) throws IOException {
+    final JsonToken token = reader.peek();
+    if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+      try {
+        return reader.nextInt();
+      }
+      catch (NumberFormatException e) {
+        reader.skipValue();
+        return defaultValue;
+      }
+    }
+
+    reader.skipValue();
+    return defaultValue;
+  }
+
+  private static long readLong(@NotNull final JsonReader reader, final long defaultValue) throws IOException {
+    final JsonToken token = reader.peek();
+    if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+      try {
+        return reader.nextLong();
+      }
+      catch (NumberFormatException e) {
+        reader.skipValue();
+        return defaultValue;
+      }
+    }
+
+    reader.skipValue();
+    return defaultValue;
+  }
+
+  @Nullable
+  private static Boolean readBoolean(@NotNull final JsonReader reader) throws IOException {
+    switch (reader.peek()) {
+      case BOOLEAN:
+        return reader.nextBoolean();
+      case STRING:
+        return Boolean.valueOf(reader.nextString());
+      case NUMBER:
+        reader.skipValue();
+        return Boolean.FALSE;
+      default:
+        reader.skipValue();
+        return null;
+    }
+  }
+
+  private static int readLastInt(@NotNull final JsonReader reader) throws IOException {
+    if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+      reader.skipValue();
+      return NO_ID;
+    }
+
+    int last = NO_ID;
+    reader.beginArray();
+    while (reader.hasNext()) {
+      last = readInt(reader, NO_ID);
+    }
+    reader.endArray();
+    return last;
+  }
+}
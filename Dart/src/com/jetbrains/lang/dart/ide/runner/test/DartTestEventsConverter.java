@@ -1,9 +1,12 @@
 package com.jetbrains.lang.dart.ide.runner.test;
 
-import com.google.gson.*;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
 import com.intellij.execution.testframework.TestConsoleProperties;
-import com.intellij.execution.testframework.sm.ServiceMessageBuilder;
+import com.intellij.execution.testframework.sm.SMTestsRunnerBundle;
+import com.intellij.execution.testframework.sm.runner.GeneralTestEventsProcessor;
 import com.intellij.execution.testframework.sm.runner.OutputToGeneralTestEventsConverter;
+import com.intellij.execution.testframework.sm.runner.events.*;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.text.StringUtil;
@@ -12,22 +15,23 @@ import com.intellij.util.PathUtil;
 import com.jetbrains.lang.dart.ide.runner.util.DartTestLocationProvider;
 import com.jetbrains.lang.dart.util.DartUrlResolver;
 import gnu.trove.TIntLongHashMap;
+import gnu.trove.TIntObjectHashMap;
 import jetbrains.buildServer.messages.serviceMessages.ServiceMessageVisitor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Type;
 import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * Convert events from JSON format generated by package:test to the string format
- * expected by the event processor.
+ * Convert events from JSON format generated by package:test to the events of the
+ * {@link GeneralTestEventsProcessor}. Events are passed to the processor directly,
+ * without a round trip through TeamCity service messages; lines that are not JSON
+ * objects are still handled as service messages or uncaptured output.
  * NOTE: The test runner runs tests asynchronously. It is possible to get a 'testDone'
  * event followed some time later by an 'error' event for that same test. That should
  * convert a successful test into a failure. That case is not being handled.
@@ -45,32 +49,6 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
   private static final String TYPE_TEST_START = "testStart";
   private static final String TYPE_TEST_DONE = "testDone";
 
-  private static final String DEF_GROUP = "group";
-  private static final String DEF_SUITE = "suite";
-  private static final String DEF_TEST = "test";
-  private static final String DEF_METADATA = "metadata";
-
-  private static final String JSON_TYPE = "type";
-  private static final String JSON_NAME = "name";
-  private static final String JSON_ID = "id";
-  private static final String JSON_TEST_ID = "testID";
-  private static final String JSON_SUITE_ID = "suiteID";
-  private static final String JSON_PARENT_ID = "parentID";
-  private static final String JSON_GROUP_IDS = "groupIDs";
-  private static final String JSON_RESULT = "result";
-  private static final String JSON_MILLIS = "time";
-  private static final String JSON_COUNT = "count";
-  private static final String JSON_TEST_COUNT = "testCount";
-  private static final String JSON_MESSAGE = "message";
-  private static final String JSON_ERROR_MESSAGE = "error";
-  private static final String JSON_STACK_TRACE = "stackTrace";
-  private static final String JSON_IS_FAILURE = "isFailure";
-  private static final String JSON_PATH = "path";
-  private static final String JSON_PLATFORM = "platform";
-  private static final String JSON_LINE = "line";
-  private static final String JSON_COLUMN = "column";
-  private static final String JSON_URL = "url";
-
   private static final String RESULT_SUCCESS = "success";
   private static final String RESULT_FAILURE = "failure";
   private static final String RESULT_ERROR = "error";
@@ -83,17 +61,21 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
   private static final String SET_UP_ALL_VIRTUAL_TEST_NAME = "(setUpAll)";
   private static final String TEAR_DOWN_ALL_VIRTUAL_TEST_NAME = "(tearDownAll)";
 
+  private static final String FAILED_TO_START = "Failed to start";
+
   private static final Gson GSON = new Gson();
 
   @NotNull private final DartUrlResolver myUrlResolver;
+  private final DartTestEvent myEvent = new DartTestEvent();
 
+  private GeneralTestEventsProcessor myProcessor;
   private String myLocation;
   private Key myCurrentOutputType;
   private ServiceMessageVisitor myCurrentVisitor;
   private TIntLongHashMap myTestIdToTimestamp;
-  private Map<Integer, Test> myTestData;
-  private Map<Integer, Group> myGroupData;
-  private Map<Integer, Suite> mySuiteData;
+  private TIntObjectHashMap<Test> myTestData;
+  private TIntObjectHashMap<Group> myGroupData;
+  private TIntObjectHashMap<Suite> mySuiteData;
   private int mySuitCount;
 
   public DartTestEventsConverter(@NotNull final String testFrameworkName,
@@ -102,86 +84,92 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     super(testFrameworkName, consoleProperties);
     myUrlResolver = urlResolver;
     myTestIdToTimestamp = new TIntLongHashMap();
-    myTestData = new HashMap<Integer, Test>();
-    myGroupData = new HashMap<Integer, Group>();
-    mySuiteData = new HashMap<Integer, Suite>();
+    myTestData = new TIntObjectHashMap<Test>();
+    myGroupData = new TIntObjectHashMap<Group>();
+    mySuiteData = new TIntObjectHashMap<Suite>();
+  }
+
+  @Override
+  public void setProcessor(final GeneralTestEventsProcessor processor) {
+    super.setProcessor(processor);
+    myProcessor = processor;
+  }
+
+  @Override
+  public void dispose() {
+    super.dispose();
+    myProcessor = null;
   }
 
   protected boolean processServiceMessages(final String text, final Key outputType, final ServiceMessageVisitor visitor)
     throws ParseException {
-    LOG.debug("<<< " + text.trim());
+    if (LOG.isDebugEnabled()) LOG.debug("<<< " + text.trim());
     myCurrentOutputType = outputType;
     myCurrentVisitor = visitor;
-    // service message parser expects line like "##teamcity[ .... ]" without whitespaces in the end.
     return processEventText(text);
   }
 
-  private boolean processEventText(final String text) throws JsonSyntaxException, ParseException {
-    JsonParser jp = new JsonParser();
-    JsonElement elem;
+  private boolean processEventText(final String text) throws ParseException {
     try {
-      elem = jp.parse(text);
+      myEvent.parse(text);
     }
     catch (JsonSyntaxException ex) {
       if (text.contains("\"json\" is not an allowed value for option \"reporter\"")) {
-        final ServiceMessageBuilder testStarted = ServiceMessageBuilder.testStarted("Failed to start");
-        final ServiceMessageBuilder testFailed = ServiceMessageBuilder.testFailed("Failed to start");
-        testFailed.addAttribute("message", "Please update your pubspec.yaml dependency on package:test to version 0.12.9 or later.");
-        final ServiceMessageBuilder testFinished = ServiceMessageBuilder.testFinished("Failed to start");
-        return finishMessage(testStarted, 1, 0) & finishMessage(testFailed, 1, 0) & finishMessage(testFinished, 1, 0);
+        fireTestStarted(FAILED_TO_START, 1, 0, null);
+        fireTestFailed(FAILED_TO_START, 1, "Please update your pubspec.yaml dependency on package:test to version 0.12.9 or later.", false,
+                       null, null);
+        fireTestFinished(FAILED_TO_START, 1, -1);
+        return true;
       }
 
+      // not a JSON object: a service message or plain text output
       return doProcessServiceMessages(text);
     }
-    if (elem == null || !elem.isJsonObject()) return false;
-    return process(elem.getAsJsonObject());
+    return process(myEvent);
   }
 
   private boolean doProcessServiceMessages(@NotNull final String text) throws ParseException {
-    LOG.debug(">>> " + text);
+    if (LOG.isDebugEnabled()) LOG.debug(">>> " + text);
     return super.processServiceMessages(text, myCurrentOutputType, myCurrentVisitor);
   }
 
-  private boolean process(JsonObject obj) throws JsonSyntaxException, ParseException {
-    String type = obj.get(JSON_TYPE).getAsString();
+  private boolean process(@NotNull final DartTestEvent event) throws ParseException {
+    final String type = event.type;
     if (TYPE_TEST_START.equals(type)) {
-      return handleTestStart(obj);
+      return handleTestStart(event);
     }
     else if (TYPE_TEST_DONE.equals(type)) {
-      return handleTestDone(obj);
+      return handleTestDone(event);
     }
     else if (TYPE_ERROR.equals(type)) {
-      return handleError(obj);
+      return handleError(event);
     }
     else if (TYPE_PRINT.equals(type)) {
-      return handlePrint(obj);
+      return handlePrint(event);
     }
     else if (TYPE_GROUP.equals(type)) {
-      return handleGroup(obj);
+      return handleGroup(event);
     }
     else if (TYPE_SUITE.equals(type)) {
-      return handleSuite(obj);
+      return handleSuite(event);
     }
     else if (TYPE_ALL_SUITES.equals(type)) {
-      return handleAllSuites(obj);
+      return handleAllSuites(event);
     }
     else if (TYPE_START.equals(type)) {
-      return handleStart(obj);
+      return handleStart(event);
     }
     else if (TYPE_DONE.equals(type)) {
-      return handleDone(obj);
+      return handleDone(event);
     }
     else {
       return true;
     }
   }
 
-  private boolean handleTestStart(JsonObject obj) throws ParseException {
-    final JsonObject testObj = obj.getAsJsonObject(DEF_TEST);
-
-    // Not reached if testObj == null.
-    final Test test = getTest(obj);
-    myTestIdToTimestamp.put(test.getId(), getTimestamp(obj));
+  private boolean handleTestStart(@NotNull final DartTestEvent event) throws ParseException {
+    final Test test = getTest(event);
+    myTestIdToTimestamp.put(test.getId(), getTimestamp(event));
 
     if (shouldTestBeHiddenIfPassed(test)) {
       // Virtual test that represents loading or compiling a test suite. See lib/src/runner/loader.dart -> Loader.loadFile() in pkg/test source code
@@ -201,20 +189,21 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
       return true;
     }
 
-    final ServiceMessageBuilder testStarted = ServiceMessageBuilder.testStarted(test.getBaseName());
     test.myTestStartReported = true;
+    fireTestStarted(test.getBaseName(), test.getId(), test.getValidParentId(), getLocationHint(test));
 
-    addLocationHint(testStarted, test);
-    boolean result = finishMessage(testStarted, test.getId(), test.getValidParentId());
-
-    final Metadata metadata = Metadata.from(testObj.getAsJsonObject(DEF_METADATA));
+    final Metadata metadata = test.getMetadata();
     if (metadata.skip) {
-      final ServiceMessageBuilder message = ServiceMessageBuilder.testIgnored(test.getBaseName());
-      if (metadata.skipReason != null) message.addAttribute("message", metadata.skipReason);
-      result &= finishMessage(message, test.getId(), test.getValidParentId());
+      final String ignoreComment = metadata.skipReason != null
+                                   ? metadata.skipReason
+                                   : SMTestsRunnerBundle.message("sm.test.runner.states.test.is.ignored");
+      final GeneralTestEventsProcessor processor = myProcessor;
+      if (processor != null) {
+        processor.onTestIgnored(new TestIgnoredEvent(test.getBaseName(), String.valueOf(test.getId()), ignoreComment, null));
+      }
     }
 
-    return result;
+    return true;
   }
 
   private static boolean shouldTestBeHiddenIfPassed(@NotNull final Test test) {
@@ -229,25 +218,24 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
            group != null && group.getDoneTestsCount() > 0 && test.getBaseName().equals(TEAR_DOWN_ALL_VIRTUAL_TEST_NAME);
   }
 
-  private boolean handleTestDone(JsonObject obj) throws ParseException {
-    final Test test = getTest(obj);
+  private boolean handleTestDone(@NotNull final DartTestEvent event) throws ParseException {
+    final Test test = getTest(event);
 
     if (!test.myTestStartReported) return true;
 
-    String result = getResult(obj);
+    String result = getResult(event);
     if (!result.equals(RESULT_SUCCESS) && !result.equals(RESULT_FAILURE) && !result.equals(RESULT_ERROR)) {
-      throw new ParseException("Unknown result: " + obj, 0);
+      throw new ParseException("Unknown result: " + result, 0);
     }
 
     test.testDone();
 
     //if (test.getMetadata().skip) return true; // skipped tests are reported as ignored in handleTestStart(). testFinished signal must follow
 
-    ServiceMessageBuilder testFinished = ServiceMessageBuilder.testFinished(test.getBaseName());
-    long duration = getTimestamp(obj) - myTestIdToTimestamp.get(test.getId());
-    testFinished.addAttribute("duration", Long.toString(duration));
+    long duration = getTimestamp(event) - myTestIdToTimestamp.get(test.getId());
+    fireTestFinished(test.getBaseName(), test.getId(), duration);
 
-    return finishMessage(testFinished, test.getId(), test.getValidParentId()) && checkGroupDone(test.getParent());
+    return checkGroupDone(test.getParent());
   }
 
   private boolean checkGroupDone(@Nullable final Group group) throws ParseException {
@@ -257,62 +245,61 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     return true;
   }
 
-  private boolean handleGroup(JsonObject obj) throws ParseException {
-    Group group = getGroup(obj.getAsJsonObject(DEF_GROUP));
+  private boolean handleGroup(@NotNull final DartTestEvent event) throws ParseException {
+    if (!event.hasGroup) throw new ParseException("Unexpected null json object", 0);
+    final Group group = getGroup(event.group);
 
     // From spec: The implicit group at the root of each test suite has null name and parentID attributes.
     if (group.getParent() == null && group.getTestCount() > 0) {
-      // com.intellij.execution.testframework.sm.runner.OutputToGeneralTestEventsConverter.MyServiceMessageVisitor.KEY_TESTS_COUNT
-      // and  com.intellij.execution.testframework.sm.runner.OutputToGeneralTestEventsConverter.MyServiceMessageVisitor.ATTR_KEY_TEST_COUNT
-      final ServiceMessageBuilder testCount =
-        new ServiceMessageBuilder("testCount").addAttribute("count", String.valueOf(group.getTestCount()));
-      doProcessServiceMessages(testCount.toString());
+      final GeneralTestEventsProcessor processor = myProcessor;
+      if (processor != null) {
+        processor.onTestsCountInSuite(group.getTestCount());
+      }
     }
 
     if (group.isArtificial()) return true; // Ignore artificial groups.
-    ServiceMessageBuilder groupMsg = ServiceMessageBuilder.testSuiteStarted(group.getBaseName());
-    // Possible attributes: "nodeType" "nodeArgs" "running"
-    addLocationHint(groupMsg, group);
-    return finishMessage(groupMsg, group.getId(), group.getValidParentId());
+    final GeneralTestEventsProcessor processor = myProcessor;
+    if (processor != null) {
+      processor.onSuiteStarted(new TestSuiteStartedEvent(group.getBaseName(), String.valueOf(group.getId()),
+                                                         String.valueOf(group.getValidParentId()), getLocationHint(group), null, null,
+                                                         true));
+    }
+    return true;
   }
 
-  private boolean handleSuite(JsonObject obj) throws ParseException {
-    Suite suite = getSuite(obj.getAsJsonObject(DEF_SUITE));
+  private boolean handleSuite(@NotNull final DartTestEvent event) throws ParseException {
+    if (!event.hasSuite) throw new ParseException("Unexpected null json object", 0);
+    Suite suite = getSuite(event.suite);
     if (!suite.hasPath()) {
       mySuiteData.remove(suite.getId());
     }
     return true;
   }
 
-  private boolean handleError(JsonObject obj) throws ParseException {
-    final Test test = getTest(obj);
-    final String message = getErrorMessage(obj);
-    boolean result = true;
+  private boolean handleError(@NotNull final DartTestEvent event) throws ParseException {
+    final Test test = getTest(event);
+    final String message = getErrorMessage(event);
 
     if (!test.myTestStartReported) {
-      final ServiceMessageBuilder testStarted = ServiceMessageBuilder.testStarted(test.getBaseName());
       test.myTestStartReported = true;
-      result = finishMessage(testStarted, test.getId(), test.getValidParentId());
+      fireTestStarted(test.getBaseName(), test.getId(), test.getValidParentId(), null);
     }
 
     if (test.myTestErrorReported) {
-      final ServiceMessageBuilder testErrorMessage = ServiceMessageBuilder.testStdErr(test.getBaseName());
-      testErrorMessage.addAttribute("out", appendLineBreakIfNeeded(message));
-      result &= finishMessage(testErrorMessage, test.getId(), test.getValidParentId());
+      fireTestOutput(test, appendLineBreakIfNeeded(message), false);
     }
     else {
-      final ServiceMessageBuilder testError = ServiceMessageBuilder.testFailed(test.getBaseName());
       test.myTestErrorReported = true;
 
       String failureMessage = message;
+      String expectedText = null;
+      String actualText = null;
       int firstExpectedIndex = message.indexOf(EXPECTED);
       if (firstExpectedIndex >= 0) {
         Matcher matcher = EXPECTED_ACTUAL_RESULT.matcher(message);
         if (matcher.find(firstExpectedIndex + EXPECTED.length())) {
-          String expectedText = matcher.group(1);
-          String actualText = matcher.group(2);
-          testError.addAttribute("expected", expectedText);
-          testError.addAttribute("actual", actualText);
+          expectedText = matcher.group(1);
+          actualText = matcher.group(2);
           if (firstExpectedIndex == 0) {
             failureMessage = "Comparison failed";
           }
@@ -322,20 +309,16 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
         }
       }
 
-      if (!getBoolean(obj, JSON_IS_FAILURE)) testError.addAttribute("error", "true");
-      testError.addAttribute("message", appendLineBreakIfNeeded(failureMessage));
-
-      result &= finishMessage(testError, test.getId(), test.getValidParentId());
+      final boolean testError = !getBoolean(event.isFailure);
+      fireTestFailed(test.getBaseName(), test.getId(), appendLineBreakIfNeeded(failureMessage), testError, expectedText, actualText);
     }
 
-    final String stackTrace = getStackTrace(obj);
+    final String stackTrace = getStackTrace(event);
     if (!StringUtil.isEmptyOrSpaces(stackTrace)) {
-      final ServiceMessageBuilder stackTraceMessage = ServiceMessageBuilder.testStdErr(test.getBaseName());
-      stackTraceMessage.addAttribute("out", appendLineBreakIfNeeded(stackTrace));
-      result &= finishMessage(stackTraceMessage, test.getId(), test.getValidParentId());
+      fireTestOutput(test, appendLineBreakIfNeeded(stackTrace), false);
     }
 
-    return result;
+    return true;
   }
 
   @NotNull
@@ -343,44 +326,44 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     return message.endsWith("\n") ? message : message + "\n";
   }
 
-  private boolean handleAllSuites(JsonObject obj) {
-    JsonElement elem = obj.get(JSON_COUNT);
-    if (elem == null || !elem.isJsonPrimitive()) return true;
-    mySuitCount = elem.getAsInt();
+  private boolean handleAllSuites(@NotNull final DartTestEvent event) {
+    if (event.count >= 0) {
+      mySuitCount = event.count;
+    }
     return true;
   }
 
-  private boolean handlePrint(JsonObject obj) throws ParseException {
-    final Test test = getTest(obj);
-    boolean result = true;
+  private boolean handlePrint(@NotNull final DartTestEvent event) throws ParseException {
+    final Test test = getTest(event);
 
     if (!test.myTestStartReported) {
       if (test.getBaseName().equals(SET_UP_ALL_VIRTUAL_TEST_NAME) || test.getBaseName().equals(TEAR_DOWN_ALL_VIRTUAL_TEST_NAME)) {
         return true; // output in successfully passing setUpAll/tearDownAll is not important enough to make these nodes visible
       }
 
-      final ServiceMessageBuilder testStarted = ServiceMessageBuilder.testStarted(test.getBaseName());
       test.myTestStartReported = true;
-      result = finishMessage(testStarted, test.getId(), test.getValidParentId());
+      fireTestStarted(test.getBaseName(), test.getId(), test.getValidParentId(), null);
     }
 
-    ServiceMessageBuilder message = ServiceMessageBuilder.testStdOut(test.getBaseName());
-    message.addAttribute("out", appendLineBreakIfNeeded(getMessage(obj)));
-
-    return result & finishMessage(message, test.getId(), test.getValidParentId());
+    fireTestOutput(test, appendLineBreakIfNeeded(getMessage(event)), true);
+    return true;
   }
 
-  private boolean handleStart(JsonObject obj) throws ParseException {
+  private boolean handleStart(@NotNull final DartTestEvent event) throws ParseException {
     myTestIdToTimestamp.clear();
     myTestData.clear();
     myGroupData.clear();
     mySuiteData.clear();
     mySuitCount = 0;
 
-    return doProcessServiceMessages(new ServiceMessageBuilder("enteredTheMatrix").toString());
+    final GeneralTestEventsProcessor processor = myProcessor;
+    if (processor != null) {
+      processor.onTestsReporterAttached();
+    }
+    return true;
   }
 
-  private boolean handleDone(JsonObject obj) throws ParseException {
+  private boolean handleDone(@NotNull final DartTestEvent event) throws ParseException {
     // The test runner has reached the end of the tests.
     processAllTestsDone();
     return true;
@@ -388,18 +371,16 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
 
   private void processAllTestsDone() {
     // All tests are done.
-    for (Group group : myGroupData.values()) {
+    final int[] groupIds = myGroupData.keys();
+    Arrays.sort(groupIds); // report groups in the order they were started
+    for (int groupId : groupIds) {
+      final Group group = myGroupData.get(groupId);
       // For package: test prior to v. 0.12.9 there were no Group.testCount field, so need to finish them all at the end.
       // AFAIK the order does not matter. A depth-first post-order traversal of the tree would work
       // if order does matter. Note: Currently, there is no tree representation, just parent links.
 
       if (group.getTestCount() == 0 || group.getDoneTestsCount() != group.getTestCount()) {
-        try {
-          processGroupDone(group);
-        }
-        catch (ParseException ex) {
-          // ignore it
-        }
+        processGroupDone(group);
       }
     }
     myTestIdToTimestamp.clear();
@@ -409,20 +390,51 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     mySuitCount = 0;
   }
 
-  private boolean processGroupDone(@NotNull final Group group) throws ParseException {
+  private boolean processGroupDone(@NotNull final Group group) {
     if (group.isArtificial()) return true;
 
-    ServiceMessageBuilder groupMsg = ServiceMessageBuilder.testSuiteFinished(group.getBaseName());
-    return finishMessage(groupMsg, group.getId(), group.getValidParentId());
+    final GeneralTestEventsProcessor processor = myProcessor;
+    if (processor != null) {
+      processor.onSuiteFinished(new TestSuiteFinishedEvent(group.getBaseName(), String.valueOf(group.getId())));
+    }
+    return true;
   }
 
-  private boolean finishMessage(@NotNull ServiceMessageBuilder msg, int testId, int parentId) throws ParseException {
-    msg.addAttribute("nodeId", String.valueOf(testId));
-    msg.addAttribute("parentNodeId", String.valueOf(parentId));
-    return doProcessServiceMessages(msg.toString());
+  private void fireTestStarted(@NotNull final String name, final int testId, final int parentId, @Nullable final String locationHint) {
+    final GeneralTestEventsProcessor processor = myProcessor;
+    if (processor != null) {
+      processor.onTestStarted(new TestStartedEvent(name, String.valueOf(testId), String.valueOf(parentId), locationHint, null, null, true));
+    }
+  }
+
+  private void fireTestFinished(@NotNull final String name, final int testId, final long duration) {
+    final GeneralTestEventsProcessor processor = myProcessor;
+    if (processor != null) {
+      processor.onTestFinished(new TestFinishedEvent(name, String.valueOf(testId), duration));
+    }
+  }
+
+  private void fireTestFailed(@NotNull final String name,
+                              final int testId,
+                              @NotNull final String message,
+                              final boolean testError,
+                              @Nullable final String expected,
+                              @Nullable final String actual) {
+    final GeneralTestEventsProcessor processor = myProcessor;
+    if (processor != null) {
+      processor.onTestFailure(new TestFailedEvent(name, String.valueOf(testId), message, null, testError, actual, expected, null, null, -1));
+    }
   }
 
-  private void addLocationHint(ServiceMessageBuilder messageBuilder, Item item) {
+  private void fireTestOutput(@NotNull final Test test, @NotNull final String text, final boolean stdOut) {
+    final GeneralTestEventsProcessor processor = myProcessor;
+    if (processor != null) {
+      processor.onTestOutput(new TestOutputEvent(test.getBaseName(), String.valueOf(test.getId()), text, stdOut));
+    }
+  }
+
+  @NotNull
+  private String getLocationHint(@NotNull final Item item) {
     String location = "unknown";
     String loc;
 
@@ -442,104 +454,70 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
       location = loc + "," + item.getLine() + "," + item.getColumn() + "," + nameList;
     }
 
-    messageBuilder.addAttribute("locationHint", location);
+    return location;
   }
 
-  private static long getTimestamp(JsonObject obj) throws ParseException {
-    return getLong(obj, JSON_MILLIS);
+  private static long getTimestamp(@NotNull final DartTestEvent event) throws ParseException {
+    if (!event.hasTime) throw new ParseException("Value is not type long: null", 0);
+    return event.time;
   }
 
-  private static long getLong(JsonObject obj, String name) throws ParseException {
-    JsonElement val = obj == null ? null : obj.get(name);
-    if (val == null || !val.isJsonPrimitive()) throw new ParseException("Value is not type long: " + val, 0);
-    return val.getAsLong();
-  }
-
-  private static boolean getBoolean(JsonObject obj, String name) throws ParseException {
-    JsonElement val = obj == null ? null : obj.get(name);
-    if (val == null || !val.isJsonPrimitive()) throw new ParseException("Value is not type boolean: " + val, 0);
-    return val.getAsBoolean();
+  private static boolean getBoolean(@Nullable final Boolean value) throws ParseException {
+    if (value == null) throw new ParseException("Value is not type boolean: null", 0);
+    return value;
   }
 
   @NotNull
-  private Test getTest(JsonObject obj) throws ParseException {
-    return getItem(obj, myTestData);
-  }
+  private Test getTest(@NotNull final DartTestEvent event) throws ParseException {
+    if (event.testId != DartTestEvent.NO_ID) {
+      final Test test = myTestData.get(event.testId);
+      if (test == null) throw new ParseException("Unknown test id: " + event.testId, 0);
+      return test;
+    }
 
-  @NotNull
-  private Group getGroup(JsonObject obj) throws ParseException {
-    return getItem(obj, myGroupData);
-  }
+    if (!event.hasTest || !event.test.hasId) throw new ParseException("No testId in json object", 0);
 
-  @NotNull
-  private Suite getSuite(JsonObject obj) throws ParseException {
-    return getItem(obj, mySuiteData);
+    final Test test = Test.from(event.test, myGroupData, mySuiteData);
+    myTestData.put(test.getId(), test);
+    return test;
   }
 
   @NotNull
-  private <T extends Item> T getItem(JsonObject obj, Map<Integer, T> items) throws ParseException {
-    if (obj == null) throw new ParseException("Unexpected null json object", 0);
-    T item;
-    JsonElement id = obj.get(JSON_ID);
-    if (id != null) {
-      if (items == myTestData) {
-        @SuppressWarnings("unchecked") T type = (T)Test.from(obj, myGroupData, mySuiteData);
-        item = type;
-      }
-      else if (items == myGroupData) {
-        @SuppressWarnings("unchecked") T group = (T)Group.from(obj, myGroupData, mySuiteData);
-        item = group;
-      }
-      else {
-        @SuppressWarnings("unchecked") T suite = (T)Suite.from(obj);
-        item = suite;
-      }
-      items.put(id.getAsInt(), item);
-    }
-    else {
-      JsonElement testId = obj.get(JSON_TEST_ID);
-      if (testId != null) {
-        int baseId = testId.getAsInt();
-        item = items.get(baseId);
-      }
-      else {
-        JsonElement testObj = obj.get(DEF_TEST);
-        if (testObj != null) {
-          return getItem(testObj.getAsJsonObject(), items);
-        }
-        else {
-          throw new ParseException("No testId in json object", 0);
-        }
-      }
-    }
-    return item;
+  private Group getGroup(@NotNull final DartTestEvent.ItemData data) throws ParseException {
+    if (!data.hasId) throw new ParseException("No testId in json object", 0);
+
+    final Group group = Group.from(data, myGroupData, mySuiteData);
+    myGroupData.put(group.getId(), group);
+    return group;
   }
 
   @NotNull
-  private static String getErrorMessage(JsonObject obj) {
-    return nonNullJsonValue(obj, JSON_ERROR_MESSAGE, "<no error message>");
+  private Suite getSuite(@NotNull final DartTestEvent.ItemData data) throws ParseException {
+    if (!data.hasId) throw new ParseException("No testId in json object", 0);
+
+    final Suite suite = Suite.from(data);
+    mySuiteData.put(suite.getId(), suite);
+    return suite;
   }
 
   @NotNull
-  private static String getMessage(JsonObject obj) {
-    return nonNullJsonValue(obj, JSON_MESSAGE, "<no message>");
+  private static String getErrorMessage(@NotNull final DartTestEvent event) {
+    return event.error != null ? event.error : "<no error message>";
   }
 
   @NotNull
-  private static String getStackTrace(JsonObject obj) {
-    return nonNullJsonValue(obj, JSON_STACK_TRACE, "<no stack trace>");
+  private static String getMessage(@NotNull final DartTestEvent event) {
+    return event.message != null ? event.message : "<no message>";
   }
 
   @NotNull
-  private static String getResult(JsonObject obj) {
-    return nonNullJsonValue(obj, JSON_RESULT, "<no result>");
+  private static String getStackTrace(@NotNull final DartTestEvent event) {
+    return event.stackTrace != null ? event.stackTrace : "<no stack trace>";
   }
 
   @NotNull
-  private static String nonNullJsonValue(JsonObject obj, @NotNull String id, @NotNull String def) {
-    JsonElement val = obj == null ? null : obj.get(id);
-    if (val == null || !val.isJsonPrimitive()) return def;
-    return val.getAsString();
+  private static String getResult(@NotNull final DartTestEvent event) {
+    return event.result != null ? event.result : "<no result>";
   }
 
   private static class Item {
@@ -553,30 +531,16 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     private final int myColumn;
     private final String myUrl;
 
-    static int extractInt(JsonObject obj, String memberName) {
-      JsonElement elem = obj.get(memberName);
-      if (elem == null || !elem.isJsonPrimitive()) return -1;
-      return elem.getAsInt();
+    static String extractName(DartTestEvent.ItemData data) {
+      return data.name == null ? NO_NAME : data.name;
     }
 
-    static String extractString(JsonObject obj, String memberName, String defaultResult) {
-      JsonElement elem = obj.get(memberName);
-      if (elem == null || elem.isJsonNull()) return defaultResult;
-      return elem.getAsString();
+    static Metadata extractMetadata(DartTestEvent.ItemData data) {
+      return new Metadata(data.skip, data.skipReason);
     }
 
-    static Metadata extractMetadata(JsonObject obj) {
-      return Metadata.from(obj.get(DEF_METADATA));
-    }
-
-    static Suite lookupSuite(JsonObject obj, Map<Integer, Suite> suites) {
-      JsonElement suiteObj = obj.get(JSON_SUITE_ID);
-      Suite suite = null;
-      if (suiteObj != null && suiteObj.isJsonPrimitive()) {
-        int parentId = suiteObj.getAsInt();
-        suite = suites.get(parentId);
-      }
-      return suite;
+    static Suite lookupSuite(DartTestEvent.ItemData data, TIntObjectHashMap<Suite> suites) {
+      return data.suiteId == DartTestEvent.NO_ID ? null : suites.get(data.suiteId);
     }
 
     Item(int id, String name, Group parent, Suite suite, Metadata metadata, int line, int column, String url) {
@@ -702,17 +666,13 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     private boolean myTestStartReported = false;
     private boolean myTestErrorReported = false;
 
-    static Test from(JsonObject obj, Map<Integer, Group> groups, Map<Integer, Suite> suites) {
-      int[] groupIds = GSON.fromJson(obj.get(JSON_GROUP_IDS), (Type)int[].class);
-      Group parent = null;
-      if (groupIds != null && groupIds.length > 0) {
-        parent = groups.get(groupIds[groupIds.length - 1]);
-      }
-      Suite suite = lookupSuite(obj, suites);
-      final int line = extractInt(obj, JSON_LINE);
-      final int column = extractInt(obj, JSON_COLUMN);
-      return new Test(extractInt(obj, JSON_ID), extractString(obj, JSON_NAME, NO_NAME), parent, suite, extractMetadata(obj),
-                      line < 0 ? -1 : line - 1, column < 0 ? -1 : column - 1, extractString(obj, JSON_URL, null));
+    static Test from(DartTestEvent.ItemData data, TIntObjectHashMap<Group> groups, TIntObjectHashMap<Suite> suites) {
+      Group parent = data.lastGroupId == DartTestEvent.NO_ID ? null : groups.get(data.lastGroupId);
+      Suite suite = lookupSuite(data, suites);
+      final int line = data.line;
+      final int column = data.column;
+      return new Test(data.id, extractName(data), parent, suite, extractMetadata(data),
+                      line < 0 ? -1 : line - 1, column < 0 ? -1 : column - 1, data.url);
     }
 
     Test(int id, String name, Group parent, Suite suite, Metadata metadata, int line, int column, String url) {
@@ -730,19 +690,13 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
     private int myTestCount = 0;
     private int myDoneTestsCount = 0;
 
-    static Group from(JsonObject obj, Map<Integer, Group> groups, Map<Integer, Suite> suites) {
-      JsonElement parentObj = obj.get(JSON_PARENT_ID);
-      Group parent = null;
-      if (parentObj != null && parentObj.isJsonPrimitive()) {
-        int parentId = parentObj.getAsInt();
-        parent = groups.get(parentId);
-      }
-      Suite suite = lookupSuite(obj, suites);
-      final int line = extractInt(obj, JSON_LINE);
-      final int column = extractInt(obj, JSON_COLUMN);
-      return new Group(extractInt(obj, JSON_ID), extractString(obj, JSON_NAME, NO_NAME), parent, suite, extractMetadata(obj),
-                       extractInt(obj, JSON_TEST_COUNT), line < 0 ? -1 : line - 1, column < 0 ? -1 : column - 1,
-                       extractString(obj, JSON_URL, null));
+    static Group from(DartTestEvent.ItemData data, TIntObjectHashMap<Group> groups, TIntObjectHashMap<Suite> suites) {
+      Group parent = data.parentId == DartTestEvent.NO_ID ? null : groups.get(data.parentId);
+      Suite suite = lookupSuite(data, suites);
+      final int line = data.line;
+      final int column = data.column;
+      return new Group(data.id, extractName(data), parent, suite, extractMetadata(data),
+                       data.testCount, line < 0 ? -1 : line - 1, column < 0 ? -1 : column - 1, data.url);
     }
 
     Group(int id, String name, Group parent, Suite suite, Metadata metadata, int count, int line, int column, String url) {
@@ -768,11 +722,11 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
   }
 
   private static class Suite extends Item {
-    static Metadata NoMetadata = new Metadata();
+    static Metadata NoMetadata = new Metadata(false, null);
     static String NONE = "<none>";
 
-    static Suite from(JsonObject obj) {
-      return new Suite(extractInt(obj, JSON_ID), extractString(obj, JSON_PATH, NONE), extractString(obj, JSON_PLATFORM, NONE));
+    static Suite from(DartTestEvent.ItemData data) {
+      return new Suite(data.id, data.path == null ? NONE : data.path, data.platform == null ? NONE : data.platform);
     }
 
     private final String myPlatform;
@@ -796,12 +750,12 @@ public class DartTestEventsConverter extends OutputToGeneralTestEventsConverter
   }
 
   private static class Metadata {
-    @SuppressWarnings("unused") private boolean skip; // assigned by GSON via reflection
-    @SuppressWarnings("unused") private String skipReason; // assigned by GSON via reflection
+    private final boolean skip;
+    private final String skipReason;
 
-    static Metadata from(JsonElement elem) {
-      if (elem == null) return new Metadata();
-      return GSON.fromJson(elem, (Type)Metadata.class);
+    Metadata(boolean skip, String skipReason) {
+      this.skip = skip;
+      this.skipReason = skipReason;
     }
   }
 }
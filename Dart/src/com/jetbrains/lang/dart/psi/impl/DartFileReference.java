@@ -160,8 +160,8 @@ public class DartFileReference implements PsiPolyVariantReference {
         // file might be not open in editor, so we do not have navigation information for it
         final VirtualFile virtualFile = DartResolveUtil.getRealVirtualFile(refPsiFile);
         if (virtualFile != null &&
-            DartAnalysisServerService.getInstance().getNavigation(virtualFile).isEmpty() &&
-            DartAnalysisServerService.getInstance().getHighlight(virtualFile).isEmpty()) {
+            !DartAnalysisServerService.getInstance().hasNavigation(virtualFile) &&
+            !DartAnalysisServerService.getInstance().hasHighlight(virtualFile)) {
           final PsiElement parent = reference.getElement().getParent();
           final int parentOffset = parent.getTextRange().getStartOffset();
           final int parentLength = parent.getTextRange().getLength();
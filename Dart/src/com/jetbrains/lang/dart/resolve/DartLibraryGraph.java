@@ -0,0 +1,417 @@
+package com.jetbrains.lang.dart.resolve;
+
+import com.intellij.ProjectTopics;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootAdapter;
+import com.intellij.openapi.roots.ModuleRootEvent;
+import com.intellij.openapi.util.ModificationTracker;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.psi.*;
+import com.intellij.psi.impl.PsiTreeChangeEventImpl;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.testFramework.LightVirtualFile;
+import com.intellij.util.SmartList;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.messages.MessageBusConnection;
+import com.jetbrains.lang.dart.DartFileType;
+import com.jetbrains.lang.dart.ide.index.DartImportAndExportIndex;
+import com.jetbrains.lang.dart.ide.index.DartImportOrExportInfo;
+import com.jetbrains.lang.dart.ide.index.DartLibraryIndex;
+import com.jetbrains.lang.dart.ide.index.DartPartUriIndex;
+import com.jetbrains.lang.dart.psi.*;
+import com.jetbrains.lang.dart.psi.impl.DartPsiCompositeElementImpl;
+import com.jetbrains.lang.dart.util.DartResolveUtil;
+import com.jetbrains.lang.dart.util.DotPackagesFileUtil;
+import com.jetbrains.lang.dart.util.PubspecYamlUtil;
+import gnu.trove.THashMap;
+import gnu.trove.THashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memoized library/part graph used by the local resolver ({@link DartResolveUtil#findLibrary}, {@link DartResolveUtil#findLibraryByName},
+ * {@link DartResolveUtil#processTopLevelDeclarations}), so that index lookups and URI resolution are not repeated on every resolve.
+ * <p/>
+ * For each file the graph keeps its parts and its import/export directives with already resolved target files. An entry is dropped when
+ * its file's directives change; libraries of parts are recalculated when any directive changes. Creation, deletion and moves of Dart files
+ * and package configuration changes clear the whole graph because relative and package: URIs may resolve differently after them.
+ * <p/>
+ * On top of that the graph keeps an {@link ExportTable} per library: the top-level names that an import of the library brings into scope,
+ * with show/hide of its export directives already applied. Export tables are dropped on every modification of the graph and when a
+ * top-level declaration is added, removed or renamed.
+ */
+public class DartLibraryGraph implements ModificationTracker {
+
+  public static class Directive {
+    @NotNull private final DartImportOrExportInfo myInfo;
+    @Nullable private final VirtualFile myFile;
+
+    private Directive(@NotNull final DartImportOrExportInfo info, @Nullable final VirtualFile file) {
+      myInfo = info;
+      myFile = file;
+    }
+
+    @NotNull
+    public DartImportOrExportInfo getInfo() {
+      return myInfo;
+    }
+
+    /**
+     * @return imported or exported file, {@code null} if the URI doesn't resolve
+     */
+    @Nullable
+    public VirtualFile getFile() {
+      return myFile;
+    }
+  }
+
+  /**
+   * Top-level names visible to importers of a library. Names declared in the library itself and in its parts (private ones included) are
+   * followed by names of transitively exported libraries, filtered by show/hide of the export directives. Show/hide of the import
+   * directive itself is not applied.
+   */
+  public static class ExportTable {
+    @NotNull private final Map<String, List<VirtualFile>> myFilesByName;
+    @NotNull private final Map<VirtualFile, Set<String>> myNamesByFile;
+
+    private ExportTable(@NotNull final Map<String, List<VirtualFile>> filesByName, @NotNull final Map<VirtualFile, Set<String>> namesByFile) {
+      myFilesByName = filesByName;
+      myNamesByFile = namesByFile;
+    }
+
+    @NotNull
+    public Set<String> getNames() {
+      return myFilesByName.keySet();
+    }
+
+    /**
+     * @return files that declare top-level elements with this name, in the order they are reached from the library
+     */
+    @NotNull
+    public List<VirtualFile> getFiles(@NotNull final String name) {
+      final List<VirtualFile> files = myFilesByName.get(name);
+      return files == null ? Collections.<VirtualFile>emptyList() : files;
+    }
+
+    /**
+     * @return files that contribute names to this table, each with the names it contributes
+     */
+    @NotNull
+    public Map<VirtualFile, Set<String>> getNamesByFile() {
+      return myNamesByFile;
+    }
+  }
+
+  private static class ExportTableBuilder extends DartPsiScopeProcessor {
+    private final Map<String, List<VirtualFile>> myFilesByName = new THashMap<String, List<VirtualFile>>();
+    private final Map<VirtualFile, Set<String>> myNamesByFile = new LinkedHashMap<VirtualFile, Set<String>>();
+    private VirtualFile myCurrentFile;
+
+    @Override
+    protected boolean doExecute(@NotNull final DartComponentName dartComponentName) {
+      final String name = dartComponentName.getName();
+      if (name == null) return true;
+
+      Set<String> names = myNamesByFile.get(myCurrentFile);
+      if (names == null) {
+        names = new THashSet<String>();
+        myNamesByFile.put(myCurrentFile, names);
+      }
+      if (names.add(name)) {
+        List<VirtualFile> files = myFilesByName.get(name);
+        if (files == null) {
+          files = new SmartList<VirtualFile>();
+          myFilesByName.put(name, files);
+        }
+        files.add(myCurrentFile);
+      }
+      return true;
+    }
+
+    @NotNull
+    private ExportTable build() {
+      return new ExportTable(Collections.unmodifiableMap(myFilesByName), Collections.unmodifiableMap(myNamesByFile));
+    }
+  }
+
+  private static class Node {
+    @NotNull private final List<VirtualFile> myParts;
+    @NotNull private final List<Directive> myDirectives;
+
+    private Node(@NotNull final List<VirtualFile> parts, @NotNull final List<Directive> directives) {
+      myParts = parts;
+      myDirectives = directives;
+    }
+  }
+
+  private final Project myProject;
+  private final ConcurrentMap<VirtualFile, Node> myNodes = ContainerUtil.newConcurrentMap();
+  // (part file, library name from its 'part of' statement) -> library files that include this part
+  private final ConcurrentMap<Pair<VirtualFile, String>, List<VirtualFile>> myLibrariesOfParts = ContainerUtil.newConcurrentMap();
+  private final ConcurrentMap<VirtualFile, ExportTable> myExportTables = ContainerUtil.newConcurrentMap();
+  private final AtomicLong myModificationCount = new AtomicLong();
+
+  public static DartLibraryGraph getInstance(@NotNull final Project project) {
+    return ServiceManager.getService(project, DartLibraryGraph.class);
+  }
+
+  public DartLibraryGraph(@NotNull final Project project) {
+    myProject = project;
+
+    PsiManager.getInstance(project).addPsiTreeChangeListener(new PsiTreeChangeAdapter() {
+      @Override
+      public void childAdded(@NotNull final PsiTreeChangeEvent event) {
+        psiChanged(event);
+      }
+
+      @Override
+      public void childRemoved(@NotNull final PsiTreeChangeEvent event) {
+        psiChanged(event);
+      }
+
+      @Override
+      public void childReplaced(@NotNull final PsiTreeChangeEvent event) {
+        psiChanged(event);
+      }
+
+      @Override
+      public void childMoved(@NotNull final PsiTreeChangeEvent event) {
+        psiChanged(event);
+      }
+
+      @Override
+      public void childrenChanged(@NotNull final PsiTreeChangeEvent event) {
+        // generic event fired for an ancestor of the changed elements, the elements themselves are reported separately
+        if (event instanceof PsiTreeChangeEventImpl && ((PsiTreeChangeEventImpl)event).isGenericChange()) return;
+        psiChanged(event);
+      }
+    }, project);
+
+    final MessageBusConnection connection = project.getMessageBus().connect(project);
+    connection.subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener.Adapter() {
+      @Override
+      public void after(@NotNull final List<? extends VFileEvent> events) {
+        for (VFileEvent event : events) {
+          vfsChanged(event);
+        }
+      }
+    });
+    connection.subscribe(ProjectTopics.PROJECT_ROOTS, new ModuleRootAdapter() {
+      @Override
+      public void rootsChanged(final ModuleRootEvent event) {
+        clear();
+      }
+    });
+  }
+
+  @Override
+  public long getModificationCount() {
+    return myModificationCount.get();
+  }
+
+  /**
+   * @return parts of the library, unresolved part URIs are skipped
+   */
+  @NotNull
+  public List<VirtualFile> getParts(@NotNull final VirtualFile libraryFile) {
+    return getNode(libraryFile).myParts;
+  }
+
+  @NotNull
+  public List<Directive> getImportsAndExports(@NotNull final VirtualFile file) {
+    return getNode(file).myDirectives;
+  }
+
+  /**
+   * Same as {@link DartResolveUtil#findLibraryByName}: files with the library name given that include {@code partFile} as a part.
+   */
+  @NotNull
+  public List<VirtualFile> getLibrariesOfPart(@NotNull final PsiElement context,
+                                              @NotNull final VirtualFile partFile,
+                                              @NotNull final String libraryName) {
+    final Pair<VirtualFile, String> key = Pair.create(partFile, libraryName);
+    List<VirtualFile> result = isCacheable(partFile) ? myLibrariesOfParts.get(key) : null;
+    if (result == null) {
+      final long modificationCount = myModificationCount.get();
+      result = new ArrayList<VirtualFile>();
+      for (VirtualFile libraryFile : DartLibraryIndex.getFilesByLibName(context.getResolveScope(), libraryName)) {
+        if (getParts(libraryFile).contains(partFile)) {
+          result.add(libraryFile);
+        }
+      }
+      result = result.isEmpty() ? Collections.<VirtualFile>emptyList() : Collections.unmodifiableList(result);
+      if (isCacheable(partFile) && modificationCount == myModificationCount.get()) {
+        myLibrariesOfParts.put(key, result);
+      }
+    }
+    return result;
+  }
+
+  @NotNull
+  public ExportTable getExportTable(@NotNull final VirtualFile libraryFile) {
+    ExportTable table = myExportTables.get(libraryFile);
+    if (table == null) {
+      final long modificationCount = myModificationCount.get();
+      final ExportTableBuilder builder = new ExportTableBuilder();
+      collectExportedNames(libraryFile, builder, new THashSet<VirtualFile>());
+      table = builder.build();
+      if (isCacheable(libraryFile) && modificationCount == myModificationCount.get()) {
+        myExportTables.put(libraryFile, table);
+      }
+    }
+    return table;
+  }
+
+  private void collectExportedNames(@NotNull final VirtualFile libraryFile,
+                                    @NotNull final ExportTableBuilder builder,
+                                    @NotNull final Set<VirtualFile> alreadyProcessed) {
+    if (!alreadyProcessed.add(libraryFile)) return;
+
+    collectDeclaredNames(libraryFile, builder);
+    for (VirtualFile partFile : getParts(libraryFile)) {
+      if (alreadyProcessed.add(partFile)) {
+        collectDeclaredNames(partFile, builder);
+      }
+    }
+
+    for (Directive directive : getImportsAndExports(libraryFile)) {
+      final VirtualFile exportedFile = directive.getFile();
+      if (directive.getInfo().getKind() != DartImportOrExportInfo.Kind.Export || exportedFile == null) continue;
+
+      builder.importedFileProcessingStarted(exportedFile, directive.getInfo());
+      collectExportedNames(exportedFile, builder, alreadyProcessed);
+      builder.importedFileProcessingFinished(exportedFile);
+    }
+  }
+
+  private void collectDeclaredNames(@NotNull final VirtualFile file, @NotNull final ExportTableBuilder builder) {
+    final PsiFile psiFile = PsiManager.getInstance(myProject).findFile(file);
+    if (psiFile == null) return;
+
+    builder.myCurrentFile = file;
+    for (PsiElement root : DartResolveUtil.findDartRoots(psiFile)) {
+      DartPsiCompositeElementImpl.processDeclarationsImpl(root, builder, ResolveState.initial(), null);
+    }
+  }
+
+  @NotNull
+  private Node getNode(@NotNull final VirtualFile file) {
+    Node node = myNodes.get(file);
+    if (node == null) {
+      final long modificationCount = myModificationCount.get();
+      node = computeNode(file);
+      if (isCacheable(file) && modificationCount == myModificationCount.get()) {
+        myNodes.put(file, node);
+      }
+    }
+    return node;
+  }
+
+  @NotNull
+  private Node computeNode(@NotNull final VirtualFile file) {
+    final List<String> partUris = DartPartUriIndex.getPartUris(myProject, file);
+    final List<VirtualFile> parts = new ArrayList<VirtualFile>(partUris.size());
+    for (String partUri : partUris) {
+      final VirtualFile partFile = DartResolveUtil.getImportedFile(myProject, file, partUri);
+      if (partFile != null) {
+        parts.add(partFile);
+      }
+    }
+
+    final List<DartImportOrExportInfo> infos = DartImportAndExportIndex.getImportAndExportInfos(myProject, file);
+    final List<Directive> directives = new ArrayList<Directive>(infos.size());
+    for (DartImportOrExportInfo info : infos) {
+      directives.add(new Directive(info, DartResolveUtil.getImportedFile(myProject, file, info.getUri())));
+    }
+
+    return new Node(parts, directives);
+  }
+
+  private static boolean isCacheable(@NotNull final VirtualFile file) {
+    return !(file instanceof LightVirtualFile);
+  }
+
+  private void psiChanged(@NotNull final PsiTreeChangeEvent event) {
+    final PsiFile psiFile = event.getFile();
+    if (psiFile == null) {
+      if (event.getParent() instanceof PsiDirectory || event.getChild() instanceof PsiFileSystemItem) {
+        clear(); // file or directory added, removed or moved
+      }
+      return;
+    }
+
+    if (!psiFile.isPhysical()) return;
+
+    final PsiElement parent = event.getParent();
+    final boolean topLevelChange = parent instanceof PsiFile || parent instanceof DartEmbeddedContent;
+    if (topLevelChange || PsiTreeUtil.getParentOfType(parent, DartImportOrExportStatement.class, DartPartStatement.class,
+                                                      DartPartOfStatement.class, DartLibraryStatement.class) != null) {
+      final VirtualFile file = psiFile.getViewProvider().getVirtualFile();
+      fileChanged(file);
+    }
+    else if (isInTopLevelComponentName(parent)) {
+      declarationsChanged();
+    }
+  }
+
+  /**
+   * Conservative: names of enum constants and of other nested declarations that are not in a body or a parameter list count as top-level
+   */
+  private static boolean isInTopLevelComponentName(@Nullable final PsiElement element) {
+    final DartComponentName componentName = PsiTreeUtil.getParentOfType(element, DartComponentName.class, false);
+    return componentName != null &&
+           PsiTreeUtil.getParentOfType(componentName, DartClassBody.class, DartFunctionBody.class, DartFunctionExpressionBody.class,
+                                       DartFormalParameterList.class, DartTypeParameters.class) == null;
+  }
+
+  private void vfsChanged(@NotNull final VFileEvent event) {
+    final VirtualFile file = event.getFile();
+    if (event instanceof VFileContentChangeEvent) {
+      if (file == null || isPackagesConfigFile(file)) {
+        clear();
+      }
+      else if (!event.isFromSave() && file.getFileType() == DartFileType.INSTANCE) {
+        fileChanged(file); // external change; changes made in the editor are handled by the PSI listener
+      }
+      return;
+    }
+
+    // creation, deletion, move, rename or copy
+    if (file == null || file.isDirectory() || file.getFileType() == DartFileType.INSTANCE || isPackagesConfigFile(file)) {
+      clear();
+    }
+  }
+
+  private static boolean isPackagesConfigFile(@NotNull final VirtualFile file) {
+    return PubspecYamlUtil.PUBSPEC_YAML.equals(file.getName()) || DotPackagesFileUtil.DOT_PACKAGES.equals(file.getName());
+  }
+
+  private void fileChanged(@NotNull final VirtualFile file) {
+    myNodes.remove(file);
+    myLibrariesOfParts.clear();
+    myExportTables.clear();
+    myModificationCount.incrementAndGet();
+  }
+
+  private void declarationsChanged() {
+    myExportTables.clear();
+    myModificationCount.incrementAndGet();
+  }
+
+  private void clear() {
+    myNodes.clear();
+    myLibrariesOfParts.clear();
+    myExportTables.clear();
+    myModificationCount.incrementAndGet();
+  }
+}
@@ -45,6 +45,14 @@ public abstract class DartPsiScopeProcessor implements PsiScopeProcessor {
     }
   }
 
+  /**
+   * @return {@code false} if {@link #execute} skips or filters out elements with this name under the current show/hide filters
+   */
+  public boolean isVisible(final @Nullable String name) {
+    if (!myShowHideFilters.isEmpty() && StringUtil.startsWithChar(name, '_')) return false;
+    return !isFilteredOut(name);
+  }
+
   @Override
   public final boolean execute(final @NotNull PsiElement element, final @NotNull ResolveState state) {
     if (!(element instanceof DartComponentName)) return true;
@@ -166,8 +166,7 @@ public class DartResolver implements ResolveCache.AbstractResolver<DartReference
   public static DartNavigationRegion findRegion(final PsiFile refPsiFile, final int refOffset, final int refLength) {
     final VirtualFile refVirtualFile = DartResolveUtil.getRealVirtualFile(refPsiFile);
     if (refVirtualFile != null) {
-      final List<DartServerData.DartNavigationRegion> regions = DartAnalysisServerService.getInstance().getNavigation(refVirtualFile);
-      return findRegion(regions, refOffset, refLength);
+      return DartAnalysisServerService.getInstance().findNavigationRegion(refVirtualFile, refOffset, refLength);
     }
     return null;
   }
@@ -0,0 +1,95 @@
+package com.jetbrains.lang.dart.util;
+
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import gnu.trove.THashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.jetbrains.lang.dart.util.DartUrlResolver.PACKAGE_PREFIX;
+
+/**
+ * Immutable package name to package folder table with reverse lookup used by {@link DartUrlResolverImpl}. Instances are shared between
+ * resolvers as long as the files they were built from (pubspec.yaml, .packages, Dart Packages library) do not change.
+ * <p/>
+ * Reverse lookup (file -> package: URL) walks up from the file and looks up each ancestor folder (or each prefix of the path ending with
+ * '/' for packages from the library) in a hash map, so it takes time proportional to the file depth rather than to the number of packages.
+ * If package folders are nested the innermost one wins.
+ */
+final class DartPackageTable {
+
+  static final DartPackageTable EMPTY = new DartPackageTable(Collections.<String, VirtualFile>emptyMap(),
+                                                             Collections.<String, List<String>>emptyMap());
+
+  // live packages: pubspec.yaml path dependencies or .packages file
+  @NotNull private final Map<String, VirtualFile> myPackageNameToDir;
+  @NotNull private final Map<VirtualFile, String> myDirToPackageName;
+  // packages from Dart Packages library, used if there's no pubspec.yaml file
+  @NotNull private final Map<String, List<String>> myPackageNameToDirPaths;
+  @NotNull private final Map<String, String> myDirPathToPackageName;
+
+  DartPackageTable(@NotNull final Map<String, VirtualFile> packageNameToDir, @NotNull final Map<String, List<String>> packageNameToDirPaths) {
+    myPackageNameToDir = Collections.unmodifiableMap(new THashMap<String, VirtualFile>(packageNameToDir));
+    myPackageNameToDirPaths = Collections.unmodifiableMap(new THashMap<String, List<String>>(packageNameToDirPaths));
+
+    myDirToPackageName = new THashMap<VirtualFile, String>(packageNameToDir.size());
+    for (Map.Entry<String, VirtualFile> entry : packageNameToDir.entrySet()) {
+      myDirToPackageName.put(entry.getValue(), entry.getKey());
+    }
+
+    myDirPathToPackageName = new THashMap<String, String>();
+    for (Map.Entry<String, List<String>> entry : packageNameToDirPaths.entrySet()) {
+      for (String dirPath : entry.getValue()) {
+        if (!myDirPathToPackageName.containsKey(dirPath)) {
+          myDirPathToPackageName.put(dirPath, entry.getKey());
+        }
+      }
+    }
+  }
+
+  @NotNull
+  Map<String, VirtualFile> getLivePackageNameToDirMap() {
+    return myPackageNameToDir;
+  }
+
+  @Nullable
+  VirtualFile getLivePackageDir(@NotNull final String packageName) {
+    return myPackageNameToDir.get(packageName);
+  }
+
+  @Nullable
+  List<String> getPackageDirPathsFromLib(@NotNull final String packageName) {
+    return myPackageNameToDirPaths.get(packageName);
+  }
+
+  @Nullable
+  String getUrlIfFileFromLivePackage(@NotNull final VirtualFile file) {
+    if (myDirToPackageName.isEmpty()) return null;
+
+    for (VirtualFile dir = file; dir != null; dir = dir.getParent()) {
+      final String packageName = myDirToPackageName.get(dir);
+      if (packageName != null) {
+        return PACKAGE_PREFIX + packageName + "/" + VfsUtilCore.getRelativePath(file, dir, '/');
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  String getUrlIfFileFromPackagesLib(@NotNull final VirtualFile file) {
+    if (myDirPathToPackageName.isEmpty()) return null;
+
+    final String path = file.getPath();
+    for (int slashIndex = path.lastIndexOf('/'); slashIndex > 0; slashIndex = path.lastIndexOf('/', slashIndex - 1)) {
+      final String packageName = myDirPathToPackageName.get(path.substring(0, slashIndex));
+      if (packageName != null) {
+        return PACKAGE_PREFIX + packageName + path.substring(slashIndex);
+      }
+    }
+    return null;
+  }
+}
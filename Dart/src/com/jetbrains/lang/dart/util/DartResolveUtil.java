@@ -2,13 +2,14 @@ package com.jetbrains.lang.dart.util;
 
 import com.google.common.collect.Lists;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.Comparing;
 import com.intellij.openapi.util.Condition;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
 import com.intellij.psi.impl.source.tree.LeafPsiElement;
+import com.intellij.psi.scope.BaseScopeProcessor;
+import com.intellij.psi.scope.PsiScopeProcessor;
 import com.intellij.psi.search.PsiElementProcessor;
 import com.intellij.psi.util.CachedValueProvider;
 import com.intellij.psi.util.CachedValuesManager;
@@ -28,6 +29,7 @@ import com.jetbrains.lang.dart.ide.info.DartParameterInfoHandler;
 import com.jetbrains.lang.dart.psi.*;
 import com.jetbrains.lang.dart.psi.impl.AbstractDartPsiClass;
 import com.jetbrains.lang.dart.psi.impl.DartPsiCompositeElementImpl;
+import com.jetbrains.lang.dart.resolve.DartLibraryGraph;
 import com.jetbrains.lang.dart.resolve.DartPsiScopeProcessor;
 import com.jetbrains.lang.dart.resolve.DartResolveProcessor;
 import gnu.trove.THashSet;
@@ -252,20 +254,32 @@ public class DartResolveUtil {
                                                     final @NotNull DartPsiScopeProcessor processor,
                                                     final @Nullable VirtualFile rootVirtualFile,
                                                     final @Nullable String componentNameHint) {
+    if (rootVirtualFile == null) return true;
+
+    final Set<VirtualFile> alreadyProcessed = new THashSet<VirtualFile>();
+    final Set<Pair<VirtualFile, String>> processedDeclarations = new THashSet<Pair<VirtualFile, String>>();
+
+    if (!findLibrary(context.getContainingFile()).contains(rootVirtualFile)) {
+      return processExportedDeclarations(context, processor, rootVirtualFile, componentNameHint, alreadyProcessed, processedDeclarations);
+    }
+
     final Set<VirtualFile> filesOfInterest =
       componentNameHint == null ? null : (Set<VirtualFile>)DartComponentIndex.getAllFiles(componentNameHint, context.getResolveScope());
 
     if (filesOfInterest != null && filesOfInterest.isEmpty()) return true;
 
     final boolean privateOnly = componentNameHint != null && componentNameHint.startsWith("_");
-    return processTopLevelDeclarationsImpl(context, processor, rootVirtualFile, filesOfInterest, new THashSet<VirtualFile>(), privateOnly);
+    return processTopLevelDeclarationsImpl(context, processor, rootVirtualFile, componentNameHint, filesOfInterest, alreadyProcessed,
+                                           processedDeclarations, privateOnly);
   }
 
   private static boolean processTopLevelDeclarationsImpl(final @NotNull PsiElement context,
                                                          final @NotNull DartPsiScopeProcessor processor,
                                                          final @Nullable VirtualFile virtualFile,
+                                                         final @Nullable String componentNameHint,
                                                          final @Nullable Set<VirtualFile> filesOfInterest,
                                                          final @NotNull Set<VirtualFile> alreadyProcessed,
+                                                         final @NotNull Set<Pair<VirtualFile, String>> processedDeclarations,
                                                          final boolean privateOnly) {
     if (virtualFile == null) return true;
 
@@ -286,15 +300,16 @@ public class DartResolveUtil {
       }
     }
 
-    for (String partUrl : DartPartUriIndex.getPartUris(context.getProject(), virtualFile)) {
-      final VirtualFile partFile = getImportedFile(context.getProject(), virtualFile, partUrl);
-      if (partFile == null || alreadyProcessed.contains(partFile) || (filesOfInterest != null && !filesOfInterest.contains(partFile))) {
+    final DartLibraryGraph libraryGraph = DartLibraryGraph.getInstance(context.getProject());
+    for (VirtualFile partFile : libraryGraph.getParts(virtualFile)) {
+      if (alreadyProcessed.contains(partFile) || (filesOfInterest != null && !filesOfInterest.contains(partFile))) {
         continue;
       }
 
       final PsiFile partPsiFile = context.getManager().findFile(partFile);
       if (partPsiFile != null) {
-        if (!processTopLevelDeclarationsImpl(partPsiFile, processor, partFile, filesOfInterest, alreadyProcessed, privateOnly)) {
+        if (!processTopLevelDeclarationsImpl(partPsiFile, processor, partFile, componentNameHint, filesOfInterest, alreadyProcessed,
+                                             processedDeclarations, privateOnly)) {
           return false;
         }
       }
@@ -309,7 +324,8 @@ public class DartResolveUtil {
 
     boolean coreImportedExplicitly = false;
 
-    for (DartImportOrExportInfo importOrExportInfo : DartImportAndExportIndex.getImportAndExportInfos(context.getProject(), virtualFile)) {
+    for (DartLibraryGraph.Directive directive : libraryGraph.getImportsAndExports(virtualFile)) {
+      final DartImportOrExportInfo importOrExportInfo = directive.getInfo();
       if (processingLibraryWhereContextElementLocated && importOrExportInfo.getKind() == Kind.Export) continue;
       if (!processingLibraryWhereContextElementLocated && importOrExportInfo.getKind() == Kind.Import) continue;
 
@@ -320,11 +336,11 @@ public class DartResolveUtil {
       // if statement has prefix all components are prefix.Name
       if (importOrExportInfo.getKind() == Kind.Import && importOrExportInfo.getImportPrefix() != null) continue;
 
-      final VirtualFile importedFile = getImportedFile(context.getProject(), virtualFile, importOrExportInfo.getUri());
+      final VirtualFile importedFile = directive.getFile();
       if (importedFile != null) {
         processor.importedFileProcessingStarted(importedFile, importOrExportInfo);
         final boolean continueProcessing =
-          processTopLevelDeclarationsImpl(context, processor, importedFile, filesOfInterest, alreadyProcessed, false);
+          processExportedDeclarations(context, processor, importedFile, componentNameHint, alreadyProcessed, processedDeclarations);
         processor.importedFileProcessingFinished(importedFile);
         if (!continueProcessing) {
           return false;
@@ -339,7 +355,7 @@ public class DartResolveUtil {
           new DartImportOrExportInfo(Kind.Import, DART_CORE_URI, null, Collections.<String>emptySet(), Collections.<String>emptySet());
         processor.importedFileProcessingStarted(dartCoreLib, implicitImportInfo);
         final boolean continueProcessing =
-          processTopLevelDeclarationsImpl(context, processor, dartCoreLib, filesOfInterest, alreadyProcessed, false);
+          processExportedDeclarations(context, processor, dartCoreLib, componentNameHint, alreadyProcessed, processedDeclarations);
         processor.importedFileProcessingFinished(dartCoreLib);
 
         if (!continueProcessing) {
@@ -351,6 +367,77 @@ public class DartResolveUtil {
     return true;
   }
 
+  /**
+   * Processes the top-level declarations that an import of <code>libraryFile</code> brings into scope. They are taken from the export table
+   * of {@link DartLibraryGraph} instead of walking parts and exports of the library; show/hide of the import itself is applied by the
+   * processor. Files in <code>alreadyProcessed</code> are skipped, a declaration reachable via several imports is processed once.
+   */
+  private static boolean processExportedDeclarations(final @NotNull PsiElement context,
+                                                     final @NotNull DartPsiScopeProcessor processor,
+                                                     final @NotNull VirtualFile libraryFile,
+                                                     final @Nullable String componentNameHint,
+                                                     final @NotNull Set<VirtualFile> alreadyProcessed,
+                                                     final @NotNull Set<Pair<VirtualFile, String>> processedDeclarations) {
+    final DartLibraryGraph.ExportTable exportTable = DartLibraryGraph.getInstance(context.getProject()).getExportTable(libraryFile);
+
+    if (componentNameHint != null) {
+      if (!processor.isVisible(componentNameHint)) return true;
+
+      final Set<String> names = Collections.singleton(componentNameHint);
+      for (VirtualFile file : exportTable.getFiles(componentNameHint)) {
+        if (!processDeclarationsWithNames(context, processor, file, names, alreadyProcessed, processedDeclarations)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    for (Map.Entry<VirtualFile, Set<String>> entry : exportTable.getNamesByFile().entrySet()) {
+      if (!processDeclarationsWithNames(context, processor, entry.getKey(), entry.getValue(), alreadyProcessed, processedDeclarations)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean processDeclarationsWithNames(final @NotNull PsiElement context,
+                                                      final @NotNull DartPsiScopeProcessor processor,
+                                                      final @NotNull VirtualFile file,
+                                                      final @NotNull Set<String> names,
+                                                      final @NotNull Set<VirtualFile> alreadyProcessed,
+                                                      final @NotNull Set<Pair<VirtualFile, String>> processedDeclarations) {
+    if (alreadyProcessed.contains(file)) return true;
+
+    final PsiFile psiFile = context.getManager().findFile(file);
+    if (psiFile == null) return true;
+
+    // getter and setter have the same name, so declarations are marked as processed only after the whole file
+    final Set<String> processedNames = new THashSet<String>();
+    final PsiScopeProcessor namesProcessor = new BaseScopeProcessor() {
+      @Override
+      public boolean execute(@NotNull final PsiElement element, @NotNull final ResolveState state) {
+        if (!(element instanceof DartComponentName)) return true;
+
+        final String name = ((DartComponentName)element).getName();
+        if (!names.contains(name) || !processor.isVisible(name) || processedDeclarations.contains(Pair.create(file, name))) return true;
+
+        processedNames.add(name);
+        return processor.execute(element, state);
+      }
+    };
+
+    for (PsiElement root : findDartRoots(psiFile)) {
+      if (!DartPsiCompositeElementImpl.processDeclarationsImpl(root, namesProcessor, ResolveState.initial(), null)) {
+        return false;
+      }
+    }
+
+    for (String name : processedNames) {
+      processedDeclarations.add(Pair.create(file, name));
+    }
+    return true;
+  }
+
   @Nullable
   public static VirtualFile getImportedFile(final @NotNull Project project,
                                             final @NotNull VirtualFile contextFile,
@@ -391,26 +478,30 @@ public class DartResolveUtil {
           final String libraryName = partOfStatement.getLibraryName();
           final List<VirtualFile> files = findLibraryByName(context, libraryName);
           if (!files.isEmpty()) {
-            return new CachedValueProvider.Result<List<VirtualFile>>(files, PsiModificationTracker.MODIFICATION_COUNT);
+            return new CachedValueProvider.Result<List<VirtualFile>>(files, getLibraryGraphTracker(context));
           }
         }
       }
 
       // no 'part of' statement in file -> this file itself is a library
-      return new CachedValueProvider.Result<List<VirtualFile>>(Collections.singletonList(contextVirtualFile), PsiModificationTracker.MODIFICATION_COUNT);
+      return new CachedValueProvider.Result<List<VirtualFile>>(Collections.singletonList(contextVirtualFile),
+                                                               getLibraryGraphTracker(context));
     });
   }
 
+  /**
+   * Changes that don't touch directives of physical files (for example typing in a function body) don't invalidate library/part relations
+   */
   @NotNull
-  public static List<VirtualFile> findLibraryByName(@NotNull final PsiElement context, @NotNull final String libraryName) {
-    return ContainerUtil.filter(DartLibraryIndex.getFilesByLibName(context.getResolveScope(), libraryName), mainLibFile -> {
-      for (String partUrl : DartPartUriIndex.getPartUris(context.getProject(), mainLibFile)) {
-        final VirtualFile partFile = getImportedFile(context.getProject(), mainLibFile, partUrl);
-        if (Comparing.equal(getRealVirtualFile(context.getContainingFile()), partFile)) return true;
-      }
+  private static Object getLibraryGraphTracker(@NotNull final PsiFile context) {
+    return context.isPhysical() ? DartLibraryGraph.getInstance(context.getProject()) : PsiModificationTracker.MODIFICATION_COUNT;
+  }
 
-      return false;
-    });
+  @NotNull
+  public static List<VirtualFile> findLibraryByName(@NotNull final PsiElement context, @NotNull final String libraryName) {
+    final VirtualFile partFile = getRealVirtualFile(context.getContainingFile());
+    if (partFile == null) return Collections.emptyList();
+    return DartLibraryGraph.getInstance(context.getProject()).getLibrariesOfPart(context, partFile, libraryName);
   }
 
   public static boolean isLibraryRoot(PsiFile psiFile) {
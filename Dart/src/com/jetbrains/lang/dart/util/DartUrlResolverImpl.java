@@ -11,11 +11,14 @@ import com.intellij.openapi.roots.ProjectRootManager;
 import com.intellij.openapi.roots.impl.libraries.LibraryEx;
 import com.intellij.openapi.roots.libraries.LibraryProperties;
 import com.intellij.openapi.roots.libraries.LibraryTablesRegistrar;
+import com.intellij.openapi.util.Comparing;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.SystemInfo;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.openapi.vfs.ex.temp.TempFileSystem;
 import com.intellij.util.PairConsumer;
 import com.jetbrains.lang.dart.ide.index.DartLibraryIndex;
@@ -30,6 +33,7 @@ import org.jetbrains.annotations.Nullable;
 import java.io.File;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -40,10 +44,44 @@ public class DartUrlResolverImpl extends DartUrlResolver {
   @Nullable private final DartSdk myDartSdk;
   @Nullable private final VirtualFile myPubspecYamlFile;
   @Nullable private VirtualFile myPackageRoot;
-  // myLivePackageNameToDirMap also contains packages map from .packages file if applicable
-  @NotNull private final Map<String, VirtualFile> myLivePackageNameToDirMap = new THashMap<String, VirtualFile>();
-  // myPackagesMapFromLib is not empty only if pubspec.yaml file is null
-  @NotNull private final Map<String, List<String>> myPackagesMapFromLib = new THashMap<String, List<String>>();
+  // live packages also contain packages map from .packages file if applicable
+  @NotNull private final DartPackageTable myLivePackages;
+  // packages from lib are not empty only if pubspec.yaml file is null
+  @NotNull private final DartPackageTable myPackagesFromLib;
+
+  private static final Key<CachedPackageTable> LIVE_PACKAGES_KEY = Key.create("DART_LIVE_PACKAGES_TABLE"); // stored in pubspec.yaml file
+  private static final Key<CachedPackageTable> PACKAGES_FROM_LIB_KEY = Key.create("DART_PACKAGES_FROM_LIB_TABLE"); // stored in project
+
+  /**
+   * Package table together with modification stamps of the files it was built from
+   */
+  private static class CachedPackageTable {
+    private final long myStamp;
+    private final long myDotPackagesStamp;
+    @Nullable private final String mySdkVersion;
+    // -1 if all package folders exist, otherwise VFS structure modification count: missing folders may appear later
+    private final long myVfsStructureStamp;
+    @NotNull private final DartPackageTable myTable;
+
+    private CachedPackageTable(final long stamp,
+                               final long dotPackagesStamp,
+                               @Nullable final String sdkVersion,
+                               final long vfsStructureStamp,
+                               @NotNull final DartPackageTable table) {
+      myStamp = stamp;
+      myDotPackagesStamp = dotPackagesStamp;
+      mySdkVersion = sdkVersion;
+      myVfsStructureStamp = vfsStructureStamp;
+      myTable = table;
+    }
+
+    private boolean isUpToDate(final long stamp, final long dotPackagesStamp, @Nullable final String sdkVersion) {
+      return myStamp == stamp &&
+             myDotPackagesStamp == dotPackagesStamp &&
+             Comparing.equal(mySdkVersion, sdkVersion) &&
+             (myVfsStructureStamp == -1 || myVfsStructureStamp == VirtualFileManager.getInstance().getStructureModificationCount());
+    }
+  }
 
   public DartUrlResolverImpl(final @NotNull Project project, final @NotNull VirtualFile contextFile) {
     myProject = project;
@@ -51,11 +89,8 @@ public class DartUrlResolverImpl extends DartUrlResolver {
 
     myPubspecYamlFile = initPackageRootAndReturnPubspecYamlFile(contextFile);
 
-    initLivePackageNameToDirMap();
-
-    if (myPubspecYamlFile == null) {
-      initPackagesMapFromLib(contextFile);
-    }
+    myLivePackages = getLivePackages();
+    myPackagesFromLib = myPubspecYamlFile == null ? getPackagesFromLib(contextFile) : DartPackageTable.EMPTY;
   }
 
   @Nullable
@@ -69,13 +104,13 @@ public class DartUrlResolverImpl extends DartUrlResolver {
   }
 
   public void processLivePackages(final @NotNull PairConsumer<String, VirtualFile> packageNameAndDirConsumer) {
-    for (Map.Entry<String, VirtualFile> entry : myLivePackageNameToDirMap.entrySet()) {
+    for (Map.Entry<String, VirtualFile> entry : myLivePackages.getLivePackageNameToDirMap().entrySet()) {
       packageNameAndDirConsumer.consume(entry.getKey(), entry.getValue());
     }
   }
 
   public Collection<String> getLivePackageNames() {
-    return myLivePackageNameToDirMap.keySet();
+    return myLivePackages.getLivePackageNameToDirMap().keySet();
   }
 
   @Nullable
@@ -86,10 +121,10 @@ public class DartUrlResolverImpl extends DartUrlResolver {
       return myPackageRoot.findChild(packageName);
     }
 
-    final VirtualFile dir = myLivePackageNameToDirMap.get(packageName);
+    final VirtualFile dir = myLivePackages.getLivePackageDir(packageName);
     if (dir != null) return dir;
 
-    final List<String> dirPaths = myPackagesMapFromLib.get(packageName);
+    final List<String> dirPaths = myPackagesFromLib.getPackageDirPathsFromLib(packageName);
     if (dirPaths != null) {
       VirtualFile notNullPackageDir = null;
 
@@ -126,7 +161,7 @@ public class DartUrlResolverImpl extends DartUrlResolver {
       final String packageName = slashIndex > 0 ? packageRelPath.substring(0, slashIndex) : packageRelPath;
       final String pathRelToPackageDir = slashIndex > 0 ? packageRelPath.substring(slashIndex + 1) : "";
 
-      final VirtualFile packageDir = StringUtil.isEmpty(packageName) ? null : myLivePackageNameToDirMap.get(packageName);
+      final VirtualFile packageDir = StringUtil.isEmpty(packageName) ? null : myLivePackages.getLivePackageDir(packageName);
       if (packageDir != null) {
         return packageDir.findFileByRelativePath(pathRelToPackageDir);
       }
@@ -138,7 +173,7 @@ public class DartUrlResolverImpl extends DartUrlResolver {
         }
       }
 
-      final List<String> packageDirs = myPackagesMapFromLib.get(packageName);
+      final List<String> packageDirs = myPackagesFromLib.getPackageDirPathsFromLib(packageName);
       if (packageDirs != null) {
         for (String packageDirPath : packageDirs) {
           final VirtualFile file = LocalFileSystem.getInstance().findFileByPath(packageDirPath + "/" + pathRelToPackageDir);
@@ -168,13 +203,13 @@ public class DartUrlResolverImpl extends DartUrlResolver {
     if (myDartSdk != null) result = getUrlIfFileFromSdkLib(myProject, file, myDartSdk);
     if (result != null) return result;
 
-    result = getUrlIfFileFromLivePackage(file, myLivePackageNameToDirMap);
+    result = myLivePackages.getUrlIfFileFromLivePackage(file);
     if (result != null) return result;
 
     result = getUrlIfFileFromPackageRoot(file, myPackageRoot);
     if (result != null) return result;
 
-    result = getUrlIfFileFromDartPackagesLib(file, myPackagesMapFromLib);
+    result = myPackagesFromLib.getUrlIfFileFromPackagesLib(file);
     if (result != null) return result;
 
     // see com.google.dart.tools.debug.core.server.ServerBreakpointManager#getAbsoluteUrlForResource()
@@ -197,20 +232,6 @@ public class DartUrlResolverImpl extends DartUrlResolver {
              : null;
   }
 
-  @Nullable
-  private static String getUrlIfFileFromLivePackage(final @NotNull VirtualFile file,
-                                                    final @NotNull Map<String, VirtualFile> livePackageNameToDirMap) {
-    for (Map.Entry<String, VirtualFile> entry : livePackageNameToDirMap.entrySet()) {
-      final String packageName = entry.getKey();
-      final VirtualFile packageDir = entry.getValue();
-      final String relPath = VfsUtilCore.getRelativePath(file, packageDir, '/');
-      if (relPath != null) {
-        return PACKAGE_PREFIX + packageName + "/" + relPath;
-      }
-    }
-    return null;
-  }
-
   @Nullable
   private static String getUrlIfFileFromPackageRoot(@NotNull final VirtualFile file, @Nullable final VirtualFile packageRoot) {
     if (packageRoot != null) {
@@ -222,20 +243,6 @@ public class DartUrlResolverImpl extends DartUrlResolver {
     return null;
   }
 
-  @Nullable
-  private static String getUrlIfFileFromDartPackagesLib(final @NotNull VirtualFile file,
-                                                        final @NotNull Map<String, List<String>> pubListPackageDirsMap) {
-    for (Map.Entry<String, List<String>> mapEntry : pubListPackageDirsMap.entrySet()) {
-      for (String dirPath : mapEntry.getValue()) {
-        if (file.getPath().startsWith(dirPath + "/")) {
-          final String packageName = mapEntry.getKey();
-          return PACKAGE_PREFIX + packageName + file.getPath().substring(dirPath.length());
-        }
-      }
-    }
-    return null;
-  }
-
   @Nullable
   private VirtualFile initPackageRootAndReturnPubspecYamlFile(final @NotNull VirtualFile contextFile) {
     final Module module = ModuleUtilCore.findModuleForFile(contextFile, myProject);
@@ -260,15 +267,26 @@ public class DartUrlResolverImpl extends DartUrlResolver {
     return pubspecYamlFile;
   }
 
-  private void initLivePackageNameToDirMap() {
+  @NotNull
+  private DartPackageTable getLivePackages() {
     final VirtualFile baseDir = myPubspecYamlFile == null ? null : myPubspecYamlFile.getParent();
-    if (myPubspecYamlFile == null || baseDir == null) return;
+    if (myPubspecYamlFile == null || baseDir == null) return DartPackageTable.EMPTY;
     final VirtualFile dotPackagesFile = baseDir.findChild(DotPackagesFileUtil.DOT_PACKAGES);
 
     if (dotPackagesFile != null &&
         !dotPackagesFile.isDirectory() &&
         myDartSdk != null &&
         StringUtil.compareVersionNumbers(myDartSdk.getVersion(), "1.12") >= 0) {
+      final long pubspecStamp = myPubspecYamlFile.getModificationCount();
+      final long dotPackagesStamp = dotPackagesFile.getModificationCount();
+      final CachedPackageTable cached = myPubspecYamlFile.getUserData(LIVE_PACKAGES_KEY);
+      if (cached != null && cached.isUpToDate(pubspecStamp, dotPackagesStamp, myDartSdk.getVersion())) {
+        return cached.myTable;
+      }
+
+      final long vfsStructureStamp = VirtualFileManager.getInstance().getStructureModificationCount();
+      boolean allPackageDirsFound = true;
+      final Map<String, VirtualFile> packageNameToDir = new THashMap<String, VirtualFile>();
       final Map<String, String> packagesMap = DotPackagesFileUtil.getPackagesMap(dotPackagesFile);
       if (packagesMap != null) {
         for (Map.Entry<String, String> entry : packagesMap.entrySet()) {
@@ -276,25 +294,37 @@ public class DartUrlResolverImpl extends DartUrlResolver {
           final String packagePath = entry.getValue();
           final VirtualFile packageDir = LocalFileSystem.getInstance().findFileByPath(packagePath);
           if (packageDir != null) {
-            myLivePackageNameToDirMap.put(packageName, packageDir);
+            packageNameToDir.put(packageName, packageDir);
+          }
+          else {
+            allPackageDirsFound = false;
           }
         }
       }
+
+      final DartPackageTable table = new DartPackageTable(packageNameToDir, Collections.<String, List<String>>emptyMap());
+      myPubspecYamlFile.putUserData(LIVE_PACKAGES_KEY, new CachedPackageTable(pubspecStamp, dotPackagesStamp, myDartSdk.getVersion(),
+                                                                              allPackageDirsFound ? -1 : vfsStructureStamp, table));
+      return table;
     }
     else {
+      // not cached: path packages depend on pubspec.yaml files of other packages
+      final Map<String, VirtualFile> packageNameToDir = new THashMap<String, VirtualFile>();
       final String name = PubspecYamlUtil.getDartProjectName(myPubspecYamlFile);
       final VirtualFile libFolder = baseDir.findChild(PubspecYamlUtil.LIB_DIR_NAME);
 
       if (name != null && libFolder != null && libFolder.isDirectory()) {
-        myLivePackageNameToDirMap.put(name, libFolder);
+        packageNameToDir.put(name, libFolder);
       }
 
       PubspecYamlUtil.processInProjectPathPackagesRecursively(myProject, myPubspecYamlFile,
-                                                              (packageName, packageDir) -> myLivePackageNameToDirMap.put(packageName, packageDir));
+                                                              (packageName, packageDir) -> packageNameToDir.put(packageName, packageDir));
+      return new DartPackageTable(packageNameToDir, Collections.<String, List<String>>emptyMap());
     }
   }
 
-  private void initPackagesMapFromLib(final @NotNull VirtualFile contextFile) {
+  @NotNull
+  private DartPackageTable getPackagesFromLib(final @NotNull VirtualFile contextFile) {
     final Module module = ModuleUtilCore.findModuleForFile(contextFile, myProject);
 
     final List<OrderEntry> orderEntries = module != null
@@ -308,14 +338,26 @@ public class DartUrlResolverImpl extends DartUrlResolver {
         final LibraryProperties properties = library == null ? null : library.getProperties();
 
         if (properties instanceof DartPackagesLibraryProperties) {
+          // library properties change together with roots
+          final long rootsStamp = ProjectRootManager.getInstance(myProject).getModificationCount();
+          final CachedPackageTable cached = myProject.getUserData(PACKAGES_FROM_LIB_KEY);
+          if (cached != null && cached.isUpToDate(rootsStamp, -1, null)) {
+            return cached.myTable;
+          }
+
+          final Map<String, List<String>> packageNameToDirPaths = new THashMap<String, List<String>>();
           for (Map.Entry<String, List<String>> entry : ((DartPackagesLibraryProperties)properties).getPackageNameToDirsMap().entrySet()) {
             if (entry != null && entry.getKey() != null && entry.getValue() != null) {
-              myPackagesMapFromLib.put(entry.getKey(), entry.getValue());
+              packageNameToDirPaths.put(entry.getKey(), entry.getValue());
             }
           }
-          return;
+
+          final DartPackageTable table = new DartPackageTable(Collections.<String, VirtualFile>emptyMap(), packageNameToDirPaths);
+          myProject.putUserData(PACKAGES_FROM_LIB_KEY, new CachedPackageTable(rootsStamp, -1, null, -1, table));
+          return table;
         }
       }
     }
+    return DartPackageTable.EMPTY;
   }
 }
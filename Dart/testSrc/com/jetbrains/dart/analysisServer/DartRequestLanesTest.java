@@ -0,0 +1,119 @@
+package com.jetbrains.dart.analysisServer;
+
+import com.google.dart.server.internal.remote.ByteRequestSink;
+import com.google.dart.server.internal.remote.RequestLatencyHistogram;
+import com.google.dart.server.internal.remote.utilities.RequestUtilities;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.intellij.openapi.util.text.StringUtil;
+import junit.framework.TestCase;
+import org.dartlang.analysis.server.protocol.AddContentOverlay;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class DartRequestLanesTest extends TestCase {
+  private static final long WRITE_TIMEOUT = 10000;
+
+  /**
+   * Blocks the writer thread on the first request until {@link #release()}, so that the rest of the requests stay queued.
+   */
+  private static class GatedOutputStream extends OutputStream {
+    private final CountDownLatch myGate = new CountDownLatch(1);
+    private final ByteArrayOutputStream myBytes = new ByteArrayOutputStream();
+
+    @Override
+    public synchronized void write(final int b) throws IOException {
+      myBytes.write(b);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      try {
+        myGate.await();
+      }
+      catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      synchronized (this) {
+        notifyAll();
+      }
+    }
+
+    void release() {
+      myGate.countDown();
+    }
+
+    /**
+     * Waits until the writer thread has written and flushed <code>count</code> requests or the timeout expires.
+     */
+    @NotNull
+    synchronized List<String> waitForWrittenIds(final int count) throws InterruptedException {
+      final long deadline = System.currentTimeMillis() + WRITE_TIMEOUT;
+      List<String> ids = getWrittenIds();
+      while (ids.size() < count && System.currentTimeMillis() < deadline) {
+        wait(10);
+        ids = getWrittenIds();
+      }
+      return ids;
+    }
+
+    @NotNull
+    private synchronized List<String> getWrittenIds() {
+      final String text = myBytes.toString();
+      final List<String> ids = new ArrayList<String>();
+      // the last line may be written only partially
+      for (String line : StringUtil.splitByLines(text.substring(0, text.lastIndexOf('\n') + 1))) {
+        ids.add(RequestUtilities.getId((JsonObject)new JsonParser().parse(line)));
+      }
+      return ids;
+    }
+  }
+
+  public void testInteractiveRequestsOvertakeBackgroundRequests() throws Exception {
+    final GatedOutputStream stream = new GatedOutputStream();
+    final ByteRequestSink sink = new ByteRequestSink(stream, null);
+
+    sink.add(RequestUtilities.generateAnalysisReanalyze("0", null));
+    sink.add(RequestUtilities.generateSearchFindTopLevelDeclarations("1", "foo"));
+    sink.add(RequestUtilities.generateAnalysisGetHover("2", "/project/lib/a.dart", 1));
+    sink.add(RequestUtilities.generateAnalysisUpdateContent("3", Collections.<String, Object>singletonMap("/project/lib/a.dart",
+                                                                                                         new AddContentOverlay("main() {}"))));
+    sink.add(RequestUtilities.generateSearchFindTopLevelDeclarations("4", "foo"));
+    sink.add(RequestUtilities.generateCompletionGetSuggestions("5", "/project/lib/a.dart", 3));
+    sink.add(RequestUtilities.generateAnalysisGetHover("6", "/project/lib/a.dart", 5));
+
+    assertTrue(sink.cancel("6"));
+    assertFalse(sink.cancel("6"));
+
+    stream.release();
+
+    // the hover overtakes the search queued before it, the completion doesn't overtake the content update
+    assertEquals(StringUtil.split("0,2,1,3,5,4", ","), stream.waitForWrittenIds(6));
+  }
+
+  public void testLatencyHistogram() throws Exception {
+    final RequestLatencyHistogram histogram = new RequestLatencyHistogram();
+    for (int i = 0; i < 90; i++) {
+      histogram.record(3);
+    }
+    for (int i = 0; i < 10; i++) {
+      histogram.record(700);
+    }
+    histogram.recordCancelled();
+
+    assertEquals(100, histogram.getCount());
+    assertEquals(1, histogram.getCancelledCount());
+    assertEquals(700, histogram.getMaxMillis());
+    assertEquals(72, histogram.getMeanMillis());
+    assertEquals(5, histogram.getPercentileMillis(0.5));
+    assertEquals(700, histogram.getPercentileMillis(0.95));
+    assertEquals(100, histogram.copy().getCount());
+  }
+}
@@ -1,5 +1,6 @@
 package com.jetbrains.dart.analysisServer;
 
+import com.google.dart.server.internal.remote.RequestLatencyHistogram;
 import com.intellij.codeInsight.completion.CompletionType;
 import com.intellij.codeInsight.lookup.Lookup;
 import com.intellij.codeInsight.lookup.LookupElement;
@@ -17,6 +18,8 @@ import com.jetbrains.lang.dart.util.DartTestUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Map;
+
 public class DartServerCompletionTest extends CodeInsightFixtureTestCase {
 
   @Override
@@ -98,4 +101,18 @@ public class DartServerCompletionTest extends CodeInsightFixtureTestCase {
     selectLookup("package:projectName/libFile.dart", Lookup.REPLACE_SELECT_CHAR);
     myFixture.checkResultByFile(testName + ".after.dart");
   }
+
+  public void testCompletionLatencies() throws Throwable {
+    final DartAnalysisServerService service = DartAnalysisServerService.getInstance();
+    final long firstItemCount = service.getCompletionLatencies().get("completion.firstItem").getCount();
+    final long lastItemCount = service.getCompletionLatencies().get("completion.lastItem").getCount();
+
+    myFixture.configureByText("foo.dart", "main() { var list = []; list.<caret> }");
+    myFixture.complete(CompletionType.BASIC);
+    assertContainsElements(myFixture.getLookupElementStrings(), "add", "length");
+
+    final Map<String, RequestLatencyHistogram> latencies = service.getCompletionLatencies();
+    assertEquals(firstItemCount + 1, latencies.get("completion.firstItem").getCount());
+    assertEquals(lastItemCount + 1, latencies.get("completion.lastItem").getCount());
+  }
 }
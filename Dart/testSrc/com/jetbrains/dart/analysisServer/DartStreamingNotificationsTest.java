@@ -0,0 +1,127 @@
+package com.jetbrains.dart.analysisServer;
+
+import com.google.dart.server.AnalysisServerListenerAdapter;
+import com.google.dart.server.internal.remote.processor.NotificationAnalysisHighlightsProcessor;
+import com.google.dart.server.internal.remote.processor.NotificationAnalysisNavigationProcessor;
+import com.google.dart.server.internal.remote.processor.StreamingNotificationProcessor;
+import com.google.dart.server.internal.remote.utilities.ResponseUtilities;
+import com.intellij.testFramework.PlatformTestUtil;
+import junit.framework.TestCase;
+import org.dartlang.analysis.server.protocol.HighlightRegion;
+import org.dartlang.analysis.server.protocol.NavigationRegion;
+import org.dartlang.analysis.server.protocol.NavigationTarget;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+public class DartStreamingNotificationsTest extends TestCase {
+
+  private static class RecordingListener extends AnalysisServerListenerAdapter {
+    private String myFile;
+    private List<HighlightRegion> myHighlights;
+    private List<NavigationRegion> myNavigation;
+
+    @Override
+    public void computedHighlights(String file, List<HighlightRegion> highlights) {
+      myFile = file;
+      myHighlights = highlights;
+    }
+
+    @Override
+    public void computedNavigation(String file, List<NavigationRegion> regions) {
+      myFile = file;
+      myNavigation = regions;
+    }
+  }
+
+  @NotNull
+  private static String highlightsNotification(final int regionCount) {
+    final StringBuilder builder = new StringBuilder();
+    builder.append("{\"event\":\"analysis.highlights\",\"params\":{\"file\":\"/project/lib/generated.dart\",\"regions\":[");
+    for (int i = 0; i < regionCount; i++) {
+      if (i > 0) builder.append(',');
+      builder.append("{\"type\":\"").append(i % 2 == 0 ? "KEYWORD" : "IDENTIFIER_DEFAULT")
+        .append("\",\"offset\":").append(i * 10).append(",\"length\":").append(i % 7 + 1).append('}');
+    }
+    builder.append("]}}");
+    return builder.toString();
+  }
+
+  @NotNull
+  private static String navigationNotification(final int regionCount, final boolean regionsFirst) {
+    final StringBuilder regions = new StringBuilder("\"regions\":[");
+    for (int i = 0; i < regionCount; i++) {
+      if (i > 0) regions.append(',');
+      regions.append("{\"offset\":").append(i * 10).append(",\"length\":5,\"targets\":[").append(i % 3).append("]}");
+    }
+    regions.append(']');
+
+    final String targets = "\"files\":[\"/project/lib/a.dart\",\"/project/lib/b.dart\"],\"targets\":[" +
+                           "{\"kind\":\"CLASS\",\"fileIndex\":0,\"offset\":6,\"length\":1,\"startLine\":1,\"startColumn\":7}," +
+                           "{\"kind\":\"FUNCTION\",\"fileIndex\":1,\"offset\":0,\"length\":3,\"startLine\":1,\"startColumn\":1}," +
+                           "{\"kind\":\"METHOD\",\"fileIndex\":1,\"offset\":20,\"length\":3,\"startLine\":2,\"startColumn\":3}]";
+
+    return "{\"event\":\"analysis.navigation\",\"params\":{\"file\":\"/project/lib/generated.dart\"," +
+           (regionsFirst ? regions + "," + targets : targets + "," + regions) + "}}";
+  }
+
+  private static void assertSameNavigation(@NotNull final List<NavigationRegion> expected, @NotNull final List<NavigationRegion> actual) {
+    assertEquals(expected, actual);
+    for (int i = 0; i < expected.size(); i++) {
+      final List<NavigationTarget> expectedTargets = expected.get(i).getTargetObjects();
+      final List<NavigationTarget> actualTargets = actual.get(i).getTargetObjects();
+      assertEquals(expectedTargets, actualTargets);
+      for (int j = 0; j < expectedTargets.size(); j++) {
+        assertEquals(expectedTargets.get(j).getFile(), actualTargets.get(j).getFile());
+      }
+    }
+  }
+
+  public void testHighlights() throws Exception {
+    final String text = highlightsNotification(100);
+
+    final RecordingListener treeListener = new RecordingListener();
+    new NotificationAnalysisHighlightsProcessor(treeListener).process(ResponseUtilities.parseResponse(text));
+
+    final RecordingListener streamingListener = new RecordingListener();
+    assertTrue(new StreamingNotificationProcessor(streamingListener).process(text));
+
+    assertEquals(treeListener.myFile, streamingListener.myFile);
+    assertEquals(treeListener.myHighlights, streamingListener.myHighlights);
+  }
+
+  public void testNavigation() throws Exception {
+    for (boolean regionsFirst : new boolean[]{false, true}) {
+      final String text = navigationNotification(100, regionsFirst);
+
+      final RecordingListener treeListener = new RecordingListener();
+      new NotificationAnalysisNavigationProcessor(treeListener).process(ResponseUtilities.parseResponse(text));
+
+      final RecordingListener streamingListener = new RecordingListener();
+      assertTrue(new StreamingNotificationProcessor(streamingListener).process(text));
+
+      assertEquals(treeListener.myFile, streamingListener.myFile);
+      assertSameNavigation(treeListener.myNavigation, streamingListener.myNavigation);
+    }
+  }
+
+  public void testOtherResponsesNotHandled() throws Exception {
+    final StreamingNotificationProcessor processor = new StreamingNotificationProcessor(new RecordingListener());
+    assertFalse(processor.process("{\"id\":\"1\",\"result\":{\"version\":\"1.15.0\"}}"));
+    assertFalse(processor.process("{\"event\":\"analysis.errors\",\"params\":{\"file\":\"/a.dart\",\"errors\":[]}}"));
+    assertFalse(processor.process("{\"params\":{\"file\":\"/a.dart\",\"regions\":[]},\"event\":\"analysis.highlights\"}"));
+  }
+
+  public void testPerformance() throws Exception {
+    final String highlights = highlightsNotification(200000);
+    final String navigation = navigationNotification(100000, false);
+    final StreamingNotificationProcessor processor = new StreamingNotificationProcessor(new RecordingListener());
+
+    PlatformTestUtil.startPerformanceTest("Streaming decode of highlights and navigation notifications", 3000, () -> {
+      for (int i = 0; i < 5; i++) {
+        assertTrue(processor.process(highlights));
+        assertTrue(processor.process(navigation));
+      }
+    }).cpuBound().assertTiming();
+  }
+}
@@ -0,0 +1,79 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentAdapter;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import com.jetbrains.lang.dart.util.DartTestUtils;
+import org.dartlang.analysis.server.protocol.CompletionSuggestion;
+import org.dartlang.analysis.server.protocol.CompletionSuggestionKind;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class DartCompletionCacheTest extends LightPlatformCodeInsightFixtureTestCase {
+  private static final String FILE_PATH = "/project/lib/foo.dart";
+
+  private final DartCompletionCache myCache = new DartCompletionCache();
+  private Document myDocument;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDocument = DartTestUtils.createDocument("main() {\n  pr\n}\n", new DocumentAdapter() {
+      @Override
+      public void documentChanged(DocumentEvent e) {
+        myCache.documentChanged(FILE_PATH, e);
+      }
+    }, getTestRootDisposable());
+  }
+
+  @NotNull
+  private static CompletionSuggestion suggestion(@NotNull final String completion, final int relevance) {
+    return new CompletionSuggestion(CompletionSuggestionKind.INVOCATION, relevance, completion, completion.length(), 0, false, false,
+                                    null, null, null, null, null, null, null, null, null, null, null, null);
+  }
+
+  private int putSuggestions() {
+    final int identifierStart = myDocument.getText().indexOf("pr");
+    myCache.put(FILE_PATH, identifierStart, identifierStart + 2, myDocument.getModificationStamp(),
+                Arrays.asList(suggestion("print", 500), suggestion("identical", 1000)));
+    return identifierStart;
+  }
+
+  public void testTypingIdentifier() throws Exception {
+    final int identifierStart = putSuggestions();
+    assertNull(myCache.get(FILE_PATH, identifierStart + 1, myDocument.getModificationStamp()));
+    assertNull(myCache.get("/project/lib/bar.dart", identifierStart, myDocument.getModificationStamp()));
+
+    DartTestUtils.editDocument(() -> myDocument.insertString(identifierStart + 2, "i"));
+    DartTestUtils.editDocument(() -> myDocument.deleteString(identifierStart + 2, identifierStart + 3));
+    DartTestUtils.editDocument(() -> myDocument.insertString(identifierStart + 2, "in"));
+
+    final List<CompletionSuggestion> suggestions = myCache.get(FILE_PATH, identifierStart, myDocument.getModificationStamp());
+    assertNotNull(suggestions);
+    assertEquals("identical", suggestions.get(0).getCompletion()); // sorted by relevance
+    assertEquals("print", suggestions.get(1).getCompletion());
+    assertEquals(1, myCache.getHitCount());
+  }
+
+  public void testEditOutsideIdentifier() throws Exception {
+    final int identifierStart = putSuggestions();
+    DartTestUtils.editDocument(() -> myDocument.insertString(0, "\n"));
+    assertNull(myCache.get(FILE_PATH, identifierStart + 1, myDocument.getModificationStamp()));
+    assertNull(myCache.get(FILE_PATH, identifierStart, myDocument.getModificationStamp()));
+  }
+
+  public void testNonIdentifierCharacter() throws Exception {
+    final int identifierStart = putSuggestions();
+    DartTestUtils.editDocument(() -> myDocument.insertString(identifierStart + 2, "."));
+    assertNull(myCache.get(FILE_PATH, identifierStart, myDocument.getModificationStamp()));
+  }
+
+  public void testDeleteBeforeIdentifierStart() throws Exception {
+    final int identifierStart = putSuggestions();
+    DartTestUtils.editDocument(() -> myDocument.deleteString(identifierStart - 1, identifierStart + 2));
+    assertNull(myCache.get(FILE_PATH, identifierStart - 1, myDocument.getModificationStamp()));
+  }
+}
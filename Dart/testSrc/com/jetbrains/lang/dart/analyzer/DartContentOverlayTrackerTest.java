@@ -0,0 +1,109 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentAdapter;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import com.jetbrains.lang.dart.util.DartTestUtils;
+import gnu.trove.THashMap;
+import org.dartlang.analysis.server.protocol.AddContentOverlay;
+import org.dartlang.analysis.server.protocol.ChangeContentOverlay;
+import org.dartlang.analysis.server.protocol.SourceEdit;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Map;
+
+public class DartContentOverlayTrackerTest extends LightPlatformCodeInsightFixtureTestCase {
+  private static final String FILE_PATH = "/project/lib/big.dart";
+
+  private final DartContentOverlayTracker myTracker = new DartContentOverlayTracker();
+  private Document myDocument;
+  private long myOverlaidStamp;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDocument = DartTestUtils.createDocument(StringUtil.repeat("var x = 1;\n", 5000), new DocumentAdapter() {
+      @Override
+      public void documentChanged(DocumentEvent e) {
+        myTracker.documentChanged(FILE_PATH, myOverlaidStamp, e);
+      }
+    }, getTestRootDisposable());
+    myOverlaidStamp = myDocument.getModificationStamp();
+  }
+
+  @NotNull
+  private static String applyEdits(@NotNull String text, @NotNull final ChangeContentOverlay overlay) {
+    for (SourceEdit edit : overlay.getEdits()) {
+      text = text.substring(0, edit.getOffset()) + edit.getReplacement() + text.substring(edit.getOffset() + edit.getLength());
+    }
+    return text;
+  }
+
+  public void testIncrementalEdits() throws Exception {
+    final String serverText = myDocument.getText();
+    DartTestUtils.editDocument(() -> {
+      myDocument.insertString(4, "yy");
+      myDocument.deleteString(100, 110);
+      myDocument.replaceString(0, 3, "final");
+    });
+
+    final Object overlay = myTracker.createOverlay(FILE_PATH, myOverlaidStamp, myDocument);
+    assertInstanceOf(overlay, ChangeContentOverlay.class);
+    assertEquals(3, ((ChangeContentOverlay)overlay).getEdits().size());
+    assertEquals(myDocument.getText(), applyEdits(serverText, (ChangeContentOverlay)overlay));
+    assertEquals(1, myTracker.getChangeOverlayCount());
+  }
+
+  public void testEditsAfterOverlayWasSent() throws Exception {
+    DartTestUtils.editDocument(() -> myDocument.insertString(0, "// comment\n"));
+    myTracker.createOverlay(FILE_PATH, myOverlaidStamp, myDocument);
+    myOverlaidStamp = myDocument.getModificationStamp();
+
+    final String serverText = myDocument.getText();
+    DartTestUtils.editDocument(() -> myDocument.insertString(20, "z"));
+    final Object overlay = myTracker.createOverlay(FILE_PATH, myOverlaidStamp, myDocument);
+    assertInstanceOf(overlay, ChangeContentOverlay.class);
+    assertEquals(myDocument.getText(), applyEdits(serverText, (ChangeContentOverlay)overlay));
+  }
+
+  public void testFullContentIfServerContentIsUnknown() throws Exception {
+    DartTestUtils.editDocument(() -> myDocument.insertString(0, "// comment\n"));
+    myTracker.resyncRequested(FILE_PATH);
+
+    final Object overlay = myTracker.createOverlay(FILE_PATH, -1L, myDocument);
+    assertInstanceOf(overlay, AddContentOverlay.class);
+    assertEquals(myDocument.getText(), ((AddContentOverlay)overlay).getContent());
+    assertEquals(1, myTracker.getResyncCount());
+  }
+
+  public void testFailedAddAndRemoveBatch() throws Exception {
+    final String removedPath = "/project/lib/closed.dart";
+    final Map<String, Long> overlaidStamps = new THashMap<String, Long>();
+
+    // a batch with AddContentOverlay for FILE_PATH and RemoveContentOverlay for removedPath fails
+    DartTestUtils.editDocument(() -> myDocument.insertString(0, "// comment\n"));
+    assertInstanceOf(myTracker.createOverlay(FILE_PATH, null, myDocument), AddContentOverlay.class);
+    overlaidStamps.put(FILE_PATH, myDocument.getModificationStamp());
+    myTracker.resyncRequested(overlaidStamps, Arrays.asList(FILE_PATH, removedPath));
+
+    assertEquals(Long.valueOf(-1), overlaidStamps.get(FILE_PATH));
+    // tracked again, so the next update sends RemoveContentOverlay for it if it's not open
+    assertEquals(Long.valueOf(-1), overlaidStamps.get(removedPath));
+    assertEquals(2, myTracker.getResyncCount());
+
+    final Object overlay = myTracker.createOverlay(FILE_PATH, overlaidStamps.get(FILE_PATH), myDocument);
+    assertInstanceOf(overlay, AddContentOverlay.class);
+    assertEquals(myDocument.getText(), ((AddContentOverlay)overlay).getContent());
+  }
+
+  public void testFullContentIfEditsAreLarge() throws Exception {
+    DartTestUtils.editDocument(() -> myDocument.setText("main() {}"));
+
+    final Object overlay = myTracker.createOverlay(FILE_PATH, myOverlaidStamp, myDocument);
+    assertInstanceOf(overlay, AddContentOverlay.class);
+    assertEquals(1, myTracker.getAddOverlayCount());
+  }
+}
@@ -0,0 +1,255 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.jetbrains.lang.dart.resolve.DartResolver;
+import junit.framework.TestCase;
+import org.dartlang.analysis.server.protocol.HighlightRegion;
+import org.dartlang.analysis.server.protocol.NavigationRegion;
+import org.dartlang.analysis.server.protocol.NavigationTarget;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class DartRegionTablesTest extends TestCase {
+  private static final Logger LOG = Logger.getInstance(DartRegionTablesTest.class);
+
+  // a file of about 10000 lines that uses elements declared in 150 files
+  private static final int HIGHLIGHT_REGION_COUNT = 60000;
+  private static final int NAVIGATION_REGION_COUNT = 25000;
+  private static final int NAVIGATION_TARGET_COUNT = 4000;
+  private static final int NAVIGATION_TARGET_FILE_COUNT = 150;
+
+  @NotNull
+  private static List<NavigationRegion> createNavigationRegions(final int count) {
+    final String[] files = {"/project/lib/a.dart", "/project/lib/b.dart"};
+    final List<NavigationTarget> targets = Arrays.asList(new NavigationTarget("CLASS", 0, 6, 1, 1, 7),
+                                                         new NavigationTarget("METHOD", 1, 20, 3, 2, 3));
+    for (NavigationTarget target : targets) {
+      target.lookupFile(files);
+    }
+
+    final List<NavigationRegion> regions = new ArrayList<NavigationRegion>(count);
+    for (int i = 0; i < count; i++) {
+      final NavigationRegion region = new NavigationRegion(i * 10, 5, new int[]{i % 2});
+      region.lookupTargets(targets);
+      regions.add(region);
+    }
+    return regions;
+  }
+
+  @NotNull
+  private static List<NavigationRegion> createRealisticNavigationRegions() {
+    final String[] files = new String[NAVIGATION_TARGET_FILE_COUNT];
+    for (int i = 0; i < files.length; i++) {
+      files[i] = "/project/lib/src/file" + i + ".dart";
+    }
+    final String[] kinds = {"CLASS", "METHOD", "FIELD", "GETTER", "LOCAL_VARIABLE", "PARAMETER", "FUNCTION"};
+    final List<NavigationTarget> targets = new ArrayList<NavigationTarget>(NAVIGATION_TARGET_COUNT);
+    for (int i = 0; i < NAVIGATION_TARGET_COUNT; i++) {
+      final NavigationTarget target = new NavigationTarget(kinds[i % kinds.length], i % files.length, i * 40, 8, i, 3);
+      target.lookupFile(files);
+      targets.add(target);
+    }
+
+    final List<NavigationRegion> regions = new ArrayList<NavigationRegion>(NAVIGATION_REGION_COUNT);
+    for (int i = 0; i < NAVIGATION_REGION_COUNT; i++) {
+      final int target = (int)((i * 7919L) % NAVIGATION_TARGET_COUNT);
+      // every 20th region is a constructor invocation, navigating to both the class and the constructor
+      final int[] regionTargets = i % 20 == 0 ? new int[]{target, (target + 1) % NAVIGATION_TARGET_COUNT} : new int[]{target};
+      final NavigationRegion region = new NavigationRegion(i * 12, 8, regionTargets);
+      region.lookupTargets(targets);
+      regions.add(region);
+    }
+    return regions;
+  }
+
+  @NotNull
+  private static List<HighlightRegion> createRealisticHighlightRegions() {
+    final String[] types = {"KEYWORD", "IDENTIFIER_DEFAULT", "LOCAL_VARIABLE_REFERENCE", "INSTANCE_METHOD_REFERENCE", "CLASS",
+      "LITERAL_STRING", "PARAMETER_REFERENCE", "COMMENT_DOCUMENTATION"};
+    final List<HighlightRegion> regions = new ArrayList<HighlightRegion>(HIGHLIGHT_REGION_COUNT);
+    for (int i = 0; i < HIGHLIGHT_REGION_COUNT; i++) {
+      regions.add(new HighlightRegion(types[i % types.length], i * 5, 4));
+    }
+    return regions;
+  }
+
+  /**
+   * Heap in use after garbage collection has settled
+   */
+  private static long usedHeap() {
+    final Runtime runtime = Runtime.getRuntime();
+    long used = Long.MAX_VALUE;
+    for (int i = 0; i < 20; i++) {
+      System.gc();
+      final long newUsed = runtime.totalMemory() - runtime.freeMemory();
+      if (newUsed >= used) break;
+      used = newUsed;
+    }
+    return used;
+  }
+
+  /**
+   * The navigation region containing the offset, found the way DartInlineHandler did before the tables
+   */
+  @Nullable
+  private static DartServerData.DartNavigationRegion findRegionContaining(@NotNull final List<DartServerData.DartNavigationRegion> regions,
+                                                                          final int offset) {
+    for (DartServerData.DartNavigationRegion region : regions) {
+      if (region.getOffset() <= offset && offset <= region.getOffset() + region.getLength()) {
+        return region;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Compares the per-file region lists DartServerData kept before with the region tables on a large file: retained heap and the time
+   * of "region at offset" lookups. The numbers are logged at debug level, only the memory win is asserted.
+   */
+  public void testRegionTablesAgainstRegionLists() throws Exception {
+    final List<HighlightRegion> highlightRegions = createRealisticHighlightRegions();
+    final List<NavigationRegion> navigationRegions = createRealisticNavigationRegions();
+
+    // several copies of the data keep the measured difference well above the noise of heap usage
+    final int copies = 20;
+
+    long heap = usedHeap();
+    final List<List<DartServerData.DartHighlightRegion>> highlightLists = new ArrayList<List<DartServerData.DartHighlightRegion>>();
+    for (int i = 0; i < copies; i++) {
+      final List<DartServerData.DartHighlightRegion> list = new ArrayList<DartServerData.DartHighlightRegion>(highlightRegions.size());
+      for (HighlightRegion region : highlightRegions) {
+        list.add(new DartServerData.DartHighlightRegion(region.getOffset(), region.getLength(), region.getType().intern()));
+      }
+      highlightLists.add(list);
+    }
+    final long highlightListBytes = (usedHeap() - heap) / copies;
+
+    heap = usedHeap();
+    final List<DartHighlightRegionTable> highlightTables = new ArrayList<DartHighlightRegionTable>();
+    for (int i = 0; i < copies; i++) {
+      highlightTables.add(DartHighlightRegionTable.create(highlightRegions));
+    }
+    final long highlightTableBytes = (usedHeap() - heap) / copies;
+
+    heap = usedHeap();
+    final List<List<DartServerData.DartNavigationRegion>> navigationLists = new ArrayList<List<DartServerData.DartNavigationRegion>>();
+    for (int i = 0; i < copies; i++) {
+      final List<DartServerData.DartNavigationRegion> list = new ArrayList<DartServerData.DartNavigationRegion>(navigationRegions.size());
+      for (NavigationRegion region : navigationRegions) {
+        list.add(new DartServerData.DartNavigationRegion(region));
+      }
+      navigationLists.add(list);
+    }
+    final long navigationListBytes = (usedHeap() - heap) / copies;
+
+    heap = usedHeap();
+    final List<DartNavigationRegionTable> navigationTables = new ArrayList<DartNavigationRegionTable>();
+    for (int i = 0; i < copies; i++) {
+      navigationTables.add(DartNavigationRegionTable.create(navigationRegions));
+    }
+    final long navigationTableBytes = (usedHeap() - heap) / copies;
+
+    final List<DartServerData.DartNavigationRegion> navigationList = navigationLists.get(0);
+    final DartNavigationRegionTable navigationTable = navigationTables.get(0);
+
+    final int lookups = 200000;
+    final int[] offsets = new int[lookups];
+    for (int i = 0; i < lookups; i++) {
+      offsets[i] = (int)((i * 7919L) % NAVIGATION_REGION_COUNT) * 12;
+    }
+
+    long start = System.nanoTime();
+    for (int offset : offsets) {
+      assertNotNull(DartResolver.findRegion(navigationList, offset, 8));
+    }
+    final long listFindNanos = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for (int offset : offsets) {
+      assertNotNull(navigationTable.findRegion(offset, 8));
+    }
+    final long tableFindNanos = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for (int i = 0; i < lookups / 100; i++) {
+      assertNotNull(findRegionContaining(navigationList, offsets[i] + 3));
+    }
+    final long listContainingNanos = (System.nanoTime() - start) * 100;
+
+    start = System.nanoTime();
+    for (int offset : offsets) {
+      assertNotNull(navigationTable.findRegionContaining(offset + 3));
+    }
+    final long tableContainingNanos = System.nanoTime() - start;
+
+    LOG.debug(HIGHLIGHT_REGION_COUNT + " highlight regions: list " + highlightListBytes + " bytes, table " + highlightTableBytes + " bytes");
+    LOG.debug(NAVIGATION_REGION_COUNT + " navigation regions: list " + navigationListBytes + " bytes, table " + navigationTableBytes +
+              " bytes");
+    LOG.debug(lookups + " region lookups: list " + listFindNanos / 1000000 + " ms, table " + tableFindNanos / 1000000 + " ms");
+    LOG.debug(lookups + " containing region lookups: list " + listContainingNanos / 1000000 + " ms (extrapolated from " + lookups / 100 +
+              "), table " + tableContainingNanos / 1000000 + " ms");
+
+    assertTrue(highlightTableBytes + " vs " + highlightListBytes, highlightTableBytes < highlightListBytes / 2);
+    assertTrue(navigationTableBytes + " vs " + navigationListBytes, navigationTableBytes < navigationListBytes / 2);
+    // keep everything reachable till the end of measurements
+    assertEquals(highlightLists.get(copies - 1).size(), highlightTables.get(copies - 1).toList().size());
+    assertEquals(navigationLists.get(copies - 1).size(), navigationTables.get(copies - 1).toList().size());
+  }
+
+  public void testHighlightRegions() throws Exception {
+    final List<HighlightRegion> regions = Arrays.asList(new HighlightRegion("KEYWORD", 10, 5),
+                                                        new HighlightRegion("IDENTIFIER_DEFAULT", 0, 3),
+                                                        new HighlightRegion("KEYWORD", 20, 0));
+    final List<DartServerData.DartHighlightRegion> list = DartHighlightRegionTable.create(regions).toList();
+    assertEquals(2, list.size());
+    assertEquals(0, list.get(0).getOffset());
+    assertEquals(3, list.get(0).getLength());
+    assertEquals("IDENTIFIER_DEFAULT", list.get(0).getType());
+    assertEquals(10, list.get(1).getOffset());
+    assertEquals("KEYWORD", list.get(1).getType());
+  }
+
+  public void testNavigationRegions() throws Exception {
+    final List<NavigationRegion> regions = new ArrayList<NavigationRegion>(createNavigationRegions(10));
+    Collections.reverse(regions);
+    final DartNavigationRegionTable table = DartNavigationRegionTable.create(regions);
+
+    final DartServerData.DartNavigationRegion region = table.findRegion(30, 5);
+    assertNotNull(region);
+    assertEquals(1, region.getTargets().size());
+    assertEquals("/project/lib/b.dart", region.getTargets().get(0).getFile());
+    assertEquals(20, region.getTargets().get(0).getOffset());
+    assertEquals("METHOD", region.getTargets().get(0).getKind());
+
+    assertNull(table.findRegion(30, 4));
+    assertNull(table.findRegion(31, 5));
+
+    final DartServerData.DartNavigationRegion containing = table.findRegionContaining(45);
+    assertNotNull(containing);
+    assertEquals(40, containing.getOffset());
+    assertEquals(40, table.findRegionContaining(40).getOffset());
+    assertNull(table.findRegionContaining(46));
+    assertNull(table.findRegionContaining(1000));
+
+    assertEquals(10, table.toList().size());
+  }
+
+  public void testNavigationLookupPerformance() throws Exception {
+    final int count = 500000;
+    final DartNavigationRegionTable table = DartNavigationRegionTable.create(createNavigationRegions(count));
+
+    PlatformTestUtil.startPerformanceTest("Navigation region lookups in a file with " + count + " regions", 1000, () -> {
+      for (int i = 0; i < 1000000; i++) {
+        final int offset = (int)((i * 7919L) % count) * 10;
+        assertNotNull(table.findRegion(offset, 5));
+        assertNotNull(table.findRegionContaining(offset + 2));
+      }
+    }).cpuBound().assertTiming();
+  }
+}
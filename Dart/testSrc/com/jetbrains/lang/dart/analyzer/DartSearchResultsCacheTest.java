@@ -0,0 +1,116 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentAdapter;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import com.jetbrains.lang.dart.util.DartTestUtils;
+import org.dartlang.analysis.server.protocol.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class DartSearchResultsCacheTest extends LightPlatformCodeInsightFixtureTestCase {
+  private static final String WIDGET_PATH = "/project/lib/widget.dart";
+  private static final String BUTTON_PATH = "/project/lib/button.dart";
+  private static final String OTHER_PATH = "/project/lib/other.dart";
+
+  private final DartSearchResultsCache myCache = new DartSearchResultsCache();
+
+  @NotNull
+  private Document createDocument(@NotNull final String filePath, @NotNull final String text) {
+    return DartTestUtils.createDocument(text, new DocumentAdapter() {
+      @Override
+      public void beforeDocumentChange(DocumentEvent e) {
+        myCache.documentChanged(filePath, e, true);
+      }
+
+      @Override
+      public void documentChanged(DocumentEvent e) {
+        myCache.documentChanged(filePath, e, false);
+      }
+    }, getTestRootDisposable());
+  }
+
+  @NotNull
+  private static Element classElement(@NotNull final String name, @NotNull final String filePath) {
+    return new Element(ElementKind.CLASS, name, new Location(filePath, 6, name.length(), 1, 7), 0, null, null, null);
+  }
+
+  private void putWidgetHierarchy() {
+    final List<TypeHierarchyItem> items = Arrays.asList(
+      new TypeHierarchyItem(classElement("Widget", WIDGET_PATH), "Widget", null, null, new int[0], new int[0], new int[]{1}),
+      new TypeHierarchyItem(classElement("Button", BUTTON_PATH), "Button", null, 0, new int[0], new int[0], new int[0]));
+    myCache.putTypeHierarchy(WIDGET_PATH, 6, false, items, myCache.getModificationCount());
+  }
+
+  public void testTypeHierarchy() throws Exception {
+    final Document other = createDocument(OTHER_PATH, "class Other {}\n");
+    putWidgetHierarchy();
+
+    assertNull(myCache.getTypeHierarchy(WIDGET_PATH, 6, true));
+    final List<TypeHierarchyItem> items = myCache.getTypeHierarchy(WIDGET_PATH, 6, false);
+    assertNotNull(items);
+    assertEquals(2, items.size());
+
+    // unrelated edit in a file outside the result set
+    DartTestUtils.editDocument(() -> other.insertString(other.getTextLength(), "var x = 1;\n"));
+    assertNotNull(myCache.getTypeHierarchy(WIDGET_PATH, 6, false));
+
+    // a new subclass is being typed
+    DartTestUtils.editDocument(() -> other.insertString(other.getTextLength(), "class Label extends Widge"));
+    assertNotNull(myCache.getTypeHierarchy(WIDGET_PATH, 6, false));
+    DartTestUtils.editDocument(() -> other.insertString(other.getTextLength(), "t"));
+    assertNull(myCache.getTypeHierarchy(WIDGET_PATH, 6, false));
+
+    assertEquals(3, myCache.getHitCount());
+    assertEquals(2, myCache.getMissCount());
+  }
+
+  public void testEditInResultSet() throws Exception {
+    final Document button = createDocument(BUTTON_PATH, "class Button extends Widget {\n}\n");
+    putWidgetHierarchy();
+    DartTestUtils.editDocument(() -> button.insertString(button.getTextLength(), "\n"));
+    assertNull(myCache.getTypeHierarchy(WIDGET_PATH, 6, false));
+  }
+
+  public void testFlushedResults() throws Exception {
+    putWidgetHierarchy();
+    myCache.flushedResults(Collections.singletonList(OTHER_PATH));
+    assertNotNull(myCache.getTypeHierarchy(WIDGET_PATH, 6, false));
+    myCache.flushedResults(Collections.singletonList(BUTTON_PATH));
+    assertNull(myCache.getTypeHierarchy(WIDGET_PATH, 6, false));
+  }
+
+  public void testElementReferences() throws Exception {
+    final Document other = createDocument(OTHER_PATH, "main() {\n  foo();\n}\n");
+    final SearchResult result =
+      new SearchResult(new Location(BUTTON_PATH, 20, 3, 2, 3), SearchResultKind.INVOCATION, false, Collections.<Element>emptyList());
+
+    // the request was sent before an edit
+    final long modificationCount = myCache.getModificationCount();
+    DartTestUtils.editDocument(() -> other.insertString(0, "\n"));
+    myCache.putElementReferences(WIDGET_PATH, 10, "foo", Collections.singletonList(result), modificationCount);
+    assertNull(myCache.getElementReferences(WIDGET_PATH, 10));
+
+    myCache.putElementReferences(WIDGET_PATH, 10, "foo", Collections.singletonList(result), myCache.getModificationCount());
+    assertEquals(Collections.singletonList(result), myCache.getElementReferences(WIDGET_PATH, 10));
+
+    // a reference is removed character by character
+    final int offset = other.getText().indexOf("foo");
+    DartTestUtils.editDocument(() -> other.deleteString(offset + 2, offset + 3));
+    assertNull(myCache.getElementReferences(WIDGET_PATH, 10));
+  }
+
+  public void testCacheHitTime() throws Exception {
+    putWidgetHierarchy();
+    PlatformTestUtil.startPerformanceTest("100000 type hierarchy cache hits", 100, () -> {
+      for (int i = 0; i < 100000; i++) {
+        assertNotNull(myCache.getTypeHierarchy(WIDGET_PATH, 6, false));
+      }
+    }).cpuBound().assertTiming();
+  }
+}
@@ -0,0 +1,140 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import gnu.trove.THashSet;
+import org.dartlang.analysis.server.protocol.AnalysisError;
+import org.dartlang.analysis.server.protocol.HighlightRegion;
+import org.dartlang.analysis.server.protocol.NavigationRegion;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+public class DartServerDataCoalescerTest extends LightPlatformCodeInsightFixtureTestCase {
+  private static final String FILE_A = "/project/lib/a.dart";
+  private static final String FILE_B = "/project/lib/b.dart";
+
+  private static class RecordingServerData extends DartServerData {
+    private final List<String> myApplied = new ArrayList<String>();
+    private int myRestartCount;
+
+    private RecordingServerData() {
+      super(new DartServerRootsHandler());
+    }
+
+    @Override
+    void computedErrors(@NotNull final String filePath, @NotNull final List<AnalysisError> errors, final boolean restartHighlighting) {
+      myApplied.add("errors " + filePath);
+    }
+
+    @Override
+    void computedHighlights(@NotNull final String filePath, @NotNull final List<HighlightRegion> regions) {
+      myApplied.add("highlights " + filePath + " " + regions.size());
+    }
+
+    @Override
+    void computedNavigation(@NotNull final String filePath, @NotNull final List<NavigationRegion> regions) {
+      myApplied.add("navigation " + filePath + " " + regions.size());
+    }
+
+    @Override
+    void restartHighlighting() {
+      myRestartCount++;
+    }
+  }
+
+  private RecordingServerData myServerData;
+  private final Set<String> myVisibleFiles = new THashSet<String>();
+  private final List<Runnable> myScheduledApplies = new ArrayList<Runnable>();
+  private DartServerDataCoalescer myCoalescer;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myServerData = new RecordingServerData();
+    myVisibleFiles.addAll(Arrays.asList(FILE_A, FILE_B));
+    myCoalescer = new DartServerDataCoalescer(myServerData, myVisibleFiles::contains, myScheduledApplies::add);
+  }
+
+  @NotNull
+  private static List<HighlightRegion> highlights(final int count) {
+    final List<HighlightRegion> regions = new ArrayList<HighlightRegion>(count);
+    for (int i = 0; i < count; i++) {
+      regions.add(new HighlightRegion("KEYWORD", i * 10, 5));
+    }
+    return regions;
+  }
+
+  private void runScheduledApply() {
+    assertEquals(1, myScheduledApplies.size());
+    final Runnable apply = myScheduledApplies.remove(0);
+    apply.run();
+  }
+
+  public void testLatestNotificationPerFileAndKindApplied() throws Exception {
+    myCoalescer.computedHighlights(FILE_A, highlights(1));
+    myCoalescer.computedNavigation(FILE_A, Collections.<NavigationRegion>emptyList());
+    myCoalescer.computedHighlights(FILE_B, highlights(3));
+    myCoalescer.computedHighlights(FILE_A, highlights(2));
+    assertEmpty(myServerData.myApplied);
+
+    runScheduledApply();
+    assertEquals(Arrays.asList("navigation " + FILE_A + " 0", "highlights " + FILE_B + " 3", "highlights " + FILE_A + " 2"),
+                 myServerData.myApplied);
+  }
+
+  public void testBurstRestartsHighlightingOnce() throws Exception {
+    for (int i = 0; i < 100; i++) {
+      myCoalescer.computedHighlights(i % 2 == 0 ? FILE_A : FILE_B, highlights(i));
+      myCoalescer.computedErrors(FILE_A, Collections.<AnalysisError>emptyList(), true);
+    }
+    assertEquals(0, myServerData.myRestartCount);
+
+    runScheduledApply();
+    assertEquals(1, myServerData.myRestartCount);
+    assertEquals(Arrays.asList("highlights " + FILE_A + " 98", "highlights " + FILE_B + " 99"),
+                 myServerData.myApplied.subList(100, myServerData.myApplied.size()));
+
+    // the next notification starts a new batch
+    myCoalescer.computedHighlights(FILE_A, highlights(1));
+    runScheduledApply();
+    assertEquals(2, myServerData.myRestartCount);
+  }
+
+  public void testResultsForInvisibleFilesDropped() throws Exception {
+    myVisibleFiles.remove(FILE_B);
+    myCoalescer.computedHighlights(FILE_B, highlights(1));
+    assertEmpty(myScheduledApplies);
+
+    // the file is closed while its results wait for the batch
+    myCoalescer.computedHighlights(FILE_A, highlights(1));
+    myVisibleFiles.remove(FILE_A);
+    runScheduledApply();
+    assertEmpty(myServerData.myApplied);
+
+    // flushed results are not applied either
+    myVisibleFiles.add(FILE_A);
+    myCoalescer.computedHighlights(FILE_A, highlights(1));
+    myCoalescer.onFlushedResults(Collections.singletonList(FILE_A));
+    runScheduledApply();
+    assertEmpty(myServerData.myApplied);
+  }
+
+  public void testCounters() throws Exception {
+    myVisibleFiles.remove(FILE_B);
+    myCoalescer.computedHighlights(FILE_A, highlights(1));
+    myCoalescer.computedHighlights(FILE_A, highlights(2));
+    myCoalescer.computedHighlights(FILE_A, highlights(3));
+    myCoalescer.computedNavigation(FILE_A, Collections.<NavigationRegion>emptyList());
+    myCoalescer.computedHighlights(FILE_B, highlights(1));
+    runScheduledApply();
+
+    assertEquals(5, myCoalescer.getReceivedCount());
+    assertEquals(2, myCoalescer.getCoalescedCount());
+    assertEquals(1, myCoalescer.getDroppedCount());
+    assertEquals(2, myCoalescer.getAppliedCount());
+  }
+}
@@ -0,0 +1,72 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.google.dart.server.internal.remote.MessageStatistics;
+import com.google.dart.server.internal.remote.RemoteAnalysisServerImpl;
+import com.google.dart.server.internal.remote.RequestLatencyHistogram;
+import com.google.gson.JsonObject;
+import junit.framework.TestCase;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class DartServerDiagnosticsTest extends TestCase {
+
+  public void testNotificationEvent() throws Exception {
+    assertEquals("analysis.highlights",
+                 RemoteAnalysisServerImpl.getNotificationEvent("{\"event\":\"analysis.highlights\",\"params\":{\"file\":\"/a.dart\"}}"));
+    assertNull(RemoteAnalysisServerImpl.getNotificationEvent("{\"id\":\"12\",\"result\":{}}"));
+    assertNull(RemoteAnalysisServerImpl.getNotificationEvent("{\"event\":\"analysis"));
+  }
+
+  public void testJson() throws Exception {
+    final RequestLatencyHistogram hoverLatencies = new RequestLatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      hoverLatencies.record(i);
+    }
+    hoverLatencies.recordTimedOut();
+    hoverLatencies.recordCancelled();
+
+    final MessageStatistics hoverResponses = new MessageStatistics();
+    hoverResponses.record(100, 1);
+    hoverResponses.record(300, 30);
+
+    final MessageStatistics highlights = new MessageStatistics();
+    highlights.record(50000, 40);
+
+    final RequestLatencyHistogram completionLatencies = new RequestLatencyHistogram();
+    completionLatencies.record(150);
+
+    final Map<String, RequestLatencyHistogram> requestLatencies = Collections.singletonMap("analysis.getHover", hoverLatencies);
+    final Map<String, MessageStatistics> responses = Collections.singletonMap("analysis.getHover", hoverResponses);
+    final Map<String, MessageStatistics> notifications = Collections.singletonMap("analysis.highlights", highlights);
+    final Map<String, RequestLatencyHistogram> ideLatencies = Collections.singletonMap("completion.firstItem", completionLatencies);
+    final DartServerDiagnostics diagnostics =
+      new DartServerDiagnostics(1000, "1.19.0", "1.18.0", 2, 7, requestLatencies, responses, notifications, ideLatencies);
+    assertEquals(3, diagnostics.getRows().size());
+    assertEquals(DartServerDiagnostics.Kind.Request, diagnostics.getRows().get(0).kind);
+    assertEquals(DartServerDiagnostics.Kind.Notification, diagnostics.getRows().get(1).kind);
+    assertEquals(DartServerDiagnostics.Kind.IDE, diagnostics.getRows().get(2).kind);
+
+    final JsonObject json = diagnostics.toJson();
+    assertEquals(2, json.get("inFlightRequests").getAsInt());
+    assertEquals(7, json.get("maxInFlightRequests").getAsInt());
+
+    final JsonObject hover = json.getAsJsonObject("requests").getAsJsonObject("analysis.getHover");
+    assertEquals(100, hover.get("count").getAsLong());
+    assertEquals(50, hover.get("p50Ms").getAsLong());
+    assertEquals(100, hover.get("p95Ms").getAsLong());
+    assertEquals(100, hover.get("maxMs").getAsLong());
+    assertEquals(1, hover.get("timedOut").getAsLong());
+    assertEquals(1, hover.get("cancelled").getAsLong());
+    assertEquals(400, hover.get("totalLength").getAsLong());
+    assertEquals(300, hover.get("maxLength").getAsLong());
+    assertEquals(30, hover.getAsJsonObject("processing").get("maxMs").getAsLong());
+
+    final JsonObject highlightsJson = json.getAsJsonObject("notifications").getAsJsonObject("analysis.highlights");
+    assertEquals(1, highlightsJson.get("messages").getAsLong());
+    assertEquals(50000, highlightsJson.get("totalLength").getAsLong());
+    assertNull(highlightsJson.get("p50Ms"));
+
+    assertEquals(150, json.getAsJsonObject("ide").getAsJsonObject("completion.firstItem").get("maxMs").getAsLong());
+  }
+}
@@ -0,0 +1,148 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.module.WebModuleType;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.PsiTestUtil;
+import com.intellij.util.ui.UIUtil;
+import com.jetbrains.lang.dart.DartCodeInsightFixtureTestCase;
+import com.jetbrains.lang.dart.sdk.DartSdkGlobalLibUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DartServerRootsHandlerTest extends DartCodeInsightFixtureTestCase {
+  private static final int UPDATE_TIMEOUT = 10000;
+
+  private final List<List<String>> mySentIncludedRoots = new ArrayList<List<String>>();
+  private DartServerRootsHandler myRootsHandler;
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      if (myRootsHandler != null) {
+        myRootsHandler.reset();
+      }
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  private void createRootsHandler(final int updateRootsDelay) {
+    myRootsHandler = new DartServerRootsHandler(updateRootsDelay, (includedRoots, excludedRoots, packageRoots) -> {
+      mySentIncludedRoots.add(new ArrayList<String>(includedRoots));
+      return true;
+    });
+    // not ensureProjectServed(): the handler must not subscribe to the shared light project or touch the real server service
+    myRootsHandler.getTrackedProjects().add(getProject());
+  }
+
+  private void assertModuleCounts(final int calculated, final int reused) {
+    assertEquals("calculated", calculated, myRootsHandler.getCalculatedModulesCount());
+    assertEquals("reused", reused, myRootsHandler.getReusedModulesCount());
+  }
+
+  private static void editFile(@NotNull final VirtualFile file, @NotNull final String text) {
+    ApplicationManager.getApplication().runWriteAction(() -> {
+      try {
+        VfsUtil.saveText(file, text);
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+  }
+
+  public void testModuleRootsReused() throws Exception {
+    createRootsHandler(0);
+
+    myRootsHandler.updateRoots();
+    assertModuleCounts(1, 0);
+    assertEquals(1, mySentIncludedRoots.size());
+
+    // nothing changed: the module roots are not calculated again and the server is not bothered
+    myRootsHandler.updateRoots();
+    myRootsHandler.updateRoots();
+    assertModuleCounts(1, 2);
+    assertEquals(1, mySentIncludedRoots.size());
+  }
+
+  public void testPubspecChangeRecalculatesModuleRoots() throws Exception {
+    final VirtualFile pubspec = myFixture.addFileToProject("pubspec.yaml", "name: ProjectName\n").getVirtualFile();
+    createRootsHandler(0);
+
+    myRootsHandler.updateRoots();
+    assertModuleCounts(1, 0);
+
+    myRootsHandler.updateRoots();
+    assertModuleCounts(1, 1);
+
+    // package symlinks depend on pubspec.yaml, so the module roots are calculated again, but the effective roots are the same
+    editFile(pubspec, "name: ProjectName\ndependencies:\n  PathPackage:\n    path: ../PathPackage\n");
+    myRootsHandler.updateRoots();
+    assertModuleCounts(2, 1);
+    assertEquals(1, mySentIncludedRoots.size());
+
+    // same for .packages
+    myFixture.addFileToProject(".packages", "PathPackage:../PathPackage/lib/\n");
+    myRootsHandler.updateRoots();
+    assertModuleCounts(3, 1);
+    assertEquals(1, mySentIncludedRoots.size());
+  }
+
+  public void testModulesRecalculatedIndependently() throws Exception {
+    final VirtualFile pubspec = myFixture.addFileToProject("pubspec.yaml", "name: ProjectName\n").getVirtualFile();
+    final VirtualFile secondRoot = myFixture.getTempDirFixture().findOrCreateDir("second");
+    final Module secondModule = PsiTestUtil.addModule(getProject(), WebModuleType.getInstance(), "second", secondRoot);
+    try {
+      ApplicationManager.getApplication().runWriteAction(() -> DartSdkGlobalLibUtil.enableDartSdk(secondModule));
+      createRootsHandler(0);
+
+      myRootsHandler.updateRoots();
+      assertModuleCounts(2, 0);
+      assertEquals(1, mySentIncludedRoots.size());
+      assertEquals(2, mySentIncludedRoots.get(0).size());
+
+      // only the module that owns the edited pubspec.yaml is calculated again
+      editFile(pubspec, "name: ProjectName\nversion: 1.0.0\n");
+      myRootsHandler.updateRoots();
+      assertModuleCounts(3, 1);
+      assertEquals(1, mySentIncludedRoots.size());
+    }
+    finally {
+      ApplicationManager.getApplication().runWriteAction(() -> ModuleManager.getInstance(getProject()).disposeModule(secondModule));
+    }
+
+    // the removed module is forgotten and the server gets the new roots
+    myRootsHandler.updateRoots();
+    assertModuleCounts(3, 2);
+    assertEquals(2, mySentIncludedRoots.size());
+    assertEquals(1, mySentIncludedRoots.get(1).size());
+  }
+
+  public void testRootsChangedBurstDebounced() throws Exception {
+    createRootsHandler(50);
+
+    for (int i = 0; i < 10; i++) {
+      myRootsHandler.scheduleUpdateRoots();
+    }
+    assertTrue(myRootsHandler.isUpdateRootsScheduled());
+    assertModuleCounts(0, 0);
+
+    final long deadline = System.currentTimeMillis() + UPDATE_TIMEOUT;
+    while (myRootsHandler.getCalculatedModulesCount() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+      UIUtil.dispatchAllInvocationEvents();
+    }
+
+    assertFalse(myRootsHandler.isUpdateRootsScheduled());
+    assertModuleCounts(1, 0);
+    assertEquals(1, mySentIncludedRoots.size());
+  }
+}
@@ -0,0 +1,55 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.google.dart.server.generated.AnalysisServer;
+import junit.framework.TestCase;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class DartWarmStandbyRootsTest extends TestCase {
+
+  private final List<Object[]> mySetRootsCalls = new ArrayList<Object[]>();
+
+  private AnalysisServer createServer() {
+    return (AnalysisServer)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{AnalysisServer.class}, (proxy, method, args) -> {
+      if (method.getName().equals("analysis_setAnalysisRoots")) {
+        mySetRootsCalls.add(args);
+      }
+      return null;
+    });
+  }
+
+  public void testRootsChangedWhileStandbyPending() throws Exception {
+    // the standby is started with the roots of the old SDK
+    final List<String> standbyIncluded = Collections.singletonList("/project");
+    final List<String> standbyExcluded = Collections.singletonList("/project/build");
+    final Map<String, String> standbyPackageRoots = Collections.emptyMap();
+
+    // the SDK switch changes the roots before the standby is swapped in, the update is sent to the replaced server only
+    final List<String> included = Arrays.asList("/project", "/sdk/lib");
+    final List<String> excluded = Collections.singletonList("/project/build");
+    final Map<String, String> packageRoots = Collections.singletonMap("/project", "/project/.packages");
+
+    assertTrue(DartAnalysisServerService.sendRootsChangedSinceStandbyStart(createServer(), standbyIncluded, standbyExcluded,
+                                                                            standbyPackageRoots, included, excluded, packageRoots));
+    assertEquals(1, mySetRootsCalls.size());
+    assertEquals(included, mySetRootsCalls.get(0)[0]);
+    assertEquals(excluded, mySetRootsCalls.get(0)[1]);
+    assertEquals(packageRoots, mySetRootsCalls.get(0)[2]);
+  }
+
+  public void testRootsNotChanged() throws Exception {
+    final List<String> included = Collections.singletonList("/project");
+    final List<String> excluded = Collections.singletonList("/project/build");
+    final Map<String, String> packageRoots = Collections.emptyMap();
+
+    assertFalse(DartAnalysisServerService.sendRootsChangedSinceStandbyStart(createServer(), included, excluded, packageRoots,
+                                                                             new ArrayList<String>(included),
+                                                                             new ArrayList<String>(excluded), packageRoots));
+    assertTrue(mySetRootsCalls.isEmpty());
+  }
+}
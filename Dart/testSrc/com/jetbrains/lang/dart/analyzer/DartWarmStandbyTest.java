@@ -0,0 +1,232 @@
+package com.jetbrains.lang.dart.analyzer;
+
+import com.google.dart.server.AnalysisServerListener;
+import com.google.dart.server.AnalysisServerStatusListener;
+import com.google.dart.server.FindElementReferencesConsumer;
+import com.google.dart.server.GetSuggestionsConsumer;
+import com.google.dart.server.generated.AnalysisServer;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import com.intellij.util.ui.UIUtil;
+import org.dartlang.analysis.server.protocol.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class DartWarmStandbyTest extends LightPlatformCodeInsightFixtureTestCase {
+  private static final int WAIT_TIMEOUT = 10000;
+  private static final String COMPLETION_ID = "1";
+  private static final String SEARCH_ID = "7";
+
+  /**
+   * Records the requests it gets and lets the test send notifications. Requests with a response get it at once.
+   */
+  private static class FakeServer implements InvocationHandler {
+    private final String myName;
+    private final List<String> myRequests = new CopyOnWriteArrayList<String>();
+    private final List<AnalysisServerListener> myListeners = new CopyOnWriteArrayList<AnalysisServerListener>();
+    private final List<AnalysisServerStatusListener> myStatusListeners = new CopyOnWriteArrayList<AnalysisServerStatusListener>();
+    private volatile boolean myShutdown;
+    private final AnalysisServer myServer;
+
+    private FakeServer(@NotNull final String name) {
+      myName = name;
+      myServer = (AnalysisServer)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{AnalysisServer.class}, this);
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+      final String methodName = method.getName();
+      if (methodName.equals("equals")) return proxy == args[0];
+      if (methodName.equals("hashCode")) return System.identityHashCode(proxy);
+      if (methodName.equals("toString")) return myName;
+      if (methodName.equals("isSocketOpen")) return !myShutdown;
+
+      myRequests.add(methodName);
+      if (methodName.equals("addAnalysisServerListener")) {
+        myListeners.add((AnalysisServerListener)args[0]);
+      }
+      else if (methodName.equals("removeAnalysisServerListener")) {
+        myListeners.remove(args[0]);
+      }
+      else if (methodName.equals("addStatusListener")) {
+        myStatusListeners.add((AnalysisServerStatusListener)args[0]);
+      }
+      else if (methodName.equals("server_shutdown")) {
+        myShutdown = true;
+      }
+      else if (methodName.equals("completion_getSuggestions")) {
+        ((GetSuggestionsConsumer)args[2]).computedCompletionId(COMPLETION_ID);
+      }
+      else if (methodName.equals("search_findElementReferences")) {
+        ((FindElementReferencesConsumer)args[3]).computedElementReferences(SEARCH_ID, null);
+      }
+      return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+    }
+
+    private void analysisStatus(final boolean isAnalyzing) {
+      for (AnalysisServerListener listener : myListeners) {
+        listener.serverStatus(new AnalysisStatus(isAnalyzing, null), null);
+      }
+    }
+
+    private void errors(@NotNull final String filePath, @NotNull final String message) {
+      final Location location = new Location(filePath, 0, 1, 1, 1);
+      final AnalysisError error =
+        new AnalysisError(AnalysisErrorSeverity.ERROR, AnalysisErrorType.SYNTACTIC_ERROR, "code", location, message, null, false);
+      for (AnalysisServerListener listener : myListeners) {
+        listener.computedErrors(filePath, Collections.singletonList(error));
+      }
+    }
+
+    private void completion(@NotNull final String completion, final boolean isLast) {
+      final CompletionSuggestion suggestion =
+        new CompletionSuggestion(CompletionSuggestionKind.INVOCATION, 1000, completion, completion.length(), 0, false, false,
+                                 null, null, null, null, null, null, null, null, null, null, null, null);
+      for (AnalysisServerListener listener : myListeners) {
+        listener.computedCompletion(COMPLETION_ID, 0, 0, Collections.singletonList(suggestion), isLast);
+      }
+    }
+
+    private void searchResult(@NotNull final String filePath, final int offset, final boolean isLast) {
+      final Location location = new Location(filePath, offset, 1, 1, offset + 1);
+      final SearchResult result = new SearchResult(location, SearchResultKind.INVOCATION, false, Collections.<Element>emptyList());
+      for (AnalysisServerListener listener : myListeners) {
+        listener.computedSearchResults(SEARCH_ID, Collections.singletonList(result), isLast);
+      }
+    }
+
+    private void die() {
+      for (AnalysisServerStatusListener listener : myStatusListeners) {
+        listener.isAliveServer(false);
+      }
+    }
+  }
+
+  private final List<FakeServer> myStartedServers = new CopyOnWriteArrayList<FakeServer>();
+  private DartAnalysisServerService myService;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myService = DartAnalysisServerService.getInstance();
+    myService.setServerFactory(sdkHome -> {
+      final FakeServer server = new FakeServer(sdkHome);
+      myStartedServers.add(server);
+      return Pair.create(server.myServer, null);
+    });
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myService.stopServer();
+      myService.setServerFactory(null);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  @NotNull
+  private FakeServer startServerAndStandby() throws Exception {
+    myService.startServer("/sdk1", "1.13.0");
+    assertEquals(1, myStartedServers.size());
+
+    assertTrue(myService.startWarmStandby("/sdk2", "1.14.0", Collections.singletonList("/src"), Collections.<String>emptyList(),
+                                          Collections.<String, String>emptyMap()));
+
+    final long deadline = System.currentTimeMillis() + WAIT_TIMEOUT;
+    while ((myStartedServers.size() < 2 || !myStartedServers.get(1).myRequests.contains("analysis_setAnalysisRoots")) &&
+           System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(2, myStartedServers.size());
+    final FakeServer standby = myStartedServers.get(1);
+    assertTrue(standby.myRequests.contains("analysis_setAnalysisRoots"));
+    return standby;
+  }
+
+  @NotNull
+  private List<String> getErrorMessages(@NotNull final VirtualFile file) {
+    final List<String> messages = new ArrayList<String>();
+    for (DartServerData.DartError error : myService.getErrors(file)) {
+      messages.add(error.getMessage());
+    }
+    return messages;
+  }
+
+  public void testSwapOnAnalysisComplete() throws Exception {
+    final VirtualFile file = myFixture.addFileToProject("a.dart", "").getVirtualFile();
+    final String filePath = file.getPath();
+
+    final FakeServer standby = startServerAndStandby();
+    final FakeServer replaced = myStartedServers.get(0);
+
+    // until the swap only the running server's notifications are applied
+    replaced.errors(filePath, "old");
+    standby.analysisStatus(true);
+    standby.errors(filePath, "new");
+    assertEquals(Collections.singletonList("old"), getErrorMessages(file));
+
+    // requests sent to the running server before the swap
+    assertEquals(COMPLETION_ID, myService.completion_getSuggestions(filePath, 0));
+    final List<SearchResult> searchResults = new CopyOnWriteArrayList<SearchResult>();
+    final Thread searchThread = new Thread(() -> myService.search_findElementReferences(filePath, 0, searchResults::add), "search");
+    searchThread.start();
+    final long deadline = System.currentTimeMillis() + WAIT_TIMEOUT;
+    while (!replaced.myRequests.contains("search_findElementReferences") && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(replaced.myRequests.contains("search_findElementReferences"));
+
+    // the standby finishes analysis and is swapped in, its errors are replayed
+    standby.analysisStatus(false);
+    assertTrue(standby.myRequests.contains("analysis_setPriorityFiles"));
+    assertEquals(Collections.singletonList("new"), getErrorMessages(file));
+
+    // the replaced server doesn't update errors any more
+    replaced.errors(filePath, "stale");
+    assertEquals(Collections.singletonList("new"), getErrorMessages(file));
+    assertFalse(replaced.myShutdown);
+
+    // but it answers the requests sent to it, the same ids from the new server don't mix in
+    standby.completion("fromStandby", true);
+    standby.searchResult(filePath, 10, true);
+    replaced.completion("fromReplaced", true);
+    replaced.searchResult(filePath, 20, true);
+
+    final List<String> completions = new ArrayList<String>();
+    myService.addCompletions(COMPLETION_ID, suggestion -> completions.add(suggestion.getCompletion()));
+    assertEquals(Collections.singletonList("fromReplaced"), completions);
+
+    searchThread.join(WAIT_TIMEOUT);
+    assertFalse(searchThread.isAlive());
+    assertEquals(1, searchResults.size());
+    assertEquals(20, searchResults.get(0).getLocation().getOffset());
+  }
+
+  public void testFallbackWhenStandbyDies() throws Exception {
+    final FakeServer standby = startServerAndStandby();
+    final FakeServer running = myStartedServers.get(0);
+
+    standby.analysisStatus(true);
+    standby.die();
+    assertTrue(standby.myShutdown);
+
+    // the server is restarted from scratch
+    UIUtil.dispatchAllInvocationEvents();
+    assertTrue(running.myShutdown);
+
+    // the abandoned standby is never swapped in
+    standby.analysisStatus(false);
+    assertFalse(standby.myRequests.contains("analysis_setPriorityFiles"));
+  }
+}
@@ -0,0 +1,131 @@
+package com.jetbrains.lang.dart.formatter;
+
+import com.intellij.formatting.Block;
+import com.intellij.formatting.Spacing;
+import com.intellij.lang.ASTNode;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.codeStyle.CodeStyleManager;
+import com.intellij.psi.codeStyle.CodeStyleSettingsManager;
+import com.intellij.psi.codeStyle.CommonCodeStyleSettings;
+import com.intellij.psi.formatter.FormatterUtil;
+import com.intellij.psi.formatter.common.AbstractBlock;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import com.jetbrains.lang.dart.DartFileType;
+import com.jetbrains.lang.dart.DartLanguage;
+import com.jetbrains.lang.dart.ide.formatter.DartFormattingModelBuilder;
+import com.jetbrains.lang.dart.ide.formatter.DartSpacingProcessor;
+import com.jetbrains.lang.dart.ide.formatter.DartSpacingRules;
+import com.jetbrains.lang.dart.util.DartTestUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class DartSpacingRulesTest extends LightPlatformCodeInsightFixtureTestCase {
+
+  private static final Logger LOG = Logger.getInstance(DartSpacingRulesTest.class);
+
+  /**
+   * All inputs of the dart_style test suite as one file, statements are wrapped in functions
+   */
+  @NotNull
+  private static String loadDartStyleCorpus() throws Exception {
+    final StringBuilder builder = new StringBuilder();
+    for (File file : FileUtil.findFilesByMask(Pattern.compile(".*\\.(unit|stmt)"),
+                                              new File(DartTestUtils.BASE_TEST_DATA_PATH, "dart_style"))) {
+      final boolean isCompilationUnit = file.getName().endsWith(".unit");
+      boolean isInput = false;
+      for (String line : FileUtil.loadLines(file, "UTF-8")) {
+        if (line.startsWith(">>>")) {
+          isInput = true;
+          if (!isCompilationUnit) builder.append("m() {\n");
+        }
+        else if (line.startsWith("<<<")) {
+          isInput = false;
+          if (!isCompilationUnit) builder.append("}\n");
+        }
+        else if (isInput) {
+          builder.append(line.replace("‹", "").replace("›", "")).append("\n");
+        }
+      }
+    }
+    return builder.toString();
+  }
+
+  private static int countBlocks(@NotNull final ASTNode node) {
+    int count = 1;
+    for (ASTNode child = node.getFirstChildNode(); child != null; child = child.getTreeNext()) {
+      if (!FormatterUtil.containsWhiteSpacesOnly(child)) {
+        count += countBlocks(child);
+      }
+    }
+    return count;
+  }
+
+  private int checkSpacing(@NotNull final Block block, @NotNull final CommonCodeStyleSettings settings) {
+    int checked = 0;
+    final List<Block> subBlocks = block.getSubBlocks();
+    if (subBlocks.isEmpty()) return checked;
+
+    final ASTNode node = ((AbstractBlock)block).getNode();
+    final DartSpacingProcessor processorWithoutTable = new DartSpacingProcessor(node, settings);
+    for (int i = 1; i < subBlocks.size(); i++) {
+      final Block child1 = subBlocks.get(i - 1);
+      final Block child2 = subBlocks.get(i);
+      final ASTNode parent = node.getTreeParent();
+      if (DartSpacingRules.isContextFree(node.getElementType(),
+                                         parent == null ? null : parent.getElementType(),
+                                         ((AbstractBlock)child1).getNode().getElementType(),
+                                         ((AbstractBlock)child2).getNode().getElementType())) {
+        final Spacing expected = processorWithoutTable.getSpacing(child1, child2);
+        assertEquals(child1 + " " + child2, expected, block.getSpacing(child1, child2));
+        checked++;
+      }
+    }
+
+    for (Block subBlock : subBlocks) {
+      checked += checkSpacing(subBlock, settings);
+    }
+    return checked;
+  }
+
+  public void testSameSpacingAsRuleChain() throws Exception {
+    final PsiFile psiFile = myFixture.configureByText("corpus.dart", loadDartStyleCorpus());
+    final CommonCodeStyleSettings settings =
+      CodeStyleSettingsManager.getSettings(getProject()).getCommonSettings(DartLanguage.INSTANCE);
+
+    final Block rootBlock = new DartFormattingModelBuilder().createModel(psiFile, CodeStyleSettingsManager.getSettings(getProject()))
+      .getRootBlock();
+    final int checked = checkSpacing(rootBlock, settings);
+    assertTrue(String.valueOf(checked), checked > 10000);
+  }
+
+  public void testFormattingPerformance() throws Exception {
+    final String corpus = loadDartStyleCorpus();
+    final String text = StringUtil.repeat(corpus, 10000 / StringUtil.countNewLines(corpus) + 1);
+
+    final PsiFile psiFile = myFixture.configureByText(DartFileType.INSTANCE, text);
+    final Document document = myFixture.getEditor().getDocument();
+    final int blocksCount = countBlocks(psiFile.getNode());
+
+    PlatformTestUtil.startPerformanceTest("Formatting of " + StringUtil.countNewLines(text) + " lines of dart_style corpus", 20000, () -> {
+      WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+        document.setText(text);
+        PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+
+        final long start = System.currentTimeMillis();
+        CodeStyleManager.getInstance(getProject()).reformat(psiFile);
+        final long time = Math.max(1, System.currentTimeMillis() - start);
+        LOG.debug("Formatted " + blocksCount + " blocks in " + time + " ms, " + blocksCount * 1000L / time + " blocks per second");
+      });
+    }).cpuBound().assertTiming();
+  }
+}
@@ -0,0 +1,73 @@
+package com.jetbrains.lang.dart.ide;
+
+import com.intellij.navigation.NavigationItem;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.jetbrains.lang.dart.DartCodeInsightFixtureTestCase;
+import com.jetbrains.lang.dart.DartComponentType;
+import com.jetbrains.lang.dart.ide.index.DartSymbolIndex;
+import com.jetbrains.lang.dart.ide.index.DartSymbolInfo;
+import com.jetbrains.lang.dart.psi.DartComponentName;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DartSymbolIndexTest extends DartCodeInsightFixtureTestCase {
+
+  @NotNull
+  private List<DartSymbolInfo> getSymbols(@NotNull final String name) {
+    final List<DartSymbolInfo> result = new ArrayList<DartSymbolInfo>();
+    DartSymbolIndex.processSymbols(name, GlobalSearchScope.projectScope(getProject()), (file, info) -> result.add(info));
+    return result;
+  }
+
+  public void testSymbolInfo() throws Exception {
+    final String text = "library foo;\n" +
+                        "class Widget { Widget(); Widget.named(); build() {} var field; }\n" +
+                        "enum Color { red, green }\n" +
+                        "build() {}\n";
+    myFixture.addFileToProject("lib/foo.dart", text);
+
+    final List<DartSymbolInfo> builds = getSymbols("build");
+    assertEquals(2, builds.size());
+    for (DartSymbolInfo info : builds) {
+      assertEquals("foo", info.getLibraryName());
+      if (info.getContainerName() == null) {
+        assertEquals(DartComponentType.FUNCTION, info.getComponentType());
+        assertEquals(text.lastIndexOf("build"), info.getOffset());
+      }
+      else {
+        assertEquals("Widget", info.getContainerName());
+        assertEquals(DartComponentType.METHOD, info.getComponentType());
+        assertEquals(text.indexOf("build"), info.getOffset());
+      }
+    }
+
+    final List<DartSymbolInfo> widgets = getSymbols("Widget");
+    assertEquals(1, widgets.size()); // unnamed constructor is not a separate symbol
+    assertEquals(DartComponentType.CLASS, widgets.get(0).getComponentType());
+
+    final List<DartSymbolInfo> greens = getSymbols("green");
+    assertEquals(1, greens.size());
+    assertEquals("Color", greens.get(0).getContainerName());
+    assertEquals(text.indexOf("green"), greens.get(0).getOffset());
+  }
+
+  public void testNavigationItems() throws Exception {
+    final PsiFile file = myFixture.addFileToProject("lib/bar.dart", "class A { var field; }\nvar field;\n");
+    final NavigationItem[] items = new DartSymbolContributor().getItemsByName("field", "field", getProject(), false);
+    assertEquals(2, items.length);
+    for (NavigationItem item : items) {
+      assertEquals("field", item.getName());
+      final PsiElement target = ((DartSymbolNavigationItem)item).getTargetElement();
+      assertInstanceOf(target, DartComponentName.class);
+      assertEquals(file, target.getContainingFile());
+      assertEquals("field", ((DartComponentName)target).getName());
+    }
+
+    final List<DartComponentName> names = DartSymbolIndex.getItemsByName("field", getProject(), GlobalSearchScope.projectScope(getProject()));
+    assertEquals(2, names.size());
+  }
+}
@@ -0,0 +1,136 @@
+package com.jetbrains.lang.dart.ide.errorTreeView;
+
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import com.intellij.ui.table.TableView;
+import gnu.trove.THashMap;
+import org.dartlang.analysis.server.protocol.AnalysisError;
+import org.dartlang.analysis.server.protocol.AnalysisErrorSeverity;
+import org.dartlang.analysis.server.protocol.AnalysisErrorType;
+import org.dartlang.analysis.server.protocol.Location;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class DartProblemsTableModelTest extends LightPlatformCodeInsightFixtureTestCase {
+  private static final int FILES_COUNT = 2000;
+  private static final int ERRORS_PER_FILE = 30;
+
+  private DartProblemsTableModel myModel;
+  private TableView<DartProblem> myTable;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    final DartProblemsFilter filter = new DartProblemsFilter(getProject());
+    myModel = new DartProblemsTableModel(getProject(), filter);
+    myTable = new TableView<DartProblem>(myModel);
+    //noinspection unchecked
+    ((DefaultRowSorter)myTable.getRowSorter()).setRowFilter(filter);
+    myTable.getRowSorter().setSortKeys(Collections.singletonList(new RowSorter.SortKey(1, SortOrder.ASCENDING)));
+  }
+
+  @NotNull
+  private static String filePath(final int fileIndex) {
+    return "/project/lib/src/file" + fileIndex + ".dart";
+  }
+
+  @NotNull
+  private static List<AnalysisError> createErrors(@NotNull final String filePath, final int count, final int version) {
+    final List<AnalysisError> errors = new ArrayList<AnalysisError>(count);
+    for (int i = 0; i < count; i++) {
+      final String severity = i % 10 == 0 ? AnalysisErrorSeverity.ERROR
+                                          : i % 3 == 0 ? AnalysisErrorSeverity.WARNING : AnalysisErrorSeverity.INFO;
+      final Location location = new Location(filePath, i * 20, 5, i + 1, 1);
+      errors.add(new AnalysisError(severity, AnalysisErrorType.LINT, "lint_" + i, location, "Message " + i + " v" + version, null, false));
+    }
+    return errors;
+  }
+
+  private void setErrors(@NotNull final Map<String, List<AnalysisError>> filePathToErrors) {
+    final Map<String, List<DartProblem>> filePathToProblems = new THashMap<String, List<DartProblem>>();
+    for (Map.Entry<String, List<AnalysisError>> entry : filePathToErrors.entrySet()) {
+      filePathToProblems.put(entry.getKey(), DartProblemsTableModel.createProblems(getProject(), entry.getKey(), entry.getValue()));
+    }
+    myModel.setProblemsAndReturnReplacementForSelection(filePathToProblems, null);
+  }
+
+  private void setErrors(@NotNull final String filePath, @NotNull final List<AnalysisError> errors) {
+    setErrors(Collections.singletonMap(filePath, errors));
+  }
+
+  private void assertRowsGroupedByFile() {
+    for (int i = 1; i < myModel.getRowCount(); i++) {
+      assertTrue(myModel.getItem(i - 1).getSystemIndependentPath().compareTo(myModel.getItem(i).getSystemIndependentPath()) <= 0);
+    }
+  }
+
+  public void testIncrementalUpdate() throws Exception {
+    setErrors(filePath(2), createErrors(filePath(2), 3, 0));
+    setErrors(filePath(1), createErrors(filePath(1), 4, 0));
+    setErrors(filePath(3), createErrors(filePath(3), 2, 0));
+    assertEquals(9, myModel.getRowCount());
+    assertEquals(9, myTable.getRowCount());
+    assertRowsGroupedByFile();
+
+    setErrors(filePath(2), createErrors(filePath(2), 1, 1));
+    setErrors(filePath(3), Collections.<AnalysisError>emptyList());
+    assertEquals(5, myModel.getRowCount());
+    assertEquals(5, myTable.getRowCount());
+    assertRowsGroupedByFile();
+    assertEquals("Message 0 v1", myModel.getItem(4).getErrorMessage());
+    assertEquals("Total: 2 errors, 1 warning, 2 hints. ", myModel.getStatusText());
+
+    // errors reported for a file other than the one from the notification are ignored
+    setErrors(filePath(4), createErrors(filePath(5), 2, 0));
+    assertEquals(5, myModel.getRowCount());
+  }
+
+  public void testReplacementForSelection() throws Exception {
+    setErrors(filePath(1), createErrors(filePath(1), 5, 0));
+    final DartProblem selected = myModel.getItem(3);
+
+    final List<AnalysisError> errors = createErrors(filePath(1), 5, 0);
+    final Map<String, List<DartProblem>> update =
+      Collections.singletonMap(filePath(1), DartProblemsTableModel.createProblems(getProject(), filePath(1), errors));
+    final DartProblem replacement = myModel.setProblemsAndReturnReplacementForSelection(update, selected);
+    assertNotNull(replacement);
+    assertNotSame(selected, replacement);
+    assertEquals(selected.getErrorMessage(), replacement.getErrorMessage());
+    assertEquals(selected.getLineNumber(), replacement.getLineNumber());
+  }
+
+  public void testReplayErrorNotifications() throws Exception {
+    final Map<String, List<AnalysisError>> initialErrors = new THashMap<String, List<AnalysisError>>();
+    for (int i = 0; i < FILES_COUNT; i++) {
+      initialErrors.put(filePath(i), createErrors(filePath(i), ERRORS_PER_FILE, 0));
+    }
+
+    final List<String> filePaths = new ArrayList<String>();
+    final List<List<DartProblem>> notifications = new ArrayList<List<DartProblem>>();
+    for (int i = 0; i < 10000; i++) {
+      final String filePath = filePath(i * 7 % FILES_COUNT);
+      filePaths.add(filePath);
+      // files are being fixed and broken again while the user is typing
+      final List<AnalysisError> errors = createErrors(filePath, ERRORS_PER_FILE - 1 + i % 3, i);
+      notifications.add(DartProblemsTableModel.createProblems(getProject(), filePath, errors));
+    }
+
+    PlatformTestUtil.startPerformanceTest("Replay of 10000 analysis.errors notifications", 5000, () -> {
+      myModel.removeAll();
+      setErrors(initialErrors);
+      assertEquals(FILES_COUNT * ERRORS_PER_FILE, myTable.getRowCount());
+
+      for (int i = 0; i < notifications.size(); i++) {
+        myModel.setProblemsAndReturnReplacementForSelection(Collections.singletonMap(filePaths.get(i), notifications.get(i)), null);
+      }
+      assertEquals(myModel.getRowCount(), myTable.getRowCount());
+    }).cpuBound().assertTiming();
+
+    assertRowsGroupedByFile();
+  }
+}
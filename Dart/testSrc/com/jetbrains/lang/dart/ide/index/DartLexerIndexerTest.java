@@ -0,0 +1,157 @@
+package com.jetbrains.lang.dart.ide.index;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import com.jetbrains.lang.dart.DartComponentType;
+import com.jetbrains.lang.dart.DartFileType;
+import com.jetbrains.lang.dart.util.DartTestUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.regex.Pattern;
+
+public class DartLexerIndexerTest extends LightPlatformCodeInsightFixtureTestCase {
+
+  @NotNull
+  private DartFileIndexData indexWithPsi(@NotNull final String fileName, @NotNull final String text) {
+    final PsiFile psiFile = PsiFileFactory.getInstance(getProject()).createFileFromText(fileName, DartFileType.INSTANCE, text);
+    return DartIndexUtil.indexFileRoots(psiFile);
+  }
+
+  @NotNull
+  private static Map<String, Set<DartSymbolInfo>> getSymbols(@NotNull final DartFileIndexData data) {
+    final Map<String, Set<DartSymbolInfo>> result = new TreeMap<String, Set<DartSymbolInfo>>();
+    for (Map.Entry<String, List<DartSymbolInfo>> entry : data.getSymbols().entrySet()) {
+      result.put(entry.getKey(), new HashSet<DartSymbolInfo>(entry.getValue()));
+    }
+    return result;
+  }
+
+  private void doCompareTest(@NotNull final String fileName, @NotNull final String text) {
+    final DartFileIndexData expected = indexWithPsi(fileName, text);
+    final DartFileIndexData actual = DartLexerIndexer.indexFile(text, fileName);
+
+    assertEquals(fileName, expected.getLibraryName(), actual.getLibraryName());
+    assertEquals(fileName, expected.isPart(), actual.isPart());
+    assertEquals(fileName, new TreeSet<String>(expected.getClassNames()), new TreeSet<String>(actual.getClassNames()));
+    assertEquals(fileName, expected.getImportAndExportInfos(), actual.getImportAndExportInfos());
+    assertEquals(fileName, expected.getPartUris(), actual.getPartUris());
+    assertEquals(fileName, getSymbols(expected), getSymbols(actual));
+  }
+
+  public void testDeclarations() throws Exception {
+    final String text = "@deprecated library foo.bar;\n" +
+                        "import 'dart:async' deferred as lazy show Future, Stream hide Timer;\n" +
+                        "import \"package:a/b.dart\" as b;\n" +
+                        "export r'src/c.dart' hide C;\n" +
+                        "part 'src/d.dart';\n" +
+                        "/** doc */ @Foo(const [1, 2]) abstract class Widget<T extends Comparable<T>> extends Base<T> with M implements I {\n" +
+                        "  static const int MAX = 1, MIN = -1;\n" +
+                        "  final Map<String, List<int>> map = new Map<String, List<int>>(), other;\n" +
+                        "  Widget(this.map) : other = {'a': [1]};\n" +
+                        "  const Widget.named();\n" +
+                        "  factory Widget.create() = Impl;\n" +
+                        "  factory Widget() { return null; }\n" +
+                        "  @override int get length => 1;\n" +
+                        "  set length(int value) {}\n" +
+                        "  bool operator ==(other) => false;\n" +
+                        "  operator [](int i) {}\n" +
+                        "  external static void staticMethod();\n" +
+                        "  Future<T> get(String s) async { return () { var x = '${s}'; }; }\n" +
+                        "  build();\n" +
+                        "}\n" +
+                        "class Mixed = Base with M;\n" +
+                        "enum Color { red, green, }\n" +
+                        "typedef void Callback<T>(T value);\n" +
+                        "typedef Predicate(x);\n" +
+                        "var a = 1 < 2, b;\n" +
+                        "final c = \"${a + 1}\";\n" +
+                        "String get topGetter => 'x';\n" +
+                        "void set topSetter(v) {}\n" +
+                        "main() => print({'k': 'v'});\n" +
+                        "external foo();\n";
+    doCompareTest("foo.dart", text);
+
+    final DartFileIndexData data = DartLexerIndexer.indexFile(text, "foo.dart");
+    assertEquals("foo.bar", data.getLibraryName());
+    assertEquals(Arrays.asList("Widget", "Mixed", "Color"), data.getClassNames());
+    final List<DartSymbolInfo> named = data.getSymbols().get("named");
+    assertEquals(1, named.size());
+    assertEquals(DartComponentType.CONSTRUCTOR, named.get(0).getComponentType());
+    assertEquals("Widget", named.get(0).getContainerName());
+    assertEquals(text.indexOf("named"), named.get(0).getOffset());
+    assertNull(data.getSymbols().get("x"));
+  }
+
+  public void testPartOf() throws Exception {
+    doCompareTest("part.dart", "part of foo.bar;\nclass A {}\nint get g => 0;\n");
+    doCompareTest("noLibrary.dart", "import 'a.dart' show A;\nclass B extends A {}\n");
+  }
+
+  public void testSdkFiles() throws Exception {
+    for (Map.Entry<File, String> entry : loadSdkFiles().entrySet()) {
+      final String fileName = entry.getKey().getName();
+      final DartFileIndexData expected = indexWithPsi(fileName, entry.getValue());
+      final DartFileIndexData actual = DartLexerIndexer.indexFile(entry.getValue(), fileName);
+      assertEquals(entry.getKey().getPath(), expected.getLibraryName(), actual.getLibraryName());
+      assertEquals(entry.getKey().getPath(), new TreeSet<String>(expected.getClassNames()), new TreeSet<String>(actual.getClassNames()));
+      assertEquals(entry.getKey().getPath(), expected.getImportAndExportInfos(), actual.getImportAndExportInfos());
+      assertEquals(entry.getKey().getPath(), getSymbols(expected).keySet(), getSymbols(actual).keySet());
+    }
+  }
+
+  public void testIndexingPerformance() throws Exception {
+    final Map<File, String> files = loadSdkFiles();
+
+    final long psiBytes = getAllocatedBytes(() -> {
+      for (Map.Entry<File, String> entry : files.entrySet()) {
+        indexWithPsi(entry.getKey().getName(), entry.getValue());
+      }
+    });
+    final long lexerBytes = getAllocatedBytes(() -> {
+      for (Map.Entry<File, String> entry : files.entrySet()) {
+        DartLexerIndexer.indexFile(entry.getValue(), entry.getKey().getName());
+      }
+    });
+    assertTrue("PSI: " + psiBytes + " bytes, lexer: " + lexerBytes + " bytes", lexerBytes < psiBytes);
+
+    PlatformTestUtil.startPerformanceTest("Indexing " + files.size() + " SDK files with PSI", 3000, () -> {
+      for (int i = 0; i < 5; i++) {
+        for (Map.Entry<File, String> entry : files.entrySet()) {
+          indexWithPsi(entry.getKey().getName(), entry.getValue());
+        }
+      }
+    }).cpuBound().assertTiming();
+
+    PlatformTestUtil.startPerformanceTest("Indexing " + files.size() + " SDK files with lexer", 600, () -> {
+      for (int i = 0; i < 5; i++) {
+        for (Map.Entry<File, String> entry : files.entrySet()) {
+          DartLexerIndexer.indexFile(entry.getValue(), entry.getKey().getName());
+        }
+      }
+    }).cpuBound().assertTiming();
+  }
+
+  @NotNull
+  private static Map<File, String> loadSdkFiles() throws Exception {
+    final Map<File, String> result = new TreeMap<File, String>();
+    for (File file : FileUtil.findFilesByMask(Pattern.compile(".*\\.dart"), new File(DartTestUtils.SDK_HOME_PATH, "lib"))) {
+      result.put(file, FileUtil.loadFile(file, "UTF-8"));
+    }
+    assertFalse(result.isEmpty());
+    return result;
+  }
+
+  private static long getAllocatedBytes(@NotNull final Runnable runnable) {
+    final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    final long threadId = Thread.currentThread().getId();
+    final long before = bean.getThreadAllocatedBytes(threadId);
+    runnable.run();
+    return bean.getThreadAllocatedBytes(threadId) - before;
+  }
+}
@@ -0,0 +1,47 @@
+package com.jetbrains.lang.dart.ide.runner.server.google;
+
+import junit.framework.TestCase;
+import org.json.JSONObject;
+
+public class VmLineNumberTableTest extends TestCase {
+
+  private static VmLocation location(final int tokenOffset) throws Exception {
+    return VmLocation.createFrom(null, new JSONObject("{libraryId: 1, url: 'file:///a.dart', tokenOffset: " + tokenOffset + "}"));
+  }
+
+  public void testLineForLocation() throws Exception {
+    final JSONObject json = new JSONObject("{lines: [[1, 0, 0, 5, 2, 9, 3], [2, 12, 0, 3, 1], [4, 20, 0, 12, 5]]}");
+    final VmLineNumberTable table = VmLineNumberTable.createFrom(null, 1, "file:/a.dart", json);
+
+    assertEquals(6, table.getMappingsCount());
+    assertEquals(1, table.getLineForLocation(location(0)));
+    assertEquals(1, table.getLineForLocation(location(9)));
+    assertEquals(2, table.getLineForLocation(location(3)));
+    assertEquals(4, table.getLineForLocation(location(20)));
+    assertEquals(4, table.getLineForLocation(location(12))); // the last line reported for the token offset wins
+    assertEquals(0, table.getLineForLocation(location(7)));
+  }
+
+  public void testLruCacheEviction() throws Exception {
+    final VmLruCache<String> cache = new VmLruCache<String>(100) {
+      @Override
+      protected int getWeight(String value) {
+        return value.length();
+      }
+    };
+
+    cache.put("a", "0123456789012345678901234567890123456789"); // 42 bytes with the key
+    cache.put("b", null);
+    cache.put("c", "0123456789012345678901234567890123456789");
+    assertNotNull(cache.get("a"));
+    assertNull(cache.get("b").get());
+
+    cache.put("d", "01234567890123456789"); // "a" and "b" were used recently, so "c" is evicted
+    assertNull(cache.get("c"));
+    assertNotNull(cache.get("a"));
+    assertNotNull(cache.get("b"));
+    assertEquals("01234567890123456789", cache.get("d").get());
+    assertEquals(3, cache.size());
+    assertTrue(cache.getTotalWeight() <= 100);
+  }
+}
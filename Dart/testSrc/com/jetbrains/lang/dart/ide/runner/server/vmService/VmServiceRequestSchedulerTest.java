@@ -0,0 +1,222 @@
+package com.jetbrains.lang.dart.ide.runner.server.vmService;
+
+import com.google.gson.JsonObject;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import org.dartlang.vm.service.consumer.GetObjectConsumer;
+import org.dartlang.vm.service.element.Instance;
+import org.dartlang.vm.service.element.Obj;
+import org.dartlang.vm.service.element.RPCError;
+import org.dartlang.vm.service.element.Sentinel;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.ide.PooledThreadExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class VmServiceRequestSchedulerTest extends LightPlatformCodeInsightFixtureTestCase {
+  private static final String ISOLATE_ID = "isolates/1";
+  private static final int RESPONSE_LATENCY = 2; // millis
+
+  private StandInVmService myVmService;
+  // consumers are called in VM reply threads, assertions are made in the test thread
+  private final List<String> myFailures = Collections.synchronizedList(new ArrayList<String>());
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myVmService = new StandInVmService();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myVmService.myExecutor.shutdownNow();
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  /**
+   * Answers getObject requests with an Instance after a fixed latency, like a local VM would
+   */
+  private static class StandInVmService {
+    private final ScheduledExecutorService myExecutor = Executors.newScheduledThreadPool(4);
+    private final AtomicInteger myRequestCount = new AtomicInteger();
+    private final AtomicInteger myInFlight = new AtomicInteger();
+    private final AtomicInteger myMaxInFlight = new AtomicInteger();
+    // requests are not answered if set, like after the connection has dropped
+    private final List<Runnable> myUnansweredReplies = Collections.synchronizedList(new ArrayList<Runnable>());
+    private volatile boolean mySilent;
+
+    void getObject(@NotNull final String objectId, @NotNull final GetObjectConsumer consumer) {
+      myRequestCount.incrementAndGet();
+      if (mySilent) {
+        myUnansweredReplies.add(() -> consumer.received(createInstance(objectId)));
+        return;
+      }
+
+      final int inFlight = myInFlight.incrementAndGet();
+      myMaxInFlight.accumulateAndGet(inFlight, Math::max);
+
+      myExecutor.schedule(() -> {
+        myInFlight.decrementAndGet();
+        consumer.received(createInstance(objectId));
+      }, RESPONSE_LATENCY, TimeUnit.MILLISECONDS);
+    }
+
+    @NotNull
+    private static Instance createInstance(@NotNull final String objectId) {
+      final JsonObject json = new JsonObject();
+      json.addProperty("type", "Instance");
+      json.addProperty("id", objectId);
+      return new Instance(json);
+    }
+  }
+
+  /**
+   * Counts down on any reply, records what the test doesn't expect in <code>failures</code>
+   */
+  private static class LatchConsumer implements GetObjectConsumer {
+    private final CountDownLatch myLatch;
+    private final List<String> myFailures;
+    private final boolean myErrorExpected;
+
+    private LatchConsumer(@NotNull final CountDownLatch latch, @NotNull final List<String> failures, final boolean errorExpected) {
+      myLatch = latch;
+      myFailures = failures;
+      myErrorExpected = errorExpected;
+    }
+
+    @Override
+    public void received(Obj response) {
+      if (myErrorExpected) myFailures.add("Unexpected object " + response.getId());
+      myLatch.countDown();
+    }
+
+    @Override
+    public void received(Sentinel response) {
+      myFailures.add("Unexpected sentinel");
+      myLatch.countDown();
+    }
+
+    @Override
+    public void onError(RPCError error) {
+      if (!myErrorExpected) myFailures.add("Unexpected error " + error.getMessage());
+      myLatch.countDown();
+    }
+  }
+
+  private void getObject(@NotNull final VmServiceRequestScheduler scheduler,
+                         @NotNull final String objectId,
+                         @NotNull final CountDownLatch latch) {
+    getObject(scheduler, objectId, latch, false);
+  }
+
+  private void getObject(@NotNull final VmServiceRequestScheduler scheduler,
+                         @NotNull final String objectId,
+                         @NotNull final CountDownLatch latch,
+                         final boolean errorExpected) {
+    scheduler.getObject(ISOLATE_ID, objectId, new LatchConsumer(latch, myFailures, errorExpected),
+                        c -> myVmService.getObject(objectId, c));
+  }
+
+  /**
+   * Loads what the Variables view needs for a frame: every variable is an instance of one of 10 classes
+   */
+  private void loadVariables(@NotNull final VmServiceRequestScheduler scheduler, final int variablesCount) throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(variablesCount * 2);
+    for (int i = 0; i < variablesCount; i++) {
+      getObject(scheduler, "objects/" + i, latch);
+      getObject(scheduler, "classes/" + (i % 10), latch);
+    }
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    assertTrue(myFailures.toString(), myFailures.isEmpty());
+  }
+
+  public void testCacheAndInvalidation() throws Exception {
+    final VmServiceRequestScheduler scheduler = new VmServiceRequestScheduler(PooledThreadExecutor.INSTANCE, 4);
+    scheduler.isolatePaused(ISOLATE_ID);
+
+    loadVariables(scheduler, 20);
+    assertEquals(30, myVmService.myRequestCount.get()); // class objects are requested once
+    assertTrue(String.valueOf(myVmService.myMaxInFlight.get()), myVmService.myMaxInFlight.get() <= 4);
+
+    final int cacheHitCount = scheduler.getCacheHitCount();
+    loadVariables(scheduler, 20);
+    assertEquals(30, myVmService.myRequestCount.get());
+    assertEquals(cacheHitCount + 40, scheduler.getCacheHitCount());
+
+    scheduler.invalidate(ISOLATE_ID);
+    loadVariables(scheduler, 20);
+    assertEquals(60, myVmService.myRequestCount.get());
+  }
+
+  public void testPauseToVariablesLatency() throws Exception {
+    final VmServiceRequestScheduler scheduler =
+      new VmServiceRequestScheduler(PooledThreadExecutor.INSTANCE, VmServiceRequestScheduler.MAX_IN_FLIGHT_REQUESTS);
+
+    PlatformTestUtil.startPerformanceTest("Variables view for a frame with 500 variables", 1000, () -> {
+      scheduler.isolatePaused(ISOLATE_ID);
+      loadVariables(scheduler, 500);
+    }).assertTiming();
+
+    assertTrue(myVmService.myMaxInFlight.get() <= VmServiceRequestScheduler.MAX_IN_FLIGHT_REQUESTS);
+    assertTrue(scheduler.getPauseToIdleMillis() >= 0);
+  }
+
+  public void testUnansweredRequestsFailedOnIsolateExit() throws Exception {
+    final VmServiceRequestScheduler scheduler = new VmServiceRequestScheduler(PooledThreadExecutor.INSTANCE, 4);
+    scheduler.isolatePaused(ISOLATE_ID);
+    myVmService.mySilent = true;
+
+    final CountDownLatch latch = new CountDownLatch(11);
+    for (int i = 0; i < 10; i++) {
+      getObject(scheduler, "objects/" + i, latch, true);
+    }
+    getObject(scheduler, "objects/0", latch, true); // waits for the same reply as the first one
+
+    final long deadline = System.currentTimeMillis() + 10000;
+    while (myVmService.myRequestCount.get() < 4 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    assertEquals(4, scheduler.getInFlightCount()); // 6 requests are queued
+
+    scheduler.isolateExited(ISOLATE_ID);
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    assertTrue(myFailures.toString(), myFailures.isEmpty());
+    assertEquals(0, scheduler.getInFlightCount());
+    assertEquals(4, myVmService.myRequestCount.get()); // queued requests are not sent
+
+    // replies that come after all are ignored
+    for (Runnable reply : new ArrayList<Runnable>(myVmService.myUnansweredReplies)) {
+      reply.run();
+    }
+    assertTrue(myFailures.toString(), myFailures.isEmpty());
+
+    // slots are free again
+    myVmService.mySilent = false;
+    loadVariables(scheduler, 10);
+  }
+
+  public void testUnansweredRequestsFailedOnDispose() throws Exception {
+    final VmServiceRequestScheduler scheduler = new VmServiceRequestScheduler(PooledThreadExecutor.INSTANCE, 4);
+    myVmService.mySilent = true;
+
+    final CountDownLatch latch = new CountDownLatch(7);
+    for (int i = 0; i < 6; i++) {
+      getObject(scheduler, "objects/" + i, latch, true);
+    }
+
+    scheduler.dispose();
+    getObject(scheduler, "objects/6", latch, true); // after the VM service has been disconnected
+
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    assertTrue(myFailures.toString(), myFailures.isEmpty());
+    assertEquals(0, scheduler.getInFlightCount());
+  }
+}
@@ -1,6 +1,7 @@
 package com.jetbrains.lang.dart.ide.runner.test;
 
 import com.google.gson.JsonSyntaxException;
+import com.intellij.execution.process.ProcessOutputTypes;
 import com.intellij.execution.runners.ExecutionEnvironment;
 import com.intellij.execution.testframework.TestConsoleProperties;
 import com.intellij.execution.testframework.sm.runner.BaseSMTRunnerTestCase;
@@ -16,6 +17,7 @@ import com.intellij.execution.ui.ConsoleViewContentType;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.Key;
+import com.intellij.testFramework.PlatformTestUtil;
 import com.jetbrains.lang.dart.util.DartUrlResolver;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -341,6 +343,80 @@ public class DartTestEventsConverterTest extends BaseSMTRunnerTestCase {
     runTest(events, signals, new int[]{});
   }
 
+  public void testThroughput() throws Exception {
+    // Output of 'pub run test --reporter json' for 10 suites, 10 groups per suite and 500 tests per group,
+    // each test prints a line and every 100th test fails.
+    final int suitesCount = 10;
+    final int groupsPerSuite = 10;
+    final int testsPerGroup = 500;
+    final List<String> log = new ArrayList<String>();
+    int id = 0;
+    int time = 0;
+    log.add("{\"protocolVersion\":\"0.1.0\",\"runnerVersion\":\"0.12.13\",\"type\":\"start\",\"time\":0}\n");
+    for (int suite = 0; suite < suitesCount; suite++) {
+      final int suiteId = id++;
+      final String path = "/project/test/suite" + suite + "_test.dart";
+      log.add("{\"suite\":{\"id\":" + suiteId + ",\"platform\":\"vm\",\"path\":\"" + path + "\"},\"type\":\"suite\",\"time\":" + time + "}\n");
+      final int loadingId = id++;
+      log.add("{\"test\":{\"id\":" + loadingId + ",\"name\":\"loading " + path + "\",\"suiteID\":" + suiteId +
+              ",\"groupIDs\":[],\"metadata\":{\"skip\":false,\"skipReason\":null},\"line\":null,\"column\":null,\"url\":null}," +
+              "\"type\":\"testStart\",\"time\":" + time + "}\n");
+      log.add("{\"testID\":" + loadingId + ",\"result\":\"success\",\"hidden\":true,\"type\":\"testDone\",\"time\":" + time + "}\n");
+      final int rootGroupId = id++;
+      log.add("{\"group\":{\"id\":" + rootGroupId + ",\"suiteID\":" + suiteId + ",\"parentID\":null,\"name\":null," +
+              "\"metadata\":{\"skip\":false,\"skipReason\":null},\"testCount\":" + groupsPerSuite * testsPerGroup +
+              ",\"line\":null,\"column\":null,\"url\":null},\"type\":\"group\",\"time\":" + time + "}\n");
+      for (int group = 0; group < groupsPerSuite; group++) {
+        final int groupId = id++;
+        log.add("{\"group\":{\"id\":" + groupId + ",\"suiteID\":" + suiteId + ",\"parentID\":" + rootGroupId + ",\"name\":\"group " + group +
+                "\",\"metadata\":{\"skip\":false,\"skipReason\":null},\"testCount\":" + testsPerGroup +
+                ",\"line\":null,\"column\":null,\"url\":null},\"type\":\"group\",\"time\":" + time + "}\n");
+        for (int test = 0; test < testsPerGroup; test++) {
+          final int testId = id++;
+          log.add("{\"test\":{\"id\":" + testId + ",\"name\":\"group " + group + " test " + test + "\",\"suiteID\":" + suiteId +
+                  ",\"groupIDs\":[" + rootGroupId + "," + groupId + "],\"metadata\":{\"skip\":false,\"skipReason\":null}," +
+                  "\"line\":null,\"column\":null,\"url\":null},\"type\":\"testStart\",\"time\":" + time++ + "}\n");
+          log.add("{\"testID\":" + testId + ",\"messageType\":\"print\",\"message\":\"output of test " + test + "\",\"type\":\"print\",\"time\":" +
+                  time + "}\n");
+          final boolean fails = test % 100 == 99;
+          if (fails) {
+            log.add("{\"testID\":" + testId + ",\"error\":\"Expected: <1>\\n  Actual: <2>\\n\",\"stackTrace\":\"package:test  expect\\n" +
+                    "test/suite" + suite + "_test.dart 10:5  main.<fn>.<fn>\\n\",\"isFailure\":true,\"type\":\"error\",\"time\":" + time + "}\n");
+          }
+          log.add("{\"testID\":" + testId + ",\"result\":\"" + (fails ? "failure" : "success") + "\",\"hidden\":false," +
+                  "\"type\":\"testDone\",\"time\":" + time++ + "}\n");
+        }
+      }
+    }
+    log.add("{\"success\":false,\"type\":\"done\",\"time\":" + time + "}\n");
+
+    final int testsCount = suitesCount * groupsPerSuite * testsPerGroup;
+    final TestConsoleProperties consoleProperties = createConsoleProperties();
+    final DartUrlResolver urlResolver = DartUrlResolver.getInstance(getProject(), getSourceRoot());
+
+    PlatformTestUtil.startPerformanceTest("Dart test events converter, " + log.size() + " events", 3000, () -> {
+      final DartTestEventsConverter converter =
+        new DartTestEventsConverter(DartTestRunningState.DART_FRAMEWORK_NAME, consoleProperties, urlResolver);
+      final CountingEventsProcessor processor = new CountingEventsProcessor(consoleProperties.getProject());
+      converter.setProcessor(processor);
+      try {
+        for (String line : log) {
+          converter.process(line, ProcessOutputTypes.STDOUT);
+        }
+        assertEquals(testsCount, processor.myTestsStarted);
+        assertEquals(testsCount, processor.myTestsFinished);
+        assertEquals(testsCount / 100, processor.myTestsFailed);
+        assertEquals(testsCount, processor.myOutputs - testsCount / 100); // the stack trace of a failure is reported as output
+        assertEquals(suitesCount * (groupsPerSuite + 1), processor.mySuitesStarted);
+        assertEquals(suitesCount * (groupsPerSuite + 1), processor.mySuitesFinished);
+      }
+      finally {
+        converter.dispose();
+        Disposer.dispose(processor);
+      }
+    }).cpuBound().assertTiming();
+  }
+
   private void runTest(String[] jsonEvents, String[] signals, int[] parents) {
     DartTestEventsConverter parser = myEventsConverter;
     Key key = new Key("stdout");
@@ -522,4 +598,51 @@ public class DartTestEventsConverterTest extends BaseSMTRunnerTestCase {
     public void setPrinterProvider(@NotNull TestProxyPrinterProvider printerProvider) {
     }
   }
+
+  private class CountingEventsProcessor extends DartTestEventsProcessor {
+    private int myTestsStarted;
+    private int myTestsFinished;
+    private int myTestsFailed;
+    private int myOutputs;
+    private int mySuitesStarted;
+    private int mySuitesFinished;
+
+    public CountingEventsProcessor(Project project) {
+      super(project, DartTestRunningState.DART_FRAMEWORK_NAME);
+    }
+
+    @Override
+    public void onStartTesting() {
+    }
+
+    @Override
+    public void onTestStarted(@NotNull TestStartedEvent testStartedEvent) {
+      myTestsStarted++;
+    }
+
+    @Override
+    public void onTestFinished(@NotNull TestFinishedEvent testFinishedEvent) {
+      myTestsFinished++;
+    }
+
+    @Override
+    public void onTestFailure(@NotNull TestFailedEvent testFailedEvent) {
+      myTestsFailed++;
+    }
+
+    @Override
+    public void onTestOutput(@NotNull TestOutputEvent testOutputEvent) {
+      myOutputs++;
+    }
+
+    @Override
+    public void onSuiteStarted(@NotNull TestSuiteStartedEvent suiteStartedEvent) {
+      mySuitesStarted++;
+    }
+
+    @Override
+    public void onSuiteFinished(@NotNull TestSuiteFinishedEvent suiteFinishedEvent) {
+      mySuitesFinished++;
+    }
+  }
 }
@@ -0,0 +1,118 @@
+package com.jetbrains.lang.dart.resolve;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiReference;
+import com.jetbrains.lang.dart.DartCodeInsightFixtureTestCase;
+import com.jetbrains.lang.dart.util.DartResolveUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+
+public class DartLibraryGraphTest extends DartCodeInsightFixtureTestCase {
+
+  private void insertText(@NotNull final PsiFile file, @NotNull final String before, @NotNull final String text) {
+    final Document document = PsiDocumentManager.getInstance(getProject()).getDocument(file);
+    assertNotNull(document);
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+      document.insertString(document.getText().indexOf(before), text);
+      PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+    });
+  }
+
+  @Nullable
+  private static PsiElement resolve(@NotNull final PsiFile file, @NotNull final String referenceText) {
+    final PsiReference reference = file.findReferenceAt(file.getText().indexOf(referenceText));
+    assertNotNull(referenceText, reference);
+    return reference.resolve();
+  }
+
+  public void testLibraryWithParts() throws Exception {
+    final PsiFile lib = myFixture.addFileToProject("web/lib.dart", "library lib;\n" +
+                                                                   "import 'dart:math' show max;\n" +
+                                                                   "export 'unresolved.dart';\n" +
+                                                                   "part 'part1.dart';\n" +
+                                                                   "foo() { }\n");
+    final PsiFile part1 = myFixture.addFileToProject("web/part1.dart", "part of lib;\nclass B {}");
+    final PsiFile part2 = myFixture.addFileToProject("web/part2.dart", "part of lib;\nclass C {}");
+    final VirtualFile libFile = lib.getVirtualFile();
+    final DartLibraryGraph graph = DartLibraryGraph.getInstance(getProject());
+
+    assertEquals(Collections.singletonList(libFile), DartResolveUtil.findLibrary(part1));
+    assertEquals(Collections.emptyList(), DartResolveUtil.findLibraryByName(part2, "lib"));
+
+    final List<VirtualFile> parts = graph.getParts(libFile);
+    assertEquals(Collections.singletonList(part1.getVirtualFile()), parts);
+    final List<DartLibraryGraph.Directive> directives = graph.getImportsAndExports(libFile);
+    assertEquals(2, directives.size());
+    assertNotNull(directives.get(0).getFile());
+    assertEquals("max", directives.get(0).getInfo().getShowComponents().iterator().next());
+    assertNull(directives.get(1).getFile());
+
+    // typing in a function body doesn't invalidate the graph
+    final long modificationCount = graph.getModificationCount();
+    insertText(lib, "}", "var x = 1;");
+    assertSame(parts, graph.getParts(libFile));
+    assertEquals(modificationCount, graph.getModificationCount());
+
+    // a new directive does
+    insertText(lib, "foo()", "part 'part2.dart';\n");
+    assertTrue(graph.getModificationCount() > modificationCount);
+    assertEquals(2, graph.getParts(libFile).size());
+    assertEquals(Collections.singletonList(libFile), DartResolveUtil.findLibrary(part2));
+  }
+
+  public void testExportTable() throws Exception {
+    final PsiFile a = myFixture.addFileToProject("web/a.dart", "library a;\n" +
+                                                               "part 'a_part.dart';\n" +
+                                                               "class A { }\n" +
+                                                               "class Hidden {}\n" +
+                                                               "_private() {}\n");
+    final PsiFile aPart = myFixture.addFileToProject("web/a_part.dart", "part of a;\nclass APart {}\n");
+    final PsiFile b = myFixture.addFileToProject("web/b.dart", "export 'a.dart' hide Hidden;\n" +
+                                                               "export 'c.dart' show C;\n" +
+                                                               "class B {}\n");
+    final PsiFile c = myFixture.addFileToProject("web/c.dart", "export 'b.dart';\nclass C {}\nclass NotShown {}\n");
+    final DartLibraryGraph graph = DartLibraryGraph.getInstance(getProject());
+
+    final DartLibraryGraph.ExportTable aTable = graph.getExportTable(a.getVirtualFile());
+    assertSameElements(aTable.getNames(), "A", "Hidden", "_private", "APart");
+    assertEquals(Collections.singletonList(aPart.getVirtualFile()), aTable.getFiles("APart"));
+
+    // private names and names hidden by export directives are not exported further
+    final DartLibraryGraph.ExportTable bTable = graph.getExportTable(b.getVirtualFile());
+    assertSameElements(bTable.getNames(), "B", "A", "APart", "C");
+    assertEquals(Collections.singletonList(c.getVirtualFile()), bTable.getFiles("C"));
+    assertSame(bTable, graph.getExportTable(b.getVirtualFile()));
+
+    // c exports b that exports c back
+    assertSameElements(graph.getExportTable(c.getVirtualFile()).getNames(), "C", "NotShown", "B", "A", "APart");
+
+    // a member doesn't change the table
+    insertText(a, "}", "var x = 1;");
+    assertSame(bTable, graph.getExportTable(b.getVirtualFile()));
+
+    // a renamed top-level class does
+    final long modificationCount = graph.getModificationCount();
+    insertText(b, "B {}", "Renamed");
+    assertTrue(graph.getModificationCount() > modificationCount);
+    assertSameElements(graph.getExportTable(b.getVirtualFile()).getNames(), "RenamedB", "A", "APart", "C");
+
+    // the local resolver takes imported names from the table, import show/hide still applies
+    final PsiFile main = myFixture.addFileToProject("web/main.dart", "import 'c.dart' hide A;\n" +
+                                                                     "main() { new APart(); new A(); new RenamedB(); }\n");
+    final PsiElement aPartClass = resolve(main, "APart()");
+    assertNotNull(aPartClass);
+    assertEquals(aPart, aPartClass.getContainingFile());
+    assertNull(resolve(main, "A()"));
+    final PsiElement bClass = resolve(main, "RenamedB()");
+    assertNotNull(bClass);
+    assertEquals(b, bClass.getContainingFile());
+  }
+}
@@ -0,0 +1,118 @@
+package com.jetbrains.lang.dart.util;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import gnu.trove.THashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class DartPackageTableTest extends LightPlatformCodeInsightFixtureTestCase {
+  private static final int PACKAGES_COUNT = 400;
+
+  private File myRoot;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myRoot = FileUtil.createTempDirectory("dartPackages", null);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myRoot);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  @NotNull
+  private VirtualFile createProjectWithPackages() throws Exception {
+    final StringBuilder dotPackages = new StringBuilder("# Generated by pub\n");
+    for (int i = 0; i < PACKAGES_COUNT; i++) {
+      FileUtil.writeToFile(new File(myRoot, "cache/p" + i + "-1.0.0/lib/src/a.dart"), "");
+      dotPackages.append("p").append(i).append(":cache/p").append(i).append("-1.0.0/lib/\n");
+    }
+    FileUtil.writeToFile(new File(myRoot, "lib/main.dart"), "");
+    dotPackages.append("project:lib/\n");
+    FileUtil.writeToFile(new File(myRoot, DotPackagesFileUtil.DOT_PACKAGES), dotPackages.toString());
+
+    final VirtualFile root = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(myRoot);
+    assertNotNull(root);
+    root.refresh(false, true);
+    return root;
+  }
+
+  @NotNull
+  private static DartPackageTable createTable(@NotNull final VirtualFile root) {
+    final VirtualFile dotPackagesFile = root.findChild(DotPackagesFileUtil.DOT_PACKAGES);
+    assertNotNull(dotPackagesFile);
+    final Map<String, String> packagesMap = DotPackagesFileUtil.getPackagesMap(dotPackagesFile);
+    assertNotNull(packagesMap);
+    assertEquals(PACKAGES_COUNT + 1, packagesMap.size());
+
+    final Map<String, VirtualFile> packageNameToDir = new THashMap<String, VirtualFile>();
+    for (Map.Entry<String, String> entry : packagesMap.entrySet()) {
+      final VirtualFile dir = LocalFileSystem.getInstance().findFileByPath(entry.getValue());
+      assertNotNull(entry.getValue(), dir);
+      packageNameToDir.put(entry.getKey(), dir);
+    }
+    return new DartPackageTable(packageNameToDir, Collections.<String, List<String>>emptyMap());
+  }
+
+  public void testLivePackages() throws Exception {
+    final VirtualFile root = createProjectWithPackages();
+    final DartPackageTable table = createTable(root);
+
+    final VirtualFile file = root.findFileByRelativePath("cache/p7-1.0.0/lib/src/a.dart");
+    assertNotNull(file);
+    assertEquals("package:p7/src/a.dart", table.getUrlIfFileFromLivePackage(file));
+    assertEquals("package:project/main.dart", table.getUrlIfFileFromLivePackage(root.findFileByRelativePath("lib/main.dart")));
+    assertNull(table.getUrlIfFileFromLivePackage(root.findChild(DotPackagesFileUtil.DOT_PACKAGES)));
+    assertEquals(root.findFileByRelativePath("cache/p7-1.0.0/lib"), table.getLivePackageDir("p7"));
+    assertNull(table.getUrlIfFileFromPackagesLib(file));
+  }
+
+  public void testPackagesFromLib() throws Exception {
+    final VirtualFile root = createProjectWithPackages();
+    final Map<String, List<String>> packageNameToDirPaths = new THashMap<String, List<String>>();
+    packageNameToDirPaths.put("foo", Collections.singletonList(root.getPath() + "/cache/p1-1.0.0/lib"));
+    packageNameToDirPaths.put("foo_src", Collections.singletonList(root.getPath() + "/cache/p1-1.0.0/lib/src"));
+    final DartPackageTable table = new DartPackageTable(Collections.<String, VirtualFile>emptyMap(), packageNameToDirPaths);
+
+    // nested package folder wins
+    assertEquals("package:foo_src/a.dart", table.getUrlIfFileFromPackagesLib(root.findFileByRelativePath("cache/p1-1.0.0/lib/src/a.dart")));
+    assertEquals("package:foo/src", table.getUrlIfFileFromPackagesLib(root.findFileByRelativePath("cache/p1-1.0.0/lib/src")));
+    assertNull(table.getUrlIfFileFromPackagesLib(root.findFileByRelativePath("cache/p2-1.0.0/lib/src/a.dart")));
+    assertEquals(Collections.singletonList(root.getPath() + "/cache/p1-1.0.0/lib"), table.getPackageDirPathsFromLib("foo"));
+    assertNull(table.getUrlIfFileFromLivePackage(root));
+  }
+
+  public void testUrlLookupPerformance() throws Exception {
+    final VirtualFile root = createProjectWithPackages();
+    final List<VirtualFile> files = new ArrayList<VirtualFile>();
+    for (int i = 0; i < PACKAGES_COUNT; i++) {
+      files.add(root.findFileByRelativePath("cache/p" + i + "-1.0.0/lib/src/a.dart"));
+    }
+
+    PlatformTestUtil.startPerformanceTest("Package table for " + PACKAGES_COUNT + " packages", 1000, () -> {
+      for (int round = 0; round < 10; round++) {
+        final DartPackageTable table = createTable(root);
+        for (int i = 0; i < 100; i++) {
+          for (VirtualFile file : files) {
+            assertNotNull(table.getUrlIfFileFromLivePackage(file));
+          }
+        }
+      }
+    }).cpuBound().assertTiming();
+  }
+}
@@ -5,6 +5,8 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentListener;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.*;
@@ -157,6 +159,25 @@ public class DartTestUtils {
     return result;
   }
 
+  /**
+   * Creates a document that is not backed by a file, <code>listener</code> is removed when <code>parentDisposable</code> is disposed
+   */
+  @NotNull
+  public static Document createDocument(@NotNull final String text,
+                                        @NotNull final DocumentListener listener,
+                                        @NotNull final Disposable parentDisposable) {
+    final Document document = EditorFactory.getInstance().createDocument(text);
+    document.addDocumentListener(listener, parentDisposable);
+    return document;
+  }
+
+  /**
+   * Changes documents in a write command, like typing in the editor does
+   */
+  public static void editDocument(@NotNull final Runnable runnable) {
+    WriteCommandAction.runWriteCommandAction(null, runnable);
+  }
+
   /**
    * Use this method in finally{} clause if the test modifies excluded roots or configures module libraries
    */
@@ -13,6 +13,8 @@
  */
 package com.google.dart.server;
 
+import org.dartlang.analysis.server.protocol.RequestError;
+
 /**
  * The interface {@code UpdateContentConsumer} defines the behavior of objects that consume
  * 'analysis.updateContent' responses.
@@ -24,4 +26,12 @@ public interface UpdateContentConsumer extends Consumer {
    * A response to the request was received.
    */
   public void onResponse();
+
+  /**
+   * If the content could not be updated, for example because a {@code ChangeContentOverlay} could
+   * not be applied, then an error is passed back instead of {@link #onResponse()}.
+   *
+   * @param requestError the reason why a result was not passed back
+   */
+  public void onError(RequestError requestError);
 }
@@ -15,18 +15,25 @@ package com.google.dart.server.internal.remote;
 
 import com.google.common.base.Charsets;
 import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.dart.server.internal.remote.utilities.RequestUtilities;
 import com.google.gson.JsonObject;
 
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.PrintWriter;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.concurrent.TimeUnit;
 
 /**
  * An {@link OutputStream} based implementation of {@link RequestSink}.
+ * <p>
+ * Requests that are not written yet are kept in a queue with two lanes. Interactive requests (see
+ * {@link RequestUtilities#isInteractiveRequest(JsonObject)}) overtake queued background requests
+ * (see {@link RequestUtilities#isBackgroundRequest(JsonObject)}), but never any other request, so
+ * that content updates and subscriptions are written in the order they were added. A request that
+ * is not written yet can be cancelled.
  *
  * @coverage dart.server.remote
  */
@@ -40,9 +47,9 @@ public class ByteRequestSink implements RequestSink {
    */
   private DebugPrintStream debugStream;
   /**
-   * The queue of lines.
+   * The queue of requests that are not written yet, guarded by itself.
    */
-  private final BlockingQueue<String> lineQueue = new LinkedBlockingQueue<String>();
+  private final LinkedList<QueuedRequest> requestQueue = new LinkedList<QueuedRequest>();
 
   /**
    * Initializes a newly created request sink.
@@ -64,7 +71,31 @@ public class ByteRequestSink implements RequestSink {
         debugStream.println(System.currentTimeMillis() + " => " + text);
       }
     }
-    lineQueue.add(text);
+    QueuedRequest queuedRequest = new QueuedRequest(RequestUtilities.getId(request),
+                                                    text,
+                                                    RequestUtilities.isInteractiveRequest(request),
+                                                    RequestUtilities.isBackgroundRequest(request));
+    synchronized (requestQueue) {
+      requestQueue.add(queuedRequest);
+      requestQueue.notifyAll();
+    }
+  }
+
+  /**
+   * Removes the request with the given id if it is not written yet.
+   *
+   * @return {@code true} if the request was removed and will never be sent to the server
+   */
+  public boolean cancel(String id) {
+    synchronized (requestQueue) {
+      for (Iterator<QueuedRequest> iterator = requestQueue.iterator(); iterator.hasNext(); ) {
+        if (iterator.next().id.equals(id)) {
+          iterator.remove();
+          return true;
+        }
+      }
+    }
+    return false;
   }
 
   @Override
@@ -74,13 +105,54 @@ public class ByteRequestSink implements RequestSink {
 
   public void waitForFlush() {
     while (true) {
-      if (lineQueue.isEmpty()) {
-        return;
+      synchronized (requestQueue) {
+        if (requestQueue.isEmpty()) {
+          return;
+        }
       }
       Uninterruptibles.sleepUninterruptibly(1, TimeUnit.MILLISECONDS);
     }
   }
 
+  /**
+   * Waits for a request and removes it from the queue: the first interactive request if it is
+   * preceded only by background requests, otherwise the head of the queue.
+   */
+  private String takeNextRequest() throws InterruptedException {
+    synchronized (requestQueue) {
+      while (requestQueue.isEmpty()) {
+        requestQueue.wait();
+      }
+      if (requestQueue.getFirst().background) {
+        for (Iterator<QueuedRequest> iterator = requestQueue.iterator(); iterator.hasNext(); ) {
+          QueuedRequest request = iterator.next();
+          if (request.interactive) {
+            iterator.remove();
+            return request.text;
+          }
+          if (!request.background) {
+            break;
+          }
+        }
+      }
+      return requestQueue.removeFirst().text;
+    }
+  }
+
+  private static class QueuedRequest {
+    final String id;
+    final String text;
+    final boolean interactive;
+    final boolean background;
+
+    QueuedRequest(String id, String text, boolean interactive, boolean background) {
+      this.id = id;
+      this.text = text;
+      this.interactive = interactive;
+      this.background = background;
+    }
+  }
+
   private class LinesWriterThread extends Thread {
     public LinesWriterThread() {
       setName("ByteRequestSink.LinesWriterThread");
@@ -91,7 +163,7 @@ public class ByteRequestSink implements RequestSink {
     public void run() {
       while (true) {
         try {
-          String line = lineQueue.take();
+          String line = takeNextRequest();
           writer.println(line);
           writer.flush();
         }
@@ -14,9 +14,8 @@
 package com.google.dart.server.internal.remote;
 
 import com.google.common.base.Charsets;
+import com.google.dart.server.internal.remote.utilities.ResponseUtilities;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.google.gson.JsonSyntaxException;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -102,16 +101,20 @@ public class ByteResponseStream implements ResponseStream {
 
   @Override
   public JsonObject take() throws Exception {
+    String line = takeLine();
+    if (line == null) {
+      return null;
+    }
+    return ResponseUtilities.parseResponse(line);
+  }
+
+  @Override
+  public String takeLine() throws Exception {
     String line = lineQueue.take();
     if (line == EOF_LINE) {
       lineQueue.add(line);
       return null;
     }
-    try {
-      return (JsonObject) new JsonParser().parse(line);
-    } catch (JsonSyntaxException e) {
-      // Include the line in the message so that we can better diagnose the problem
-      throw new JsonSyntaxException("Parse server message failed: " + line, e);
-    }
+    return line;
   }
 }
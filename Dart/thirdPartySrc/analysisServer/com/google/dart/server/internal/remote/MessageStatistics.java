@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2016, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+/**
+ * The volume of the messages of a single kind (responses to the requests of a single method, or
+ * notifications of a single event) read from the server, and the time the client spent processing
+ * them: decoding the message and running the consumers and listeners on the reader thread. The
+ * processing time is not included in the round-trip times of {@link RequestLatencyHistogram}, but
+ * responses queued behind a slowly processed message are delayed by it.
+ *
+ * @coverage dart.server.remote
+ */
+public class MessageStatistics {
+  private long count;
+
+  /**
+   * The length of the messages in characters, which is the number of bytes read unless the
+   * messages contain non-ASCII characters.
+   */
+  private long totalLength;
+  private long maxLength;
+
+  private RequestLatencyHistogram processingTimes = new RequestLatencyHistogram();
+
+  public synchronized long getCount() {
+    return count;
+  }
+
+  public synchronized long getTotalLength() {
+    return totalLength;
+  }
+
+  public synchronized long getMaxLength() {
+    return maxLength;
+  }
+
+  /**
+   * Return the distribution of the times the client spent processing the messages.
+   */
+  public synchronized RequestLatencyHistogram getProcessingTimes() {
+    return processingTimes.copy();
+  }
+
+  public synchronized void record(int length, long processingMillis) {
+    count++;
+    totalLength += length;
+    maxLength = Math.max(maxLength, length);
+    processingTimes.record(processingMillis);
+  }
+
+  public synchronized MessageStatistics copy() {
+    MessageStatistics copy = new MessageStatistics();
+    copy.count = count;
+    copy.totalLength = totalLength;
+    copy.maxLength = maxLength;
+    copy.processingTimes = processingTimes.copy();
+    return copy;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "count=" + count + ", totalLength=" + totalLength + ", maxLength=" + maxLength + ", processing: " + processingTimes;
+  }
+}
@@ -94,6 +94,16 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
    */
   private final BroadcastAnalysisServerListener listener = new BroadcastAnalysisServerListener();
 
+  /**
+   * The processor that decodes the largest notifications without building a {@link JsonObject} tree.
+   */
+  private final StreamingNotificationProcessor streamingNotificationProcessor = new StreamingNotificationProcessor(listener);
+
+  /**
+   * A flag indicating whether {@link #streamingNotificationProcessor} should be used.
+   */
+  private volatile boolean streamingNotifications = true;
+
   private final List<AnalysisServerStatusListener> statusListenerList = new ArrayList<AnalysisServerStatusListener>();
 
   /**
@@ -103,10 +113,37 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
   private final Map<String, Consumer> consumerMap = Maps.newHashMap();
 
   /**
-   * The object used to synchronize access to {@link #consumerMap}.
+   * The object used to synchronize access to {@link #consumerMap} and {@link #sentRequestMap}.
    */
   private final Object consumerMapLock = new Object();
 
+  /**
+   * A mapping between {@link String} ids' of the requests waiting for responses and the methods
+   * and times of these requests.
+   */
+  private final Map<String, SentRequest> sentRequestMap = Maps.newHashMap();
+
+  /**
+   * A mapping between request methods and their round-trip times, guarded by itself.
+   */
+  private final Map<String, RequestLatencyHistogram> latencyMap = Maps.newHashMap();
+
+  /**
+   * A mapping between request methods and the statistics of their responses, guarded by itself.
+   */
+  private final Map<String, MessageStatistics> responseStatisticsMap = Maps.newHashMap();
+
+  /**
+   * A mapping between notification events and their statistics, guarded by itself.
+   */
+  private final Map<String, MessageStatistics> notificationStatisticsMap = Maps.newHashMap();
+
+  /**
+   * The largest number of requests that were waiting for responses at the same time, guarded by
+   * {@link #consumerMapLock}.
+   */
+  private int maxInFlightRequestCount;
+
   /**
    * The unique ID for the next request.
    */
@@ -147,6 +184,14 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     this.checkServerVersion = checkServerVersion;
   }
 
+  /**
+   * Enables or disables decoding of the largest notifications with a pull parser instead of
+   * building a {@link JsonObject} tree for them. Enabled by default.
+   */
+  public void setStreamingNotifications(boolean streamingNotifications) {
+    this.streamingNotifications = streamingNotifications;
+  }
+
   @Override
   public void addAnalysisServerListener(AnalysisServerListener listener) {
     this.listener.addListener(listener);
@@ -418,6 +463,108 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     startWatcher(5000);
   }
 
+  /**
+   * Cancels the request that was made with the given {@link Consumer}, for example because the
+   * caret has moved and the result is not needed any more. The request is not sent if it is still
+   * queued, otherwise its response is ignored when it arrives.
+   *
+   * @return {@code true} if the request was waiting for a response
+   */
+  public boolean cancelRequest(Consumer consumer) {
+    String id = null;
+    SentRequest sentRequest = null;
+    synchronized (consumerMapLock) {
+      for (Map.Entry<String, Consumer> entry : consumerMap.entrySet()) {
+        if (entry.getValue() == consumer) {
+          id = entry.getKey();
+          break;
+        }
+      }
+      if (id == null) {
+        return false;
+      }
+      consumerMap.remove(id);
+      sentRequest = sentRequestMap.remove(id);
+    }
+    synchronized (requestSinkLock) {
+      if (requestSink instanceof ByteRequestSink) {
+        ((ByteRequestSink)requestSink).cancel(id);
+      }
+    }
+    if (sentRequest != null) {
+      getLatencyHistogram(sentRequest.method).recordCancelled();
+    }
+    return true;
+  }
+
+  /**
+   * Return a snapshot of the round-trip times of the requests sent to the server, per request
+   * method.
+   */
+  public Map<String, RequestLatencyHistogram> getRequestLatencies() {
+    Map<String, RequestLatencyHistogram> result = Maps.newTreeMap();
+    synchronized (latencyMap) {
+      for (Map.Entry<String, RequestLatencyHistogram> entry : latencyMap.entrySet()) {
+        result.put(entry.getKey(), entry.getValue().copy());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Return a snapshot of the volume and the processing times of the responses read from the
+   * server, per request method.
+   */
+  public Map<String, MessageStatistics> getResponseStatistics() {
+    return copyStatistics(responseStatisticsMap);
+  }
+
+  /**
+   * Return a snapshot of the volume and the processing times of the notifications read from the
+   * server, per notification event like "analysis.highlights".
+   */
+  public Map<String, MessageStatistics> getNotificationStatistics() {
+    return copyStatistics(notificationStatisticsMap);
+  }
+
+  /**
+   * Return the number of requests that are waiting for responses.
+   */
+  public int getInFlightRequestCount() {
+    synchronized (consumerMapLock) {
+      return sentRequestMap.size();
+    }
+  }
+
+  /**
+   * Return the largest number of requests that were waiting for responses at the same time.
+   */
+  public int getMaxInFlightRequestCount() {
+    synchronized (consumerMapLock) {
+      return maxInFlightRequestCount;
+    }
+  }
+
+  /**
+   * Records that the client stopped waiting for the response to the request that was made with the
+   * given {@link Consumer}. The request itself is not cancelled, see
+   * {@link #cancelRequest(Consumer)}.
+   */
+  public void requestTimedOut(Consumer consumer) {
+    SentRequest sentRequest = null;
+    synchronized (consumerMapLock) {
+      for (Map.Entry<String, Consumer> entry : consumerMap.entrySet()) {
+        if (entry.getValue() == consumer) {
+          sentRequest = sentRequestMap.get(entry.getKey());
+          break;
+        }
+      }
+    }
+    if (sentRequest != null) {
+      getLatencyHistogram(sentRequest.method).recordTimedOut();
+    }
+  }
+
   @VisibleForTesting
   public void test_waitForWorkerComplete() {
     while (!consumerMap.isEmpty()) {
@@ -435,6 +582,53 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     return Integer.toString(nextId.getAndIncrement());
   }
 
+  /**
+   * Return the event of the given notification line, or {@code null} if it is a response. The
+   * server writes "event" first, see {@link StreamingNotificationProcessor}.
+   */
+  @VisibleForTesting
+  public static String getNotificationEvent(String line) {
+    String prefix = "{\"event\":\"";
+    if (!line.startsWith(prefix)) {
+      return null;
+    }
+    int end = line.indexOf('"', prefix.length());
+    return end < 0 ? null : line.substring(prefix.length(), end);
+  }
+
+  private static Map<String, MessageStatistics> copyStatistics(Map<String, MessageStatistics> statisticsMap) {
+    Map<String, MessageStatistics> result = Maps.newTreeMap();
+    synchronized (statisticsMap) {
+      for (Map.Entry<String, MessageStatistics> entry : statisticsMap.entrySet()) {
+        result.put(entry.getKey(), entry.getValue().copy());
+      }
+    }
+    return result;
+  }
+
+  private static void recordMessage(Map<String, MessageStatistics> statisticsMap, String key, int length, long processingMillis) {
+    MessageStatistics statistics;
+    synchronized (statisticsMap) {
+      statistics = statisticsMap.get(key);
+      if (statistics == null) {
+        statistics = new MessageStatistics();
+        statisticsMap.put(key, statistics);
+      }
+    }
+    statistics.record(length, processingMillis);
+  }
+
+  private RequestLatencyHistogram getLatencyHistogram(String method) {
+    synchronized (latencyMap) {
+      RequestLatencyHistogram histogram = latencyMap.get(method);
+      if (histogram == null) {
+        histogram = new RequestLatencyHistogram();
+        latencyMap.put(method, histogram);
+      }
+      return histogram;
+    }
+  }
+
   /**
    * Attempts to handle the given {@link JsonObject} as a notification. Return {@code true} if it
    * was handled, otherwise {@code false} is returned.
@@ -512,21 +706,32 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     return true;
   }
 
-  private void processResponse(JsonObject response) throws Exception {
+  /**
+   * Handles the given notification or response.
+   *
+   * @return the method of the request if it is a response to a request that was waiting for it,
+   * otherwise {@code null}
+   */
+  private String processResponse(JsonObject response) throws Exception {
     // handle notification
     if (processNotification(response)) {
-      return;
+      return null;
     }
     // prepare ID
     JsonPrimitive idJsonPrimitive = (JsonPrimitive)response.get("id");
     if (idJsonPrimitive == null) {
-      return;
+      return null;
     }
     String idString = idJsonPrimitive.getAsString();
     // prepare consumer
     Consumer consumer;
+    SentRequest sentRequest;
     synchronized (consumerMapLock) {
       consumer = consumerMap.get(idString);
+      sentRequest = sentRequestMap.remove(idString);
+    }
+    if (sentRequest != null) {
+      getLatencyHistogram(sentRequest.method).record(System.currentTimeMillis() - sentRequest.time);
     }
     JsonObject errorObject = (JsonObject)response.get("error");
     RequestError requestError = null;
@@ -540,7 +745,12 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     // Analysis Domain
     //
     if (consumer instanceof UpdateContentConsumer) {
-      ((UpdateContentConsumer)consumer).onResponse();
+      if (requestError != null) {
+        ((UpdateContentConsumer)consumer).onError(requestError);
+      }
+      else {
+        ((UpdateContentConsumer)consumer).onResponse();
+      }
     }
     //
     // Completion Domain
@@ -624,6 +834,7 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     synchronized (consumerMapLock) {
       consumerMap.remove(idString);
     }
+    return sentRequest != null ? sentRequest.method : null;
   }
 
   /**
@@ -645,8 +856,13 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
    * @param consumer the {@link Consumer} to process a response
    */
   private void sendRequestToServer(String id, JsonObject request, Consumer consumer) {
+    String method = RequestUtilities.getMethod(request);
     synchronized (consumerMapLock) {
       consumerMap.put(id, consumer);
+      if (method != null) {
+        sentRequestMap.put(id, new SentRequest(method, System.currentTimeMillis()));
+        maxInFlightRequestCount = Math.max(maxInFlightRequestCount, sentRequestMap.size());
+      }
     }
     synchronized (requestSinkLock) {
       requestSink.add(request);
@@ -655,7 +871,10 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
 
   private void startServer() throws Exception {
     socket.start();
-    consumerMap.clear();
+    synchronized (consumerMapLock) {
+      consumerMap.clear();
+      sentRequestMap.clear();
+    }
     requestSink = socket.getRequestSink();
     responseStream = socket.getResponseStream();
     errorStream = socket.getErrorStream();
@@ -841,6 +1060,19 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     }
   }
 
+  /**
+   * The method and the time of a request that is waiting for a response.
+   */
+  private static class SentRequest {
+    final String method;
+    final long time;
+
+    SentRequest(String method, long time) {
+      this.method = method;
+      this.time = time;
+    }
+  }
+
   /**
    * A thread which reads responses from the {@link ResponseStream} and calls the associated
    * {@link Consumer}s from {@link RemoteAnalysisServerImpl#consumerMap}.
@@ -859,16 +1091,28 @@ public class RemoteAnalysisServerImpl implements AnalysisServer {
     public void run() {
       while (true) {
         try {
-          JsonObject response = stream.take();
-          if (response == null) {
+          String line = stream.takeLine();
+          if (line == null) {
             return;
           }
-          lastResponseTime.set(System.currentTimeMillis());
+          long startTime = System.currentTimeMillis();
+          lastResponseTime.set(startTime);
+          String event = getNotificationEvent(line);
+          String method = null;
           try {
-            processResponse(response);
+            if (!streamingNotifications || !streamingNotificationProcessor.process(line)) {
+              method = processResponse(ResponseUtilities.parseResponse(line));
+            }
           }
           finally {
             stream.lastRequestProcessed();
+            long processingMillis = System.currentTimeMillis() - startTime;
+            if (event != null) {
+              recordMessage(notificationStatisticsMap, event, line.length(), processingMillis);
+            }
+            else if (method != null) {
+              recordMessage(responseStatisticsMap, method, line.length(), processingMillis);
+            }
           }
         }
         catch (Throwable e) {
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2016, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote;
+
+import java.util.Arrays;
+
+/**
+ * The distribution of round-trip times of the requests of a single method, from the moment a
+ * request was added to the request queue until its response was read.
+ *
+ * @coverage dart.server.remote
+ */
+public class RequestLatencyHistogram {
+  /**
+   * The inclusive upper bounds of the buckets, in milliseconds. The last bucket is unbounded.
+   */
+  private static final long[] BUCKET_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+  private final long[] counts = new long[BUCKET_BOUNDS.length + 1];
+  private long totalCount;
+  private long totalMillis;
+  private long maxMillis;
+  private long cancelledCount;
+  private long timedOutCount;
+
+  /**
+   * Return the inclusive upper bounds of the buckets, in milliseconds. The bucket after the last
+   * bound counts all longer requests.
+   */
+  public static long[] getBucketBounds() {
+    return BUCKET_BOUNDS.clone();
+  }
+
+  /**
+   * Return the number of requests in each bucket, see {@link #getBucketBounds()}.
+   */
+  public synchronized long[] getBucketCounts() {
+    return counts.clone();
+  }
+
+  public synchronized long getCount() {
+    return totalCount;
+  }
+
+  /**
+   * Return the number of requests that were cancelled before their responses were read. They are
+   * not included in the other numbers.
+   */
+  public synchronized long getCancelledCount() {
+    return cancelledCount;
+  }
+
+  /**
+   * Return the number of requests that the client stopped waiting for because their responses
+   * were not read in time. Such requests are counted in the other numbers when their responses
+   * arrive later, or as cancelled if the client cancelled them.
+   */
+  public synchronized long getTimedOutCount() {
+    return timedOutCount;
+  }
+
+  public synchronized long getMaxMillis() {
+    return maxMillis;
+  }
+
+  public synchronized long getMeanMillis() {
+    return totalCount == 0 ? 0 : totalMillis / totalCount;
+  }
+
+  /**
+   * Return the smallest bucket bound such that at least the given fraction of requests completed
+   * within it, or {@link #getMaxMillis()} if it falls into the unbounded bucket.
+   */
+  public synchronized long getPercentileMillis(double fraction) {
+    long threshold = (long)Math.ceil(totalCount * fraction);
+    long count = 0;
+    for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+      count += counts[i];
+      if (count >= threshold) {
+        return Math.min(BUCKET_BOUNDS[i], maxMillis);
+      }
+    }
+    return maxMillis;
+  }
+
+  public synchronized void record(long millis) {
+    int index = Arrays.binarySearch(BUCKET_BOUNDS, millis);
+    if (index < 0) {
+      index = -index - 1;
+    }
+    counts[index]++;
+    totalCount++;
+    totalMillis += millis;
+    maxMillis = Math.max(maxMillis, millis);
+  }
+
+  public synchronized void recordCancelled() {
+    cancelledCount++;
+  }
+
+  public synchronized void recordTimedOut() {
+    timedOutCount++;
+  }
+
+  public synchronized RequestLatencyHistogram copy() {
+    RequestLatencyHistogram copy = new RequestLatencyHistogram();
+    System.arraycopy(counts, 0, copy.counts, 0, counts.length);
+    copy.totalCount = totalCount;
+    copy.totalMillis = totalMillis;
+    copy.maxMillis = maxMillis;
+    copy.cancelledCount = cancelledCount;
+    copy.timedOutCount = timedOutCount;
+    return copy;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "count=" + totalCount + ", mean=" + getMeanMillis() + "ms, p50=" + getPercentileMillis(0.5) + "ms, p95=" +
+           getPercentileMillis(0.95) + "ms, p99=" + getPercentileMillis(0.99) + "ms, max=" + maxMillis + "ms, cancelled=" +
+           cancelledCount + ", timedOut=" + timedOutCount;
+  }
+}
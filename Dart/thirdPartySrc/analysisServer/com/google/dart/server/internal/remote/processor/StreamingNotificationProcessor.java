@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2016, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.dart.server.internal.remote.processor;
+
+import com.google.dart.server.AnalysisServerListener;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.dartlang.analysis.server.protocol.HighlightRegion;
+import org.dartlang.analysis.server.protocol.NavigationRegion;
+import org.dartlang.analysis.server.protocol.NavigationTarget;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes the largest notifications, {@code analysis.highlights} and {@code analysis.navigation},
+ * with a pull parser straight into the protocol objects, without building an intermediate
+ * {@link JsonObject} tree for them. Every other response is left to the tree based processors.
+ *
+ * @coverage dart.server.remote
+ */
+public class StreamingNotificationProcessor {
+  private static final String ANALYSIS_NOTIFICATION_HIGHTLIGHTS = "analysis.highlights";
+  private static final String ANALYSIS_NOTIFICATION_NAVIGATION = "analysis.navigation";
+
+  private final AnalysisServerListener listener;
+
+  public StreamingNotificationProcessor(AnalysisServerListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Attempts to decode the given response text as a notification that is handled in the streaming
+   * mode and notify the listener. Return {@code true} if it was handled, otherwise {@code false} is
+   * returned and the listener is not notified.
+   *
+   * @param text the JSON text of a single response
+   * @return {@code true} if it was handled, otherwise {@code false} is returned
+   */
+  public boolean process(String text) {
+    try {
+      JsonReader reader = new JsonReader(new StringReader(text));
+      reader.beginObject();
+      // the server writes "event" first, any other layout goes through the tree based processors
+      if (!reader.hasNext() || !"event".equals(reader.nextName()) || reader.peek() != JsonToken.STRING) {
+        return false;
+      }
+      String event = reader.nextString();
+      if (event.equals(ANALYSIS_NOTIFICATION_HIGHTLIGHTS)) {
+        if (!skipToParams(reader)) {
+          return false;
+        }
+        processHighlights(reader);
+        return true;
+      }
+      if (event.equals(ANALYSIS_NOTIFICATION_NAVIGATION)) {
+        if (!skipToParams(reader)) {
+          return false;
+        }
+        processNavigation(reader);
+        return true;
+      }
+      return false;
+    } catch (IOException e) {
+      throw new JsonSyntaxException("Parse server message failed: " + text, e);
+    } catch (IllegalStateException e) {
+      throw new JsonSyntaxException("Parse server message failed: " + text, e);
+    } catch (NumberFormatException e) {
+      throw new JsonSyntaxException("Parse server message failed: " + text, e);
+    }
+  }
+
+  private void processHighlights(JsonReader reader) throws IOException {
+    String file = null;
+    List<HighlightRegion> regions = HighlightRegion.EMPTY_LIST;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("file")) {
+        file = reader.nextString();
+      } else if (name.equals("regions")) {
+        regions = readHighlightRegions(reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    // notify listener
+    listener.computedHighlights(file, regions);
+  }
+
+  private void processNavigation(JsonReader reader) throws IOException {
+    String file = null;
+    String[] targetFiles = null;
+    List<NavigationTarget> targets = NavigationTarget.EMPTY_LIST;
+    List<NavigationRegion> regions = NavigationRegion.EMPTY_LIST;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("file")) {
+        file = reader.nextString();
+      } else if (name.equals("files")) {
+        targetFiles = readStringArray(reader);
+      } else if (name.equals("targets")) {
+        targets = readNavigationTargets(reader);
+      } else if (name.equals("regions")) {
+        regions = readNavigationRegions(reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    // the members may come in any order, so link regions and targets once everything is read
+    if (targetFiles != null) {
+      for (NavigationTarget target : targets) {
+        target.lookupFile(targetFiles);
+      }
+    }
+    for (NavigationRegion region : regions) {
+      region.lookupTargets(targets);
+    }
+    // notify listener
+    listener.computedNavigation(file, regions);
+  }
+
+  private static List<HighlightRegion> readHighlightRegions(JsonReader reader) throws IOException {
+    List<HighlightRegion> regions = new ArrayList<HighlightRegion>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      String type = null;
+      int offset = 0;
+      int length = 0;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (name.equals("type")) {
+          type = reader.nextString();
+        } else if (name.equals("offset")) {
+          offset = reader.nextInt();
+        } else if (name.equals("length")) {
+          length = reader.nextInt();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      regions.add(new HighlightRegion(type, offset, length));
+    }
+    reader.endArray();
+    return regions;
+  }
+
+  private static List<NavigationRegion> readNavigationRegions(JsonReader reader) throws IOException {
+    List<NavigationRegion> regions = new ArrayList<NavigationRegion>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      int offset = 0;
+      int length = 0;
+      int[] targets = null;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (name.equals("offset")) {
+          offset = reader.nextInt();
+        } else if (name.equals("length")) {
+          length = reader.nextInt();
+        } else if (name.equals("targets")) {
+          targets = readIntArray(reader);
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      regions.add(new NavigationRegion(offset, length, targets != null ? targets : new int[0]));
+    }
+    reader.endArray();
+    return regions;
+  }
+
+  private static List<NavigationTarget> readNavigationTargets(JsonReader reader) throws IOException {
+    List<NavigationTarget> targets = new ArrayList<NavigationTarget>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      String kind = null;
+      int fileIndex = 0;
+      int offset = 0;
+      int length = 0;
+      int startLine = 0;
+      int startColumn = 0;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (name.equals("kind")) {
+          kind = reader.nextString();
+        } else if (name.equals("fileIndex")) {
+          fileIndex = reader.nextInt();
+        } else if (name.equals("offset")) {
+          offset = reader.nextInt();
+        } else if (name.equals("length")) {
+          length = reader.nextInt();
+        } else if (name.equals("startLine")) {
+          startLine = reader.nextInt();
+        } else if (name.equals("startColumn")) {
+          startColumn = reader.nextInt();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      targets.add(new NavigationTarget(kind, fileIndex, offset, length, startLine, startColumn));
+    }
+    reader.endArray();
+    return targets;
+  }
+
+  private static int[] readIntArray(JsonReader reader) throws IOException {
+    int[] ints = new int[4];
+    int size = 0;
+    reader.beginArray();
+    while (reader.hasNext()) {
+      if (size == ints.length) {
+        int[] newInts = new int[size * 2];
+        System.arraycopy(ints, 0, newInts, 0, size);
+        ints = newInts;
+      }
+      ints[size++] = reader.nextInt();
+    }
+    reader.endArray();
+    if (size == ints.length) {
+      return ints;
+    }
+    int[] result = new int[size];
+    System.arraycopy(ints, 0, result, 0, size);
+    return result;
+  }
+
+  private static String[] readStringArray(JsonReader reader) throws IOException {
+    List<String> strings = new ArrayList<String>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      strings.add(reader.nextString());
+    }
+    reader.endArray();
+    return strings.toArray(new String[strings.size()]);
+  }
+
+  /**
+   * Skips the top-level members until "params" is reached. Return {@code false} if the response
+   * has no "params".
+   */
+  private static boolean skipToParams(JsonReader reader) throws IOException {
+    while (reader.hasNext()) {
+      if (reader.nextName().equals("params")) {
+        return true;
+      }
+      reader.skipValue();
+    }
+    return false;
+  }
+}
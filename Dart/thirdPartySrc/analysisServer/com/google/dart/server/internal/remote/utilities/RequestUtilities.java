@@ -815,6 +815,39 @@ public class RequestUtilities {
     return request.getAsJsonPrimitive(ID).getAsString();
   }
 
+  /**
+   * Return the method of the given request, or {@code null} if the request has no method.
+   */
+  public static String getMethod(JsonObject request) {
+    return getRequestMethod(request);
+  }
+
+  /**
+   * Return {@code true} if the given request is issued on behalf of a user waiting in the editor:
+   * code completion, hover, navigation, quick assists and fixes, formatting.
+   */
+  public static boolean isInteractiveRequest(JsonObject request) {
+    String method = getRequestMethod(request);
+    return METHOD_COMPLETION_GET_SUGGESTIONS.equals(method) ||
+           METHOD_ANALYSIS_GET_HOVER.equals(method) ||
+           METHOD_ANALYSIS_GET_NAVIGATION.equals(method) ||
+           METHOD_EDIT_GET_ASSISTS.equals(method) ||
+           METHOD_EDIT_GET_FIXES.equals(method) ||
+           METHOD_EDIT_FORMAT.equals(method);
+  }
+
+  /**
+   * Return {@code true} if the given request may be delayed in favor of interactive requests:
+   * searches, refactorings and library dependencies.
+   */
+  public static boolean isBackgroundRequest(JsonObject request) {
+    String method = getRequestMethod(request);
+    return method != null && (method.startsWith("search.") ||
+                              METHOD_EDIT_GET_REFACTORING.equals(method) ||
+                              METHOD_EDIT_GET_AVAILABLE_REFACTORING.equals(method) ||
+                              METHOD_ANALYSIS_GET_LIBRARY_DEPENDENCIES.equals(method));
+  }
+
   /**
    * Return {@code true} if the given request is a version request.
    */
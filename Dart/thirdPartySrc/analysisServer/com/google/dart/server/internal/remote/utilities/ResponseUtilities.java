@@ -14,6 +14,8 @@
 package com.google.dart.server.internal.remote.utilities;
 
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
 
 /**
  * A utilities class for generating the analysis server json responses.
@@ -41,6 +43,18 @@ public class ResponseUtilities {
     return response;
   }
 
+  /**
+   * Parse the given line of the server output into a response {@link JsonObject}.
+   */
+  public static JsonObject parseResponse(String line) {
+    try {
+      return (JsonObject) new JsonParser().parse(line);
+    } catch (JsonSyntaxException e) {
+      // Include the line in the message so that we can better diagnose the problem
+      throw new JsonSyntaxException("Parse server message failed: " + line, e);
+    }
+  }
+
   /**
    * Set "id" property for the given response.
    */
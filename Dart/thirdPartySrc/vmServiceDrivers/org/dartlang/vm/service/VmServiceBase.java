@@ -383,7 +383,10 @@ abstract class VmServiceBase implements VmServiceConst {
       Logging.getLogger().logError("Response missing " + ID, e);
       return;
     }
-    Consumer consumer = consumerMap.remove(id);
+    Consumer consumer;
+    synchronized (consumerMapLock) {
+      consumer = consumerMap.remove(id);
+    }
     if (consumer == null) {
       Logging.getLogger().logError("No consumer associated with " + ID + ": " + id);
       return;
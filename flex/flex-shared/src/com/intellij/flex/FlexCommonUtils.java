@@ -21,6 +21,7 @@ import com.intellij.util.ArrayUtil;
 import com.intellij.util.PairConsumer;
 import com.intellij.util.PathUtilRt;
 import com.intellij.util.SystemProperties;
+import com.intellij.util.xml.NanoXmlUtil;
 import gnu.trove.THashMap;
 import org.jdom.Element;
 import org.jdom.JDOMException;
@@ -292,11 +293,71 @@ public class FlexCommonUtils {
     return buf.toString();
   }
 
+  /**
+   * Looks through input stream containing XML document and finds all entries of XML elements listed in <code>xmlElements</code>.
+   * Content of these elements is put to result map. XML namespaces are not taken into consideration.
+   *
+   * @param xmlInputStream input stream with xml content to parse
+   * @param xmlElements    list of XML elements to look for.
+   *                       Format is: <code>"&lt;root_element&gt;&lt;child_element&gt;&lt;subelement_to_look_for&gt;"</code>.
+   *                       Listed XML elements SHOULD NOT contain subelements
+   * @return map, keys are XML elements listed in <code>xmlElements</code>,
+   *         values are all entries of respective element (may be empty list)
+   */
+  public static Map<String, List<String>> findXMLElements(@NotNull final InputStream xmlInputStream, final List<String> xmlElements) {
+    final Map<String, List<String>> resultMap = new HashMap<String, List<String>>();
+    for (final String element : xmlElements) {
+      resultMap.put(element, new ArrayList<String>());
+    }
+
+    NanoXmlUtil.parse(xmlInputStream, new NanoXmlUtil.IXMLBuilderAdapter() {
+
+      private String currentElement = "";
+      private final StringBuilder currentElementContent = new StringBuilder();
+
+      @Override
+      public void startElement(final String name, final String nsPrefix, final String nsURI, final String systemID, final int lineNr)
+        throws Exception {
+        currentElement += "<" + name + ">";
+      }
+
+      @Override
+      public void endElement(final String name, final String nsPrefix, final String nsURI) throws Exception {
+        if (xmlElements.contains(currentElement)) {
+          resultMap.get(currentElement).add(currentElementContent.toString());
+          currentElementContent.delete(0, currentElementContent.length());
+        }
+        assert currentElement.endsWith("<" + name + ">");
+        currentElement = currentElement.substring(0, currentElement.length() - (name.length() + 2));
+      }
+
+      @Override
+      public void addPCData(final Reader reader, final String systemID, final int lineNr) throws Exception {
+        if (xmlElements.contains(currentElement)) {
+          char[] chars = new char[128];
+          int read;
+          while ((read = reader.read(chars)) > 0) {
+            currentElementContent.append(chars, 0, read);
+          }
+        }
+      }
+    });
+
+    return resultMap;
+  }
+
   public static String getFlexCompilerWorkDirPath(final JpsProject project) {
     final File dir = JpsModelSerializationDataService.getBaseDirectory(project);
     return dir == null ? "" : dir.getPath();
   }
 
+  /**
+   * @param configuredCount <code>BUILT_IN_COMPILER_PROCESSES</code> from the project settings, 0 means half of the available processors
+   */
+  public static int getBuiltInCompilerProcessCount(final int configuredCount) {
+    return configuredCount > 0 ? configuredCount : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+  }
+
   @Nullable
   public static String findXMLElement(final File file, final String xmlElement) {
     try {
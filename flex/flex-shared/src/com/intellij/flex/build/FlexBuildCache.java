@@ -0,0 +1,433 @@
+package com.intellij.flex.build;
+
+import com.intellij.flex.FlexCommonUtils;
+import com.intellij.flex.model.bc.BuildConfigurationNature;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.containers.ContainerUtil;
+import gnu.trove.THashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent cache of content hashes of the inputs and of the output of compiled build configurations. Unlike timestamps, content hashes
+ * survive IDE restarts and branch switches that touch files without changing them, so a build configuration whose sources, generated
+ * config files and dependency SWCs are the same as at the previous successful compilation and whose output has not been modified can be
+ * skipped.
+ * <p/>
+ * The cache is stored in the project build system directory and is used both by the in-IDE compiler and by the external build, whoever
+ * saves last wins. File hashes are memoized by file length and timestamp, so a file is read only if it has been touched.
+ * The class is thread safe.
+ */
+public class FlexBuildCache {
+
+  private static final Logger LOG = Logger.getInstance(FlexBuildCache.class.getName());
+
+  private static final String FILE_NAME = "flex-build-cache.dat";
+  private static final int VERSION = 1;
+
+  private static final String[] TAGS_FOR_FILE_PATHS_IN_CONFIG_FILE =
+    {"<flex-config><compiler><external-library-path><path-element>", "<flex-config><compiler><local-font-paths><path-element>",
+      "<flex-config><compiler><library-path><path-element>", "<flex-config><compiler><namespaces><namespace><manifest>",
+      /*"<flex-config><compiler><source-path><path-element>", "<flex-config><include-sources><path-element>",*/
+      "<flex-config><compiler><theme><filename>", "<flex-config><include-file><path>",
+      "<flex-config><include-stylesheet><path>", "<flex-config><file-specs><path-element>",
+      "<flex-config><compiler><include-libraries><library>", "<flex-config><compiler><local-fonts-snapshot>",
+      "<flex-config><compiler><defaults-css-url>", "<flex-config><compiler><defaults-css-files><filename>",
+      "<flex-config><load-config>", "<flex-config><load-externs>", "<flex-config><link-report>",
+      "<flex-config><services>", "<flex-config><metadata><raw-metadata>",
+      // "<flex-config><output>"   intentionally excluded, because already handled
+    };
+
+  private final File myFile;
+
+  // build configuration key -> hashes of its inputs and output at the last successful compilation, guarded by this
+  private final Map<String, Entry> myEntries = new THashMap<String, Entry>();
+  private final ConcurrentMap<String, FileHash> myFileHashes = ContainerUtil.newConcurrentMap();
+  private final Set<String> myUsedFilePaths = ContainerUtil.newConcurrentSet();
+  private volatile boolean myChanged;
+
+  private final AtomicInteger myHitCount = new AtomicInteger();
+  private final AtomicInteger myMissCount = new AtomicInteger();
+
+  public FlexBuildCache(@NotNull final File projectSystemDir) {
+    myFile = new File(projectSystemDir, FILE_NAME);
+    load();
+  }
+
+  @NotNull
+  public static String getKey(@NotNull final String moduleName, @NotNull final String bcName, @NotNull final String outputFilePath) {
+    return moduleName + "/" + bcName + "/" + FileUtil.toSystemIndependentName(outputFilePath);
+  }
+
+  /**
+   * Config files, files referenced in them and custom AIR descriptors. Dependency SWCs and outputs of dependency BCs are referenced in the
+   * generated config file. The in-IDE compiler and the external build must collect the dependencies of a BC here, otherwise they get
+   * different hashes for the same BC and keep invalidating each other's entries.
+   *
+   * @param configFiles                   generated config file and, for BCs that are not temporary, the additional config file
+   * @param workDirPath                   compiler work directory, relative paths in the config files may be resolved against it
+   * @param tempBCAdditionalConfigFilePath additional config file of a temporary BC, it is merged into the generated config file
+   * @param desktopDescriptorPath         custom AIR desktop descriptor, <code>null</code> if the descriptor is generated
+   * @param androidDescriptorPath         custom Android descriptor, <code>null</code> if the descriptor is generated or packaging is off
+   * @param iosDescriptorPath             custom iOS descriptor, <code>null</code> if the descriptor is generated or packaging is off
+   */
+  @NotNull
+  public static List<File> getFileDependencies(@NotNull final Collection<File> configFiles,
+                                               @NotNull final String workDirPath,
+                                               @Nullable final String tempBCAdditionalConfigFilePath,
+                                               @NotNull final BuildConfigurationNature nature,
+                                               @Nullable final String desktopDescriptorPath,
+                                               @Nullable final String androidDescriptorPath,
+                                               @Nullable final String iosDescriptorPath) {
+    final List<File> result = new ArrayList<File>();
+
+    for (File configFile : configFiles) {
+      addFileDependencies(result, configFile, workDirPath);
+    }
+
+    if (!StringUtil.isEmpty(tempBCAdditionalConfigFilePath)) {
+      addFileDependency(result, tempBCAdditionalConfigFilePath);
+    }
+
+    if (nature.isApp() && !nature.isWebPlatform()) {
+      if (nature.isDesktopPlatform()) {
+        addFileDependency(result, desktopDescriptorPath);
+      }
+      else {
+        addFileDependency(result, androidDescriptorPath);
+        addFileDependency(result, iosDescriptorPath);
+      }
+    }
+
+    return result;
+  }
+
+  private static void addFileDependencies(final Collection<File> result, final File configFile, final String workDirPath) {
+    addFileDependency(result, configFile.getPath());
+
+    try {
+      final InputStream stream = new FileInputStream(configFile);
+      try {
+        final Map<String, List<String>> elementsMap =
+          FlexCommonUtils.findXMLElements(stream, Arrays.asList(TAGS_FOR_FILE_PATHS_IN_CONFIG_FILE));
+        for (List<String> filePathList : elementsMap.values()) {
+          for (String filePath : filePathList) {
+            addFileDependency(result, filePath, configFile.getParent(), workDirPath);
+          }
+        }
+      }
+      finally {
+        stream.close();
+      }
+    }
+    catch (IOException e) {/*ignore*/}
+  }
+
+  private static void addFileDependency(final Collection<File> result, @Nullable final String filePath, final String... potentialBaseDirs) {
+    if (StringUtil.isEmpty(filePath)) return;
+
+    final File file = new File(FileUtil.toSystemDependentName(filePath));
+    if (file.exists()) {
+      result.add(file);
+    }
+    else {
+      for (String baseDir : potentialBaseDirs) {
+        final File file1 = new File(FileUtil.toSystemDependentName(baseDir + '/' + filePath));
+        if (file1.exists()) {
+          result.add(file1);
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Everything that affects the compilation of a BC but is not in its input files. Additional compiler options are passed in the command
+   * line, so they are not in the config files.
+   */
+  @NotNull
+  public static List<String> getOptions(@Nullable final String sdkHome,
+                                        @Nullable final String sdkVersion,
+                                        final boolean preferAsc20,
+                                        @NotNull final String projectLevelAdditionalOptions,
+                                        @NotNull final String moduleLevelAdditionalOptions,
+                                        @NotNull final String bcAdditionalOptions) {
+    return Arrays.asList(StringUtil.notNullize(sdkHome), StringUtil.notNullize(sdkVersion), String.valueOf(preferAsc20),
+                         projectLevelAdditionalOptions, moduleLevelAdditionalOptions, bcAdditionalOptions);
+  }
+
+  /**
+   * @param sourceRoots      all source roots of the module including test ones, because FlexUnit BCs compile tests
+   * @param fileDependencies see {@link #getFileDependencies}
+   * @param options          see {@link #getOptions}
+   */
+  @NotNull
+  public String computeInputsHash(@NotNull final Collection<File> sourceRoots,
+                                  @NotNull final Collection<File> fileDependencies,
+                                  @NotNull final Collection<String> options) {
+    final List<File> inputs = new ArrayList<File>(sourceRoots);
+    inputs.addAll(fileDependencies);
+    return computeInputsHash(inputs, options);
+  }
+
+  /**
+   * @param inputs  files and directories, for directories all files under them are hashed together with their relative paths
+   * @param options anything else that affects the compilation but is not in the <code>inputs</code>, like SDK home and compiler options
+   */
+  @NotNull
+  public String computeInputsHash(@NotNull final Collection<File> inputs, @NotNull final Collection<String> options) {
+    final MessageDigest digest = createDigest();
+
+    for (String option : options) {
+      digest.update(option.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte)0);
+    }
+
+    final List<File> sortedInputs = new ArrayList<File>(inputs);
+    Collections.sort(sortedInputs);
+    for (File input : sortedInputs) {
+      digest.update(FileUtil.toSystemIndependentName(input.getPath()).getBytes(StandardCharsets.UTF_8));
+      digest.update((byte)0);
+      if (input.isDirectory()) {
+        hashDirectory(digest, input, "");
+      }
+      else {
+        final String hash = getFileHash(input);
+        digest.update((hash == null ? "-" : hash).getBytes(StandardCharsets.UTF_8));
+      }
+    }
+
+    return StringUtil.toHexString(digest.digest());
+  }
+
+  private void hashDirectory(@NotNull final MessageDigest digest, @NotNull final File dir, @NotNull final String relativePath) {
+    final File[] children = dir.listFiles();
+    if (children == null) return;
+
+    Arrays.sort(children);
+    for (File child : children) {
+      final String childRelativePath = relativePath + "/" + child.getName();
+      if (child.isDirectory()) {
+        hashDirectory(digest, child, childRelativePath);
+      }
+      else {
+        final String hash = getFileHash(child);
+        if (hash != null) {
+          digest.update(childRelativePath.getBytes(StandardCharsets.UTF_8));
+          digest.update((byte)0);
+          digest.update(hash.getBytes(StandardCharsets.UTF_8));
+        }
+      }
+    }
+  }
+
+  /**
+   * Counts a hit or a miss.
+   *
+   * @return <code>true</code> if the inputs hash is the same as at the last successful compilation and the output file has not changed
+   */
+  public boolean isUpToDate(@NotNull final String key, @NotNull final String inputsHash, @NotNull final File outputFile) {
+    final Entry entry;
+    synchronized (this) {
+      entry = myEntries.get(key);
+    }
+
+    final boolean upToDate = entry != null &&
+                             entry.inputsHash.equals(inputsHash) &&
+                             entry.outputHash.equals(getFileHash(outputFile));
+    (upToDate ? myHitCount : myMissCount).incrementAndGet();
+    return upToDate;
+  }
+
+  public void update(@NotNull final String key, @NotNull final String inputsHash, @NotNull final File outputFile) {
+    final String outputHash = getFileHash(outputFile);
+    synchronized (this) {
+      if (outputHash == null) {
+        myEntries.remove(key);
+      }
+      else {
+        myEntries.put(key, new Entry(inputsHash, outputHash));
+      }
+    }
+    myChanged = true;
+  }
+
+  public void remove(@NotNull final String key) {
+    synchronized (this) {
+      if (myEntries.remove(key) == null) return;
+    }
+    myChanged = true;
+  }
+
+  public int getHitCount() {
+    return myHitCount.get();
+  }
+
+  public int getMissCount() {
+    return myMissCount.get();
+  }
+
+  @Nullable
+  private String getFileHash(@NotNull final File file) {
+    final String path = file.getPath();
+    myUsedFilePaths.add(path);
+
+    final long length = file.length();
+    final long timestamp = file.lastModified();
+    if (timestamp == 0) {
+      myFileHashes.remove(path);
+      return null; // doesn't exist
+    }
+
+    final FileHash cached = myFileHashes.get(path);
+    if (cached != null && cached.length == length && cached.timestamp == timestamp) {
+      return cached.hash;
+    }
+
+    try {
+      final MessageDigest digest = createDigest();
+      final byte[] buffer = new byte[64 * 1024];
+      final InputStream stream = new FileInputStream(file);
+      try {
+        int read;
+        while ((read = stream.read(buffer)) > 0) {
+          digest.update(buffer, 0, read);
+        }
+      }
+      finally {
+        stream.close();
+      }
+
+      final String hash = StringUtil.toHexString(digest.digest());
+      myFileHashes.put(path, new FileHash(length, timestamp, hash));
+      myChanged = true;
+      return hash;
+    }
+    catch (IOException e) {
+      myFileHashes.remove(path);
+      return null;
+    }
+  }
+
+  @NotNull
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void load() {
+    if (!myFile.isFile()) return;
+
+    try {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(myFile)));
+      try {
+        if (in.readInt() != VERSION) return;
+
+        final int entryCount = in.readInt();
+        for (int i = 0; i < entryCount; i++) {
+          final String key = in.readUTF();
+          myEntries.put(key, new Entry(in.readUTF(), in.readUTF()));
+        }
+
+        final int fileCount = in.readInt();
+        for (int i = 0; i < fileCount; i++) {
+          final String path = in.readUTF();
+          myFileHashes.put(path, new FileHash(in.readLong(), in.readLong(), in.readUTF()));
+        }
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Failed to load " + myFile.getPath() + ": " + e.getMessage());
+      myEntries.clear();
+      myFileHashes.clear();
+    }
+  }
+
+  /**
+   * Writes the cache if anything has changed. Hashes of the deleted files that were not used by this build are dropped.
+   */
+  public synchronized void save() {
+    if (!myChanged) return;
+
+    final File tempFile = new File(myFile.getPath() + ".tmp");
+    try {
+      FileUtil.createParentDirs(tempFile);
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      try {
+        out.writeInt(VERSION);
+
+        out.writeInt(myEntries.size());
+        for (Map.Entry<String, Entry> entry : myEntries.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.writeUTF(entry.getValue().inputsHash);
+          out.writeUTF(entry.getValue().outputHash);
+        }
+
+        final Map<String, FileHash> fileHashes = new THashMap<String, FileHash>();
+        for (Map.Entry<String, FileHash> entry : myFileHashes.entrySet()) {
+          if (myUsedFilePaths.contains(entry.getKey()) || new File(entry.getKey()).exists()) {
+            fileHashes.put(entry.getKey(), entry.getValue());
+          }
+        }
+
+        out.writeInt(fileHashes.size());
+        for (Map.Entry<String, FileHash> entry : fileHashes.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.writeLong(entry.getValue().length);
+          out.writeLong(entry.getValue().timestamp);
+          out.writeUTF(entry.getValue().hash);
+        }
+      }
+      finally {
+        out.close();
+      }
+
+      FileUtil.delete(myFile);
+      FileUtil.rename(tempFile, myFile);
+      myChanged = false;
+    }
+    catch (IOException e) {
+      LOG.info("Failed to save " + myFile.getPath() + ": " + e.getMessage());
+      FileUtil.delete(tempFile);
+    }
+  }
+
+  private static class Entry {
+    @NotNull private final String inputsHash;
+    @NotNull private final String outputHash;
+
+    private Entry(@NotNull final String inputsHash, @NotNull final String outputHash) {
+      this.inputsHash = inputsHash;
+      this.outputHash = outputHash;
+    }
+  }
+
+  private static class FileHash {
+    private final long length;
+    private final long timestamp;
+    @NotNull private final String hash;
+
+    private FileHash(final long length, final long timestamp, @NotNull final String hash) {
+      this.length = length;
+      this.timestamp = timestamp;
+      this.hash = hash;
+    }
+  }
+}
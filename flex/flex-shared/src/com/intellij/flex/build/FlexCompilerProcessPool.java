@@ -0,0 +1,188 @@
+package com.intellij.flex.build;
+
+import com.intellij.openapi.util.Comparing;
+import gnu.trove.THashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routing and retirement policy of the pool of built-in Flex compiler processes, shared by the in-IDE compiler and the external build.
+ * The pool doesn't start, stop or talk to processes itself, it only decides which process gets a compilation and when another one is
+ * needed:
+ * <ul>
+ * <li>a compilation goes to the process that compiled the same BC before if that process is not busier than the least busy one,
+ * otherwise to the least busy one;</li>
+ * <li>another process is started only if all running ones are busy and the maximum number of processes is not reached;</li>
+ * <li>a process that ran out of memory gets no new compilations, a new one is started instead when needed;</li>
+ * <li>all processes are stopped when the SDK changes.</li>
+ * </ul>
+ * A compilation should be registered in the chosen process while holding the pool lock, so that concurrent choices see the load.
+ * The process lock may be taken while holding the pool lock, but not the other way round.
+ */
+public abstract class FlexCompilerProcessPool<P> {
+
+  private String mySdkHome;
+
+  private final List<P> myProcesses = new ArrayList<P>(); // processes that accept new compilations
+  private final List<P> myAllProcesses = new ArrayList<P>(); // including retired and stopped ones, for statistics
+  private final Map<String, P> myAffinity = new THashMap<String, P>();
+  private int myStartingProcessCount;
+
+  protected abstract int getActiveCompilationsNumber(@NotNull P process);
+
+  /**
+   * Called without the pool lock held.
+   */
+  protected abstract void stopProcesses(@NotNull List<P> processes);
+
+  public synchronized boolean canBeUsedForSdk(@Nullable final String sdkHome) {
+    return mySdkHome == null || mySdkHome.equals(sdkHome);
+  }
+
+  /**
+   * Stops all processes if the SDK has changed, waits for the processes being started if there is no running one, and decides whether
+   * one more process is needed. If this method returns {@code true} the caller must start a process and then call
+   * {@link #processStartFinished(Object, String)} whatever the outcome.
+   */
+  public boolean reserveProcessStart(@Nullable final String sdkHome, final int maxProcessCount) throws InterruptedException {
+    List<P> processesToStop = Collections.emptyList();
+    try {
+      synchronized (this) {
+        if (!Comparing.equal(sdkHome, mySdkHome)) {
+          processesToStop = removeAllProcesses();
+          mySdkHome = sdkHome;
+        }
+
+        while (myProcesses.isEmpty() && myStartingProcessCount > 0) {
+          wait();
+        }
+
+        if (!myProcesses.isEmpty() && (hasIdleProcess() || myProcesses.size() + myStartingProcessCount >= maxProcessCount)) {
+          return false;
+        }
+
+        myStartingProcessCount++;
+        return true;
+      }
+    }
+    finally {
+      if (!processesToStop.isEmpty()) {
+        stopProcesses(processesToStop);
+      }
+    }
+  }
+
+  /**
+   * @param process {@code null} if the process failed to start
+   * @param sdkHome the SDK the process was started for; the process is stopped right away if the SDK has changed meanwhile
+   */
+  public void processStartFinished(@Nullable final P process, @Nullable final String sdkHome) {
+    boolean stop = false;
+
+    synchronized (this) {
+      myStartingProcessCount--;
+      if (process != null) {
+        myAllProcesses.add(process);
+        if (Comparing.equal(sdkHome, mySdkHome)) {
+          myProcesses.add(process);
+        }
+        else {
+          stop = true;
+        }
+      }
+      notifyAll();
+    }
+
+    if (stop) {
+      stopProcesses(Collections.singletonList(process));
+    }
+  }
+
+  /**
+   * @return number of processes that accept new compilations
+   */
+  public synchronized int getProcessCount() {
+    return myProcesses.size();
+  }
+
+  private boolean hasIdleProcess() {
+    for (P process : myProcesses) {
+      if (getActiveCompilationsNumber(process) == 0) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Chooses the process for a compilation and remembers it for the next compilation with the same affinity key.
+   *
+   * @param affinityKey identifies the BC, so that it is compiled by the process that has its incremental compilation data if possible
+   * @return {@code null} if there are no running processes
+   */
+  @Nullable
+  public synchronized P chooseProcess(@Nullable final String affinityKey) {
+    P result = null;
+    int resultLoad = 0;
+    for (P process : myProcesses) {
+      final int load = getActiveCompilationsNumber(process);
+      if (result == null || load < resultLoad) {
+        result = process;
+        resultLoad = load;
+      }
+    }
+
+    final P previous = affinityKey == null ? null : myAffinity.get(affinityKey);
+    if (previous != null && result != null && myProcesses.contains(previous) && getActiveCompilationsNumber(previous) <= resultLoad) {
+      result = previous;
+    }
+
+    if (result != null && affinityKey != null) {
+      myAffinity.put(affinityKey, result);
+    }
+    return result;
+  }
+
+  /**
+   * The process gets no new compilations, for example because it ran out of memory. It is up to the caller to stop it when its current
+   * compilations finish.
+   */
+  public synchronized void retireProcess(@NotNull final P process) {
+    myProcesses.remove(process);
+  }
+
+  public synchronized void processStopped(@NotNull final P process) {
+    myProcesses.remove(process);
+    notifyAll();
+  }
+
+  public void stopAllProcesses() {
+    final List<P> processes;
+    synchronized (this) {
+      processes = removeAllProcesses();
+    }
+    stopProcesses(processes);
+  }
+
+  private List<P> removeAllProcesses() {
+    final List<P> processes = new ArrayList<P>(myAllProcesses);
+    myProcesses.clear();
+    myAffinity.clear();
+    return processes;
+  }
+
+  /**
+   * @return all processes including retired and stopped ones that have not been {@link #forgetProcess(Object) forgotten}
+   */
+  @NotNull
+  public synchronized List<P> getAllProcesses() {
+    return new ArrayList<P>(myAllProcesses);
+  }
+
+  public synchronized void forgetProcess(@NotNull final P process) {
+    myAllProcesses.remove(process);
+  }
+}
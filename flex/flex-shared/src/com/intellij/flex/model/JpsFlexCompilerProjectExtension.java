@@ -21,6 +21,7 @@ public class JpsFlexCompilerProjectExtension extends JpsElementBase<JpsFlexCompi
   public boolean USE_MXMLC_COMPC = false;
   public boolean PREFER_ASC_20 = true;
   public int MAX_PARALLEL_COMPILATIONS = 4;
+  public int BUILT_IN_COMPILER_PROCESSES = 0; // 0 means half of the available processors
   public int HEAP_SIZE_MB = 512;
   public String VM_OPTIONS = "";
 
@@ -35,6 +36,7 @@ public class JpsFlexCompilerProjectExtension extends JpsElementBase<JpsFlexCompi
     USE_MXMLC_COMPC = original.USE_MXMLC_COMPC;
     PREFER_ASC_20 = original.PREFER_ASC_20;
     MAX_PARALLEL_COMPILATIONS = original.MAX_PARALLEL_COMPILATIONS;
+    BUILT_IN_COMPILER_PROCESSES = original.BUILT_IN_COMPILER_PROCESSES;
     HEAP_SIZE_MB = original.HEAP_SIZE_MB;
     VM_OPTIONS = original.VM_OPTIONS;
   }
@@ -52,6 +54,7 @@ public class JpsFlexCompilerProjectExtension extends JpsElementBase<JpsFlexCompi
     USE_MXMLC_COMPC = modified.USE_MXMLC_COMPC;
     PREFER_ASC_20 = modified.PREFER_ASC_20;
     MAX_PARALLEL_COMPILATIONS = modified.MAX_PARALLEL_COMPILATIONS;
+    BUILT_IN_COMPILER_PROCESSES = modified.BUILT_IN_COMPILER_PROCESSES;
     HEAP_SIZE_MB = modified.HEAP_SIZE_MB;
     VM_OPTIONS = modified.VM_OPTIONS;
   }
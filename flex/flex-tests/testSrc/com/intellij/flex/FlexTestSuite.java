@@ -52,6 +52,9 @@ public class FlexTestSuite extends TestCase {
     testSuite.addTestSuite(FlexColorAnnotatorTest.class);
     testSuite.addTestSuite(FlexProjectViewTest.class);
     testSuite.addTestSuite(FlexCompilerConfigTest.class);
+    testSuite.addTestSuite(FlexBuildCacheTest.class);
+    testSuite.addTestSuite(FlexCompilerProcessPoolTest.class);
+    testSuite.addTestSuite(SwfStubCacheTest.class);
 
     testSuite.addTestSuite(ActionScriptRearrangerTest.class);
     testSuite.addTestSuite(FlashBuilderImportTest.class);
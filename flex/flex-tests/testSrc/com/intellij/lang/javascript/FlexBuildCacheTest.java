@@ -0,0 +1,118 @@
+package com.intellij.lang.javascript;
+
+import com.intellij.flex.build.FlexBuildCache;
+import com.intellij.flex.model.bc.BuildConfigurationNature;
+import com.intellij.flex.model.bc.OutputType;
+import com.intellij.flex.model.bc.TargetPlatform;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.UsefulTestCase;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class FlexBuildCacheTest extends UsefulTestCase {
+
+  private File myDir;
+  private File mySrcDir;
+  private File myOutputFile;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = new File(getTempDir(), "flex-build-cache");
+    mySrcDir = new File(myDir, "src");
+    FileUtil.writeToFile(new File(mySrcDir, "foo/Foo.as"), "package foo { public class Foo {} }");
+    FileUtil.writeToFile(new File(mySrcDir, "Main.as"), "package { public class Main {} }");
+    myOutputFile = new File(myDir, "out/Main.swf");
+    FileUtil.writeToFile(myOutputFile, "swf");
+  }
+
+  public void testUpToDateAfterRestartAndTouch() throws Exception {
+    final String key = FlexBuildCache.getKey("module", "bc", myOutputFile.getPath());
+    final List<File> inputs = Collections.singletonList(mySrcDir);
+    final List<String> options = Arrays.asList("sdk", "-debug");
+
+    FlexBuildCache cache = new FlexBuildCache(myDir);
+    final String hash = cache.computeInputsHash(inputs, options);
+    assertFalse(cache.isUpToDate(key, hash, myOutputFile));
+    cache.update(key, hash, myOutputFile);
+    cache.save();
+
+    // a branch switch touches files without changing them
+    final File foo = new File(mySrcDir, "foo/Foo.as");
+    assertTrue(foo.setLastModified(foo.lastModified() - 10000));
+
+    cache = new FlexBuildCache(myDir);
+    assertTrue(cache.isUpToDate(key, cache.computeInputsHash(inputs, options), myOutputFile));
+    assertFalse(cache.isUpToDate(key, cache.computeInputsHash(inputs, Arrays.asList("sdk", "-debug=false")), myOutputFile));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  public void testChangedInputsAndOutput() throws Exception {
+    final String key = FlexBuildCache.getKey("module", "bc", myOutputFile.getPath());
+    final List<File> inputs = Collections.singletonList(mySrcDir);
+    final List<String> options = Collections.emptyList();
+
+    final FlexBuildCache cache = new FlexBuildCache(myDir);
+    cache.update(key, cache.computeInputsHash(inputs, options), myOutputFile);
+
+    FileUtil.writeToFile(new File(mySrcDir, "foo/Bar.as"), "package foo { public class Bar {} }");
+    assertFalse(cache.isUpToDate(key, cache.computeInputsHash(inputs, options), myOutputFile));
+    cache.update(key, cache.computeInputsHash(inputs, options), myOutputFile);
+    assertTrue(cache.isUpToDate(key, cache.computeInputsHash(inputs, options), myOutputFile));
+
+    FileUtil.writeToFile(myOutputFile, "modified swf");
+    assertFalse(cache.isUpToDate(key, cache.computeInputsHash(inputs, options), myOutputFile));
+
+    cache.remove(key);
+    FileUtil.writeToFile(myOutputFile, "swf");
+    assertFalse(cache.isUpToDate(key, cache.computeInputsHash(inputs, options), myOutputFile));
+  }
+
+  public void testSameHashForIdeAndExternalBuild() throws Exception {
+    final File testDir = new File(myDir, "test");
+    FileUtil.writeToFile(new File(testDir, "MainTest.as"), "package { public class MainTest {} }");
+    final File swc = new File(myDir, "libs/lib.swc");
+    FileUtil.writeToFile(swc, "swc");
+    final File descriptor = new File(myDir, "Main-app.xml");
+    FileUtil.writeToFile(descriptor, "<application/>");
+    // dependency SWC is referenced relative to the work dir, the main class by an absolute path
+    final File configFile = new File(myDir, "configs/idea-1-2.xml");
+    FileUtil.writeToFile(configFile, "<flex-config xmlns=\"http://www.adobe.com/2006/flex-config\">" +
+                                     "<compiler><library-path><path-element>libs/lib.swc</path-element></library-path></compiler>" +
+                                     "<file-specs><path-element>" + FileUtil.toSystemIndependentName(mySrcDir.getPath()) +
+                                     "/Main.as</path-element></file-specs></flex-config>");
+
+    final BuildConfigurationNature nature = new BuildConfigurationNature(TargetPlatform.Desktop, true, OutputType.Application);
+    final List<String> options = FlexBuildCache.getOptions("sdk", "4.6", false, "", "", "-debug");
+    final FlexBuildCache cache = new FlexBuildCache(myDir);
+
+    // in-IDE compiler: config files converted from virtual files, source roots including tests
+    final List<File> ideDependencies =
+      FlexBuildCache.getFileDependencies(Collections.singletonList(new File(FileUtil.toSystemIndependentName(configFile.getPath()))),
+                                         FileUtil.toSystemIndependentName(myDir.getPath()), null, nature, descriptor.getPath(), null, null);
+    final String ideHash = cache.computeInputsHash(Arrays.asList(mySrcDir, testDir), ideDependencies, options);
+
+    // external build: source roots of the JPS module come in another order
+    final List<File> jpsDependencies =
+      FlexBuildCache.getFileDependencies(Collections.singletonList(configFile), myDir.getPath(), null, nature, descriptor.getPath(),
+                                         null, null);
+    assertEquals(ideHash, cache.computeInputsHash(Arrays.asList(testDir, mySrcDir), jpsDependencies, options));
+
+    assertTrue(jpsDependencies.contains(swc));
+    assertTrue(jpsDependencies.contains(descriptor));
+    assertTrue(jpsDependencies.contains(new File(mySrcDir, "Main.as")));
+
+    // output of a dependency BC or a library is changed
+    FileUtil.writeToFile(swc, "modified swc");
+    assertFalse(ideHash.equals(cache.computeInputsHash(Arrays.asList(mySrcDir, testDir), ideDependencies, options)));
+
+    // descriptors are not used by web BCs
+    final BuildConfigurationNature webNature = new BuildConfigurationNature(TargetPlatform.Web, true, OutputType.Application);
+    assertFalse(FlexBuildCache.getFileDependencies(Collections.singletonList(configFile), myDir.getPath(), null, webNature,
+                                                   descriptor.getPath(), null, null).contains(descriptor));
+  }
+}
@@ -0,0 +1,172 @@
+package com.intellij.lang.javascript;
+
+import com.intellij.flex.build.FlexCompilerProcessPool;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class FlexCompilerProcessPoolTest extends TestCase {
+
+  private static final String SDK_1 = "/sdk/flex-4.6";
+  private static final String SDK_2 = "/sdk/air-20";
+  private static final int WAIT_TIMEOUT = 10000;
+
+  private static class FakeProcess {
+    private final String myName;
+    private volatile int myActiveCompilations;
+
+    private FakeProcess(final String name) {
+      myName = name;
+    }
+
+    @Override
+    public String toString() {
+      return myName;
+    }
+  }
+
+  private final List<FakeProcess> myStoppedProcesses = Collections.synchronizedList(new ArrayList<FakeProcess>());
+
+  private final FlexCompilerProcessPool<FakeProcess> myPool = new FlexCompilerProcessPool<FakeProcess>() {
+    @Override
+    protected int getActiveCompilationsNumber(@NotNull final FakeProcess process) {
+      return process.myActiveCompilations;
+    }
+
+    @Override
+    protected void stopProcesses(@NotNull final List<FakeProcess> processes) {
+      myStoppedProcesses.addAll(processes);
+    }
+  };
+
+  private FakeProcess startProcess(final String name, final String sdkHome, final int maxProcessCount) throws InterruptedException {
+    assertTrue(myPool.reserveProcessStart(sdkHome, maxProcessCount));
+    final FakeProcess process = new FakeProcess(name);
+    myPool.processStartFinished(process, sdkHome);
+    return process;
+  }
+
+  public void testAffinityAgainstLoad() throws Exception {
+    final FakeProcess p1 = startProcess("p1", SDK_1, 2);
+    p1.myActiveCompilations = 1;
+    final FakeProcess p2 = startProcess("p2", SDK_1, 2);
+
+    assertSame(p2, myPool.chooseProcess("bc1"));
+    p2.myActiveCompilations = 1;
+    assertSame(p1, myPool.chooseProcess("bc2"));
+
+    // the previous process wins a tie
+    assertSame(p2, myPool.chooseProcess("bc1"));
+    assertSame(p1, myPool.chooseProcess("bc2"));
+
+    // but not against a less busy process, and the BC sticks to the new one
+    p2.myActiveCompilations = 3;
+    assertSame(p1, myPool.chooseProcess("bc1"));
+    p2.myActiveCompilations = 1;
+    assertSame(p1, myPool.chooseProcess("bc1"));
+
+    // without a key just the least busy process
+    p1.myActiveCompilations = 2;
+    assertSame(p2, myPool.chooseProcess(null));
+  }
+
+  public void testProcessStartedOnlyIfAllBusy() throws Exception {
+    final FakeProcess p1 = startProcess("p1", SDK_1, 3);
+    assertFalse(myPool.reserveProcessStart(SDK_1, 3));
+
+    p1.myActiveCompilations = 1;
+    final FakeProcess p2 = startProcess("p2", SDK_1, 3);
+    assertFalse(myPool.reserveProcessStart(SDK_1, 3));
+
+    // a process being started counts against the maximum
+    p2.myActiveCompilations = 1;
+    assertTrue(myPool.reserveProcessStart(SDK_1, 3));
+    assertFalse(myPool.reserveProcessStart(SDK_1, 3));
+
+    // a failed start releases the slot
+    myPool.processStartFinished(null, SDK_1);
+    assertEquals(2, myPool.getProcessCount());
+    final FakeProcess p3 = startProcess("p3", SDK_1, 3);
+    p3.myActiveCompilations = 1;
+    assertFalse(myPool.reserveProcessStart(SDK_1, 3));
+    assertEquals(Arrays.asList(p1, p2, p3), myPool.getAllProcesses());
+    assertTrue(myStoppedProcesses.isEmpty());
+  }
+
+  public void testOutOfMemoryRetirementAndReplacement() throws Exception {
+    final FakeProcess p1 = startProcess("p1", SDK_1, 1);
+    assertSame(p1, myPool.chooseProcess("bc"));
+    p1.myActiveCompilations = 1;
+
+    myPool.retireProcess(p1);
+    assertEquals(0, myPool.getProcessCount());
+    assertNull(myPool.chooseProcess("bc"));
+
+    // the retired process doesn't count against the maximum, it is replaced
+    final FakeProcess p2 = startProcess("p2", SDK_1, 1);
+    p2.myActiveCompilations = 5;
+    assertSame(p2, myPool.chooseProcess("bc"));
+
+    // the retired process is stopped by its owner, statistics are still available until it is forgotten
+    myPool.processStopped(p1);
+    assertEquals(Arrays.asList(p1, p2), myPool.getAllProcesses());
+    myPool.forgetProcess(p1);
+    assertEquals(Collections.singletonList(p2), myPool.getAllProcesses());
+    assertTrue(myStoppedProcesses.isEmpty());
+  }
+
+  public void testSdkChangeStopsProcesses() throws Exception {
+    final FakeProcess p1 = startProcess("p1", SDK_1, 2);
+    p1.myActiveCompilations = 1;
+    final FakeProcess p2 = startProcess("p2", SDK_1, 2);
+    assertSame(p2, myPool.chooseProcess("bc"));
+    assertTrue(myPool.canBeUsedForSdk(SDK_1));
+
+    final FakeProcess p3 = startProcess("p3", SDK_2, 2);
+    assertEquals(Arrays.asList(p1, p2), myStoppedProcesses);
+    assertFalse(myPool.canBeUsedForSdk(SDK_1));
+    assertTrue(myPool.canBeUsedForSdk(SDK_2));
+    assertEquals(1, myPool.getProcessCount());
+    assertSame(p3, myPool.chooseProcess("bc"));
+
+    myPool.stopAllProcesses();
+    assertEquals(0, myPool.getProcessCount());
+    assertNull(myPool.chooseProcess("bc"));
+  }
+
+  public void testSdkChangeWhileProcessStarting() throws Exception {
+    assertTrue(myPool.reserveProcessStart(SDK_1, 2));
+
+    // another build switches the SDK and waits for the process being started
+    final AtomicBoolean reserved = new AtomicBoolean();
+    final Thread thread = new Thread(() -> {
+      try {
+        reserved.set(myPool.reserveProcessStart(SDK_2, 2));
+      }
+      catch (InterruptedException ignored) {
+      }
+    }, "FlexCompilerProcessPoolTest");
+    thread.start();
+
+    final long deadline = System.currentTimeMillis() + WAIT_TIMEOUT;
+    while (myPool.canBeUsedForSdk(SDK_1) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(myPool.canBeUsedForSdk(SDK_2));
+    assertTrue(thread.isAlive());
+
+    // the process started for the old SDK is stopped right away and the waiting build starts a new one
+    final FakeProcess p1 = new FakeProcess("p1");
+    myPool.processStartFinished(p1, SDK_1);
+    thread.join(WAIT_TIMEOUT);
+    assertFalse(thread.isAlive());
+    assertTrue(reserved.get());
+    assertEquals(Collections.singletonList(p1), myStoppedProcesses);
+    assertEquals(0, myPool.getProcessCount());
+  }
+}
@@ -5,12 +5,21 @@ import com.intellij.lang.javascript.flex.importer.FlexImporter;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.CharsetToolkit;
+import com.intellij.testFramework.PlatformTestUtil;
 import junit.framework.TestCase;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -72,22 +81,72 @@ public class FlexImporterTest extends TestCase {
     doTestFor("hotbook.swf");
   }
 
-  private void doTestFor(final String fileName) throws IOException {
-    final File file = new File(getTestDataPath() + fileName);
-    final byte[] contents;
+  public final void testCorruptedUncompressedLength() throws Exception {
+    final byte[] swf = loadContents(new File(getTestDataPath() + "Assets.swf"));
+    final Inflater inflater = new Inflater();
+    inflater.setInput(swf, 8, swf.length - 8);
+    final byte[] body = new byte[(swf[4] & 0xFF | (swf[5] & 0xFF) << 8 | (swf[6] & 0xFF) << 16 | (swf[7] & 0xFF) << 24) - 8];
+    assertEquals(body.length, inflater.inflate(body));
+    inflater.end();
+
+    // the same body followed by 2 Mb of End tags, stored without compression, with the header claiming almost 2 Gb of uncompressed data
+    final ByteArrayOutputStream forged = new ByteArrayOutputStream();
+    forged.write(new byte[]{'C', 'W', 'S', swf[3], (byte)0xF0, (byte)0xFF, (byte)0xFF, 0x7F});
+    final DeflaterOutputStream deflaterStream = new DeflaterOutputStream(forged, new Deflater(Deflater.NO_COMPRESSION));
+    deflaterStream.write(body);
+    deflaterStream.write(new byte[2 * 1024 * 1024]);
+    deflaterStream.close();
+
+    final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    final long allocatedBefore = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    final String result = FlexImporter.buildInterfaceFromBytes(forged.toByteArray());
+    final long allocated = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+
+    assertEquals(FlexImporter.buildInterfaceFromBytes(swf), result);
+    assertTrue(String.valueOf(allocated), allocated < 256 * 1024 * 1024);
+  }
+
+  public final void testPerformance() throws Exception {
+    final List<byte[]> swfs = new ArrayList<byte[]>();
+    swfs.add(loadContents(new File(FlexTestUtils.getTestDataPath("flex_completion/playerglobal.swc"))));
+    final File frameworks = new File(FlexTestUtils.getPathToCompleteFlexSdk("4.5") + "/frameworks/libs");
+    for (File swc : FileUtil.findFilesByMask(Pattern.compile(".*\\.swc"), frameworks)) {
+      swfs.add(loadContents(swc));
+    }
+    assertTrue(swfs.size() > 10);
+
+    PlatformTestUtil.startPerformanceTest("Building interfaces of playerglobal.swc and Flex SDK frameworks", 3000, () -> {
+      for (byte[] swf : swfs) {
+        final String result = FlexImporter.buildInterfaceFromBytes(swf);
+        assertFalse(result.startsWith("/*"));
+      }
+    }).cpuBound().useLegacyScaling().assertTiming();
+  }
 
+  private static byte[] loadContents(final File file) throws IOException {
     if (file.getName().endsWith(".swc")) {
       final ZipFile zipFile = new ZipFile(file);
-      final ZipEntry zipEntry = zipFile.getEntry("library.swf");
-      final InputStream inputStream = zipFile.getInputStream(zipEntry);
-      contents = FileUtil.loadBytes(inputStream, (int)zipEntry.getSize());
-      inputStream.close();
-      zipFile.close();
-    } else {
-       contents = FileUtil.loadFileBytes(file);
+      try {
+        final ZipEntry zipEntry = zipFile.getEntry("library.swf");
+        final InputStream inputStream = zipFile.getInputStream(zipEntry);
+        try {
+          return FileUtil.loadBytes(inputStream, (int)zipEntry.getSize());
+        }
+        finally {
+          inputStream.close();
+        }
+      }
+      finally {
+        zipFile.close();
+      }
     }
+    return FileUtil.loadFileBytes(file);
+  }
+
+  private void doTestFor(final String fileName) throws IOException {
+    final byte[] contents = loadContents(new File(getTestDataPath() + fileName));
 
-    String result = FlexImporter.buildInterfaceFromStream(new ByteArrayInputStream(contents));
+    String result = FlexImporter.buildInterfaceFromBytes(contents);
     String resultFileName = getTestDataPath() + fileName + ".txt";
 
     try {
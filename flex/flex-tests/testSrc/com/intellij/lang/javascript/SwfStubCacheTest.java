@@ -0,0 +1,110 @@
+package com.intellij.lang.javascript;
+
+import com.intellij.flex.FlexTestUtils;
+import com.intellij.javascript.flex.compiled.SwfStubCache;
+import com.intellij.lang.javascript.flex.importer.FlexImporter;
+import com.intellij.lang.javascript.psi.stubs.impl.JSFileCachedData;
+import com.intellij.lang.javascript.psi.stubs.impl.JSFileStubImpl;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.impl.DebugUtil;
+import com.intellij.psi.stubs.Stub;
+import com.intellij.psi.stubs.StubElement;
+import com.intellij.testFramework.LightPlatformTestCase;
+
+import java.io.File;
+
+/**
+ * Stubs are (de)serialized by the application's <code>SerializationManagerEx</code>, so this is a light test, not a plain unit test.
+ */
+public class SwfStubCacheTest extends LightPlatformTestCase {
+
+  private File myDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = new File(getTempDir(), "swf-stub-cache");
+  }
+
+  public void testKey() throws Exception {
+    final byte[] swf = {'F', 'W', 'S', 10};
+    assertEquals(SwfStubCache.getKey(swf, 1), SwfStubCache.getKey(swf.clone(), 1));
+    assertFalse(SwfStubCache.getKey(swf, 1).equals(SwfStubCache.getKey(swf, 2)));
+    assertFalse(SwfStubCache.getKey(swf, 1).equals(SwfStubCache.getKey(new byte[]{'F', 'W', 'S', 11}, 1)));
+  }
+
+  public void testTextSharedBetweenInstances() throws Exception {
+    final String key = SwfStubCache.getKey(new byte[]{1, 2, 3}, 1);
+
+    SwfStubCache cache = new SwfStubCache(myDir, 1024 * 1024, true);
+    assertNull(cache.getText(key));
+    cache.putText(key, "package flash.display { public class Sprite {} }");
+
+    cache = new SwfStubCache(myDir, 1024 * 1024, true);
+    assertEquals("package flash.display { public class Sprite {} }", cache.getText(key));
+    assertNull(cache.getText(SwfStubCache.getKey(new byte[]{1, 2, 3}, 2)));
+    assertEquals(1, cache.getTextHitCount());
+    assertEquals(1, cache.getTextMissCount());
+    assertEquals(1, cache.getEntryCount());
+    assertTrue(cache.getSize() > 0);
+  }
+
+  public void testLeastRecentlyUsedEvicted() throws Exception {
+    final SwfStubCache cache = new SwfStubCache(myDir, 2500, true);
+    final String text = new String(new char[1000]).replace('\0', 'a');
+    final String key1 = SwfStubCache.getKey(new byte[]{1}, 1);
+    final String key2 = SwfStubCache.getKey(new byte[]{2}, 1);
+    final String key3 = SwfStubCache.getKey(new byte[]{3}, 1);
+
+    cache.putText(key1, text);
+    cache.putText(key2, text);
+    assertTrue(new File(myDir, key1 + ".txt").setLastModified(System.currentTimeMillis() - 100000));
+    assertTrue(new File(myDir, key2 + ".txt").setLastModified(System.currentTimeMillis() - 50000));
+    cache.putText(key3, text);
+
+    assertNull(cache.getText(key1));
+    assertNull(cache.getText(key2));
+    assertEquals(text, cache.getText(key3));
+    assertTrue(cache.getSize() <= 2500);
+  }
+
+  public void testDisabled() throws Exception {
+    final String key = SwfStubCache.getKey(new byte[]{1, 2, 3}, 1);
+    final SwfStubCache cache = new SwfStubCache(myDir, 1024 * 1024, false);
+    cache.putText(key, "text");
+    assertNull(cache.getText(key));
+    assertEquals(0, cache.getEntryCount());
+  }
+
+  public void testStubRoundTrip() throws Exception {
+    final byte[] swf = FileUtil.loadFileBytes(new File(FlexTestUtils.getTestDataPath("flex_importer/Assets.swf")));
+    final String key = SwfStubCache.getKey(swf, 1);
+    final JSFileStubImpl stub = new JSFileStubImpl(JavaScriptSupportLoader.ECMA_SCRIPT_L4, new JSFileCachedData());
+    FlexImporter.buildStubsInterfaceFromBytes(swf, stub);
+    assertFalse(stub.getChildrenStubs().isEmpty());
+
+    SwfStubCache cache = new SwfStubCache(myDir, 1024 * 1024, true);
+    assertNull(cache.getStub(key));
+    cache.putStub(key, stub);
+
+    cache = new SwfStubCache(myDir, 1024 * 1024, true);
+    final Stub cached = cache.getStub(key);
+    assertInstanceOf(cached, StubElement.class);
+    assertEquals(DebugUtil.stubTreeToString(stub), DebugUtil.stubTreeToString((StubElement)cached));
+    assertEquals(1, cache.getStubHitCount());
+    assertEquals(0, cache.getStubMissCount());
+  }
+
+  public void testCorruptedStubDeleted() throws Exception {
+    final String key = SwfStubCache.getKey(new byte[]{1, 2, 3}, 1);
+    final File stubFile = new File(myDir, key + ".stub");
+    FileUtil.writeToFile(stubFile, new byte[]{-1, -1, -1, -1, 0, 1, 2});
+
+    final SwfStubCache cache = new SwfStubCache(myDir, 1024 * 1024, true);
+    assertNull(cache.getStub(key));
+    assertFalse(stubFile.exists());
+    assertEquals(0, cache.getEntryCount());
+    assertEquals(0, cache.getSize());
+    assertEquals(1, cache.getStubMissCount());
+  }
+}
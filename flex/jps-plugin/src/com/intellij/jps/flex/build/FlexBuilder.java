@@ -3,10 +3,12 @@ package com.intellij.jps.flex.build;
 import com.intellij.flex.FlexCommonBundle;
 import com.intellij.flex.FlexCommonUtils;
 import com.intellij.flex.build.CompilerConfigGeneratorRt;
+import com.intellij.flex.build.FlexBuildCache;
 import com.intellij.flex.build.FlexBuildTarget;
 import com.intellij.flex.build.FlexBuildTargetType;
 import com.intellij.flex.model.JpsFlexCompilerProjectExtension;
 import com.intellij.flex.model.JpsFlexProjectLevelCompilerOptionsExtension;
+import com.intellij.flex.model.bc.JpsAirPackagingOptions;
 import com.intellij.flex.model.bc.JpsFlexBuildConfiguration;
 import com.intellij.flex.model.bc.JpsFlexCompilerOptions;
 import com.intellij.flex.model.bc.OutputType;
@@ -20,6 +22,7 @@ import com.intellij.util.Function;
 import com.intellij.util.PathUtilRt;
 import com.intellij.util.concurrency.Semaphore;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jps.builders.BuildOutputConsumer;
 import org.jetbrains.jps.builders.BuildRootDescriptor;
 import org.jetbrains.jps.builders.DirtyFilesHolder;
@@ -33,8 +36,11 @@ import org.jetbrains.jps.incremental.messages.BuildMessage;
 import org.jetbrains.jps.incremental.messages.CompilerMessage;
 import org.jetbrains.jps.incremental.messages.ProgressMessage;
 import org.jetbrains.jps.model.JpsProject;
+import org.jetbrains.jps.model.java.JavaSourceRootType;
 import org.jetbrains.jps.model.library.sdk.JpsSdk;
 import org.jetbrains.jps.model.module.JpsModule;
+import org.jetbrains.jps.model.module.JpsModuleSourceRoot;
+import org.jetbrains.jps.util.JpsPathUtil;
 
 import java.io.File;
 import java.io.IOException;
@@ -47,8 +53,9 @@ public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTar
 
   private static Logger LOG = Logger.getInstance(FlexBuilder.class.getName());
   private JpsBuiltInFlexCompilerHandler myBuiltInCompilerHandler;
+  private FlexBuildCache myBuildCache;
 
-  private enum Status {Ok, Failed, Cancelled}
+  private enum Status {Ok, UpToDate, Failed, Cancelled}
 
   protected FlexBuilder() {
     super(Collections.singletonList(FlexBuildTargetType.INSTANCE));
@@ -64,15 +71,25 @@ public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTar
   public void buildStarted(final CompileContext context) {
     super.buildStarted(context);
     myBuiltInCompilerHandler = new JpsBuiltInFlexCompilerHandler(context.getProjectDescriptor().getProject());
+    myBuildCache = new FlexBuildCache(context.getProjectDescriptor().dataManager.getDataPaths().getDataStorageRoot());
   }
 
   @Override
   public void buildFinished(final CompileContext context) {
     LOG.assertTrue(myBuiltInCompilerHandler.getActiveCompilationsNumber() == 0,
                    myBuiltInCompilerHandler.getActiveCompilationsNumber() + " Flex compilation(s) are not finished!");
+    myBuiltInCompilerHandler.reportStatistics(context, getPresentableName());
     myBuiltInCompilerHandler.stopCompilerProcess();
     myBuiltInCompilerHandler = null;
 
+    myBuildCache.save();
+    if (myBuildCache.getHitCount() + myBuildCache.getMissCount() > 0) {
+      context.processMessage(new CompilerMessage(getPresentableName(), BuildMessage.Kind.INFO,
+                                                 FlexCommonBundle.message("build.cache.statistics", myBuildCache.getHitCount(),
+                                                                          myBuildCache.getMissCount())));
+    }
+    myBuildCache = null;
+
     FlexCommonUtils.deleteTempFlexConfigFiles(context.getProjectDescriptor().getProject().getName());
 
     super.buildFinished(context);
@@ -134,10 +151,22 @@ public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTar
       }
     }
 
+    // FlexUnit BCs are compiled each time anyway, see above
+    final FlexBuildCache buildCache = FlexCommonUtils.isFlexUnitBC(mainBC) ? null : myBuildCache;
+    final boolean checkUpToDate = !context.getScope().isBuildForced(buildTarget);
+
     for (JpsFlexBuildConfiguration bc : bcsToCompile) {
-      final Status status = compileBuildConfiguration(context, bc, myBuiltInCompilerHandler);
+      final Status status = compileBuildConfiguration(context, bc, myBuiltInCompilerHandler, buildCache, checkUpToDate);
 
       switch (status) {
+        case UpToDate:
+          outputConsumer.registerOutputFile(new File(mainBC.getActualOutputFilePath()), dirtyFilePaths);
+          FlexBuilderUtils.performPostCompileActions(context, bc, dirtyFilePaths, outputConsumer);
+          context.processMessage(
+            new CompilerMessage(FlexBuilderUtils.getCompilerName(bc), BuildMessage.Kind.INFO,
+                                FlexCommonBundle.message("compilation.up.to.date")));
+          break;
+
         case Ok:
           outputConsumer.registerOutputFile(new File(mainBC.getActualOutputFilePath()), dirtyFilePaths);
           FlexBuilderUtils.performPostCompileActions(context, bc, dirtyFilePaths, outputConsumer);
@@ -282,7 +311,9 @@ public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTar
 
   private static Status compileBuildConfiguration(final CompileContext context,
                                                   final JpsFlexBuildConfiguration bc,
-                                                  final JpsBuiltInFlexCompilerHandler builtInCompilerHandler) {
+                                                  final JpsBuiltInFlexCompilerHandler builtInCompilerHandler,
+                                                  @Nullable final FlexBuildCache buildCache,
+                                                  final boolean checkUpToDate) {
     setProgressMessage(context, bc);
 
     final String compilerName = FlexBuilderUtils.getCompilerName(bc);
@@ -297,7 +328,25 @@ public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTar
         return Status.Failed;
       }
 
-      return doCompile(context, bc, configFiles, compilerName, builtInCompilerHandler);
+      if (buildCache == null) {
+        return doCompile(context, bc, configFiles, compilerName, builtInCompilerHandler);
+      }
+
+      final String key = FlexBuildCache.getKey(bc.getModule().getName(), bc.getName(), outputFilePath);
+      final String inputsHash = computeInputsHash(bc, configFiles, buildCache);
+      if (checkUpToDate && buildCache.isUpToDate(key, inputsHash, new File(outputFilePath))) {
+        LOG.debug("inputs not changed since the last successful compilation: " + outputFilePath);
+        return Status.UpToDate;
+      }
+
+      final Status status = doCompile(context, bc, configFiles, compilerName, builtInCompilerHandler);
+      if (status == Status.Ok) {
+        buildCache.update(key, inputsHash, new File(outputFilePath));
+      }
+      else {
+        buildCache.remove(key);
+      }
+      return status;
     }
     catch (IOException e) {
       context.processMessage(new CompilerMessage(compilerName, BuildMessage.Kind.ERROR, e.getMessage()));
@@ -305,6 +354,45 @@ public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTar
     }
   }
 
+  /**
+   * Must give the same hash as <code>FlexCompilerDependenciesCache</code> of the in-IDE compiler for the same BC.
+   */
+  private static String computeInputsHash(final JpsFlexBuildConfiguration bc,
+                                          final List<File> configFiles,
+                                          final FlexBuildCache buildCache) {
+    final JpsModule module = bc.getModule();
+    final List<File> sourceRoots = new ArrayList<File>();
+    for (JpsModuleSourceRoot sourceRoot : module.getSourceRoots()) {
+      if (sourceRoot.getRootType() == JavaSourceRootType.SOURCE || sourceRoot.getRootType() == JavaSourceRootType.TEST_SOURCE) {
+        sourceRoots.add(JpsPathUtil.urlToFile(sourceRoot.getUrl()));
+      }
+    }
+
+    final JpsProject project = module.getProject();
+    final List<File> fileDependencies = FlexBuildCache.getFileDependencies(
+      configFiles, FlexCommonUtils.getFlexCompilerWorkDirPath(project),
+      bc.isTempBCForCompilation() ? bc.getCompilerOptions().getAdditionalConfigFilePath() : null, bc.getNature(),
+      getCustomDescriptorPath(bc.getAirDesktopPackagingOptions(), true),
+      getCustomDescriptorPath(bc.getAndroidPackagingOptions(), bc.getAndroidPackagingOptions().isEnabled()),
+      getCustomDescriptorPath(bc.getIosPackagingOptions(), bc.getIosPackagingOptions().isEnabled()));
+
+    final JpsSdk<?> sdk = bc.getSdk();
+    assert sdk != null;
+    final List<String> options =
+      FlexBuildCache.getOptions(sdk.getHomePath(), sdk.getVersionString(),
+                                JpsFlexCompilerProjectExtension.getInstance(project).PREFER_ASC_20,
+                                JpsFlexProjectLevelCompilerOptionsExtension.getProjectLevelCompilerOptions(project).getAdditionalOptions(),
+                                module.getProperties().getModuleLevelCompilerOptions().getAdditionalOptions(),
+                                bc.getCompilerOptions().getAdditionalOptions());
+
+    return buildCache.computeInputsHash(sourceRoots, fileDependencies, options);
+  }
+
+  @Nullable
+  private static String getCustomDescriptorPath(final JpsAirPackagingOptions packagingOptions, final boolean enabled) {
+    return enabled && !packagingOptions.isUseGeneratedDescriptor() ? packagingOptions.getCustomDescriptorPath() : null;
+  }
+
   private static boolean ensureCanCreateFile(@NotNull File file) {
     final int maxAttempts = 3; // FileUtil.ensureCanCreateFile() may return false because of race conditions
 
@@ -428,7 +516,7 @@ public class FlexBuilder extends TargetBuilder<BuildRootDescriptor, FlexBuildTar
       }
     });
 
-    builtInCompilerHandler.sendCompilationCommand(plainCommand, listener);
+    builtInCompilerHandler.sendCompilationCommand(plainCommand, bc.getActualOutputFilePath(), listener);
 
     semaphore.waitFor();
     builtInCompilerHandler.removeListener(listener);
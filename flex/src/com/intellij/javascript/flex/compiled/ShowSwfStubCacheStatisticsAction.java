@@ -0,0 +1,32 @@
+package com.intellij.javascript.flex.compiled;
+
+import com.intellij.lang.javascript.flex.FlexBundle;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.DumbAwareAction;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.text.StringUtil;
+
+/**
+ * Shows the size and the hit counts of the {@link SwfStubCache}, available in internal mode next to the other indexing diagnostics.
+ */
+public class ShowSwfStubCacheStatisticsAction extends DumbAwareAction {
+  @Override
+  public void update(final AnActionEvent e) {
+    e.getPresentation().setEnabledAndVisible(ApplicationManager.getApplication().isInternal());
+  }
+
+  @Override
+  public void actionPerformed(final AnActionEvent e) {
+    final SwfStubCache cache = SwfStubCache.getInstance();
+    final String message = FlexBundle.message("swf.stub.cache.statistics",
+                                              cache.getEntryCount(),
+                                              StringUtil.formatFileSize(cache.getSize()),
+                                              cache.getStubHitCount(),
+                                              cache.getStubMissCount(),
+                                              cache.getTextHitCount(),
+                                              cache.getTextMissCount());
+    Messages.showInfoMessage(e.getData(CommonDataKeys.PROJECT), message, FlexBundle.message("swf.stub.cache.statistics.title"));
+  }
+}
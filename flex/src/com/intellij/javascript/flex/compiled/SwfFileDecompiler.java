@@ -21,7 +21,21 @@ public class SwfFileDecompiler implements BinaryFileDecompiler {
     final Project project = findProject();
     if (project == null) return "";
     try {
-      return FlexImporter.buildInterfaceFromStream(file.getInputStream());
+      final byte[] content = file.contentsToByteArray();
+      final SwfStubCache cache = SwfStubCache.getInstance();
+      final String key = SwfStubCache.getKey(content, SwfFileStubBuilder.getVersion());
+      final String cachedText = cache.getText(key);
+      if (cachedText != null) return cachedText;
+
+      final String text;
+      try {
+        text = FlexImporter.buildInterfaceFromBytesOrThrow(content);
+      }
+      catch (IOException ex) {
+        return "/* " + ex.getLocalizedMessage() + " */"; // not cached
+      }
+      cache.putText(key, text);
+      return text;
     }
     catch (IOException ex) {
       return ArrayUtil.EMPTY_CHAR_SEQUENCE;
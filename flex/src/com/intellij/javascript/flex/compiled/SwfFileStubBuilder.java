@@ -12,12 +12,11 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.stubs.BinaryFileStubBuilder;
 import com.intellij.psi.stubs.PsiFileStub;
 import com.intellij.psi.stubs.PsiFileStubImpl;
+import com.intellij.psi.stubs.Stub;
 import com.intellij.psi.stubs.StubElement;
 import com.intellij.util.indexing.FileContent;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.ByteArrayInputStream;
-
 /**
  * @author Maxim.Mossienko
  *         Date: Sep 18, 2008
@@ -36,13 +35,16 @@ public class SwfFileStubBuilder implements BinaryFileStubBuilder {
   }
 
   static PsiFileStub buildFileStub(VirtualFile file, byte[] content) {
+    final SwfStubCache cache = SwfStubCache.getInstance();
+    final String key = SwfStubCache.getKey(content, getVersion());
+    final Stub cached = cache.getStub(key);
+    if (cached instanceof PsiFileStub) return (PsiFileStub)cached;
+
     PsiFileStubImpl stub = new JSFileStubImpl(JavaScriptSupportLoader.ECMA_SCRIPT_L4, new JSFileCachedData());
     try {
 
-      FlexImporter.buildStubsInterfaceFromStream(
-        new ByteArrayInputStream(content),
-        stub
-      );
+      FlexImporter.buildStubsInterfaceFromBytes(content, stub);
+      cache.putStub(key, stub);
 
     } catch (Exception ex) {
       Logger.getInstance(SwfFileStubBuilder.class.getName()).warn(file.getPath(), ex);
@@ -52,6 +54,10 @@ public class SwfFileStubBuilder implements BinaryFileStubBuilder {
   }
 
   public int getStubVersion() {
+    return getVersion();
+  }
+
+  static int getVersion() {
     return JSFileElementType.getVersion() + VERSION;
   }
 }
\ No newline at end of file
@@ -0,0 +1,242 @@
+package com.intellij.javascript.flex.compiled;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.stubs.SerializationManagerEx;
+import com.intellij.psi.stubs.Stub;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Application-wide disk cache of serialized stub trees and decompiled text of SWF files, keyed by the SHA-1 of the SWF bytes and the stub
+ * version. Identical <code>library.swf</code> files of the same Flex SDK or library used by several projects, or located at several
+ * paths, are parsed once.
+ * <p/>
+ * The cache lives in the index directory next to the stub serializer name storage that the serialized stubs refer to, so both are
+ * dropped together. The least recently used entries are evicted when the cache grows larger than {@link #MAX_SIZE}.
+ * The cache is not used in unit test mode.
+ */
+public class SwfStubCache {
+
+  private static final Logger LOG = Logger.getInstance(SwfStubCache.class.getName());
+
+  private static final int VERSION = 1;
+  private static final long MAX_SIZE = 256 * 1024 * 1024;
+  private static final String STUB_EXTENSION = ".stub";
+  private static final String TEXT_EXTENSION = ".txt";
+
+  private final File myDir;
+  private final long myMaxSize;
+  private final boolean myEnabled;
+
+  private final AtomicLong mySize = new AtomicLong(-1);
+  private final AtomicInteger myStubHitCount = new AtomicInteger();
+  private final AtomicInteger myStubMissCount = new AtomicInteger();
+  private final AtomicInteger myTextHitCount = new AtomicInteger();
+  private final AtomicInteger myTextMissCount = new AtomicInteger();
+
+  @SuppressWarnings("UnusedDeclaration") // instantiated by the service manager
+  public SwfStubCache() {
+    this(new File(PathManager.getIndexRoot(), "swf-stubs"), MAX_SIZE, !ApplicationManager.getApplication().isUnitTestMode());
+  }
+
+  public SwfStubCache(@NotNull final File dir, final long maxSize, final boolean enabled) {
+    myDir = dir;
+    myMaxSize = maxSize;
+    myEnabled = enabled;
+  }
+
+  public static SwfStubCache getInstance() {
+    return ServiceManager.getService(SwfStubCache.class);
+  }
+
+  @NotNull
+  public static String getKey(@NotNull final byte[] content, final int stubVersion) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      return StringUtil.toHexString(digest.digest(content)) + "-" + stubVersion + "-" + VERSION;
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Nullable
+  public Stub getStub(@NotNull final String key) {
+    if (!myEnabled) return null;
+
+    final byte[] bytes = read(key + STUB_EXTENSION);
+    if (bytes != null) {
+      try {
+        final Stub stub = SerializationManagerEx.getInstanceEx().deserialize(new ByteArrayInputStream(bytes));
+        myStubHitCount.incrementAndGet();
+        return stub;
+      }
+      catch (Exception e) {
+        LOG.info("Failed to deserialize cached stub " + key + ": " + e.getMessage());
+        delete(key + STUB_EXTENSION);
+      }
+    }
+
+    myStubMissCount.incrementAndGet();
+    return null;
+  }
+
+  public void putStub(@NotNull final String key, @NotNull final Stub stub) {
+    if (!myEnabled) return;
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SerializationManagerEx.getInstanceEx().serialize(stub, out);
+    write(key + STUB_EXTENSION, out.toByteArray());
+  }
+
+  @Nullable
+  public String getText(@NotNull final String key) {
+    if (!myEnabled) return null;
+
+    final byte[] bytes = read(key + TEXT_EXTENSION);
+    (bytes != null ? myTextHitCount : myTextMissCount).incrementAndGet();
+    return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+  }
+
+  public void putText(@NotNull final String key, @NotNull final String text) {
+    if (!myEnabled) return;
+
+    write(key + TEXT_EXTENSION, text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Nullable
+  private byte[] read(@NotNull final String fileName) {
+    final File file = new File(myDir, fileName);
+    if (!file.isFile()) return null;
+
+    try {
+      final byte[] bytes = FileUtil.loadFileBytes(file);
+      //noinspection ResultOfMethodCallIgnored
+      file.setLastModified(System.currentTimeMillis()); // for LRU eviction
+      return bytes;
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  private void write(@NotNull final String fileName, @NotNull final byte[] bytes) {
+    final File file = new File(myDir, fileName);
+    getSize(); // scan the directory before it changes
+    File tempFile = null;
+    try {
+      FileUtil.createDirectory(myDir);
+      tempFile = FileUtil.createTempFile(myDir, fileName, ".tmp", true, false);
+      FileUtil.writeToFile(tempFile, bytes);
+
+      final long oldLength = file.length();
+      FileUtil.delete(file);
+      FileUtil.rename(tempFile, file);
+      tempFile = null;
+
+      mySize.addAndGet(bytes.length - oldLength);
+      evictIfNeeded();
+    }
+    catch (IOException e) {
+      LOG.info("Failed to write " + file.getPath() + ": " + e.getMessage());
+    }
+    finally {
+      if (tempFile != null) FileUtil.delete(tempFile);
+    }
+  }
+
+  private void delete(@NotNull final String fileName) {
+    final File file = new File(myDir, fileName);
+    getSize();
+    final long length = file.length();
+    if (FileUtil.delete(file)) {
+      mySize.addAndGet(-length);
+    }
+  }
+
+  private synchronized void evictIfNeeded() {
+    if (getSize() <= myMaxSize) return;
+
+    final File[] files = myDir.listFiles();
+    if (files == null) return;
+
+    // timestamps are taken once, reads touch the files concurrently
+    final long[][] timestamps = new long[files.length][];
+    long size = 0;
+    for (int i = 0; i < files.length; i++) {
+      timestamps[i] = new long[]{files[i].lastModified(), i};
+      size += files[i].length();
+    }
+    Arrays.sort(timestamps, (o1, o2) -> Long.compare(o1[0], o2[0]));
+
+    for (int i = 0; i < timestamps.length && size > myMaxSize * 3 / 4; i++) {
+      final File file = files[(int)timestamps[i][1]];
+      final long length = file.length();
+      if (FileUtil.delete(file)) {
+        size -= length;
+      }
+    }
+    mySize.set(size);
+  }
+
+  /**
+   * @return total size of the cache files in bytes, the directory is scanned on the first call
+   */
+  public long getSize() {
+    final long size = mySize.get();
+    if (size >= 0) return size;
+
+    long total = 0;
+    final File[] files = myDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        total += file.length();
+      }
+    }
+    mySize.compareAndSet(-1, total);
+    return mySize.get();
+  }
+
+  public int getEntryCount() {
+    final String[] names = myDir.list();
+    if (names == null) return 0;
+
+    int count = 0;
+    for (String name : names) {
+      if (name.endsWith(STUB_EXTENSION) || name.endsWith(TEXT_EXTENSION)) count++;
+    }
+    return count;
+  }
+
+  public int getStubHitCount() {
+    return myStubHitCount.get();
+  }
+
+  public int getStubMissCount() {
+    return myStubMissCount.get();
+  }
+
+  public int getTextHitCount() {
+    return myTextHitCount.get();
+  }
+
+  public int getTextMissCount() {
+    return myTextMissCount.get();
+  }
+}
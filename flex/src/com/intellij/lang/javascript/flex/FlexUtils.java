@@ -163,56 +163,10 @@ public class FlexUtils {
   }
 
   /**
-   * Looks through input stream containing XML document and finds all entries of XML elements listed in <code>xmlElements</code>.
-   * Content of these elements is put to result map. XML namespaces are not taken into consideration.
-   *
-   * @param xmlInputStream input stream with xml content to parse
-   * @param xmlElements    list of XML elements to look for.
-   *                       Format is: <code>"&lt;root_element&gt;&lt;child_element&gt;&lt;subelement_to_look_for&gt;"</code>.
-   *                       Listed XML elements SHOULD NOT contain subelements
-   * @return map, keys are XML elements listed in <code>xmlElements</code>,
-   *         values are all entries of respective element (may be empty list)
+   * @see FlexCommonUtils#findXMLElements(InputStream, List)
    */
   public static Map<String, List<String>> findXMLElements(@NotNull final InputStream xmlInputStream, final List<String> xmlElements) {
-    final Map<String, List<String>> resultMap = new HashMap<String, List<String>>();
-    for (final String element : xmlElements) {
-      resultMap.put(element, new ArrayList<String>());
-    }
-
-    NanoXmlUtil.parse(xmlInputStream, new NanoXmlUtil.IXMLBuilderAdapter() {
-
-      private String currentElement = "";
-      private final StringBuilder currentElementContent = new StringBuilder();
-
-      @Override
-      public void startElement(final String name, final String nsPrefix, final String nsURI, final String systemID, final int lineNr)
-        throws Exception {
-        currentElement += "<" + name + ">";
-      }
-
-      @Override
-      public void endElement(final String name, final String nsPrefix, final String nsURI) throws Exception {
-        if (xmlElements.contains(currentElement)) {
-          resultMap.get(currentElement).add(currentElementContent.toString());
-          currentElementContent.delete(0, currentElementContent.length());
-        }
-        assert currentElement.endsWith("<" + name + ">");
-        currentElement = currentElement.substring(0, currentElement.length() - (name.length() + 2));
-      }
-
-      @Override
-      public void addPCData(final Reader reader, final String systemID, final int lineNr) throws Exception {
-        if (xmlElements.contains(currentElement)) {
-          char[] chars = new char[128];
-          int read;
-          while ((read = reader.read(chars)) > 0) {
-            currentElementContent.append(chars, 0, read);
-          }
-        }
-      }
-    });
-
-    return resultMap;
+    return FlexCommonUtils.findXMLElements(xmlInputStream, xmlElements);
   }
 
   /**
@@ -31,7 +31,7 @@ public class BuiltInCompilationTask extends FlexCompilationTask {
     compilationManager.addMessage(this, CompilerMessageCategory.INFORMATION, plainCommand, null, -1, -1);
 
     myListener = createListener(compilationManager);
-    myBuiltInFlexCompilerHandler.sendCompilationCommand(plainCommand, myListener);
+    myBuiltInFlexCompilerHandler.sendCompilationCommand(plainCommand, myBC.getActualOutputFilePath(), myListener);
   }
 
   private List<String> buildCommand() {
@@ -50,7 +50,7 @@ public class BuiltInCompilationTask extends FlexCompilationTask {
       }
 
       public void compilationFinished() {
-        myFinished = true;
+        setFinished();
       }
     };
   }
@@ -1,6 +1,8 @@
 package com.intellij.lang.javascript.flex.build;
 
+import com.intellij.flex.FlexCommonBundle;
 import com.intellij.flex.FlexCommonUtils;
+import com.intellij.flex.build.FlexCompilerProcessPool;
 import com.intellij.lang.javascript.flex.FlexUtils;
 import com.intellij.lang.javascript.flex.sdk.FlexSdkType2;
 import com.intellij.lang.javascript.flex.sdk.FlexSdkUtils;
@@ -11,12 +13,11 @@ import com.intellij.openapi.compiler.CompilerMessageCategory;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.projectRoots.Sdk;
-import com.intellij.openapi.util.Comparing;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
-import com.intellij.util.Function;
 import gnu.trove.THashMap;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.net.ServerSocket;
@@ -24,6 +25,11 @@ import java.net.Socket;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Runs up to {@link FlexCompilerProjectConfiguration#BUILT_IN_COMPILER_PROCESSES} compiler processes.
+ * {@link FlexCompilerProcessPool} decides which of them gets a compilation and when another one is started. A process that ran out of
+ * memory is stopped as soon as its current compilations finish.
+ */
 public class BuiltInFlexCompilerHandler {
 
   private static final Logger LOG = Logger.getInstance(BuiltInFlexCompilerHandler.class.getName());
@@ -32,30 +38,178 @@ public class BuiltInFlexCompilerHandler {
 
   private final Project myProject;
 
-  private String mySdkHome;
-  private ServerSocket myServerSocket;
-  private DataInputStream myDataInputStream;
-  private DataOutputStream myDataOutputStream;
+  private final FlexCompilerProcessPool<CompilerProcess> myPool = new FlexCompilerProcessPool<CompilerProcess>() {
+    @Override
+    protected int getActiveCompilationsNumber(@NotNull final CompilerProcess process) {
+      return process.getActiveCompilationsNumber();
+    }
+
+    @Override
+    protected void stopProcesses(@NotNull final List<CompilerProcess> processes) {
+      final Runnable runnable = () -> {
+        for (CompilerProcess process : processes) {
+          process.stop();
+        }
+      };
+
+      final Application application = ApplicationManager.getApplication();
+      if (application.isDispatchThread()) {
+        application.executeOnPooledThread(runnable);
+      }
+      else {
+        runnable.run();
+      }
+    }
+  };
+  private int myProcessCounter;
 
   private int commandNumber = 1;
-  private Map<String, Listener> myActiveListeners = new THashMap<String, Listener>();
+
+  public interface Listener {
+    void textAvailable(String text);
+
+    void compilationFinished();
+  }
 
   public BuiltInFlexCompilerHandler(final Project project) {
     myProject = project;
   }
 
-  public interface Listener {
-    void textAvailable(String text);
+  /**
+   * Starts a compiler process if none is running or if all running ones are busy and there are less than the maximum number of them.
+   * Fails only if there is no running process after that.
+   */
+  public void startCompilerIfNeeded(final @NotNull Sdk sdk, final CompileContext context) throws IOException {
+    final int maxProcessCount =
+      FlexCommonUtils.getBuiltInCompilerProcessCount(FlexCompilerProjectConfiguration.getInstance(myProject).BUILT_IN_COMPILER_PROCESSES);
+    final boolean startProcess;
+    try {
+      startProcess = myPool.reserveProcessStart(sdk.getHomePath(), maxProcessCount);
+    }
+    catch (InterruptedException e) {
+      throw new IOException(e);
+    }
+    if (!startProcess) return;
 
-    void compilationFinished();
+    final CompilerProcess process;
+    synchronized (this) {
+      process = new CompilerProcess(++myProcessCounter);
+    }
+
+    boolean started = false;
+    try {
+      process.start(sdk, context);
+      started = true;
+    }
+    catch (IOException e) {
+      if (myPool.getProcessCount() > 0) {
+        LOG.info("Failed to start one more Flex compiler process, continue with " + myPool.getProcessCount(), e);
+        return;
+      }
+      throw e;
+    }
+    finally {
+      myPool.processStartFinished(started ? process : null, sdk.getHomePath());
+    }
   }
 
-  public synchronized void startCompilerIfNeeded(final @NotNull Sdk sdk, final CompileContext context) throws IOException {
-    if (!Comparing.equal(sdk.getHomePath(), mySdkHome)) {
-      stopCompilerProcess();
+  /**
+   * @param affinityKey identifies the BC, so that it is compiled by the process that has its incremental compilation data if possible
+   */
+  public void sendCompilationCommand(final String command, @Nullable final String affinityKey, final Listener listener) {
+    final CompilerProcess process;
+    final String prefix;
+
+    synchronized (myPool) { // the chosen process must be loaded before the next choice
+      process = myPool.chooseProcess(affinityKey);
+      prefix = String.valueOf(commandNumber++) + ":";
+      if (process != null) {
+        process.addListener(prefix, listener);
+      }
+    }
+
+    if (process == null) {
+      listener.textAvailable("Error: Compiler process is not started.");
+      listener.compilationFinished();
+      return;
     }
 
-    if (myServerSocket == null) {
+    process.sendCompilationCommand(prefix, command, listener);
+  }
+
+  private void processOutOfMemory(final CompilerProcess process) {
+    myPool.retireProcess(process);
+    LOG.info("Flex compiler process #" + process.myNumber + " ran out of memory, it will be stopped");
+  }
+
+  private void processStopped(final CompilerProcess process) {
+    myPool.processStopped(process);
+  }
+
+  public void stopCompilerProcess() {
+    myPool.stopAllProcesses();
+  }
+
+  public void removeListener(final Listener listener) {
+    final List<CompilerProcess> processes = myPool.getAllProcesses();
+
+    for (CompilerProcess process : processes) {
+      if (process.removeListener(listener)) {
+        if (process.isOutOfMemoryAndIdle()) {
+          process.stop();
+        }
+        break;
+      }
+    }
+  }
+
+  public int getActiveCompilationsNumber() {
+    final List<CompilerProcess> processes = myPool.getAllProcesses();
+
+    int result = 0;
+    for (CompilerProcess process : processes) {
+      result += process.getActiveCompilationsNumber();
+    }
+    return result;
+  }
+
+  /**
+   * Reports the number of compilations and the busy time of each process since the previous report.
+   */
+  public void reportStatistics(final CompileContext context) {
+    final List<CompilerProcess> processes = myPool.getAllProcesses();
+
+    for (CompilerProcess process : processes) {
+      final String statistics = process.getAndResetStatistics();
+      if (statistics != null) {
+        context.addMessage(CompilerMessageCategory.STATISTICS, statistics, null, -1, -1);
+      }
+      if (process.isStopped()) {
+        myPool.forgetProcess(process);
+      }
+    }
+  }
+
+  private class CompilerProcess {
+    private final int myNumber;
+
+    private ServerSocket myServerSocket;
+    private DataInputStream myDataInputStream;
+    private DataOutputStream myDataOutputStream;
+    private boolean myStopped;
+
+    private final Map<String, Listener> myActiveListeners = new THashMap<String, Listener>();
+    private boolean myOutOfMemory;
+
+    private int myCompilationCount;
+    private long myBusyTime;
+    private long myBusySince;
+
+    private CompilerProcess(final int number) {
+      myNumber = number;
+    }
+
+    private synchronized void start(final Sdk sdk, final CompileContext context) throws IOException {
       try {
         context.getProgressIndicator().setText("Starting Flex compiler");
         myServerSocket = new ServerSocket(0);
@@ -67,220 +221,268 @@ public class BuiltInFlexCompilerHandler {
         final Socket socket = myServerSocket.accept();
         myDataInputStream = new DataInputStream(socket.getInputStream());
         myDataOutputStream = new DataOutputStream(socket.getOutputStream());
-        mySdkHome = sdk.getHomePath();
         scheduleInputReading();
       }
       catch (IOException e) {
-        stopCompilerProcess();
+        closeSocket(); // not registered in the handler yet
         throw e;
       }
     }
-  }
 
-  private void startCompilerProcess(final Sdk sdk, final int port, final CompileContext context) throws IOException {
-    final StringBuilder classpath = new StringBuilder();
+    private void startCompilerProcess(final Sdk sdk, final int port, final CompileContext context) throws IOException {
+      final StringBuilder classpath = new StringBuilder();
 
-    classpath.append(FlexCommonUtils.getPathToBundledJar("idea-flex-compiler-fix.jar"));
-    classpath.append(File.pathSeparatorChar);
-    classpath.append(FlexCommonUtils.getPathToBundledJar("flex-compiler.jar"));
+      classpath.append(FlexCommonUtils.getPathToBundledJar("idea-flex-compiler-fix.jar"));
+      classpath.append(File.pathSeparatorChar);
+      classpath.append(FlexCommonUtils.getPathToBundledJar("flex-compiler.jar"));
 
-    if (sdk.getSdkType() == FlexSdkType2.getInstance()) {
-      classpath.append(File.pathSeparator).append(FileUtil.toSystemDependentName(sdk.getHomePath() + "/lib/flex-compiler-oem.jar"));
-    }
+      if (sdk.getSdkType() == FlexSdkType2.getInstance()) {
+        classpath.append(File.pathSeparator).append(FileUtil.toSystemDependentName(sdk.getHomePath() + "/lib/flex-compiler-oem.jar"));
+      }
 
-    final List<String> commandLine =
-      FlexSdkUtils.getCommandLineForSdkTool(myProject, sdk, classpath.toString(), "com.intellij.flex.compiler.FlexCompiler", null);
-    commandLine.add(String.valueOf(port));
+      final List<String> commandLine =
+        FlexSdkUtils.getCommandLineForSdkTool(myProject, sdk, classpath.toString(), "com.intellij.flex.compiler.FlexCompiler", null);
+      commandLine.add(String.valueOf(port));
 
-    final ProcessBuilder processBuilder = new ProcessBuilder(commandLine);
-    processBuilder.redirectErrorStream(true);
-    processBuilder.directory(new File(FlexUtils.getFlexCompilerWorkDirPath(myProject, null)));
+      final ProcessBuilder processBuilder = new ProcessBuilder(commandLine);
+      processBuilder.redirectErrorStream(true);
+      processBuilder.directory(new File(FlexUtils.getFlexCompilerWorkDirPath(myProject, null)));
 
-    final String plainCommand = StringUtil.join(processBuilder.command(), s -> s.contains(" ") ? "\"" + s + "\"" : s, " ");
-    context.addMessage(CompilerMessageCategory.INFORMATION, "Starting Flex compiler:\n" + plainCommand, null, -1, -1);
+      final String plainCommand = StringUtil.join(processBuilder.command(), s -> s.contains(" ") ? "\"" + s + "\"" : s, " ");
+      context.addMessage(CompilerMessageCategory.INFORMATION, "Starting Flex compiler:\n" + plainCommand, null, -1, -1);
 
-    final Process process = processBuilder.start();
-    readInputStreamUntilConnected(process, context);
-  }
+      final Process process = processBuilder.start();
+      readInputStreamUntilConnected(process, context);
+    }
 
-  private void readInputStreamUntilConnected(final Process process, final CompileContext context) {
-    ApplicationManager.getApplication().executeOnPooledThread(() -> {
-      final InputStreamReader reader = FlexCommonUtils.createInputStreamReader(process.getInputStream());
+    private void readInputStreamUntilConnected(final Process process, final CompileContext context) {
+      ApplicationManager.getApplication().executeOnPooledThread(() -> {
+        final InputStreamReader reader = FlexCommonUtils.createInputStreamReader(process.getInputStream());
 
-      try {
-        char[] buf = new char[1024];
-        int read;
-        while ((read = reader.read(buf, 0, buf.length)) >= 0) {
-          final String output = new String(buf, 0, read);
-          if (output.startsWith(CONNECTION_SUCCESSFUL)) {
-            break;
-          }
-          else {
-            closeSocket();
-            context.addMessage(CompilerMessageCategory.ERROR, output, null, -1, -1);
+        try {
+          char[] buf = new char[1024];
+          int read;
+          while ((read = reader.read(buf, 0, buf.length)) >= 0) {
+            final String output = new String(buf, 0, read);
+            if (output.startsWith(CONNECTION_SUCCESSFUL)) {
+              break;
+            }
+            else {
+              closeSocket();
+              context.addMessage(CompilerMessageCategory.ERROR, output, null, -1, -1);
+            }
           }
         }
-      }
-      catch (IOException e) {
-        closeSocket();
-        context.addMessage(CompilerMessageCategory.ERROR, "Failed to start Flex compiler: " + e.toString(), null, -1, -1);
-      }
-      finally {
-        try {
-          reader.close();
+        catch (IOException e) {
+          closeSocket();
+          context.addMessage(CompilerMessageCategory.ERROR, "Failed to start Flex compiler: " + e.toString(), null, -1, -1);
         }
-        catch (IOException e) {/*ignore*/}
-      }
-    });
-  }
+        finally {
+          try {
+            reader.close();
+          }
+          catch (IOException e) {/*ignore*/}
+        }
+      });
+    }
 
-  private void scheduleInputReading() {
-    ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
-      public void run() {
-        final StringBuilder buffer = new StringBuilder();
-        while (true) {
-          final DataInputStream dataInputStream = myDataInputStream;
-          if (dataInputStream != null) {
-            try {
-              buffer.append(dataInputStream.readUTF());
-
-              int index;
-              while ((index = buffer.indexOf("\n")) > -1) {
-                final String line = buffer.substring(0, index);
-                buffer.delete(0, index + 1);
-                handleInputLine(line);
+    private void scheduleInputReading() {
+      ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+        public void run() {
+          final StringBuilder buffer = new StringBuilder();
+          while (true) {
+            final DataInputStream dataInputStream = myDataInputStream;
+            if (dataInputStream != null) {
+              try {
+                buffer.append(dataInputStream.readUTF());
+
+                int index;
+                while ((index = buffer.indexOf("\n")) > -1) {
+                  final String line = buffer.substring(0, index);
+                  buffer.delete(0, index + 1);
+                  handleInputLine(line);
+                }
               }
-            }
-            catch (IOException e) {
-              if (dataInputStream == myDataInputStream) {
-                stopCompilerProcess();
+              catch (IOException e) {
+                if (dataInputStream == myDataInputStream) {
+                  stop();
+                }
+                break;
               }
+            }
+            else {
               break;
             }
           }
+        }
+      });
+    }
+
+    private void handleInputLine(final String line) {
+      LOG.debug("RECEIVED: [" + line + "]");
+
+      boolean outOfMemory = false;
+      boolean stop = false;
+
+      synchronized (this) {
+        final int colonPos = line.indexOf(":");
+        if (colonPos <= 0) {
+          LOG.error("Incorrect command: [" + line + "]");
+          return;
+        }
+
+        final String prefix = line.substring(0, colonPos + 1);
+        final Listener listener = myActiveListeners.get(prefix);
+        if (listener == null) {
+          LOG.warn("No active listener for input line: [" + line + "]");  // could be message from cancelled compilation
+        }
+        else {
+          final String text = line.substring(colonPos + 1);
+          if (text.startsWith(COMPILATION_FINISHED)) {
+            listener.compilationFinished();
+            myActiveListeners.remove(prefix);
+            myCompilationCount++;
+            updateBusyTime();
+            stop = myOutOfMemory && myActiveListeners.isEmpty();
+          }
           else {
-            break;
+            if (!myOutOfMemory && (text.contains(FlexCommonUtils.OUT_OF_MEMORY) || text.contains(FlexCommonUtils.JAVA_HEAP_SPACE))) {
+              myOutOfMemory = true;
+              outOfMemory = true;
+            }
+            listener.textAvailable(text);
           }
         }
       }
-    });
-  }
-
-  private synchronized void handleInputLine(final String line) {
-    LOG.debug("RECEIVED: [" + line + "]");
-
-    final int colonPos = line.indexOf(":");
-    if (colonPos <= 0) {
-      LOG.error("Incorrect command: [" + line + "]");
-      return;
-    }
 
-    final String prefix = line.substring(0, colonPos + 1);
-    final Listener listener = myActiveListeners.get(prefix);
-    if (listener == null) {
-      LOG.warn("No active listener for input line: [" + line + "]");  // could be message from cancelled compilation
-    }
-    else {
-      final String text = line.substring(colonPos + 1);
-      if (text.startsWith(COMPILATION_FINISHED)) {
-        listener.compilationFinished();
-        myActiveListeners.remove(prefix);
+      if (outOfMemory) {
+        processOutOfMemory(this);
       }
-      else {
-        listener.textAvailable(text);
+      if (stop) {
+        stop();
       }
     }
-  }
 
-  public synchronized void sendCompilationCommand(final String command, final Listener listener) {
-    if (myDataOutputStream == null) {
-      listener.textAvailable("Error: Compiler process is not started.");
-      listener.compilationFinished();
-      return;
+    private synchronized void addListener(final String prefix, final Listener listener) {
+      if (myActiveListeners.isEmpty()) {
+        myBusySince = System.currentTimeMillis();
+      }
+      myActiveListeners.put(prefix, listener);
     }
 
-    try {
-      final String prefix = String.valueOf(commandNumber++) + ":";
-      final String commandToSend = prefix + command + "\n";
-      LOG.debug("SENDING: [" + commandToSend + "]");
-      myDataOutputStream.writeUTF(commandToSend);
-      myActiveListeners.put(prefix, listener);
+    private void sendCompilationCommand(final String prefix, final String command, final Listener listener) {
+      synchronized (this) {
+        try {
+          if (myDataOutputStream == null) {
+            throw new IOException("Compiler process is not running");
+          }
+
+          final String commandToSend = prefix + command + "\n";
+          LOG.debug("SENDING: [" + commandToSend + "]");
+          myDataOutputStream.writeUTF(commandToSend);
+          return;
+        }
+        catch (IOException e) {
+          myActiveListeners.remove(prefix);
+          updateBusyTime();
+          listener.textAvailable("Error: Can't start compilation: " + e.toString());
+          listener.compilationFinished();
+        }
+      }
     }
-    catch (IOException e) {
-      listener.textAvailable("Error: Can't start compilation: " + e.toString());
-      listener.compilationFinished();
+
+    private void updateBusyTime() {
+      if (myActiveListeners.isEmpty() && myBusySince > 0) {
+        myBusyTime += System.currentTimeMillis() - myBusySince;
+        myBusySince = 0;
+      }
     }
-  }
 
-  private synchronized void cancelAllCompilations(final boolean reportError) {
-    for (final Listener listener : myActiveListeners.values()) {
-      if (reportError) {
-        listener.textAvailable("Error: Compilation terminated");
+    private synchronized void cancelAllCompilations(final boolean reportError) {
+      for (final Listener listener : myActiveListeners.values()) {
+        if (reportError) {
+          listener.textAvailable("Error: Compilation terminated");
+        }
+        listener.compilationFinished();
       }
-      listener.compilationFinished();
+      myActiveListeners.clear();
+      updateBusyTime();
     }
-    myActiveListeners.clear();
-  }
 
-  public void stopCompilerProcess() {
-    final Runnable runnable = () -> {
+    private void stop() {
       cancelAllCompilations(true);
       closeSocket();
-    };
-
-    final Application application = ApplicationManager.getApplication();
-    if (application.isDispatchThread()) {
-      application.executeOnPooledThread(runnable);
-    }
-    else {
-      runnable.run();
+      processStopped(this);
     }
-  }
 
-  private synchronized void closeSocket() {
-    // compiler process exits when socket closes, so it's enough just to close streams
+    private synchronized void closeSocket() {
+      // compiler process exits when socket closes, so it's enough just to close streams
 
-    if (myDataInputStream != null) {
-      try {
-        myDataInputStream.close();
+      if (myDataInputStream != null) {
+        try {
+          myDataInputStream.close();
+        }
+        catch (IOException ignored) {/**/}
       }
-      catch (IOException ignored) {/**/}
-    }
 
-    if (myDataOutputStream != null) {
-      try {
-        myDataOutputStream.close();
+      if (myDataOutputStream != null) {
+        try {
+          myDataOutputStream.close();
+        }
+        catch (IOException ignored) {/**/}
       }
-      catch (IOException ignored) {/**/}
-    }
 
-    if (myServerSocket != null) {
-      try {
-        myServerSocket.close();
+      if (myServerSocket != null) {
+        try {
+          myServerSocket.close();
+        }
+        catch (IOException ignored) {/**/}
       }
-      catch (IOException ignored) {/**/}
+
+      myServerSocket = null;
+      myDataInputStream = null;
+      myDataOutputStream = null;
+      myStopped = true;
     }
 
-    myServerSocket = null;
-    myDataInputStream = null;
-    myDataOutputStream = null;
-  }
+    private synchronized boolean removeListener(final Listener listener) {
+      String toRemove = null;
+      for (final Map.Entry<String, Listener> entry : myActiveListeners.entrySet()) {
+        if (entry.getValue() == listener) {
+          toRemove = entry.getKey();
+          break;
+        }
+      }
 
-  public synchronized void removeListener(final Listener listener) {
-    String toRemove = null;
-    for (final Map.Entry<String, Listener> entry : myActiveListeners.entrySet()) {
-      if (entry.getValue() == listener) {
-        toRemove = entry.getKey();
-        break;
+      if (toRemove != null) {
+        myActiveListeners.remove(toRemove);
+        updateBusyTime();
+        return true;
       }
+      return false;
     }
 
-    if (toRemove != null) {
-      myActiveListeners.remove(toRemove);
+    private synchronized int getActiveCompilationsNumber() {
+      return myActiveListeners.size();
+    }
+
+    private synchronized boolean isOutOfMemoryAndIdle() {
+      return myOutOfMemory && myActiveListeners.isEmpty();
     }
-  }
 
-  public synchronized int getActiveCompilationsNumber() {
-    return myActiveListeners.size();
+    private synchronized boolean isStopped() {
+      return myStopped;
+    }
+
+    @Nullable
+    private synchronized String getAndResetStatistics() {
+      if (myCompilationCount == 0) return null;
+
+      final String result = FlexCommonBundle.message("built.in.compiler.process.statistics", myNumber, myCompilationCount, myBusyTime,
+                                                     myOutOfMemory ? 1 : 0);
+      myCompilationCount = 0;
+      myBusyTime = 0;
+      return result;
+    }
   }
 }
@@ -3,6 +3,7 @@ package com.intellij.lang.javascript.flex.build;
 import com.intellij.CommonBundle;
 import com.intellij.flex.FlexCommonBundle;
 import com.intellij.flex.FlexCommonUtils;
+import com.intellij.flex.build.FlexBuildCache;
 import com.intellij.lang.javascript.flex.FlexBundle;
 import com.intellij.lang.javascript.flex.projectStructure.model.FlexBuildConfiguration;
 import com.intellij.lang.javascript.flex.projectStructure.options.BCUtils;
@@ -12,28 +13,50 @@ import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.compiler.CompileContext;
 import com.intellij.openapi.compiler.CompilerMessage;
 import com.intellij.openapi.compiler.CompilerMessageCategory;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.util.NullableComputable;
 import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
+import gnu.trove.THashMap;
+import gnu.trove.THashSet;
+import gnu.trove.TObjectIntHashMap;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class FlexCompilationManager {
 
+  private static final Logger LOG = Logger.getInstance(FlexCompilationManager.class.getName());
+
+  // how often the compilation thread checks for cancellation while all running tasks are busy
+  private static final long CANCEL_CHECK_PERIOD = 200;
+
   private final CompileContext myCompileContext;
   private final int myMaxParallelCompilations;
   private final int myTasksAmount;
-  private final Collection<FlexCompilationTask> myNotStartedTasks;
-  private final Collection<FlexCompilationTask> myInProgressTasks;
-  private final Collection<FlexCompilationTask> myFinishedTasks;
+  private final List<FlexCompilationTask> myNotStartedTasks; // tasks that more tasks wait for go first
+  private final List<FlexCompilationTask> myInProgressTasks;
+  private final List<FlexCompilationTask> myFinishedTasks;
+
+  // tasks report their completion from their own threads, the compilation thread takes them from this queue
+  private final BlockingQueue<FlexCompilationTask> myJustFinishedTasks = new LinkedBlockingQueue<FlexCompilationTask>();
 
-  private boolean myCompilationFinished;
+  // time when all dependencies of a not started task had been compiled, and start and finish times of started tasks
+  private final Map<FlexCompilationTask, Long> myReadyTimes = new THashMap<FlexCompilationTask, Long>();
+  private final Map<FlexCompilationTask, Long> myStartTimes = new THashMap<FlexCompilationTask, Long>();
+  private final Map<FlexCompilationTask, Long> myFinishTimes = new THashMap<FlexCompilationTask, Long>();
+
+  private volatile boolean myCompilationFinished;
+  private final Object myMessagesLock = new Object();
   private final FlexCompilerDependenciesCache myCompilerDependenciesCache;
 
   static final Pattern OUTPUT_FILE_CREATED_PATTERN = Pattern.compile("(\\[.*\\] )?(.+) \\(([0-9]+) bytes\\)");
@@ -43,15 +66,19 @@ public class FlexCompilationManager {
     myCompileContext = context;
     myMaxParallelCompilations = FlexCompilerProjectConfiguration.getInstance(context.getProject()).MAX_PARALLEL_COMPILATIONS;
     myTasksAmount = compilationTasks.size();
-    myNotStartedTasks = new LinkedList<FlexCompilationTask>(compilationTasks);
-    myInProgressTasks = new LinkedList<FlexCompilationTask>();
-    myFinishedTasks = new LinkedList<FlexCompilationTask>();
+    myNotStartedTasks = sortByWaitingTasksCount(compilationTasks);
+    myInProgressTasks = new ArrayList<FlexCompilationTask>(myMaxParallelCompilations);
+    myFinishedTasks = new ArrayList<FlexCompilationTask>(myTasksAmount);
     myCompilationFinished = false;
     myCompilerDependenciesCache = FlexCompilerHandler.getInstance(context.getProject()).getCompilerDependenciesCache();
   }
 
   public void compile() {
     try {
+      myCompilerDependenciesCache.loadBuildCache();
+      startNewTasksIfPossible();
+      updateProgressIndicator();
+
       while (!myNotStartedTasks.isEmpty() || !myInProgressTasks.isEmpty()) {
 
         if (myCompileContext.getProgressIndicator().isCanceled()) {
@@ -61,33 +88,46 @@ public class FlexCompilationManager {
           break;
         }
 
-        checkFinishedTasks();
-        startNewTaskIfPossible();
-        updateProgressIndicator();
-
+        FlexCompilationTask finishedTask;
         try {
-          //noinspection BusyWait
-          Thread.sleep(200);
+          finishedTask = myJustFinishedTasks.poll(CANCEL_CHECK_PERIOD, TimeUnit.MILLISECONDS);
         }
         catch (InterruptedException e) {
           assert false;
+          break;
         }
+
+        while (finishedTask != null) {
+          handleFinishedTask(finishedTask);
+          finishedTask = myJustFinishedTasks.poll();
+        }
+
+        startNewTasksIfPossible();
+        updateProgressIndicator();
       }
+
+      reportTimes();
+      FlexCompilerHandler.getInstance(myCompileContext.getProject()).getBuiltInFlexCompilerHandler().reportStatistics(myCompileContext);
     }
     finally {
-      //noinspection SynchronizeOnThis
-      synchronized (this) {
-        myCompilationFinished = true;
-      }
+      saveBuildCache();
+      myCompilationFinished = true;
     }
   }
 
-  public synchronized void addMessage(final FlexCompilationTask task,
-                                      CompilerMessageCategory category,
-                                      final String message,
-                                      final @Nullable String url,
-                                      final int lineNum,
-                                      final int columnNum) {
+  /**
+   * Called by a started task from any thread when it finishes, fails or is cancelled.
+   */
+  void taskFinished(final FlexCompilationTask task) {
+    myJustFinishedTasks.add(task);
+  }
+
+  public void addMessage(final FlexCompilationTask task,
+                         CompilerMessageCategory category,
+                         final String message,
+                         final @Nullable String url,
+                         final int lineNum,
+                         final int columnNum) {
     if (!myCompilationFinished) {
 
       if (message.contains(FlexCommonUtils.COULD_NOT_CREATE_JVM)) {
@@ -122,13 +162,17 @@ public class FlexCompilationManager {
       }
 
       final String prefix = getMessagePrefix(task);
-      myCompileContext.addMessage(category, prefix + message, url, lineNum, columnNum);
 
-      if (message.contains(FlexCommonUtils.OUT_OF_MEMORY) || message.contains(FlexCommonUtils.JAVA_HEAP_SPACE)) {
-        myCompileContext
-          .addMessage(CompilerMessageCategory.ERROR,
-                      prefix + FlexCommonBundle.message("increase.flex.compiler.heap", CommonBundle.settingsActionPath()),
-                      null, -1, -1);
+      // the refresh above waits for a write action, so only adding the messages is guarded: it keeps them of one task together
+      synchronized (myMessagesLock) {
+        myCompileContext.addMessage(category, prefix + message, url, lineNum, columnNum);
+
+        if (message.contains(FlexCommonUtils.OUT_OF_MEMORY) || message.contains(FlexCommonUtils.JAVA_HEAP_SPACE)) {
+          myCompileContext
+            .addMessage(CompilerMessageCategory.ERROR,
+                        prefix + FlexCommonBundle.message("increase.flex.compiler.heap", CommonBundle.settingsActionPath()),
+                        null, -1, -1);
+        }
       }
     }
   }
@@ -137,56 +181,50 @@ public class FlexCompilationManager {
     return !myCompileContext.isMake();
   }
 
-  private void checkFinishedTasks() {
-    final Iterator<FlexCompilationTask> iterator = myInProgressTasks.iterator();
-    while (iterator.hasNext()) {
-      FlexCompilationTask task = iterator.next();
-      if (task.isFinished()) {
-        iterator.remove();
-        myFinishedTasks.add(task);
+  private void handleFinishedTask(final FlexCompilationTask task) {
+    // a task may report completion more than once, for example if it is cancelled after the compiler has finished
+    if (!myInProgressTasks.remove(task)) return;
 
-        if (task.isCompilationFailed()) {
-          final Collection<FlexCompilationTask> cancelledTasks = cancelNotStartedDependentTasks(task);
-          if (cancelledTasks.isEmpty()) {
-            addMessage(task, CompilerMessageCategory.INFORMATION, FlexCommonBundle.message("compilation.failed"), null, -1, -1);
-          }
-          else {
-            addMessage(task, CompilerMessageCategory.INFORMATION, FlexCommonBundle.message("compilation.failed.dependent.will.be.skipped"),
-                       null, -1, -1);
-            for (final FlexCompilationTask cancelledTask : cancelledTasks) {
-              addMessage(cancelledTask, CompilerMessageCategory.INFORMATION, FlexBundle.message("compilation.skipped"), null, -1, -1);
-            }
-          }
-        }
-        else {
-          addMessage(task, CompilerMessageCategory.INFORMATION, FlexCommonBundle.message("compilation.successful"), null, -1, -1);
+    myFinishedTasks.add(task);
+    myFinishTimes.put(task, System.currentTimeMillis());
 
-          final String prefix = getMessagePrefix(task);
-          final List<String> taskMessages = new ArrayList<String>();
-          for (CompilerMessage message : myCompileContext.getMessages(CompilerMessageCategory.INFORMATION)) {
-            if (message.getMessage().startsWith(prefix)) {
-              taskMessages.add(message.getMessage().substring(prefix.length()));
-            }
-          }
-
-          try {
-            FlexCompilationUtils.performPostCompileActions(task.getModule(), task.getBC(), taskMessages);
-          }
-          catch (FlexCompilerException e) {
-            addMessage(task, CompilerMessageCategory.ERROR, e.getMessage(), e.getUrl(), e.getLine(), e.getColumn());
-          }
+    if (task.isCompilationFailed()) {
+      final Collection<FlexCompilationTask> cancelledTasks = cancelNotStartedDependentTasks(task);
+      if (cancelledTasks.isEmpty()) {
+        addMessage(task, CompilerMessageCategory.INFORMATION, FlexCommonBundle.message("compilation.failed"), null, -1, -1);
+      }
+      else {
+        addMessage(task, CompilerMessageCategory.INFORMATION, FlexCommonBundle.message("compilation.failed.dependent.will.be.skipped"),
+                   null, -1, -1);
+        for (final FlexCompilationTask cancelledTask : cancelledTasks) {
+          addMessage(cancelledTask, CompilerMessageCategory.INFORMATION, FlexBundle.message("compilation.skipped"), null, -1, -1);
         }
+      }
+    }
+    else {
+      addMessage(task, CompilerMessageCategory.INFORMATION, FlexCommonBundle.message("compilation.successful"), null, -1, -1);
 
-        if (task.isCompilationFailed()) {
-          myCompilerDependenciesCache.markBCDirty(task.getModule(), task.getBC());
-        }
-        else {
-          //noinspection SynchronizeOnThis
-          synchronized (this) {
-            myCompilerDependenciesCache.cacheBC(task.getModule(), task.getBC(), task.getConfigFiles());
-          }
+      final String prefix = getMessagePrefix(task);
+      final List<String> taskMessages = new ArrayList<String>();
+      for (CompilerMessage message : myCompileContext.getMessages(CompilerMessageCategory.INFORMATION)) {
+        if (message.getMessage().startsWith(prefix)) {
+          taskMessages.add(message.getMessage().substring(prefix.length()));
         }
       }
+
+      try {
+        FlexCompilationUtils.performPostCompileActions(task.getModule(), task.getBC(), taskMessages);
+      }
+      catch (FlexCompilerException e) {
+        addMessage(task, CompilerMessageCategory.ERROR, e.getMessage(), e.getUrl(), e.getLine(), e.getColumn());
+      }
+    }
+
+    if (task.isCompilationFailed()) {
+      myCompilerDependenciesCache.markBCDirty(task.getModule(), task.getBC());
+    }
+    else {
+      myCompilerDependenciesCache.cacheBC(task.getModule(), task.getBC(), task.getConfigFiles());
     }
   }
 
@@ -195,7 +233,7 @@ public class FlexCompilationManager {
   }
 
   private Collection<FlexCompilationTask> cancelNotStartedDependentTasks(final FlexCompilationTask failedTask) {
-    final Collection<FlexCompilationTask> tasksToCancel = new LinkedList<FlexCompilationTask>();
+    final Collection<FlexCompilationTask> tasksToCancel = new ArrayList<FlexCompilationTask>();
     appendAndCancelNotStartedDependentTasks(tasksToCancel, failedTask);
 
     if (BCUtils.canHaveRLMsAndRuntimeStylesheets(failedTask.getBC())) {
@@ -240,10 +278,15 @@ public class FlexCompilationManager {
     }
   }
 
-  private void startNewTaskIfPossible() {
-    FlexCompilationTask taskToStart = null;
+  /**
+   * Starts not started tasks in the order of {@link #myNotStartedTasks} while there are free slots and tasks whose dependencies have
+   * been compiled. Tasks skipped because nothing has changed finish at once, so their dependents may be started by the same call.
+   */
+  private void startNewTasksIfPossible() {
+    final long now = System.currentTimeMillis();
 
-    if (!myNotStartedTasks.isEmpty() && myInProgressTasks.size() < myMaxParallelCompilations) {
+    while (!myNotStartedTasks.isEmpty() && myInProgressTasks.size() < myMaxParallelCompilations) {
+      FlexCompilationTask taskToStart = null;
       boolean allTasksHaveDependenciesOnlyInNotStarted = true; // to handle cyclic dependencies
 
       for (FlexCompilationTask task : myNotStartedTasks) {
@@ -266,33 +309,113 @@ public class FlexCompilationManager {
       }
 
       if (taskToStart == null && allTasksHaveDependenciesOnlyInNotStarted) {
-        taskToStart = myNotStartedTasks.iterator().next(); // just take any from cycle dependencies
+        taskToStart = myNotStartedTasks.get(0); // just take any from cycle dependencies
       }
 
-      if (taskToStart != null) {
-        myNotStartedTasks.remove(taskToStart);
+      if (taskToStart == null) break;
 
-        if (myCompilerDependenciesCache.isNothingChangedSincePreviousCompilation(taskToStart.getModule(), taskToStart.getBC())) {
-          addMessage(taskToStart, CompilerMessageCategory.INFORMATION, FlexBundle.message("compilation.skipped.because.nothing.changed"),
-                     null, -1, -1);
-          taskToStart.cancel();
-          myFinishedTasks.add(taskToStart);
+      myNotStartedTasks.remove(taskToStart);
+      if (!myReadyTimes.containsKey(taskToStart)) {
+        myReadyTimes.put(taskToStart, now);
+      }
 
-          try {
-            FlexCompilationUtils.performPostCompileActions(taskToStart.getModule(), taskToStart.getBC(), Collections.<String>emptyList());
-          }
-          catch (FlexCompilerException e) {
-            addMessage(taskToStart, CompilerMessageCategory.ERROR, e.getMessage(), e.getUrl(), e.getLine(), e.getColumn());
-          }
+      if (myCompilerDependenciesCache.isNothingChangedSincePreviousCompilation(taskToStart.getModule(), taskToStart.getBC())) {
+        skipTask(taskToStart, FlexBundle.message("compilation.skipped.because.nothing.changed"));
+      }
+      else if (!isRebuild() && !BCUtils.isFlexUnitBC(taskToStart.getBC()) && isUpToDateInBuildCache(taskToStart)) {
+        skipTask(taskToStart, FlexCommonBundle.message("compilation.up.to.date"));
+        myCompilerDependenciesCache.cacheBC(taskToStart.getModule(), taskToStart.getBC(), taskToStart.getConfigFiles());
+      }
+      else {
+        myInProgressTasks.add(taskToStart);
+        myStartTimes.put(taskToStart, System.currentTimeMillis());
+        taskToStart.start(this);
+      }
+    }
+
+    if (myInProgressTasks.size() >= myMaxParallelCompilations) {
+      // remember when the tasks that could start now had become ready, the difference with their start time is the queue wait
+      for (FlexCompilationTask task : myNotStartedTasks) {
+        if (!myReadyTimes.containsKey(task) &&
+            !hasDependenciesIn(task, myInProgressTasks) &&
+            !hasDependenciesIn(task, myNotStartedTasks) &&
+            (!BCUtils.isRLMTemporaryBC(task.getBC()) || isMainAppCompiledForRLM(task.getModule(), task.getBC()))) {
+          myReadyTimes.put(task, now);
         }
-        else {
-          taskToStart.start(this);
-          myInProgressTasks.add(taskToStart);
+      }
+    }
+  }
+
+  private boolean isUpToDateInBuildCache(final FlexCompilationTask task) {
+    try {
+      task.setConfigFiles(task.createConfigFiles());
+    }
+    catch (IOException e) {
+      return false; // the task will report the error when started
+    }
+    return myCompilerDependenciesCache.isUpToDateInBuildCache(task.getModule(), task.getBC(), task.getConfigFiles());
+  }
+
+  private void skipTask(final FlexCompilationTask task, final String message) {
+    addMessage(task, CompilerMessageCategory.INFORMATION, message, null, -1, -1);
+    task.cancel();
+    myFinishedTasks.add(task);
+
+    try {
+      FlexCompilationUtils.performPostCompileActions(task.getModule(), task.getBC(), Collections.<String>emptyList());
+    }
+    catch (FlexCompilerException e) {
+      addMessage(task, CompilerMessageCategory.ERROR, e.getMessage(), e.getUrl(), e.getLine(), e.getColumn());
+    }
+  }
+
+  /**
+   * Tasks that more tasks transitively wait for go first, so that libraries with many dependents don't wait for free slots behind leaf
+   * applications. Tasks with the same number of waiting tasks keep their original order.
+   */
+  private static List<FlexCompilationTask> sortByWaitingTasksCount(final Collection<FlexCompilationTask> tasks) {
+    final Map<FlexCompilationTask, Collection<FlexCompilationTask>> waitingTasks =
+      new THashMap<FlexCompilationTask, Collection<FlexCompilationTask>>();
+    for (FlexCompilationTask task : tasks) {
+      final Collection<FlexCompilationTask> waiting = new ArrayList<FlexCompilationTask>();
+      for (FlexCompilationTask otherTask : tasks) {
+        if (otherTask != task && isWaitingFor(otherTask, task)) {
+          waiting.add(otherTask);
         }
+      }
+      waitingTasks.put(task, waiting);
+    }
 
-        startNewTaskIfPossible();
+    final TObjectIntHashMap<FlexCompilationTask> transitiveCounts = new TObjectIntHashMap<FlexCompilationTask>();
+    for (FlexCompilationTask task : tasks) {
+      final Set<FlexCompilationTask> visited = new THashSet<FlexCompilationTask>();
+      final Deque<FlexCompilationTask> toVisit = new ArrayDeque<FlexCompilationTask>(waitingTasks.get(task));
+      while (!toVisit.isEmpty()) {
+        final FlexCompilationTask waitingTask = toVisit.pop();
+        if (waitingTask != task && visited.add(waitingTask)) {
+          toVisit.addAll(waitingTasks.get(waitingTask));
+        }
       }
+      transitiveCounts.put(task, visited.size());
     }
+
+    final List<FlexCompilationTask> result = new ArrayList<FlexCompilationTask>(tasks);
+    Collections.sort(result, (task1, task2) -> transitiveCounts.get(task2) - transitiveCounts.get(task1));
+    return result;
+  }
+
+  private static boolean isWaitingFor(final FlexCompilationTask task, final FlexCompilationTask otherTask) {
+    //noinspection ConstantConditions
+    if (task.getDependencies().contains(otherTask.getBC())) return true;
+
+    // runtime-loaded modules are compiled after the main application, see isMainAppCompiledForRLM()
+    final FlexBuildConfiguration bc = otherTask.getBC();
+    return BCUtils.isRLMTemporaryBC(task.getBC()) &&
+           task.getModule() == otherTask.getModule() &&
+           task.getBC().getName().equals(bc.getName()) &&
+           !BCUtils.isRLMTemporaryBC(bc) &&
+           !BCUtils.isRuntimeStyleSheetBC(bc) &&
+           BCUtils.canHaveRLMsAndRuntimeStylesheets(bc);
   }
 
   private boolean isMainAppCompiledForRLM(final Module module, final FlexBuildConfiguration rlmBC) {
@@ -335,6 +458,39 @@ public class FlexCompilationManager {
     }
   }
 
+  /**
+   * Reports how long each compiled task took and how long it waited for a free slot after its dependencies had been compiled.
+   */
+  private void reportTimes() {
+    long totalWait = 0;
+    for (FlexCompilationTask task : myFinishedTasks) {
+      final Long startTime = myStartTimes.get(task);
+      final Long finishTime = myFinishTimes.get(task);
+      if (startTime == null || finishTime == null) continue;
+
+      final Long readyTime = myReadyTimes.get(task);
+      final long wait = readyTime == null ? 0 : Math.max(0, startTime - readyTime);
+      totalWait += wait;
+      myCompileContext.addMessage(CompilerMessageCategory.STATISTICS,
+                                  getMessagePrefix(task) + FlexBundle.message("compilation.task.times", finishTime - startTime, wait),
+                                  null, -1, -1);
+    }
+
+    LOG.debug(myStartTimes.size() + " Flex compilation tasks, " + myMaxParallelCompilations + " parallel compilations, " +
+              "total wait for a free slot " + totalWait + " ms");
+  }
+
+  private void saveBuildCache() {
+    myCompilerDependenciesCache.saveBuildCache();
+
+    final FlexBuildCache buildCache = myCompilerDependenciesCache.getBuildCache();
+    if (buildCache != null && buildCache.getHitCount() + buildCache.getMissCount() > 0) {
+      myCompileContext.addMessage(CompilerMessageCategory.STATISTICS,
+                                  FlexCommonBundle.message("build.cache.statistics", buildCache.getHitCount(), buildCache.getMissCount()),
+                                  null, -1, -1);
+    }
+  }
+
   static VirtualFile refreshAndFindFileInWriteAction(final String outputFilePath, final String... possibleBaseDirs) {
     final LocalFileSystem localFileSystem = LocalFileSystem.getInstance();
     final Ref<VirtualFile> outputFileRef = new Ref<VirtualFile>();
@@ -21,9 +21,10 @@ public abstract class FlexCompilationTask {
   protected final Collection<FlexBuildConfiguration> myDependencies;
 
   private List<VirtualFile> myConfigFiles;
+  private volatile FlexCompilationManager myCompilationManager;
 
-  protected boolean myFinished;
-  protected boolean myCompilationFailed;
+  private volatile boolean myFinished;
+  protected volatile boolean myCompilationFailed;
 
   protected FlexCompilationTask(final Module module,
                                 final FlexBuildConfiguration bc,
@@ -42,8 +43,11 @@ public abstract class FlexCompilationTask {
   }
 
   public void start(final FlexCompilationManager compilationManager) {
+    myCompilationManager = compilationManager;
     try {
-      myConfigFiles = createConfigFiles();
+      if (myConfigFiles == null) { // already created if the build cache has been checked
+        myConfigFiles = createConfigFiles();
+      }
       final String outputFilePath = myBC.getActualOutputFilePath();
 
       if (compilationManager.isRebuild()) {
@@ -82,7 +86,18 @@ public abstract class FlexCompilationTask {
 
   public void cancel() {
     doCancel();
+    setFinished();
+  }
+
+  /**
+   * Notifies the compilation manager if the task has been started, so that it can start the next task without waiting.
+   */
+  protected void setFinished() {
     myFinished = true;
+    final FlexCompilationManager compilationManager = myCompilationManager;
+    if (compilationManager != null) {
+      compilationManager.taskFinished(this);
+    }
   }
 
   protected abstract void doCancel();
@@ -107,6 +122,10 @@ public abstract class FlexCompilationTask {
     return myConfigFiles;
   }
 
+  void setConfigFiles(final List<VirtualFile> configFiles) {
+    myConfigFiles = configFiles;
+  }
+
   public FlexBuildConfiguration getBC() {
     return myBC;
   }
@@ -1,19 +1,25 @@
 package com.intellij.lang.javascript.flex.build;
 
 import com.intellij.ProjectTopics;
-import com.intellij.flex.model.bc.BuildConfigurationNature;
+import com.intellij.compiler.server.BuildManager;
+import com.intellij.flex.build.FlexBuildCache;
 import com.intellij.lang.javascript.flex.FlexUtils;
+import com.intellij.lang.javascript.flex.projectStructure.FlexBuildConfigurationManager;
+import com.intellij.lang.javascript.flex.projectStructure.FlexProjectLevelCompilerOptionsHolder;
+import com.intellij.lang.javascript.flex.projectStructure.model.AirPackagingOptions;
 import com.intellij.lang.javascript.flex.projectStructure.model.FlexBuildConfiguration;
 import com.intellij.lang.javascript.flex.projectStructure.model.impl.Factory;
+import com.intellij.lang.javascript.flex.projectStructure.options.BCUtils;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.ModuleAdapter;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.projectRoots.Sdk;
 import com.intellij.openapi.roots.ModuleRootManager;
 import com.intellij.openapi.roots.ProjectFileIndex;
 import com.intellij.openapi.roots.ProjectRootManager;
 import com.intellij.openapi.util.Condition;
 import com.intellij.openapi.util.Pair;
-import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.containers.ContainerUtil;
 import gnu.trove.THashMap;
@@ -21,26 +27,18 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.*;
 
+/**
+ * Remembers timestamps of the files each compiled BC depends on, so that the BC can be skipped if nothing has changed. The timestamps
+ * are kept in memory only; after a restart unchanged BCs are found in the persistent {@link FlexBuildCache} that is shared with the
+ * external build.
+ */
 public class FlexCompilerDependenciesCache {
 
   private final Project myProject;
   private final Map<Module, Collection<BCInfo>> myCache = new THashMap<Module, Collection<BCInfo>>();
-
-  private static final String[] TAGS_FOR_FILE_PATHS_IN_CONFIG_FILE =
-    {"<flex-config><compiler><external-library-path><path-element>", "<flex-config><compiler><local-font-paths><path-element>",
-      "<flex-config><compiler><library-path><path-element>", "<flex-config><compiler><namespaces><namespace><manifest>",
-      /*"<flex-config><compiler><source-path><path-element>", "<flex-config><include-sources><path-element>",*/
-      "<flex-config><compiler><theme><filename>", "<flex-config><include-file><path>",
-      "<flex-config><include-stylesheet><path>", "<flex-config><file-specs><path-element>",
-      "<flex-config><compiler><include-libraries><library>", "<flex-config><compiler><local-fonts-snapshot>",
-      "<flex-config><compiler><defaults-css-url>", "<flex-config><compiler><defaults-css-files><filename>",
-      "<flex-config><load-config>", "<flex-config><load-externs>", "<flex-config><link-report>",
-      "<flex-config><services>", "<flex-config><metadata><raw-metadata>",
-      // "<flex-config><output>"   intentionally excluded, because already handled
-    };
+  @Nullable private FlexBuildCache myBuildCache;
 
   public FlexCompilerDependenciesCache(final Project project) {
     myProject = project;
@@ -56,6 +54,25 @@ public class FlexCompilerDependenciesCache {
     myCache.clear();
   }
 
+  /**
+   * (Re)reads the persistent cache, the external build might have updated it since the previous compilation.
+   */
+  public void loadBuildCache() {
+    final File projectSystemDir = BuildManager.getInstance().getProjectSystemDirectory(myProject);
+    myBuildCache = projectSystemDir == null ? null : new FlexBuildCache(projectSystemDir);
+  }
+
+  public void saveBuildCache() {
+    if (myBuildCache != null) {
+      myBuildCache.save();
+    }
+  }
+
+  @Nullable
+  public FlexBuildCache getBuildCache() {
+    return myBuildCache;
+  }
+
   public void markModuleDirty(final Module module) {
     myCache.remove(module);
   }
@@ -69,6 +86,10 @@ public class FlexCompilerDependenciesCache {
         myCache.remove(module);
       }
     }
+
+    if (myBuildCache != null) {
+      myBuildCache.remove(getBuildCacheKey(module, bc));
+    }
   }
 
   public void markModuleDirtyIfInSourceRoot(final VirtualFile file) {
@@ -100,6 +121,16 @@ public class FlexCompilerDependenciesCache {
     return true;
   }
 
+  /**
+   * Checks the persistent cache, which knows about BCs compiled before the IDE restart or by the external build. Counts a hit or a miss.
+   */
+  public boolean isUpToDateInBuildCache(final Module module, final FlexBuildConfiguration bc, final List<VirtualFile> configFiles) {
+    if (myBuildCache == null) return false;
+
+    final String inputsHash = computeInputsHash(myBuildCache, module, bc, getFileDependencies(module, bc, configFiles));
+    return myBuildCache.isUpToDate(getBuildCacheKey(module, bc), inputsHash, new File(bc.getActualOutputFilePath()));
+  }
+
   public void cacheBC(final Module module, final FlexBuildConfiguration bc, final List<VirtualFile> configFiles) {
     Collection<BCInfo> infosForModule = myCache.get(module);
     if (infosForModule == null) {
@@ -119,53 +150,67 @@ public class FlexCompilerDependenciesCache {
     final BCInfo bcInfo = new BCInfo(Factory.getCopy(bc), ModuleRootManager.getInstance(module).getSourceRootUrls());
     infosForModule.add(bcInfo);
 
-    bcInfo.addFileDependency(outputFile.getPath());
+    final File outputIoFile = VfsUtilCore.virtualToIoFile(outputFile);
+    bcInfo.addFileDependency(outputIoFile);
 
-    final String workDirPath = FlexUtils.getFlexCompilerWorkDirPath(module.getProject(), null);
-    for (VirtualFile configFile : configFiles) {
-      addFileDependencies(bcInfo, configFile, workDirPath);
+    final List<File> fileDependencies = getFileDependencies(module, bc, configFiles);
+    for (File file : fileDependencies) {
+      bcInfo.addFileDependency(file);
     }
 
-    if (bc.isTempBCForCompilation() && !bc.getCompilerOptions().getAdditionalConfigFilePath().isEmpty()) {
-      bcInfo.addFileDependency(bc.getCompilerOptions().getAdditionalConfigFilePath());
+    if (myBuildCache != null && !BCUtils.isFlexUnitBC(bc)) { // like in the external build
+      myBuildCache.update(getBuildCacheKey(module, bc), computeInputsHash(myBuildCache, module, bc, fileDependencies), outputIoFile);
     }
+  }
 
-    final BuildConfigurationNature nature = bc.getNature();
-    if (nature.isApp() && !nature.isWebPlatform()) {
-      if (nature.isDesktopPlatform()) {
-        if (!bc.getAirDesktopPackagingOptions().isUseGeneratedDescriptor()) {
-          bcInfo.addFileDependency(bc.getAirDesktopPackagingOptions().getCustomDescriptorPath());
-        }
-      }
-      else {
-        if (bc.getAndroidPackagingOptions().isEnabled() && !bc.getAndroidPackagingOptions().isUseGeneratedDescriptor()) {
-          bcInfo.addFileDependency(bc.getAndroidPackagingOptions().getCustomDescriptorPath());
-        }
-        if (bc.getIosPackagingOptions().isEnabled() && !bc.getIosPackagingOptions().isUseGeneratedDescriptor()) {
-          bcInfo.addFileDependency(bc.getIosPackagingOptions().getCustomDescriptorPath());
-        }
-      }
+  private static List<File> getFileDependencies(final Module module, final FlexBuildConfiguration bc, final List<VirtualFile> configFiles) {
+    final List<File> configIoFiles = new ArrayList<File>();
+    for (VirtualFile configFile : configFiles) {
+      configIoFiles.add(VfsUtilCore.virtualToIoFile(configFile));
     }
+
+    return FlexBuildCache.getFileDependencies(
+      configIoFiles, FlexUtils.getFlexCompilerWorkDirPath(module.getProject(), null),
+      bc.isTempBCForCompilation() ? bc.getCompilerOptions().getAdditionalConfigFilePath() : null, bc.getNature(),
+      getCustomDescriptorPath(bc.getAirDesktopPackagingOptions(), true),
+      getCustomDescriptorPath(bc.getAndroidPackagingOptions(), bc.getAndroidPackagingOptions().isEnabled()),
+      getCustomDescriptorPath(bc.getIosPackagingOptions(), bc.getIosPackagingOptions().isEnabled()));
   }
 
   @Nullable
-  private static BCInfo findCacheForBC(final @NotNull Collection<BCInfo> bcInfos, @NotNull final FlexBuildConfiguration bc) {
-    return ContainerUtil.find(bcInfos, info -> info.myBC.isEqual(bc));
+  private static String getCustomDescriptorPath(final AirPackagingOptions packagingOptions, final boolean enabled) {
+    return enabled && !packagingOptions.isUseGeneratedDescriptor() ? packagingOptions.getCustomDescriptorPath() : null;
   }
 
-  private static void addFileDependencies(final BCInfo bcInfo, final VirtualFile configFile, final String workDirPath) {
-    bcInfo.addFileDependency(configFile.getPath());
-
-    try {
-      final Map<String, List<String>> elementsMap =
-        FlexUtils.findXMLElements(configFile.getInputStream(), Arrays.asList(TAGS_FOR_FILE_PATHS_IN_CONFIG_FILE));
-      for (List<String> filePathList : elementsMap.values()) {
-        for (String filePath : filePathList) {
-          bcInfo.addFileDependency(filePath, configFile.getParent().getPath(), workDirPath);
-        }
-      }
+  private static String computeInputsHash(final FlexBuildCache buildCache,
+                                          final Module module,
+                                          final FlexBuildConfiguration bc,
+                                          final List<File> fileDependencies) {
+    final List<File> sourceRoots = new ArrayList<File>();
+    for (VirtualFile sourceRoot : ModuleRootManager.getInstance(module).getSourceRoots(true)) {
+      sourceRoots.add(VfsUtilCore.virtualToIoFile(sourceRoot));
     }
-    catch (IOException e) {/*ignore*/}
+
+    final Sdk sdk = bc.getSdk();
+    final Project project = module.getProject();
+    final List<String> options =
+      FlexBuildCache.getOptions(sdk == null ? null : sdk.getHomePath(), sdk == null ? null : sdk.getVersionString(),
+                                FlexCompilerProjectConfiguration.getInstance(project).PREFER_ASC_20,
+                                FlexProjectLevelCompilerOptionsHolder.getInstance(project).getProjectLevelCompilerOptions()
+                                  .getAdditionalOptions(),
+                                FlexBuildConfigurationManager.getInstance(module).getModuleLevelCompilerOptions().getAdditionalOptions(),
+                                bc.getCompilerOptions().getAdditionalOptions());
+
+    return buildCache.computeInputsHash(sourceRoots, fileDependencies, options);
+  }
+
+  private static String getBuildCacheKey(final Module module, final FlexBuildConfiguration bc) {
+    return FlexBuildCache.getKey(module.getName(), bc.getName(), bc.getActualOutputFilePath());
+  }
+
+  @Nullable
+  private static BCInfo findCacheForBC(final @NotNull Collection<BCInfo> bcInfos, @NotNull final FlexBuildConfiguration bc) {
+    return ContainerUtil.find(bcInfos, info -> info.myBC.isEqual(bc));
   }
 
   private static class BCInfo {
@@ -178,20 +223,8 @@ public class FlexCompilerDependenciesCache {
       mySourceRootUrls = sourceRootUrls;
     }
 
-    private void addFileDependency(final String filePath, final String... potentialBaseDirs) {
-      final File file = new File(FileUtil.toSystemDependentName(filePath));
-      if (file.exists()) {
-        myFileToTimestamp.add(Pair.create(file, file.lastModified()));
-      }
-      else if (potentialBaseDirs != null) {
-        for (String baseDir : potentialBaseDirs) {
-          final File file1 = new File(FileUtil.toSystemDependentName(baseDir + '/' + filePath));
-          if (file1.exists()) {
-            myFileToTimestamp.add(Pair.create(file1, file1.lastModified()));
-            break;
-          }
-        }
-      }
+    private void addFileDependency(final File file) {
+      myFileToTimestamp.add(Pair.create(file, file.lastModified()));
     }
 
     public boolean timestampsChanged() {
@@ -19,6 +19,7 @@ public class FlexCompilerProjectConfiguration implements PersistentStateComponen
   public boolean USE_MXMLC_COMPC = false;
   public boolean PREFER_ASC_20 = true;
   public int MAX_PARALLEL_COMPILATIONS = 4;
+  public int BUILT_IN_COMPILER_PROCESSES = 0; // 0 means half of the available processors
   public int HEAP_SIZE_MB = 512;
   public String VM_OPTIONS = "";
 
@@ -46,6 +47,7 @@ public class FlexCompilerProjectConfiguration implements PersistentStateComponen
     }
 
     //  MAX_PARALLEL_COMPILATIONS = state.MAX_PARALLEL_COMPILATIONS;
+    BUILT_IN_COMPILER_PROCESSES = state.BUILT_IN_COMPILER_PROCESSES;
     HEAP_SIZE_MB = state.HEAP_SIZE_MB;
     VM_OPTIONS = state.VM_OPTIONS;
   }
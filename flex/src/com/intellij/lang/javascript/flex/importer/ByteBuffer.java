@@ -2,45 +2,63 @@ package com.intellij.lang.javascript.flex.importer;
 
 import org.jetbrains.annotations.NotNull;
 
-import java.io.InputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.ByteArrayInputStream;
-import java.io.UnsupportedEncodingException;
-import java.util.zip.InflaterInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
 
 /**
+ * Read-only view of the <code>[start, end)</code> range of a byte array, positions are relative to <code>start</code>.
+ * {@link #readBytes(ByteBuffer, int)} slices the underlying array without copying, so ABC blocks and method bodies of a SWF share
+ * the array of the whole (inflated) SWF. Reads past the end of the view throw {@link ArrayIndexOutOfBoundsException}
+ * like reads past the end of an array do.
+ *
  * @author Maxim.Mossienko
 *         Date: Oct 20, 2008
 *         Time: 7:02:53 PM
 */
 class ByteBuffer {
+  // SWF bodies inflate to 2-5 times their compressed size
+  private static final int MAX_INITIAL_INFLATE_RATIO = 16;
+  private static final int MAX_INITIAL_INFLATE_SIZE = 64 * 1024 * 1024;
+
   private byte[] bytes;
+  private int start;
+  private int end;
   private int position;
   private boolean littleEndian;
 
-  void read(@NotNull InputStream inputStream) throws IOException {
-    try {
-      bytes = readStream(inputStream);
-    }
-    finally {
-      if (inputStream != null) inputStream.close();
-    }
+  ByteBuffer() {
+  }
+
+  ByteBuffer(@NotNull final byte[] bytes) {
+    this.bytes = bytes;
+    end = bytes.length;
   }
 
   void setLittleEndian() {
     littleEndian = true;
   }
 
+  private int advance(final int length) {
+    final int offset = start + position;
+    if (length < 0 || offset + length > end) {
+      throw new ArrayIndexOutOfBoundsException(position + length);
+    }
+    position += length;
+    return offset;
+  }
+
   int readInt() {
-    int result;
+    final int i = advance(4);
     if (littleEndian) {
-      result = (((bytes[position + 3] & 0xFF) << 8 | (bytes[position + 2] & 0xFF)) << 16) + ((bytes[position + 1] & 0xFF) << 8) | (bytes[position] & 0xFF);
+      return (((bytes[i + 3] & 0xFF) << 8 | (bytes[i + 2] & 0xFF)) << 16) + ((bytes[i + 1] & 0xFF) << 8) | (bytes[i] & 0xFF);
     }
     else {
-      result = (((bytes[position] & 0xFF) << 8 | (bytes[position + 1] & 0xFF)) << 16) + ((bytes[position + 2] & 0xFF) << 8) | (bytes[position + 3] & 0xFF);
+      return (((bytes[i] & 0xFF) << 8 | (bytes[i + 1] & 0xFF)) << 16) + ((bytes[i + 2] & 0xFF) << 8) | (bytes[i + 3] & 0xFF);
     }
-    position += 4;
-    return result;
   }
 
   public int readUnsignedInt() {
@@ -52,82 +70,108 @@ class ByteBuffer {
   }
 
   public int bytesSize() {
-    return bytes.length;
+    return end - start;
   }
 
-  public void uncompress() throws IOException {
-    final InflaterInputStream zipInputStream = new InflaterInputStream(new ByteArrayInputStream(bytes));
-
-    bytes = readStream(zipInputStream);
+  /**
+   * Inflates the zlib stream that starts at <code>offset</code> and lasts till the end of the view, e.g. the body of a compressed SWF.
+   *
+   * @param expectedSize size of the inflated data if known from a header, used to allocate the result at once unless it is unrealistically
+   *                     large for the input, e.g. comes from a corrupted header
+   */
+  @NotNull
+  public ByteBuffer inflate(final int offset, final int expectedSize) throws IOException {
+    if (offset < 0 || offset > bytesSize()) throw new ArrayIndexOutOfBoundsException(offset);
 
-    zipInputStream.close();
-  }
+    final int inputLength = bytesSize() - offset;
+    // the array grows below if the data inflates to more than the preallocated size
+    final long maxInitialSize = Math.max(8192, Math.min((long)MAX_INITIAL_INFLATE_RATIO * inputLength, MAX_INITIAL_INFLATE_SIZE));
+    final long initialSize = expectedSize > 0 ? Math.min(expectedSize, maxInitialSize) : Math.min(4L * inputLength + 8192, maxInitialSize);
 
-  private static byte[] readStream(final InputStream zipInputStream) throws IOException {
-    final byte[] buf = new byte[8192];
-    byte[] result = new byte[8192];
-    int total = 0;
-
-    while (true) {
-      int read = zipInputStream.read(buf);
-      if (read == -1) break;
-      if (total + read >= result.length) {
-        byte[] newresult = new byte[result.length * 2];
-        System.arraycopy(result, 0, newresult, 0, total);
-        result = newresult;
+    final Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(bytes, start + offset, inputLength);
+      byte[] result = new byte[(int)initialSize];
+      int total = 0;
+
+      while (!inflater.finished()) {
+        if (total == result.length) {
+          final byte[] newResult = new byte[result.length * 2];
+          System.arraycopy(result, 0, newResult, 0, total);
+          result = newResult;
+        }
+
+        final int read = inflater.inflate(result, total, result.length - total);
+        if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          if (inflater.needsDictionary()) throw new ZipException("ZLIB dictionary missing");
+          throw new EOFException("Unexpected end of ZLIB input stream");
+        }
+        total += read;
       }
 
-      System.arraycopy(buf, 0, result, total, read);
-      total += read;
+      final ByteBuffer buffer = new ByteBuffer(result);
+      buffer.end = total;
+      buffer.littleEndian = littleEndian;
+      return buffer;
+    }
+    catch (DataFormatException e) {
+      final String message = e.getMessage();
+      throw new ZipException(message != null ? message : "Invalid ZLIB data format");
+    }
+    finally {
+      inflater.end();
     }
-
-    final byte[] realResult = new byte[total];
-    System.arraycopy(result, 0, realResult, 0, total);
-    return realResult;
   }
 
   public int readUnsignedByte() {
-    return bytes[position++] & 0xFF;
+    return bytes[advance(1)] & 0xFF;
   }
 
   public int readByte() {
-    return bytes[position++];
+    return bytes[advance(1)];
   }
 
   public int readUnsignedShort() {
-    int result;
+    final int i = advance(2);
     if (littleEndian) {
-      result = (bytes[position + 1] & 0xFF) << 8 | (bytes[position] & 0xFF);
+      return (bytes[i + 1] & 0xFF) << 8 | (bytes[i] & 0xFF);
     }
     else {
-      result = (bytes[position] & 0xFF) << 8 | (bytes[position + 1] & 0xFF);
+      return (bytes[i] & 0xFF) << 8 | (bytes[i + 1] & 0xFF);
     }
-    position += 2;
-    return result;
   }
 
+  /**
+   * Makes <code>data2</code> a view of the next <code>length</code> bytes of this buffer, nothing is copied.
+   */
   public void readBytes(ByteBuffer data2, int length) {
-    data2.bytes = new byte[length];
-    System.arraycopy(bytes, position, data2.bytes, 0, length);
-    position += length;
+    final int offset = advance(length);
+    data2.bytes = bytes;
+    data2.start = offset;
+    data2.end = offset + length;
+    data2.position = 0;
   }
 
   public boolean eof() {
-    return position >= bytes.length;
+    return position >= bytesSize();
   }
 
   public String readUTFBytes(int i) {
-    try {
-      final byte[] buf = new byte[i];
-      while (i > 0) {
-        buf[buf.length - i] = (byte)readByte();
-        --i;
-      }
-      return new String(buf, "utf-8");
-    }
-    catch (UnsupportedEncodingException e) {
-      throw new RuntimeException(e);
+    return new String(bytes, advance(i), i, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reads a null-terminated UTF-8 string, the terminator is skipped.
+   */
+  public String readNullTerminatedString() {
+    final int offset = start + position;
+    int length = 0;
+    while (offset + length < end && bytes[offset + length] != 0) {
+      length++;
     }
+    final String s = readUTFBytes(length);
+    readByte();
+    return s;
   }
 
   public double readDouble() {
@@ -149,7 +193,8 @@ class ByteBuffer {
   }
 
   public byte getByte(int i) {
-    return bytes[i];
+    if (i < 0 || i >= bytesSize()) throw new ArrayIndexOutOfBoundsException(i);
+    return bytes[start + i];
   }
 
   public int getPosition() {
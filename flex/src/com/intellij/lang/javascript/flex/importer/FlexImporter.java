@@ -43,36 +43,76 @@ public class FlexImporter {
   }
 
   public static String dumpContentsFromStream(final InputStream in, boolean _dumpCode) throws IOException {
+    return dumpContentsFromBytes(loadBytes(in), _dumpCode);
+  }
+
+  public static String dumpContentsFromBytes(@NotNull final byte[] bytes, boolean _dumpCode) throws IOException {
     final AbstractDumpProcessor abcDumper = new AbcDumper(_dumpCode);
-    processFlexByteCode(in, abcDumper);
+    processFlexByteCode(bytes, abcDumper);
     return abcDumper.getResult();
   }
 
   @NonNls
   public static String buildInterfaceFromStream(final InputStream in) {
+    try {
+      return buildInterfaceFromBytes(loadBytes(in));
+    }
+    catch (IOException ex) {
+      return "/* " + ex.getLocalizedMessage() + " */";
+    }
+  }
+
+  @NonNls
+  public static String buildInterfaceFromBytes(@NotNull final byte[] bytes) {
+    try {
+      return buildInterfaceFromBytesOrThrow(bytes);
+    }
+    catch (IOException ex) {
+      return "/* " + ex.getLocalizedMessage() + " */";
+    }
+  }
+
+  /**
+   * Unlike {@link #buildInterfaceFromBytes(byte[])} doesn't return the error text as the interface of a file that can't be read.
+   */
+  @NonNls
+  public static String buildInterfaceFromBytesOrThrow(@NotNull final byte[] bytes) throws IOException {
     try {
       final AbstractDumpProcessor abcDumper = new AS3InterfaceDumper();
-      processFlexByteCode(in, abcDumper);
+      processFlexByteCode(bytes, abcDumper);
       final String s = abcDumper.getResult();
       //saveStringAsFile(s, File.createTempFile("fleximport", ".as").getPath());
       return s;
     }
-    catch (IOException ex) {
-      return "/* " + ex.getLocalizedMessage() + " */";
-    }
     catch (ArrayIndexOutOfBoundsException ex) {
-      return "/* Invalid format */";
+      throw new IOException("Invalid format", ex);
     }
   }
 
   @NonNls
   public static void buildStubsInterfaceFromStream(final InputStream in, final StubElement parent) throws Exception {
-    processFlexByteCode(in, new AS3InterfaceStubDumper(parent));
+    buildStubsInterfaceFromBytes(loadBytes(in), parent);
+  }
+
+  @NonNls
+  public static void buildStubsInterfaceFromBytes(@NotNull final byte[] bytes, final StubElement parent) throws Exception {
+    processFlexByteCode(bytes, new AS3InterfaceStubDumper(parent));
+  }
+
+  private static byte[] loadBytes(@NotNull final InputStream in) throws IOException {
+    try {
+      return FileUtil.loadBytes(in);
+    }
+    finally {
+      in.close();
+    }
   }
 
-  private static void processFlexByteCode(@NotNull final InputStream in, @NotNull FlexByteCodeInformationProcessor processor) throws IOException {
-    ByteBuffer data = new ByteBuffer();
-    data.read(in);
+  /**
+   * ABC blocks are parsed in place, the only copy made is the inflated body of a compressed SWF.
+   */
+  private static void processFlexByteCode(@NotNull final byte[] bytes, @NotNull FlexByteCodeInformationProcessor processor) throws IOException {
+    ByteBuffer data = new ByteBuffer(bytes);
     data.setLittleEndian();
     if (data.bytesSize() == 0) return;
     int version = data.readUnsignedInt();
@@ -83,12 +123,9 @@ public class FlexImporter {
     }
     else if ((version & SWF_MAGIC) == SWF_MAGIC) {
       final int delta = 8;
-      data.setPosition(delta);
-      ByteBuffer udata = new ByteBuffer();
-      udata.setLittleEndian();
-      data.readBytes(udata, data.bytesSize() - delta);
-      int csize = udata.bytesSize();
-      udata.uncompress();
+      final int fileLength = data.readInt(); // uncompressed length including the header
+      int csize = data.bytesSize() - delta;
+      ByteBuffer udata = data.inflate(delta, fileLength - delta);
       processor.dumpStat("decompressed swf " + csize + " -> " + udata.bytesSize() + "\n");
       udata.setPosition(0);
       new Swf(udata, processor);
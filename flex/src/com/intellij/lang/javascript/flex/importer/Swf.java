@@ -180,14 +180,14 @@ class Swf {
         case stagDoABC2:
           int pos1 = data.getPosition();
           data.readInt();
-          final String abcName = readString();
+          final String abcName = data.readNullTerminatedString();
           processor.dumpStat("\nabc name " + abcName + "\n");
           length -= (data.getPosition() - pos1);
           // fall through
         case stagDoABC:
           ByteBuffer data2 = new ByteBuffer();
           data2.setLittleEndian();
-          data.readBytes(data2, length);
+          data.readBytes(data2, length); // a view of the tag, not a copy
           new Abc(data2, processor).dump(processor.getAbcInSwfIndent());
           processor.append("\n");
           break;
@@ -197,15 +197,6 @@ class Swf {
     }
   }
 
-  private String readString() {
-    String s = "";
-    int c;
-
-    while ((c = data.readUnsignedByte()) != 0) s += (char)c;
-
-    return s;
-  }
-
   private void syncBits() {
     bitPos = 0;
   }